@@ -0,0 +1,86 @@
+package org.clyze.persistent.metadata.jvm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.clyze.persistent.model.Position;
+import org.clyze.persistent.model.Usage;
+import org.clyze.persistent.model.UsageKind;
+import org.clyze.persistent.model.jvm.JvmMethodInvocation;
+import org.clyze.persistent.model.jvm.JvmVariable;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures how publishing elements from many threads scales: the
+ * sharded {@link ConcurrentJvmMetadata} against a {@link JvmMetadata}
+ * guarded by a single lock. Run with different thread counts, e.g.
+ * {@code -PjmhArgs="ConcurrentJvmMetadataBenchmark -t 1"} and then
+ * {@code -t 2}, {@code -t 4} and so on, up to the number of cores.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentJvmMetadataBenchmark {
+
+    /** The containers, shared by all benchmark threads. */
+    @State(Scope.Benchmark)
+    public static class Containers {
+        ConcurrentJvmMetadata concurrent;
+        JvmMetadata locked;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            concurrent = new ConcurrentJvmMetadata();
+            locked = new JvmMetadata();
+        }
+    }
+
+    /** The element factory of a benchmark thread. */
+    @State(Scope.Thread)
+    public static class Elements {
+        private static final AtomicInteger threads = new AtomicInteger();
+        private final String prefix = "t" + threads.incrementAndGet() + "/";
+        private final Position pos = new Position(10, 10, 4, 20);
+        private long counter = 0;
+
+        JvmMethodInvocation invocation() {
+            String id = prefix + "invo" + counter++;
+            return new JvmMethodInvocation(pos, "A.java", true, "a.jar", "foo", id,
+                    "A", "void", "", "<A: void bar()>", false);
+        }
+
+        Usage usage() {
+            return new Usage(pos, "A.java", true, "a.jar", prefix + "usage" + counter++,
+                    "<A: void foo()>", UsageKind.FUNCTION);
+        }
+
+        JvmVariable variable() {
+            String id = prefix + "var" + counter++;
+            return new JvmVariable(pos, "A.java", true, "a.jar", "x", id, "int",
+                    "<A: void bar()>", true, false, false);
+        }
+    }
+
+    @Benchmark
+    public void sharded(Containers containers, Elements elements) {
+        ConcurrentJvmMetadata metadata = containers.concurrent;
+        metadata.add(elements.invocation());
+        metadata.add(elements.usage());
+        metadata.add(elements.variable());
+    }
+
+    @Benchmark
+    public void globalLock(Containers containers, Elements elements) {
+        JvmMetadata metadata = containers.locked;
+        JvmMethodInvocation invocation = elements.invocation();
+        Usage usage = elements.usage();
+        JvmVariable variable = elements.variable();
+        synchronized (metadata) {
+            metadata.jvmInvocations.add(invocation);
+            metadata.usages.add(usage);
+            metadata.jvmVariables.add(variable);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.clyze.persistent.metadata.jvm;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.clyze.persistent.model.ItemImpl;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the conversion of the elements of every model class to maps
+ * and back, on the elements of a synthetic corpus (see
+ * {@link SyntheticCorpus}). Every invocation converts all the elements of
+ * the section, so times are comparable across sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ModelMapBenchmark {
+
+    /** The report section of the model class. */
+    @Param({"SourceFile", "JvmClass", "JvmField", "JvmMethod", "JvmVariable", "JvmHeapAllocation",
+            "JvmMethodInvocation", "JvmStringConstant", "Usage", "SymbolAlias"})
+    public String section;
+
+    /** The number of classes of the corpus. */
+    @Param({"100", "1000"})
+    public int classes;
+
+    private JvmMetadataPatch.Section<?> modelSection;
+    private List<ItemImpl> elements;
+    private List<Map<String, Object>> maps;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        JvmMetadata metadata = SyntheticCorpus.generate(classes, 42);
+        modelSection = JvmMetadataPatch.getSection(section);
+        elements = new ArrayList<>(modelSection.sorted(metadata));
+        maps = new ArrayList<>(elements.size());
+        for (ItemImpl element : elements)
+            maps.add(element.toMap());
+    }
+
+    @Benchmark
+    public void toMap(Blackhole bh) {
+        for (ItemImpl element : elements)
+            bh.consume(element.toMap());
+    }
+
+    @Benchmark
+    public void fromMap(Blackhole bh) {
+        for (Map<String, Object> map : maps) {
+            ItemImpl element = modelSection.factory.get();
+            element.fromMap(map);
+            bh.consume(element);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.clyze.persistent.metadata.jvm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.clyze.persistent.metadata.Configuration;
+import org.clyze.persistent.metadata.FileReporter;
+import org.clyze.persistent.metadata.JSONUtil;
+import org.clyze.persistent.metadata.OutputStyle;
+import org.clyze.persistent.metadata.Printer;
+import org.clyze.persistent.model.Position;
+import org.clyze.persistent.model.Usage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the report operations of JVM metadata on a synthetic corpus
+ * (see {@link SyntheticCorpus}) of increasing size: writing a report,
+ * loading it back, the token index, sorting by symbol id and set
+ * insertion. Run with {@code -prof gc} (the default of "./gradlew jmh")
+ * to see the allocations of every operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ReportBenchmark {
+
+    /** The number of classes of the corpus (a class has about 40 elements). */
+    @Param({"100", "1000", "10000"})
+    public int classes;
+
+    private JvmMetadata metadata;
+    /** The report sections, sorted. */
+    private Map<String, List<?>> jsonReport;
+    /** The report, as loaded by the JSON parser. */
+    private Map<String, Object> reportMap;
+    /** The usages, in a list. */
+    private List<Usage> usages;
+    private File outDir;
+    private Configuration configuration;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        metadata = SyntheticCorpus.generate(classes, 42);
+        jsonReport = new HashMap<>();
+        metadata.populateJsonReport(jsonReport);
+        usages = new ArrayList<>(metadata.usages);
+        outDir = Files.createTempDirectory("metadata-bench").toFile();
+        configuration = new Configuration(new Printer(false));
+        configuration.setOutDir(outDir);
+        (new FileReporter(configuration, metadata)).createReportFile("report.json");
+        reportMap = JSONUtil.toMap(new File(outDir, "report.json").toPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(new File(outDir, "report.json").toPath());
+        Files.deleteIfExists(outDir.toPath());
+    }
+
+    /** Writes a report file: sorts the sections and streams them. */
+    @Benchmark
+    public void createReportFile() {
+        (new FileReporter(configuration, metadata)).createReportFile("report.json");
+    }
+
+    /** Serializes the (sorted) sections with the shared object writer. */
+    @Benchmark
+    public void objectWriter() throws IOException {
+        try (OutputStream out = new NullOutputStream()) {
+            JSONUtil.getObjectWriter(OutputStyle.COMPACT).writeValue(out, jsonReport);
+        }
+    }
+
+    /** Builds metadata from a parsed report. */
+    @Benchmark
+    public JvmMetadata fromMap() {
+        return JvmMetadata.fromMap(reportMap);
+    }
+
+    /** Indexes the tokens of the named elements, as done when they are added. */
+    @Benchmark
+    public Map<String, Collection<Position>> indexTokens() {
+        JvmMetadata indexed = new JvmMetadata();
+        indexed.jvmClasses.addAll(metadata.jvmClasses);
+        indexed.jvmFields.addAll(metadata.jvmFields);
+        indexed.jvmMethods.addAll(metadata.jvmMethods);
+        indexed.jvmVariables.addAll(metadata.jvmVariables);
+        return indexed.getTokenLocations();
+    }
+
+    /** Reads all token locations. */
+    @Benchmark
+    public void getTokenLocations(Blackhole bh) {
+        for (Map.Entry<String, Collection<Position>> entry : metadata.getTokenLocations().entrySet())
+            for (Position position : entry.getValue())
+                bh.consume(position);
+    }
+
+    @Benchmark
+    public List<Usage> getSortedBySymbolId() {
+        return JvmMetadata.getSortedBySymbolId(metadata.usages);
+    }
+
+    @Benchmark
+    public Set<Usage> insertSymbols() {
+        return new HashSet<>(usages);
+    }
+
+    /** An output stream that discards its output. */
+    private static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {}
+
+        @Override
+        public void write(byte[] b, int off, int len) {}
+    }
+}
@@ -0,0 +1,86 @@
+package org.clyze.persistent.metadata.jvm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.clyze.persistent.metadata.Configuration;
+import org.clyze.persistent.metadata.FileReporter;
+import org.clyze.persistent.metadata.Printer;
+import org.clyze.persistent.model.Position;
+import org.clyze.persistent.model.StringPool;
+import org.clyze.persistent.model.Usage;
+import org.clyze.persistent.model.UsageKind;
+import org.clyze.persistent.model.jvm.JvmField;
+import org.clyze.persistent.model.jvm.JvmMethodInvocation;
+import org.clyze.persistent.model.jvm.JvmVariable;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the heap footprint (and load time) of a large JVM metadata
+ * report, loaded with and without string deduplication. The retained
+ * heap of the loaded metadata is reported as the "retainedKiB" counter.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class StringPoolBenchmark {
+
+    /** If true, strings are deduplicated while loading. */
+    @Param({"true", "false"})
+    public boolean pooled;
+
+    /** The number of elements of each kind. */
+    @Param({"200000"})
+    public int elements;
+
+    /** The JSON report to load. */
+    private byte[] report;
+
+    /** The retained heap of the last loaded metadata. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long retainedKiB;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        JvmMetadata metadata = new JvmMetadata();
+        String[] types = { "int", "long", "java.lang.String", "java.lang.Object", "java.util.List", "java.util.Map" };
+        for (int i = 0; i < elements; i++) {
+            // Fresh string copies, as a parser would create them.
+            String file = new String("org/example/pkg" + (i % 50) + "/File" + (i % 2000) + ".java");
+            String artifact = new String("example-1.0.jar");
+            String type = new String(types[i % types.length]);
+            String method = "<A" + (i % 2000) + ": void m" + (i % 7) + "()>";
+            Position pos = new Position(i % 1000, i % 1000, 4, 20);
+            metadata.jvmVariables.add(new JvmVariable(pos, file, true, artifact, "v" + i, method + "/v" + i, type, method, true, false, false));
+            metadata.jvmFields.add(new JvmField(pos, file, true, artifact, "f" + i, "<A: " + type + " f" + i + ">", type, "A" + (i % 2000), false));
+            metadata.jvmInvocations.add(new JvmMethodInvocation(pos, file, true, artifact, "m", method + "/invo" + i, type, "void", "", method, false));
+            metadata.usages.add(new Usage(pos, file, true, artifact, "usage" + i, method, UsageKind.FUNCTION));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        (new FileReporter(new Configuration(new Printer(false)), metadata)).writeReport(out);
+        report = out.toByteArray();
+    }
+
+    @Benchmark
+    @SuppressWarnings("try")
+    public JvmMetadata load(Footprint footprint) throws IOException {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        JvmMetadata metadata;
+        try (StringPool.Scope scope = StringPool.enter(pooled ? StringPool.create() : StringPool.disabled())) {
+            metadata = JvmMetadata.fromJson(new ByteArrayInputStream(report));
+        }
+        System.gc();
+        footprint.retainedKiB = (runtime.totalMemory() - runtime.freeMemory() - before) / 1024;
+        return metadata;
+    }
+}
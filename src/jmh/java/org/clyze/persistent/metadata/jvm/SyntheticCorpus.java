@@ -0,0 +1,106 @@
+package org.clyze.persistent.metadata.jvm;
+
+import java.util.Collections;
+import java.util.Random;
+
+import org.clyze.persistent.model.Position;
+import org.clyze.persistent.model.SourceFile;
+import org.clyze.persistent.model.SymbolAlias;
+import org.clyze.persistent.model.Usage;
+import org.clyze.persistent.model.UsageKind;
+import org.clyze.persistent.model.jvm.*;
+
+/**
+ * Generates JVM metadata that resembles the metadata of a real program,
+ * so that benchmarks do not depend on external reports. The metadata only
+ * depends on the number of classes and the seed, so runs are reproducible.
+ *
+ * Every class lives in its own source file (spread over a few packages
+ * and artifacts) and has fields, methods with parameters, local variables,
+ * allocations and invocations of methods of other classes, usages of the
+ * symbols it references, a string constant and an alias.
+ */
+public final class SyntheticCorpus {
+
+    private static final String[] ARTIFACTS = { "app-1.0.jar", "lib-core-2.3.jar", "lib-util-0.9.jar" };
+    private static final String[] TYPES = { "int", "long", "boolean", "java.lang.String", "java.lang.Object",
+                                            "java.util.List", "java.util.Map" };
+    private static final int PACKAGES = 40;
+    private static final int FIELDS = 4;
+    private static final int METHODS = 8;
+
+    private SyntheticCorpus() {}
+
+    /**
+     * Generate JVM metadata.
+     * @param classes   the number of classes (elements of other kinds are
+     *                  proportional to it)
+     * @param seed      the seed of the random choices
+     * @return          the metadata
+     */
+    public static JvmMetadata generate(int classes, long seed) {
+        Random random = new Random(seed);
+        JvmMetadata metadata = new JvmMetadata();
+        for (int c = 0; c < classes; c++) {
+            String packageName = "org.example.pkg" + (c % PACKAGES);
+            String className = packageName + ".C" + c;
+            String file = packageName.replace('.', '/') + "/C" + c + ".java";
+            String artifact = ARTIFACTS[c % ARTIFACTS.length];
+            metadata.sourceFiles.add(new SourceFile(artifact, file, file));
+
+            JvmClass jvmClass = new JvmClass(position(1, 14, 14 + className.length()), file, true, artifact, "C" + c,
+                    packageName, className, false, false, false, false, false,
+                    true, false, true, false, false);
+            if (c > 0)
+                jvmClass.setSuperTypes(Collections.singletonList("org.example.pkg" + (c / 2 % PACKAGES) + ".C" + (c / 2)));
+            metadata.jvmClasses.add(jvmClass);
+
+            for (int f = 0; f < FIELDS; f++) {
+                String type = TYPES[random.nextInt(TYPES.length)];
+                String fieldId = "<" + className + ": " + type + " f" + f + ">";
+                metadata.jvmFields.add(new JvmField(position(2 + f, 12, 14), file, true, artifact, "f" + f,
+                        fieldId, type, className, f % 2 == 0));
+                metadata.usages.add(new Usage(position(2 + f, 12, 14), file, true, artifact,
+                        file + "/usage/f" + f, fieldId, UsageKind.DATA_WRITE));
+            }
+
+            for (int m = 0; m < METHODS; m++) {
+                int line = 10 + 20 * m;
+                String returnType = TYPES[random.nextInt(TYPES.length)];
+                String paramType = TYPES[random.nextInt(TYPES.length)];
+                String methodId = "<" + className + ": " + returnType + " m" + m + "(" + paramType + ")>";
+                metadata.jvmMethods.add(new JvmMethod(position(line, 8, 10), file, true, artifact, "m" + m,
+                        className, returnType, methodId, new String[] { "p0" }, new String[] { paramType },
+                        false, false, false, false, false, false, true, false, true, false,
+                        new Position(line, line + 18, 4, 5)));
+                metadata.jvmVariables.add(new JvmVariable(position(line, 20, 22), file, true, artifact, "p0",
+                        methodId + "/p0", paramType, methodId, false, true, false));
+                metadata.jvmVariables.add(new JvmVariable(position(line + 1, 12, 15), file, true, artifact, "tmp",
+                        methodId + "/tmp", "java.lang.Object", methodId, true, false, false));
+
+                int target = random.nextInt(classes);
+                String targetClass = "org.example.pkg" + (target % PACKAGES) + ".C" + target;
+                metadata.jvmHeapAllocations.add(new JvmHeapAllocation(position(line + 2, 20, 32), file, true, artifact,
+                        methodId + "/new " + targetClass + "/0", targetClass, methodId, false, false));
+                String targetMethod = "<" + targetClass + ": void m" + random.nextInt(METHODS) + "()>";
+                metadata.jvmInvocations.add(new JvmMethodInvocation(position(line + 3, 12, 30), file, true, artifact,
+                        "m", methodId + "/" + targetClass + ".m/0", targetClass, "void", "", methodId, false));
+                metadata.usages.add(new Usage(position(line + 2, 24, 32), file, true, artifact,
+                        file + "/usage/m" + m + "/type", targetClass, UsageKind.TYPE));
+                metadata.usages.add(new Usage(position(line + 3, 12, 30), file, true, artifact,
+                        file + "/usage/m" + m + "/call", targetMethod, UsageKind.FUNCTION));
+                metadata.usages.add(new Usage(position(line + 4, 8, 11), file, true, artifact,
+                        file + "/usage/m" + m + "/read", methodId + "/tmp", UsageKind.DATA_READ));
+            }
+
+            metadata.jvmStringConstants.add(new JvmStringConstant(position(3, 30, 40), file, true,
+                    "<" + className + ": java.lang.String f0>", "constant-" + random.nextInt(classes)));
+            metadata.aliases.add(new SymbolAlias(file, artifact, className + "$Alias", className));
+        }
+        return metadata;
+    }
+
+    private static Position position(int line, int startColumn, int endColumn) {
+        return new Position(line, line, startColumn, endColumn);
+    }
+}
@@ -0,0 +1,103 @@
+package org.clyze.persistent.model;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures set insertion and sorting of model elements, the two operations
+ * that dominate building a report. Every operation is also measured with
+ * the hashing and ordering of earlier versions (a varargs Objects.hash()
+ * chain per hashCode() call and a new comparator per comparison), so the
+ * "legacy" benchmarks are the baseline for the others.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ModelHashBenchmark {
+
+    /** The number of elements. */
+    @Param({"100000"})
+    public int elements;
+
+    /** Usages, in random order; every tenth usage is an equal copy of another one. */
+    private List<Usage> usages;
+    /** The same usages, hashed as by earlier versions. */
+    private List<LegacyKey> legacyKeys;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        usages = new ArrayList<>(elements);
+        Random random = new Random(42);
+        for (int i = 0; i < elements; i++) {
+            int n = (i % 10 == 9) ? random.nextInt(i) : i;
+            String file = "org/example/pkg" + (n % 50) + "/File" + (n % 2000) + ".java";
+            usages.add(new Usage(new Position(n % 1000, n % 1000, 4, 20), file, true, "example-1.0.jar",
+                    file + "/usage" + n, "<A" + (n % 2000) + ": void m()>", UsageKind.FUNCTION));
+        }
+        Collections.shuffle(usages, random);
+        legacyKeys = new ArrayList<>(elements);
+        for (Usage usage : usages)
+            legacyKeys.add(new LegacyKey(usage));
+    }
+
+    @Benchmark
+    public Set<Usage> insert() {
+        return new HashSet<>(usages);
+    }
+
+    @Benchmark
+    public Set<LegacyKey> insertLegacy() {
+        return new HashSet<>(legacyKeys);
+    }
+
+    @Benchmark
+    public List<Usage> sort() {
+        List<Usage> list = new ArrayList<>(usages);
+        list.sort(null);
+        return list;
+    }
+
+    @Benchmark
+    public List<Usage> sortLegacy() {
+        List<Usage> list = new ArrayList<>(usages);
+        list.sort((u1, u2) -> Comparator.comparing(SymbolWithId::getSymbolId).compare(u1, u2));
+        return list;
+    }
+
+    /** A usage with the equality and hashing of earlier versions. */
+    static final class LegacyKey {
+        private final Usage usage;
+
+        LegacyKey(Usage usage) {
+            this.usage = usage;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof LegacyKey))
+                return false;
+            Usage that = ((LegacyKey) object).usage;
+            return Objects.equals(usage.getRootElemId(), that.getRootElemId())
+                && Objects.equals(usage.getSourceFileName(), that.getSourceFileName())
+                && Objects.equals(usage.getPosition(), that.getPosition())
+                && Objects.equals(usage.isSource(), that.isSource())
+                && Objects.equals(usage.getSymbolId(), that.getSymbolId())
+                && Objects.equals(usage.getUsageKind(), that.getUsageKind())
+                && Objects.equals(usage.getReferenceId(), that.getReferenceId());
+        }
+
+        @Override
+        public int hashCode() {
+            int element = Objects.hash(usage.getRootElemId());
+            Position pos = usage.getPosition();
+            int position = Objects.hash(pos.getStartLine(), pos.getStartColumn(), pos.getEndLine(), pos.getEndColumn());
+            int symbol = Objects.hash(element, usage.getSourceFileName(), position, usage.isSource());
+            int symbolWithId = Objects.hash(symbol, usage.getSymbolId());
+            return Objects.hash(symbolWithId, usage.getUsageKind(), usage.getReferenceId());
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package org.clyze.persistent.metadata;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * The reading side of the binary metadata format written by {@link BinaryEncoder}.
+ */
+public class BinaryDecoder {
+
+    /** The (buffered) input. */
+    private final DataInputStream in;
+    /** The format version found in the header. */
+    private final long version;
+    /** The metadata kind found in the header. */
+    private final String kind;
+    /** The string table (index 0 is null). */
+    private final String[] strings;
+    /** The number of sections that have not been read yet. */
+    private int sectionsLeft;
+    /** The name of the current section. */
+    private String sectionName;
+    /** The number of elements in the current section. */
+    private int sectionSize;
+    /** The byte length of the current section. */
+    private long sectionLength;
+
+    /**
+     * Create a decoder and read the header and string table.
+     * @param in             the input stream (not closed by the decoder)
+     * @throws IOException   on read error or if the input is not binary metadata
+     */
+    public BinaryDecoder(InputStream in) throws IOException {
+        this.in = new DataInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in));
+        byte[] magic = new byte[BinaryEncoder.MAGIC.length];
+        this.in.readFully(magic);
+        if (!Arrays.equals(magic, BinaryEncoder.MAGIC))
+            throw new IOException("Not a binary metadata file");
+        this.version = readVarLong();
+        if (version < 1 || version > BinaryEncoder.VERSION)
+            throw new IOException("Unsupported binary metadata version: " + version);
+        this.kind = readRawString();
+        int stringCount = readCount();
+        this.strings = new String[stringCount + 1];
+        for (int i = 1; i <= stringCount; i++)
+            strings[i] = readRawString();
+        this.sectionsLeft = readCount();
+    }
+
+    /**
+     * Create a decoder for standalone records (see {@link BinaryEncoder#encodeRecord}).
+     * No header is read; subclasses resolve string references by
+     * overriding {@link #lookupString(long)}.
+     * @param in     the record input (not buffered by the decoder)
+     * @param kind   the kind of metadata the records belong to
+     */
+    protected BinaryDecoder(InputStream in, String kind) {
+        this.in = new DataInputStream(in);
+        this.version = BinaryEncoder.VERSION;
+        this.kind = kind;
+        this.strings = new String[] { null };
+        this.sectionsLeft = 0;
+    }
+
+    /**
+     * Returns the kind of metadata stored (e.g. "JvmMetadata").
+     * @return   the metadata kind
+     */
+    public String getKind() {
+        return kind;
+    }
+
+    /**
+     * Advance to the next section. The previous section must have been
+     * read or skipped.
+     * @return               the section name or null if no more sections exist
+     * @throws IOException   on read error
+     */
+    public String nextSection() throws IOException {
+        if (sectionsLeft == 0)
+            return null;
+        sectionsLeft--;
+        sectionName = readRawString();
+        sectionSize = readCount();
+        sectionLength = readVarLong();
+        return sectionName;
+    }
+
+    /**
+     * Read all elements of the current section. Version 1 files store
+     * every section as a single block without an element count.
+     * @param layout         the column layout of the section
+     * @param target         the collection that will receive the elements
+     * @param <T>            the type of the elements
+     * @throws IOException   on read error
+     */
+    public <T> void readElements(BinaryLayout<T> layout, Collection<? super T> target) throws IOException {
+        if (version == 1) {
+            target.addAll(layout.read(sectionSize, this));
+            return;
+        }
+        for (int left = sectionSize; left > 0; ) {
+            int blockSize = readCount();
+            if (blockSize == 0 || blockSize > left)
+                throw new IOException("Invalid block size in section " + sectionName + ": " + blockSize);
+            target.addAll(layout.read(blockSize, this));
+            left -= blockSize;
+        }
+    }
+
+    /**
+     * Read a standalone record.
+     * @param layout         the layout of the record
+     * @param <T>            the type of the element
+     * @return               the element
+     * @throws IOException   on read error
+     */
+    public <T> T readRecord(BinaryLayout<T> layout) throws IOException {
+        return layout.read(1, this).get(0);
+    }
+
+    /**
+     * Skip the current section.
+     * @throws IOException   on read error
+     */
+    public void skipSection() throws IOException {
+        long left = sectionLength;
+        while (left > 0) {
+            int skipped = in.skipBytes((int) Math.min(left, Integer.MAX_VALUE));
+            if (skipped <= 0)
+                throw new EOFException("Truncated section: " + sectionName);
+            left -= skipped;
+        }
+    }
+
+    /**
+     * Read a non-negative variable-length integer.
+     * @return               the number
+     * @throws IOException   on read error
+     */
+    public long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+
+    /**
+     * Read a zigzag variable-length integer.
+     * @return               the number
+     * @throws IOException   on read error
+     */
+    public long readSignedVarLong() throws IOException {
+        long raw = readVarLong();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    /**
+     * Read a string reference.
+     * @return               the string (may be null)
+     * @throws IOException   on read error or invalid reference
+     */
+    public String readString() throws IOException {
+        long id = readVarLong();
+        return id == 0 ? null : lookupString(id);
+    }
+
+    /**
+     * Resolve a (non-null) string reference.
+     * @param id             the string id
+     * @return               the string
+     * @throws IOException   on invalid reference
+     */
+    protected String lookupString(long id) throws IOException {
+        if (id >= strings.length)
+            throw new IOException("Invalid string reference: " + id);
+        return strings[(int) id];
+    }
+
+    /**
+     * Read a bit set of a known length.
+     * @param length         the number of bits
+     * @return               the bits
+     * @throws IOException   on read error
+     */
+    public BitSet readBits(int length) throws IOException {
+        byte[] packed = new byte[(length + 7) / 8];
+        in.readFully(packed);
+        return BitSet.valueOf(packed);
+    }
+
+    private int readCount() throws IOException {
+        long count = readVarLong();
+        if (count > Integer.MAX_VALUE)
+            throw new IOException("Invalid element count: " + count);
+        return (int) count;
+    }
+
+    private String readRawString() throws IOException {
+        byte[] utf8 = new byte[readCount()];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,270 @@
+package org.clyze.persistent.metadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The writing side of the binary metadata format. Sections are written
+ * straight to the output as blocks of elements, so reports are never
+ * held in memory; since the string table precedes the sections, writers
+ * first measure every block (see {@link #writeBlock(BinaryLayout, List, OutputStream)}),
+ * which fills the string table, and then write the header and the sections.
+ *
+ * Layout: magic, format version, metadata kind, string table, sections.
+ * Every section is framed by its name, element count and byte length, so
+ * that readers can skip sections they do not know; its elements follow
+ * in blocks, each block holding its element count and its columns.
+ */
+public class BinaryEncoder {
+
+    /** The magic bytes at the start of every binary metadata file. */
+    static final byte[] MAGIC = { 'C', 'L', 'Z', 'B' };
+    /** The current version of the binary format. */
+    static final int VERSION = 2;
+
+    /** The kind of the metadata written (e.g. "JvmMetadata"). */
+    private final String kind;
+    /** String table: string to id (ids start at 1, 0 stands for null). */
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    /** String table: strings in id order. */
+    private final List<String> strings = new ArrayList<>();
+    /** The output of the block or record being encoded, if any. */
+    private Output current = null;
+
+    /**
+     * Create an encoder for a metadata object.
+     * @param kind   the metadata kind, checked by readers
+     */
+    public BinaryEncoder(String kind) {
+        this.kind = kind;
+    }
+
+    /**
+     * Write the header: the format, the metadata kind and the string
+     * table. All strings of the sections must be in the table, i.e. all
+     * blocks must have been measured.
+     * @param out            the output stream (not closed by this method)
+     * @param sectionCount   the number of sections that follow
+     * @throws IOException   on write error
+     */
+    public void writeHeader(OutputStream out, int sectionCount) throws IOException {
+        Output header = new Output(out);
+        header.write(MAGIC, 0, MAGIC.length);
+        header.writeVarLong(VERSION);
+        header.writeRawString(kind);
+        header.writeVarLong(strings.size());
+        for (String s : strings)
+            header.writeRawString(s);
+        header.writeVarLong(sectionCount);
+        header.flush();
+    }
+
+    /**
+     * Write the frame of a section, to be followed by its blocks.
+     * @param out            the output stream (not closed by this method)
+     * @param name           the section name
+     * @param elements       the number of elements of the section
+     * @param length         the total byte length of the blocks of the section
+     * @throws IOException   on write error
+     */
+    public void writeSectionFrame(OutputStream out, String name, int elements, long length) throws IOException {
+        Output frame = new Output(out);
+        frame.writeRawString(name);
+        frame.writeVarLong(elements);
+        frame.writeVarLong(length);
+        frame.flush();
+    }
+
+    /**
+     * Encode a block of section elements. Strings are added to the string
+     * table of this encoder.
+     * @param layout         the column layout of the elements
+     * @param elements       the elements (in output order)
+     * @param out            the output stream (not closed by this method),
+     *                       or null to only measure the block
+     * @param <T>            the type of the elements
+     * @return               the byte length of the block
+     * @throws IOException   on write error
+     */
+    public <T> long writeBlock(BinaryLayout<T> layout, List<T> elements, OutputStream out) throws IOException {
+        current = new Output(out);
+        try {
+            current.writeVarLong(elements.size());
+            layout.write(elements, this);
+            current.flush();
+            return current.size;
+        } finally {
+            current = null;
+        }
+    }
+
+    /**
+     * Encode a single element as a standalone record. Strings are added to
+     * the string table of this encoder; no section is written.
+     * @param layout         the layout of the element
+     * @param element        the element
+     * @param <T>            the type of the element
+     * @return               the record bytes
+     * @throws IOException   on encoding error
+     */
+    public <T> byte[] encodeRecord(BinaryLayout<T> layout, T element) throws IOException {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        current = new Output(record, 256);
+        try {
+            layout.write(Collections.singletonList(element), this);
+            current.flush();
+        } finally {
+            current = null;
+        }
+        return record.toByteArray();
+    }
+
+    /**
+     * Decode a record written by {@link #encodeRecord(BinaryLayout, Object)}
+     * of this encoder.
+     * @param layout         the layout of the element
+     * @param record         the record bytes
+     * @param length         the length of the record
+     * @param <T>            the type of the element
+     * @return               the element
+     * @throws IOException   on malformed record
+     */
+    <T> T decodeRecord(BinaryLayout<T> layout, byte[] record, int length) throws IOException {
+        return new BinaryDecoder(new ByteArrayInputStream(record, 0, length), kind) {
+            @Override
+            protected String lookupString(long id) throws IOException {
+                if (id > strings.size())
+                    throw new IOException("Invalid string reference: " + id);
+                return strings.get((int) id - 1);
+            }
+        }.readRecord(layout);
+    }
+
+    /**
+     * Returns the string table id of a string, adding it to the table if needed.
+     * @param s   the string (may be null)
+     * @return    the string id (0 for null)
+     */
+    public int stringId(String s) {
+        if (s == null)
+            return 0;
+        Integer id = stringIds.get(s);
+        if (id == null) {
+            strings.add(s);
+            id = strings.size();
+            stringIds.put(s, id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the string table, in id order (the string with id 1 comes first).
+     * @return   the strings encountered so far
+     */
+    public List<String> getStrings() {
+        return Collections.unmodifiableList(strings);
+    }
+
+    /**
+     * Write a non-negative number as a variable-length integer.
+     * @param value          the number
+     * @throws IOException   on write error
+     */
+    public void writeVarLong(long value) throws IOException {
+        current.writeVarLong(value);
+    }
+
+    /**
+     * Write a (possibly negative) number as a zigzag variable-length integer.
+     * @param value          the number
+     * @throws IOException   on write error
+     */
+    public void writeSignedVarLong(long value) throws IOException {
+        current.writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Write a string as a reference to the string table.
+     * @param s              the string (may be null)
+     * @throws IOException   on write error
+     */
+    public void writeString(String s) throws IOException {
+        current.writeVarLong(stringId(s));
+    }
+
+    /**
+     * Write a bit set of a known length.
+     * @param bits           the bits
+     * @param length         the number of bits
+     * @throws IOException   on write error
+     */
+    public void writeBits(BitSet bits, int length) throws IOException {
+        byte[] packed = bits.toByteArray();
+        int size = (length + 7) / 8;
+        for (int i = 0; i < size; i++)
+            current.write(i < packed.length ? packed[i] : 0);
+    }
+
+    /**
+     * A small write buffer in front of an output stream (or of nothing,
+     * when only measuring), that counts the bytes written through it.
+     */
+    private static final class Output {
+        private final OutputStream out;
+        private final byte[] buffer;
+        private int position = 0;
+        long size = 0;
+
+        Output(OutputStream out) {
+            this(out, 8192);
+        }
+
+        Output(OutputStream out, int bufferSize) {
+            this.out = out;
+            this.buffer = new byte[bufferSize];
+        }
+
+        void write(int b) throws IOException {
+            if (position == buffer.length)
+                flush();
+            buffer[position++] = (byte) b;
+            size++;
+        }
+
+        void write(byte[] b, int off, int len) throws IOException {
+            if (len > buffer.length - position) {
+                flush();
+                if (out != null)
+                    out.write(b, off, len);
+            } else {
+                System.arraycopy(b, off, buffer, position, len);
+                position += len;
+            }
+            size += len;
+        }
+
+        void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeRawString(String s) throws IOException {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(utf8.length);
+            write(utf8, 0, utf8.length);
+        }
+
+        void flush() throws IOException {
+            if (out != null && position > 0)
+                out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package org.clyze.persistent.metadata;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.*;
+import org.clyze.persistent.model.Position;
+
+/**
+ * The column layout of one kind of metadata elements in the binary format.
+ * Elements of a section are stored column by column: every property is
+ * written for all elements before the next property is written.
+ *
+ * @param <T>   the type of the elements
+ */
+public final class BinaryLayout<T> {
+
+    /** A column: one property of all elements of a section. */
+    private interface Column<T> {
+        void write(List<T> elements, BinaryEncoder out) throws IOException;
+        void read(List<T> elements, BinaryDecoder in) throws IOException;
+    }
+
+    /** The factory of empty elements, used when reading. */
+    private final Supplier<T> factory;
+    /** The columns, in storage order. */
+    private final List<Column<T>> columns;
+
+    private BinaryLayout(Supplier<T> factory, List<Column<T>> columns) {
+        this.factory = factory;
+        this.columns = columns;
+    }
+
+    /**
+     * Start building a layout.
+     * @param factory   the factory of empty elements, populated when reading
+     * @param <T>       the type of the elements
+     * @return          a layout builder
+     */
+    public static <T> Builder<T> builder(Supplier<T> factory) {
+        return new Builder<>(factory);
+    }
+
+    void write(List<T> elements, BinaryEncoder out) throws IOException {
+        for (Column<T> column : columns)
+            column.write(elements, out);
+    }
+
+    List<T> read(int count, BinaryDecoder in) throws IOException {
+        List<T> elements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            elements.add(factory.get());
+        for (Column<T> column : columns)
+            column.read(elements, in);
+        return elements;
+    }
+
+    /**
+     * A builder of element layouts. Columns are stored in the order they
+     * are added; all boolean flags share a single bit set column, stored
+     * at the place of the first flag.
+     *
+     * @param <T>   the type of the elements
+     */
+    public static final class Builder<T> {
+        private final Supplier<T> factory;
+        private final List<Column<T>> columns = new ArrayList<>();
+        private FlagsColumn<T> flags = null;
+
+        private Builder(Supplier<T> factory) {
+            this.factory = factory;
+        }
+
+        /**
+         * Add a string column.
+         * @param getter   the property getter
+         * @param setter   the property setter
+         * @return         this builder
+         */
+        public Builder<T> string(Function<T, String> getter, BiConsumer<T, String> setter) {
+            columns.add(new Column<T>() {
+                @Override
+                public void write(List<T> elements, BinaryEncoder out) throws IOException {
+                    for (T element : elements)
+                        out.writeString(getter.apply(element));
+                }
+
+                @Override
+                public void read(List<T> elements, BinaryDecoder in) throws IOException {
+                    for (T element : elements)
+                        setter.accept(element, in.readString());
+                }
+            });
+            return this;
+        }
+
+        /**
+         * Add a column of string collections (null collections are preserved).
+         * @param getter   the property getter
+         * @param setter   the property setter (receives a fresh list)
+         * @return         this builder
+         */
+        public Builder<T> strings(Function<T, Collection<String>> getter, BiConsumer<T, List<String>> setter) {
+            columns.add(new Column<T>() {
+                @Override
+                public void write(List<T> elements, BinaryEncoder out) throws IOException {
+                    for (T element : elements) {
+                        Collection<String> values = getter.apply(element);
+                        if (values == null)
+                            out.writeVarLong(0);
+                        else {
+                            out.writeVarLong(values.size() + 1L);
+                            for (String value : values)
+                                out.writeString(value);
+                        }
+                    }
+                }
+
+                @Override
+                public void read(List<T> elements, BinaryDecoder in) throws IOException {
+                    for (T element : elements) {
+                        int size = (int) in.readVarLong();
+                        if (size == 0)
+                            setter.accept(element, null);
+                        else {
+                            List<String> values = new ArrayList<>(size - 1);
+                            for (int i = 1; i < size; i++)
+                                values.add(in.readString());
+                            setter.accept(element, values);
+                        }
+                    }
+                }
+            });
+            return this;
+        }
+
+        /**
+         * Add a numeric column.
+         * @param getter   the property getter
+         * @param setter   the property setter
+         * @return         this builder
+         */
+        public Builder<T> number(ToLongFunction<T> getter, ObjLongConsumer<T> setter) {
+            columns.add(new Column<T>() {
+                @Override
+                public void write(List<T> elements, BinaryEncoder out) throws IOException {
+                    for (T element : elements)
+                        out.writeSignedVarLong(getter.applyAsLong(element));
+                }
+
+                @Override
+                public void read(List<T> elements, BinaryDecoder in) throws IOException {
+                    for (T element : elements)
+                        setter.accept(element, in.readSignedVarLong());
+                }
+            });
+            return this;
+        }
+
+        /**
+         * Add an enum column (stored as ordinals).
+         * @param type     the enum type
+         * @param getter   the property getter
+         * @param setter   the property setter
+         * @param <E>      the enum type
+         * @return         this builder
+         */
+        public <E extends Enum<E>> Builder<T> enumeration(Class<E> type, Function<T, E> getter, BiConsumer<T, E> setter) {
+            E[] values = type.getEnumConstants();
+            columns.add(new Column<T>() {
+                @Override
+                public void write(List<T> elements, BinaryEncoder out) throws IOException {
+                    for (T element : elements) {
+                        E value = getter.apply(element);
+                        out.writeVarLong(value == null ? 0 : value.ordinal() + 1);
+                    }
+                }
+
+                @Override
+                public void read(List<T> elements, BinaryDecoder in) throws IOException {
+                    for (T element : elements) {
+                        long ordinal = in.readVarLong();
+                        if (ordinal > values.length)
+                            throw new IOException("Invalid " + type.getSimpleName() + " ordinal: " + ordinal);
+                        setter.accept(element, ordinal == 0 ? null : values[(int) ordinal - 1]);
+                    }
+                }
+            });
+            return this;
+        }
+
+        /**
+         * Add a position column. A bit set marks the elements that have
+         * positions, followed by four variable-length integer columns:
+         * start line (delta from the previous start line), line span,
+         * start column and column span.
+         * @param getter   the property getter
+         * @param setter   the property setter
+         * @return         this builder
+         */
+        public Builder<T> position(Function<T, Position> getter, BiConsumer<T, Position> setter) {
+            columns.add(new Column<T>() {
+                @Override
+                public void write(List<T> elements, BinaryEncoder out) throws IOException {
+                    BitSet present = new BitSet(elements.size());
+                    List<Position> positions = new ArrayList<>(elements.size());
+                    for (int i = 0; i < elements.size(); i++) {
+                        Position pos = getter.apply(elements.get(i));
+                        if (pos != null) {
+                            present.set(i);
+                            positions.add(pos);
+                        }
+                    }
+                    out.writeBits(present, elements.size());
+                    long previousLine = 0;
+                    for (Position pos : positions) {
+                        out.writeSignedVarLong(pos.getStartLine() - previousLine);
+                        previousLine = pos.getStartLine();
+                    }
+                    for (Position pos : positions)
+                        out.writeSignedVarLong(pos.getEndLine() - pos.getStartLine());
+                    for (Position pos : positions)
+                        out.writeSignedVarLong(pos.getStartColumn());
+                    for (Position pos : positions)
+                        out.writeSignedVarLong(pos.getEndColumn() - pos.getStartColumn());
+                }
+
+                @Override
+                public void read(List<T> elements, BinaryDecoder in) throws IOException {
+                    BitSet present = in.readBits(elements.size());
+                    int count = present.cardinality();
+                    long[] startLines = new long[count];
+                    long line = 0;
+                    for (int i = 0; i < count; i++) {
+                        line += in.readSignedVarLong();
+                        startLines[i] = line;
+                    }
+                    long[] endLines = new long[count];
+                    for (int i = 0; i < count; i++)
+                        endLines[i] = startLines[i] + in.readSignedVarLong();
+                    long[] startColumns = new long[count];
+                    for (int i = 0; i < count; i++)
+                        startColumns[i] = in.readSignedVarLong();
+                    int p = 0;
+                    for (int i = present.nextSetBit(0); i >= 0; i = present.nextSetBit(i + 1), p++) {
+                        long endColumn = startColumns[p] + in.readSignedVarLong();
+                        setter.accept(elements.get(i), Position.of(startLines[p], endLines[p], startColumns[p], endColumn));
+                    }
+                }
+            });
+            return this;
+        }
+
+        /**
+         * Add a boolean flag. All flags of an element are stored together
+         * in a single variable-length bit set.
+         * @param getter   the property getter
+         * @param setter   the property setter
+         * @return         this builder
+         */
+        public Builder<T> flag(Predicate<T> getter, BiConsumer<T, Boolean> setter) {
+            if (flags == null) {
+                flags = new FlagsColumn<>();
+                columns.add(flags);
+            }
+            if (flags.getters.size() == Long.SIZE)
+                throw new IllegalStateException("Too many flags in layout");
+            flags.getters.add(getter);
+            flags.setters.add(setter);
+            return this;
+        }
+
+        /**
+         * Add the bits of an int mask as boolean flags (see {@link #flag(Predicate, BiConsumer)}).
+         * @param getter   the mask getter
+         * @param setter   the mask setter
+         * @param bits     the bits of the mask to store, in flag order
+         * @return         this builder
+         */
+        public Builder<T> flags(ToIntFunction<T> getter, ObjIntConsumer<T> setter, int... bits) {
+            for (int bit : bits)
+                flag(e -> (getter.applyAsInt(e) & bit) != 0,
+                     (e, value) -> setter.accept(e, value ? (getter.applyAsInt(e) | bit) : (getter.applyAsInt(e) & ~bit)));
+            return this;
+        }
+
+        /**
+         * Finish the layout.
+         * @return   the layout
+         */
+        public BinaryLayout<T> build() {
+            return new BinaryLayout<>(factory, new ArrayList<>(columns));
+        }
+    }
+
+    /** The column of boolean flags of elements. */
+    private static final class FlagsColumn<T> implements Column<T> {
+        final List<Predicate<T>> getters = new ArrayList<>();
+        final List<BiConsumer<T, Boolean>> setters = new ArrayList<>();
+
+        @Override
+        public void write(List<T> elements, BinaryEncoder out) throws IOException {
+            for (T element : elements) {
+                long bits = 0;
+                for (int f = 0; f < getters.size(); f++)
+                    if (getters.get(f).test(element))
+                        bits |= 1L << f;
+                out.writeVarLong(bits);
+            }
+        }
+
+        @Override
+        public void read(List<T> elements, BinaryDecoder in) throws IOException {
+            for (T element : elements) {
+                long bits = in.readVarLong();
+                for (int f = 0; f < setters.size(); f++)
+                    setters.get(f).accept(element, (bits & (1L << f)) != 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.clyze.persistent.metadata;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Supplier;
+import org.clyze.persistent.model.*;
+
+/**
+ * The binary layouts of the language-agnostic model elements. The builder
+ * methods lay out the properties of a base class and can be extended with
+ * the properties of subclasses.
+ */
+public final class BinaryLayouts {
+
+    /** The layout of source files. */
+    public static final BinaryLayout<SourceFile> SOURCE_FILE = BinaryLayout.builder(SourceFile::new)
+            .string(SourceFile::getId, SourceFile::setId)
+            .string(SourceFile::getArtifactName, SourceFile::setArtifactName)
+            .string(SourceFile::getPath, SourceFile::setPath)
+            .build();
+    /** The layout of types. */
+    public static final BinaryLayout<Type> TYPE = type(Type::new).build();
+    /** The layout of fields. */
+    public static final BinaryLayout<Field> FIELD = field(Field::new).build();
+    /** The layout of functions. */
+    public static final BinaryLayout<Function> FUNCTION = function(Function::new).build();
+    /** The layout of variables. */
+    public static final BinaryLayout<Variable> VARIABLE = variable(Variable::new).build();
+
+    private BinaryLayouts() {}
+
+    /**
+     * Start a layout with the properties of {@link Symbol}.
+     * @param factory   the factory of empty elements
+     * @param <T>       the type of the elements
+     * @return          the layout builder
+     */
+    public static <T extends Symbol> BinaryLayout.Builder<T> symbol(Supplier<T> factory) {
+        return BinaryLayout.builder(factory)
+                .string(ItemImpl::getId, ItemImpl::setId)
+                .string(Element::getRootElemId, Element::setRootElemId)
+                .position(Symbol::getPosition, Symbol::setPosition)
+                .string(Symbol::getSourceFileName, Symbol::setSourceFileName)
+                .flag(Symbol::isSource, Symbol::setSource);
+    }
+
+    /**
+     * Start a layout with the properties of {@link SymbolWithId}.
+     * @param factory   the factory of empty elements
+     * @param <T>       the type of the elements
+     * @return          the layout builder
+     */
+    public static <T extends SymbolWithId> BinaryLayout.Builder<T> symbolWithId(Supplier<T> factory) {
+        return BinaryLayouts.<T>symbol(factory)
+                .string(SymbolWithId::getArtifactName, SymbolWithId::setArtifactName)
+                .string(SymbolWithId::getSymbolId, SymbolWithId::setSymbolId);
+    }
+
+    /**
+     * Start a layout with the properties of {@link AnnotatableSymbolWithId}.
+     * @param factory   the factory of empty elements
+     * @param <T>       the type of the elements
+     * @return          the layout builder
+     */
+    public static <T extends AnnotatableSymbolWithId> BinaryLayout.Builder<T> annotatable(Supplier<T> factory) {
+        return BinaryLayouts.<T>symbolWithId(factory)
+                .strings(AnnotatableSymbolWithId::getAnnotations,
+                        (e, l) -> e.setAnnotations(l == null ? null : new HashSet<>(l)));
+    }
+
+    /**
+     * Start a layout with the properties of {@link Type}.
+     * @param factory   the factory of empty elements
+     * @param <T>       the type of the elements
+     * @return          the layout builder
+     */
+    public static <T extends Type> BinaryLayout.Builder<T> type(Supplier<T> factory) {
+        return BinaryLayouts.<T>annotatable(factory)
+                .string(Type::getName, Type::setName);
+    }
+
+    /**
+     * Start a layout with the properties of {@link Field}.
+     * @param factory   the factory of empty elements
+     * @param <T>       the type of the elements
+     * @return          the layout builder
+     */
+    public static <T extends Field> BinaryLayout.Builder<T> field(Supplier<T> factory) {
+        return BinaryLayouts.<T>annotatable(factory)
+                .string(Field::getName, Field::setName);
+    }
+
+    /**
+     * Start a layout with the properties of {@link Function}.
+     * @param factory   the factory of empty elements
+     * @param <T>       the type of the elements
+     * @return          the layout builder
+     */
+    public static <T extends Function> BinaryLayout.Builder<T> function(Supplier<T> factory) {
+        return BinaryLayouts.<T>annotatable(factory)
+                .string(Function::getName, Function::setName)
+                .strings(f -> asList(f.getParams()), (f, l) -> f.setParams(asArray(l)))
+                .position(Function::getOuterPosition, Function::setOuterPosition);
+    }
+
+    /**
+     * Start a layout with the properties of {@link Variable}.
+     * @param factory   the factory of empty elements
+     * @param <T>       the type of the elements
+     * @return          the layout builder
+     */
+    public static <T extends Variable> BinaryLayout.Builder<T> variable(Supplier<T> factory) {
+        return BinaryLayouts.<T>symbolWithId(factory)
+                .string(Variable::getName, Variable::setName)
+                .flag(Variable::isLocal, Variable::setLocal)
+                .flag(Variable::isParameter, Variable::setParameter);
+    }
+
+    /**
+     * Helper method to store string arrays as collections.
+     * @param array   the string array (may be null)
+     * @return        the corresponding list or null
+     */
+    public static List<String> asList(String[] array) {
+        return array == null ? null : Arrays.asList(array);
+    }
+
+    /**
+     * Helper method to load string arrays from collections.
+     * @param list    the string list (may be null)
+     * @return        the corresponding array or null
+     */
+    public static String[] asArray(List<String> list) {
+        return list == null ? null : list.toArray(new String[0]);
+    }
+}
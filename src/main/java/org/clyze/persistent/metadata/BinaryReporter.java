@@ -0,0 +1,218 @@
+package org.clyze.persistent.metadata;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.function.Function;
+import org.clyze.persistent.model.ItemImpl;
+
+/**
+ * This class writes metadata in the binary columnar format, as an
+ * alternative to the JSON reports of {@link FileReporter}. Sections keep
+ * the canonical order of the JSON reports; strings are stored once in a
+ * per-file string table and referenced by id.
+ *
+ * Reports are streamed: every section is encoded twice, first only to
+ * measure it and to fill the string table (which precedes the sections)
+ * and then to the output, so encoded sections are never held in memory.
+ * With a sort budget (see {@link Configuration#setSortBudget(int)}),
+ * sections are sorted as for JSON reports and are written in blocks of at
+ * most "budget" elements.
+ */
+public class BinaryReporter extends FileReporter {
+
+    /**
+     * Creates a new binary reporter to use for generating metadata.
+     * @param configuration   the output configuration to use
+     * @param metadata        the metadata object to use
+     */
+    public BinaryReporter(Configuration configuration, Metadata metadata) {
+        super(configuration, metadata);
+    }
+
+    /**
+     * Streams the binary metadata to an output stream.
+     * @param out            the output stream to use (not closed by this method)
+     * @throws IOException   on serialization error or temporary file error
+     */
+    @Override
+    protected void writeReportContents(OutputStream out) throws IOException {
+        MetricsListener metrics = configuration.getMetricsListener();
+        BinaryEncoder encoder = new BinaryEncoder(metadata.getClass().getSimpleName());
+        List<Section<?>> sections = new ArrayList<>();
+        try {
+            if (configuration.getSortBudget() > 0) {
+                // Same map type and insertion order as createJsonReport(), for the same section order.
+                Map<String, ReportSection<?>> reportSections = new HashMap<>();
+                metadata.describeReportSections(reportSections);
+                ExternalSorter sorter = new ExternalSorter(configuration);
+                for (Map.Entry<String, ReportSection<?>> section : reportSections.entrySet()) {
+                    metrics.sectionSize(section.getKey(), section.getValue().getElements().size());
+                    sections.add(sortedSection(section.getKey(), section.getValue(), sorter, encoder));
+                }
+            } else
+                for (Map.Entry<String, List<?>> section : createJsonReport().entrySet())
+                    sections.add(new ChunkedSection<>(section.getKey(), getLayout(section.getKey()), section.getValue(), Integer.MAX_VALUE));
+
+            long[] lengths = new long[sections.size()];
+            for (int i = 0; i < lengths.length; i++)
+                try (PhaseTimer timer = PhaseTimer.start(metrics, MetricsListener.Phase.SERIALIZE, sections.get(i).name)) {
+                    lengths[i] = sections.get(i).write(encoder, null);
+                    timer.setElements(sections.get(i).size);
+                }
+            encoder.writeHeader(out, sections.size());
+            for (int i = 0; i < lengths.length; i++) {
+                Section<?> section = sections.get(i);
+                try (PhaseTimer timer = PhaseTimer.start(metrics, MetricsListener.Phase.SERIALIZE, section.name)) {
+                    encoder.writeSectionFrame(out, section.name, section.size, lengths[i]);
+                    if (section.write(encoder, out) != lengths[i])
+                        throw new IllegalStateException("Metadata section " + section.name + " changed while it was written");
+                    timer.setElements(section.size);
+                    timer.setBytes(lengths[i]);
+                }
+            }
+        } finally {
+            for (Section<?> section : sections)
+                section.close();
+        }
+    }
+
+    private <T extends ItemImpl> Section<T> sortedSection(String name, ReportSection<T> section,
+                                                           ExternalSorter sorter, BinaryEncoder encoder) throws IOException {
+        BinaryLayout<T> layout = getLayout(name);
+        int budget = configuration.getSortBudget();
+        Collection<T> elements = section.getElements();
+        Function<? super T, String> key = section.getSortKey();
+        if (key == null)
+            return new ChunkedSection<>(name, layout, elements, budget);
+        if (elements.size() <= budget)
+            try (PhaseTimer timer = PhaseTimer.start(configuration.getMetricsListener(), MetricsListener.Phase.SORT, name)) {
+                List<T> list = new ArrayList<>(elements);
+                list.sort(Comparator.comparing(key));
+                timer.setElements(list.size());
+                return new ChunkedSection<>(name, layout, list, budget);
+            }
+        ExternalSorter.Buffer buffer = new ExternalSorter.Buffer();
+        ExternalSorter.Runs runs = sorter.sort(name, elements, key, buffer, element -> {
+            buffer.reset();
+            byte[] record = encoder.encodeRecord(layout, element);
+            buffer.write(record, 0, record.length);
+            return 0;
+        });
+        return new SortedSection<>(name, layout, elements.size(), runs, encoder, budget);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> BinaryLayout<T> getLayout(String section) throws IOException {
+        BinaryLayout<?> layout = metadata.getBinaryLayout(section);
+        if (layout == null)
+            throw new IOException("No binary layout for metadata section " + section);
+        return (BinaryLayout<T>) layout;
+    }
+
+    /** Receives the blocks of a section. */
+    private interface BlockAction<T> {
+        void accept(List<T> block) throws IOException;
+    }
+
+    /** A report section, encoded as blocks of elements in report order. */
+    private abstract static class Section<T> implements Closeable {
+        final String name;
+        final BinaryLayout<T> layout;
+        final int size;
+
+        Section(String name, BinaryLayout<T> layout, int size) {
+            this.name = name;
+            this.layout = layout;
+            this.size = size;
+        }
+
+        /**
+         * Visit the blocks of the section; blocks can be visited more
+         * than once. Blocks are only valid during the action.
+         */
+        abstract void forEachBlock(BlockAction<T> action) throws IOException;
+
+        /**
+         * Encode the blocks of the section.
+         * @param out   the output stream or null to only measure the blocks
+         * @return      the byte length of the blocks
+         */
+        long write(BinaryEncoder encoder, OutputStream out) throws IOException {
+            long[] length = { 0 };
+            forEachBlock(block -> length[0] += encoder.writeBlock(layout, block, out));
+            return length[0];
+        }
+
+        @Override
+        public void close() throws IOException {}
+    }
+
+    /** A section whose elements are already in report order. */
+    private static final class ChunkedSection<T> extends Section<T> {
+        private final Collection<T> elements;
+        private final int blockSize;
+
+        @SuppressWarnings("unchecked")
+        ChunkedSection(String name, BinaryLayout<T> layout, Collection<?> elements, int blockSize) {
+            super(name, layout, elements.size());
+            this.elements = (Collection<T>) elements;
+            this.blockSize = blockSize;
+        }
+
+        @Override
+        void forEachBlock(BlockAction<T> action) throws IOException {
+            if (elements.isEmpty())
+                return;
+            if (elements instanceof List && elements.size() <= blockSize) {
+                action.accept((List<T>) elements);
+                return;
+            }
+            List<T> block = new ArrayList<>(Math.min(blockSize, elements.size()));
+            for (T element : elements) {
+                block.add(element);
+                if (block.size() == blockSize) {
+                    action.accept(block);
+                    block.clear();
+                }
+            }
+            if (!block.isEmpty())
+                action.accept(block);
+        }
+    }
+
+    /** A section sorted into runs of binary records, which are decoded in blocks. */
+    private static final class SortedSection<T> extends Section<T> {
+        private final ExternalSorter.Runs runs;
+        private final BinaryEncoder encoder;
+        private final int blockSize;
+
+        SortedSection(String name, BinaryLayout<T> layout, int size, ExternalSorter.Runs runs,
+                      BinaryEncoder encoder, int blockSize) {
+            super(name, layout, size);
+            this.runs = runs;
+            this.encoder = encoder;
+            this.blockSize = blockSize;
+        }
+
+        @Override
+        void forEachBlock(BlockAction<T> action) throws IOException {
+            List<T> block = new ArrayList<>(blockSize);
+            runs.merge((key, record, length) -> {
+                block.add(encoder.decodeRecord(layout, record, length));
+                if (block.size() == blockSize) {
+                    action.accept(block);
+                    block.clear();
+                }
+            });
+            if (!block.isEmpty())
+                action.accept(block);
+        }
+
+        @Override
+        public void close() throws IOException {
+            runs.close();
+        }
+    }
+}
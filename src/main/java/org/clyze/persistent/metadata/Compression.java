@@ -0,0 +1,136 @@
+package org.clyze.persistent.metadata;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The compression of report files. Compressed reports are written and
+ * read as streams, so the uncompressed report is never held in memory.
+ * Readers detect the compression of their input from its first bytes,
+ * so they read all kinds of reports.
+ */
+public enum Compression {
+    /** No compression (the default). */
+    NONE,
+    /** The gzip format (as produced by the "gzip" tool). */
+    GZIP,
+    /** The zlib format (deflate data with a small header and a checksum). */
+    DEFLATE;
+
+    /** The size of the buffers of compressed data. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Returns a stream that compresses its data into an output stream.
+     * Closing the returned stream finishes the compressed data and closes
+     * the output stream.
+     * @param out     the output stream
+     * @param level   the compression level, from 0 (none) to 9 (best),
+     *                or -1 for the default level
+     * @return        the compressing stream (the output stream itself if
+     *                there is no compression)
+     * @throws IOException   on write error
+     */
+    public OutputStream compress(OutputStream out, int level) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new GZIPOutputStream(out, BUFFER_SIZE) {
+                    {
+                        def.setLevel(level);
+                    }
+                };
+            case DEFLATE:
+                Deflater deflater = new Deflater(level);
+                return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            // Not ended by the stream, as it was not created by it.
+                            deflater.end();
+                        }
+                    }
+                };
+            default:
+                return out;
+        }
+    }
+
+    /**
+     * Detect the compression of a stream from its first bytes.
+     * @param b0   the first byte (or -1 if the stream is empty)
+     * @param b1   the second byte (or -1 if the stream is shorter)
+     * @return     the compression of the stream
+     */
+    static Compression detect(int b0, int b1) {
+        if (b0 == 0x1f && b1 == 0x8b)
+            return GZIP;
+        // A zlib header: "deflate" method and a header checksum. JSON and
+        // binary reports cannot start with such bytes.
+        if (b0 >= 0 && b1 >= 0 && (b0 & 0x0f) == 8 && ((b0 << 8) | b1) % 31 == 0)
+            return DEFLATE;
+        return NONE;
+    }
+
+    /**
+     * Returns a stream of the uncompressed contents of a stream, which may
+     * be compressed in any of the supported formats. Closing the returned
+     * stream closes the input stream.
+     * @param in             the input stream
+     * @return               the uncompressed stream
+     * @throws IOException   on read error
+     */
+    public static InputStream decompress(InputStream in) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(in, 2);
+        int b0 = pushback.read();
+        int b1 = b0 < 0 ? -1 : pushback.read();
+        if (b1 >= 0)
+            pushback.unread(b1);
+        if (b0 >= 0)
+            pushback.unread(b0);
+        switch (detect(b0, b1)) {
+            case GZIP:
+                return new GZIPInputStream(pushback, BUFFER_SIZE);
+            case DEFLATE:
+                Inflater inflater = new Inflater();
+                return new InflaterInputStream(pushback, inflater, BUFFER_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            inflater.end();
+                        }
+                    }
+                };
+            default:
+                return pushback;
+        }
+    }
+
+    /**
+     * Returns a stream of the uncompressed contents of a stream that is
+     * owned by the caller (see {@link #decompress(InputStream)}). Closing
+     * the returned stream releases the decompressor but does not close the
+     * input stream.
+     * @param in             the input stream
+     * @return               the uncompressed stream
+     * @throws IOException   on read error
+     */
+    static InputStream decompressBorrowed(InputStream in) throws IOException {
+        return decompress(new FilterInputStream(in) {
+            @Override
+            public void close() {}
+        });
+    }
+}
@@ -1,6 +1,7 @@
 package org.clyze.persistent.metadata;
 
 import java.io.File;
+import java.util.zip.Deflater;
 
 /**
  * The output configuration for the metadata generator.
@@ -11,6 +12,26 @@ public class Configuration {
     public final Printer printer;
     /** The directory to store the json output files */
     private File outDir = null;
+    /** The formatting of the JSON output files. */
+    private OutputStyle outputStyle = OutputStyle.PRETTY;
+    /** If true, reports are sorted and encoded in parallel. */
+    private boolean parallel = false;
+    /** If true, the modifiers of JVM elements are written as single numbers. */
+    private boolean modifiersAsMask = false;
+    /** The maximum number of reports that are merged at once. */
+    private int mergeFanIn = 64;
+    /** The maximum number of elements of a report section sorted in memory (0 for no limit). */
+    private int sortBudget = 0;
+    /** The directory of temporary files (null for the default temporary directory). */
+    private File tempDir = null;
+    /** The compression of report files. */
+    private Compression compression = Compression.NONE;
+    /** The compression level of report files (-1 for the default level). */
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    /** The number of threads that write or read report shards. */
+    private int reportThreads = Runtime.getRuntime().availableProcessors();
+    /** The receiver of reporting metrics. */
+    private MetricsListener metricsListener = MetricsListener.NONE;
 
     /** The encoding of the input source code files; changed by "Main" if "-encoding" argument was provided. */
     public static String encoding = "UTF-8";
@@ -41,4 +62,202 @@ public class Configuration {
         else
             throw new IllegalArgumentException("Output directory is invalid: " + outDir);
     }
+
+    /**
+     * Returns the formatting of the JSON output files.
+     * @return   the output style
+     */
+    public OutputStyle getOutputStyle() {
+        return outputStyle;
+    }
+
+    /**
+     * Sets the formatting of the JSON output files. Compact output is
+     * smaller and faster to write, pretty output is meant for humans.
+     * @param outputStyle   the output style
+     */
+    public void setOutputStyle(OutputStyle outputStyle) {
+        if (outputStyle == null)
+            throw new IllegalArgumentException("Output style cannot be null");
+        this.outputStyle = outputStyle;
+    }
+
+    /**
+     * Returns true if reports are sorted and encoded in parallel.
+     * @return   true for parallel reporting
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Sets if reports are sorted and encoded in parallel (using the
+     * common fork-join pool). Parallel reporting produces the same
+     * output as sequential reporting.
+     * @param parallel   true for parallel reporting
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Returns true if the modifiers of JVM elements are written as single numbers.
+     * @return   true for single-number modifiers
+     */
+    public boolean isModifiersAsMask() {
+        return modifiersAsMask;
+    }
+
+    /**
+     * Sets if the modifiers of JVM elements (e.g. "isStatic", "isPublic")
+     * are written to JSON reports as a single "modifiers" number (see
+     * {@link org.clyze.persistent.model.jvm.JvmModifiers}) instead of one
+     * boolean property each. This makes reports smaller, but consumers
+     * must understand the mask; the readers of this library accept both forms.
+     * @param modifiersAsMask   true for single-number modifiers
+     */
+    public void setModifiersAsMask(boolean modifiersAsMask) {
+        this.modifiersAsMask = modifiersAsMask;
+    }
+
+    /**
+     * Returns the maximum number of reports that are merged at once.
+     * @return   the merge fan-in
+     */
+    public int getMergeFanIn() {
+        return mergeFanIn;
+    }
+
+    /**
+     * Sets the maximum number of reports that are merged at once (see
+     * {@link org.clyze.persistent.metadata.jvm.JvmReportMerger}). Merging
+     * more reports takes several passes over temporary files; memory use
+     * and open files grow with the fan-in.
+     * @param mergeFanIn   the merge fan-in (at least 2)
+     */
+    public void setMergeFanIn(int mergeFanIn) {
+        if (mergeFanIn < 2)
+            throw new IllegalArgumentException("Merge fan-in must be at least 2: " + mergeFanIn);
+        this.mergeFanIn = mergeFanIn;
+    }
+
+    /**
+     * Returns the maximum number of elements of a report section that are
+     * sorted in memory.
+     * @return   the sort budget (0 for no limit)
+     */
+    public int getSortBudget() {
+        return sortBudget;
+    }
+
+    /**
+     * Sets the maximum number of elements of a report section that are
+     * sorted in memory. Larger sections are sorted in runs of this size,
+     * which are serialized to temporary files and then merged into the
+     * report, so reports do not need sorted copies of their sections in
+     * the heap and metadata lists are not sorted in place. The report is
+     * the same as with in-memory sorting. Parallel reporting does not
+     * apply to such reports.
+     * @param sortBudget   the sort budget (0 for no limit)
+     */
+    public void setSortBudget(int sortBudget) {
+        if (sortBudget < 0)
+            throw new IllegalArgumentException("Sort budget cannot be negative: " + sortBudget);
+        this.sortBudget = sortBudget;
+    }
+
+    /**
+     * Returns the directory of temporary files.
+     * @return   the directory or null for the default temporary directory
+     */
+    public File getTempDir() {
+        return tempDir;
+    }
+
+    /**
+     * Sets the directory of temporary files, such as the sorted runs of
+     * large report sections and the intermediate reports of multi-pass
+     * report merges.
+     * @param tempDir   the directory or null for the default temporary directory
+     */
+    public void setTempDir(File tempDir) {
+        if (tempDir != null && !(tempDir.isDirectory() && tempDir.canWrite()))
+            throw new IllegalArgumentException("Temporary directory is invalid: " + tempDir);
+        this.tempDir = tempDir;
+    }
+
+    /**
+     * Returns the receiver of reporting metrics.
+     * @return   the metrics listener ({@link MetricsListener#NONE} if not set)
+     */
+    public MetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * Sets the receiver of reporting metrics (phase times, bytes written,
+     * elements per section and buffer sizes).
+     * @param metricsListener   the metrics listener or null to ignore metrics
+     */
+    public void setMetricsListener(MetricsListener metricsListener) {
+        this.metricsListener = metricsListener == null ? MetricsListener.NONE : metricsListener;
+    }
+
+    /**
+     * Returns the compression of report files.
+     * @return   the compression
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Sets the compression of report files. Reports are compressed while
+     * they are written; readers detect compressed reports automatically.
+     * @param compression   the compression
+     */
+    public void setCompression(Compression compression) {
+        if (compression == null)
+            throw new IllegalArgumentException("Compression cannot be null");
+        this.compression = compression;
+    }
+
+    /**
+     * Returns the compression level of report files.
+     * @return   the level, from 0 (none) to 9 (best), or -1 for the default level
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Sets the compression level of report files.
+     * @param compressionLevel   the level, from 0 (none) to 9 (best), or -1
+     *                           for the default level
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < Deflater.DEFAULT_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("Compression level must be between -1 and 9: " + compressionLevel);
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Returns the number of threads that write or read report shards.
+     * @return   the number of threads
+     */
+    public int getReportThreads() {
+        return reportThreads;
+    }
+
+    /**
+     * Sets the number of threads that write or read report shards (see
+     * {@link org.clyze.persistent.metadata.jvm.ShardedJvmReporter}). The
+     * default is the number of available processors.
+     * @param reportThreads   the number of threads
+     */
+    public void setReportThreads(int reportThreads) {
+        if (reportThreads < 1)
+            throw new IllegalArgumentException("Report threads must be at least 1: " + reportThreads);
+        this.reportThreads = reportThreads;
+    }
 }
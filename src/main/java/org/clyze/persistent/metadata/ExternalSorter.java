@@ -0,0 +1,296 @@
+package org.clyze.persistent.metadata;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+import org.clyze.persistent.model.ItemFormat;
+import org.clyze.persistent.model.ItemImpl;
+
+/**
+ * Writes report sections in sorted order without sorting them in memory.
+ *
+ * A section is split (in collection order) into runs of at most
+ * "budget" elements. Every run is sorted stably and written to a
+ * temporary file as (key, record) records, where a record is the encoded
+ * element: its JSON for JSON reports, produced at the nesting of report
+ * elements so that it is the same as in the report, or its binary record
+ * (see {@link BinaryEncoder#encodeRecord(BinaryLayout, Object)}) for
+ * binary reports. The runs are then merged by key, breaking ties by run
+ * order, so the result is the same as a stable sort of the whole section.
+ * Runs are merged at most "fan-in" at a time; more runs are first merged
+ * into larger runs.
+ */
+final class ExternalSorter {
+
+    private final int budget;
+    private final int fanIn;
+    private final File tempDir;
+    private final OutputStyle style;
+    private final ItemFormat format;
+    private final MetricsListener metrics;
+
+    /**
+     * Create a sorter.
+     * @param configuration   the configuration (sort budget, merge fan-in,
+     *                        temporary directory, output style and modifiers)
+     */
+    ExternalSorter(Configuration configuration) {
+        this.budget = configuration.getSortBudget();
+        this.fanIn = configuration.getMergeFanIn();
+        this.tempDir = configuration.getTempDir();
+        this.style = configuration.getOutputStyle();
+        this.format = configuration.isModifiersAsMask() ? ItemFormat.REPORT_WITH_MODIFIER_MASKS : ItemFormat.REPORT;
+        this.metrics = configuration.getMetricsListener();
+    }
+
+    /**
+     * Write the elements of a section as array values, in report order.
+     * @param gen            the JSON generator, inside the section array
+     * @param name           the section name (for metrics)
+     * @param section        the section
+     * @param <T>            the type of the section elements
+     * @throws IOException   on serialization error or temporary file error
+     */
+    <T extends ItemImpl> void writeSorted(JsonGenerator gen, String name, ReportSection<T> section) throws IOException {
+        Collection<T> elements = section.getElements();
+        Function<? super T, String> key = section.getSortKey();
+        if (key == null || elements.size() <= budget) {
+            Collection<T> sorted = elements;
+            if (key != null)
+                try (PhaseTimer timer = PhaseTimer.start(metrics, MetricsListener.Phase.SORT, name)) {
+                    List<T> list = new ArrayList<>(elements);
+                    list.sort(Comparator.comparing(key));
+                    sorted = list;
+                    timer.setElements(list.size());
+                }
+            try (PhaseTimer timer = PhaseTimer.start(metrics, MetricsListener.Phase.SERIALIZE, name)) {
+                for (T element : sorted)
+                    element.writeJson(gen, format);
+                timer.setElements(sorted.size());
+            }
+            return;
+        }
+        Buffer buffer = new Buffer();
+        Runs runs;
+        try (JsonGenerator capture = JSONUtil.createGenerator(buffer, style)) {
+            // Put the generator at the nesting of report elements, so that
+            // elements are indented as in the report.
+            capture.writeStartObject();
+            capture.writeFieldName("run");
+            capture.writeStartArray();
+            runs = sort(name, elements, key, buffer, element -> {
+                capture.flush();
+                buffer.reset();
+                element.writeJson(capture, format);
+                capture.flush();
+                // Skip the array value separator.
+                int start = 0;
+                while (buffer.bytes()[start] != '{')
+                    start++;
+                return start;
+            });
+        }
+        try (Runs merged = runs;
+             PhaseTimer timer = PhaseTimer.start(metrics, MetricsListener.Phase.SERIALIZE, name)) {
+            merged.merge((k, json, length) -> gen.writeRawValue(new String(json, 0, length, StandardCharsets.UTF_8)));
+            timer.setElements(elements.size());
+        }
+    }
+
+    /**
+     * Sort the elements of a section into runs, merged down to at most
+     * "fan-in" runs. Sorting a chunk counts as sorting and writing its run
+     * as serialization; merging runs counts as sorting.
+     * @param name           the section name (for metrics)
+     * @param elements       the elements, in collection order
+     * @param key            the key that orders the elements
+     * @param buffer         the buffer that receives the encoded elements
+     * @param encoder        the encoder of the elements
+     * @param <T>            the type of the elements
+     * @return               the runs, to be merged and closed by the caller
+     * @throws IOException   on encoding error or temporary file error
+     */
+    <T> Runs sort(String name, Collection<T> elements, Function<? super T, String> key,
+                  Buffer buffer, RecordEncoder<T> encoder) throws IOException {
+        Comparator<T> order = Comparator.comparing(key);
+        Runs runs = new Runs();
+        boolean sorted = false;
+        try {
+            Iterator<T> iter = elements.iterator();
+            List<T> chunk = new ArrayList<>(budget);
+            while (iter.hasNext()) {
+                chunk.clear();
+                while (iter.hasNext() && chunk.size() < budget)
+                    chunk.add(iter.next());
+                try (PhaseTimer timer = PhaseTimer.start(metrics, MetricsListener.Phase.SORT, name)) {
+                    chunk.sort(order);
+                    timer.setElements(chunk.size());
+                }
+                try (PhaseTimer timer = PhaseTimer.start(metrics, MetricsListener.Phase.SERIALIZE, name)) {
+                    runs.paths.add(writeRun(chunk, key, buffer, encoder));
+                    timer.setElements(chunk.size());
+                }
+                metrics.bufferSize(name + " run", buffer.bytes().length);
+            }
+            while (runs.paths.size() > fanIn)
+                try (PhaseTimer timer = PhaseTimer.start(metrics, MetricsListener.Phase.SORT, name)) {
+                    List<Path> merged = new ArrayList<>();
+                    for (int i = 0; i < runs.paths.size(); i += fanIn) {
+                        List<Path> batch = runs.paths.subList(i, Math.min(i + fanIn, runs.paths.size()));
+                        Path run = createRunFile();
+                        merged.add(run);
+                        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+                            merge(batch, (k, record, length) -> writeRecord(out, k, record, 0, length));
+                        }
+                    }
+                    List<Path> previous = runs.paths;
+                    runs.paths = merged;
+                    deleteAll(previous);
+                    timer.setElements(elements.size());
+                }
+            sorted = true;
+            return runs;
+        } finally {
+            if (!sorted)
+                runs.close();
+        }
+    }
+
+    private Path createRunFile() throws IOException {
+        return tempDir == null ? Files.createTempFile("metadata-run", ".bin")
+                               : Files.createTempFile(tempDir.toPath(), "metadata-run", ".bin");
+    }
+
+    private static void deleteAll(List<Path> runs) throws IOException {
+        for (Path run : runs)
+            Files.deleteIfExists(run);
+    }
+
+    /** A byte buffer that exposes its contents without copying. */
+    static final class Buffer extends ByteArrayOutputStream {
+        byte[] bytes() {
+            return buf;
+        }
+    }
+
+    /** Encodes the elements of runs. */
+    interface RecordEncoder<T> {
+        /**
+         * Encode an element into the buffer given to {@link #sort}.
+         * @return   the offset of the record in the buffer (the record
+         *           extends to the end of the buffer)
+         */
+        int encode(T element) throws IOException;
+    }
+
+    /** Receives the records of merged runs. */
+    interface RecordSink {
+        void accept(String key, byte[] record, int length) throws IOException;
+    }
+
+    /** The sorted runs of a section. Closing the runs deletes their files. */
+    static final class Runs implements Closeable {
+        private List<Path> paths = new ArrayList<>();
+
+        /**
+         * Merge the runs, in report order. Runs can be merged more than once.
+         * @param sink           the receiver of the records
+         * @throws IOException   on read error or sink error
+         */
+        void merge(RecordSink sink) throws IOException {
+            ExternalSorter.merge(paths, sink);
+        }
+
+        @Override
+        public void close() throws IOException {
+            deleteAll(paths);
+        }
+    }
+
+    private <T> Path writeRun(List<T> chunk, Function<? super T, String> key, Buffer buffer, RecordEncoder<T> encoder) throws IOException {
+        Path run = createRunFile();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+            for (T element : chunk) {
+                int start = encoder.encode(element);
+                writeRecord(out, key.apply(element), buffer.bytes(), start, buffer.size() - start);
+            }
+        }
+        return run;
+    }
+
+    private static void writeRecord(DataOutputStream out, String key, byte[] record, int offset, int length) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(keyBytes.length);
+        out.write(keyBytes);
+        out.writeInt(length);
+        out.write(record, offset, length);
+    }
+
+    /** A reader of the records of a run. */
+    private static final class RunReader implements Closeable {
+        private final DataInputStream in;
+        /** The index of the run, to break ties between runs. */
+        final int index;
+        String key;
+        byte[] record = new byte[256];
+        int length;
+
+        RunReader(Path run, int index) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run)));
+            this.index = index;
+        }
+
+        /**
+         * Read the next record.
+         * @return   false at the end of the run
+         */
+        boolean next() throws IOException {
+            int keyLength;
+            try {
+                keyLength = in.readInt();
+            } catch (EOFException ex) {
+                return false;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            in.readFully(keyBytes);
+            key = new String(keyBytes, StandardCharsets.UTF_8);
+            length = in.readInt();
+            if (record.length < length)
+                record = new byte[Math.max(length, 2 * record.length)];
+            in.readFully(record, 0, length);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static void merge(List<Path> runs, RecordSink sink) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(runs.size(),
+                Comparator.<RunReader, String>comparing(r -> r.key).thenComparingInt(r -> r.index));
+        List<RunReader> readers = new ArrayList<>(runs.size());
+        try {
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run, readers.size());
+                readers.add(reader);
+                if (reader.next())
+                    queue.add(reader);
+            }
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                sink.accept(reader.key, reader.record, reader.length);
+                if (reader.next())
+                    queue.add(reader);
+            }
+        } finally {
+            for (RunReader reader : readers)
+                reader.close();
+        }
+    }
+}
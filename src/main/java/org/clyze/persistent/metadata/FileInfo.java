@@ -2,6 +2,7 @@ package org.clyze.persistent.metadata;
 
 import static org.apache.commons.io.FilenameUtils.getBaseName;
 import org.clyze.persistent.metadata.jvm.JvmMetadata;
+import org.clyze.persistent.model.StringPool;
 
 /**
  * This class holds per-file information and offers functions relevant to files.
@@ -33,7 +34,7 @@ public class FileInfo {
      */
     public FileInfo(String packageName, String inputName, String inputFilePath, String source, JvmMetadata elements) {
         this.inputFilePath = inputFilePath;
-        this.sourceFileName = packageName.replaceAll("\\.", "/") + inputName;
+        this.sourceFileName = StringPool.canonical(packageName.replaceAll("\\.", "/") + inputName);
         this.outputFilePath = packageName.replaceAll("/", ".") + getBaseName(inputFilePath) + ".json";
         this.elements = elements;
         this.source = source;
@@ -1,8 +1,7 @@
 package org.clyze.persistent.metadata;
 
-import java.io.File;
-import java.io.IOException;
-import java.io.PrintWriter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.*;
 import java.util.*;
 
 /**
@@ -13,7 +12,7 @@ public class FileReporter {
     /** The output configuration to use. */
     protected final Configuration configuration;
     /** The metadata to be serialized. */
-    private final Metadata metadata;
+    protected final Metadata metadata;
 
     /**
      * Creates a new file reporter to use for generating metadata.
@@ -34,13 +33,23 @@ public class FileReporter {
 
 
     protected Map<String, List<?>> createJsonReport() {
+        MetricsListener metrics = configuration.getMetricsListener();
         Map<String, List<?>> jsonReport = new HashMap<>();
-        metadata.populateJsonReport(jsonReport);
+        try (PhaseTimer timer = PhaseTimer.start(metrics, MetricsListener.Phase.SORT, null)) {
+            metadata.populateJsonReport(jsonReport, configuration.isParallel());
+            int elements = 0;
+            for (Map.Entry<String, List<?>> section : jsonReport.entrySet()) {
+                metrics.sectionSize(section.getKey(), section.getValue().size());
+                elements += section.getValue().size();
+            }
+            timer.setElements(elements);
+        }
         return jsonReport;
     }
 
     /**
-     * Writes the JSON metadata to the filesystem.
+     * Writes the JSON metadata to the filesystem, compressed as set in the
+     * configuration.
      * @param outputFilePath      the output report file path
      */
     public void createReportFile(String outputFilePath) {
@@ -49,12 +58,95 @@ public class FileReporter {
                 ? new File(outputFilePath)
                 : new File(outDir, outputFilePath)
         );
-        try (PrintWriter report = new PrintWriter(reportFile, "UTF-8")) {
+        try (OutputStream report = configuration.getCompression().compress(new BufferedOutputStream(new FileOutputStream(reportFile)),
+                                                                           configuration.getCompressionLevel())) {
             configuration.printer.println("Report: " + reportFile.getCanonicalPath());
-            Map<String, List<?>> jsonReport = createJsonReport();
-            report.write(JSONUtil.getObjectWriter().writeValueAsString(jsonReport));
+            writeReport(report);
         } catch(IOException e) {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Streams the JSON metadata to an output stream. Elements are written
+     * one by one, so memory use does not depend on the size of the report.
+     * The stream is not closed by this method.
+     * @param out            the output stream to use
+     * @throws IOException   on serialization error
+     */
+    public void writeReport(OutputStream out) throws IOException {
+        MetricsListener metrics = configuration.getMetricsListener();
+        ByteCounter counter = new ByteCounter(out);
+        try (PhaseTimer timer = PhaseTimer.start(metrics, MetricsListener.Phase.WRITE, null)) {
+            writeReportContents(counter);
+            timer.setBytes(counter.count);
+        }
+        metrics.bytesWritten(counter.count);
+    }
+
+    /**
+     * Streams the report contents to an output stream, for {@link #writeReport(OutputStream)},
+     * which reports the timing and size of the whole report.
+     * @param out            the output stream to use (not closed by this method)
+     * @throws IOException   on serialization error
+     */
+    protected void writeReportContents(OutputStream out) throws IOException {
+        MetricsListener metrics = configuration.getMetricsListener();
+        if (configuration.getSortBudget() > 0)
+            writeExternallySortedReport(out);
+        else {
+            Map<String, List<?>> jsonReport = createJsonReport();
+            if (configuration.isParallel())
+                JSONUtil.writeReportInParallel(out, jsonReport, configuration.getOutputStyle(), configuration.isModifiersAsMask(), metrics);
+            else
+                try (JsonGenerator gen = JSONUtil.createGenerator(out, configuration.getOutputStyle())) {
+                    JSONUtil.writeReport(gen, jsonReport, configuration.isModifiersAsMask(), metrics);
+                }
+        }
+    }
+
+    /**
+     * Streams the JSON metadata to an output stream, sorting large sections
+     * outside the heap (see {@link Configuration#setSortBudget(int)}).
+     * @param out            the output stream to use
+     * @throws IOException   on serialization error or temporary file error
+     */
+    private void writeExternallySortedReport(OutputStream out) throws IOException {
+        // Same map type and insertion order as createJsonReport(), for the same section order.
+        Map<String, ReportSection<?>> sections = new HashMap<>();
+        metadata.describeReportSections(sections);
+        ExternalSorter sorter = new ExternalSorter(configuration);
+        try (JsonGenerator gen = JSONUtil.createGenerator(out, configuration.getOutputStyle())) {
+            gen.writeStartObject();
+            for (Map.Entry<String, ReportSection<?>> section : sections.entrySet()) {
+                configuration.getMetricsListener().sectionSize(section.getKey(), section.getValue().getElements().size());
+                gen.writeFieldName(section.getKey());
+                gen.writeStartArray();
+                sorter.writeSorted(gen, section.getKey(), section.getValue());
+                gen.writeEndArray();
+            }
+            gen.writeEndObject();
+        }
+    }
+
+    /** An output stream that counts the bytes written to another stream. */
+    private static final class ByteCounter extends FilterOutputStream {
+        long count = 0;
+
+        ByteCounter(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
 }
@@ -0,0 +1,180 @@
+package org.clyze.persistent.metadata;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * An immutable relation over dense int ids (e.g. the ids of a symbol
+ * dictionary), in compressed sparse row form: the targets of all sources
+ * are stored in a single array, sorted and without duplicates per source,
+ * and an offsets array gives the range of every source. The relation
+ * takes one int per pair and one int per source.
+ *
+ * Relations are built with a {@link Builder}.
+ */
+public final class IntRelation {
+
+    private static final int[] NO_TARGETS = new int[0];
+
+    /** The start of the targets of every source; has one more entry for the end. */
+    private final int[] offsets;
+    /** The targets of all sources. */
+    private final int[] targets;
+
+    private IntRelation(int[] offsets, int[] targets) {
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    /**
+     * Returns the number of sources (the ids are 0 to sources - 1).
+     * @return   the number of sources
+     */
+    public int sources() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Returns the number of pairs of the relation.
+     * @return   the number of pairs
+     */
+    public int size() {
+        return targets.length;
+    }
+
+    /**
+     * Returns the number of targets of a source.
+     * @param source   the source id
+     * @return         the number of targets (0 for unknown sources)
+     */
+    public int degree(int source) {
+        return source >= 0 && source < sources() ? offsets[source + 1] - offsets[source] : 0;
+    }
+
+    /**
+     * Returns a target of a source.
+     * @param source   the source id
+     * @param index    the index of the target, less than {@link #degree(int)}
+     * @return         the target id
+     */
+    public int target(int source, int index) {
+        if (index < 0 || index >= degree(source))
+            throw new IndexOutOfBoundsException("Target " + index + " of " + source);
+        return targets[offsets[source] + index];
+    }
+
+    /**
+     * Returns the targets of a source.
+     * @param source   the source id
+     * @return         a new array of the target ids, in ascending order
+     */
+    public int[] targets(int source) {
+        int degree = degree(source);
+        return degree == 0 ? NO_TARGETS : Arrays.copyOfRange(targets, offsets[source], offsets[source] + degree);
+    }
+
+    /**
+     * Visit the targets of a source, in ascending order.
+     * @param source   the source id
+     * @param action   the action to call with every target id
+     */
+    public void forEachTarget(int source, IntConsumer action) {
+        if (degree(source) == 0)
+            return;
+        for (int i = offsets[source], end = offsets[source + 1]; i < end; i++)
+            action.accept(targets[i]);
+    }
+
+    /**
+     * Returns true if the relation contains a pair.
+     * @param source   the source id
+     * @param target   the target id
+     * @return         true if the source is related to the target
+     */
+    public boolean contains(int source, int target) {
+        return degree(source) > 0 && Arrays.binarySearch(targets, offsets[source], offsets[source + 1], target) >= 0;
+    }
+
+    /**
+     * Returns the inverse relation, from targets to sources.
+     * @param sources   the number of sources of the inverse relation (at
+     *                  least the largest target id plus one)
+     * @return          the inverse relation
+     */
+    public IntRelation inverse(int sources) {
+        Builder builder = new Builder(sources);
+        for (int source = 0; source < sources(); source++)
+            for (int i = offsets[source], end = offsets[source + 1]; i < end; i++)
+                builder.add(targets[i], source);
+        return builder.build();
+    }
+
+    /**
+     * Collects the pairs of a relation. Pairs may be added in any order
+     * and more than once.
+     */
+    public static final class Builder {
+        private final int sources;
+        private int[] pairSources = new int[16];
+        private int[] pairTargets = new int[16];
+        private int size = 0;
+
+        /**
+         * Create a builder.
+         * @param sources   the number of sources (ids are 0 to sources - 1)
+         */
+        public Builder(int sources) {
+            if (sources < 0)
+                throw new IllegalArgumentException("Number of sources cannot be negative: " + sources);
+            this.sources = sources;
+        }
+
+        /**
+         * Add a pair.
+         * @param source   the source id
+         * @param target   the target id (non-negative)
+         * @return         this builder
+         */
+        public Builder add(int source, int target) {
+            if (source < 0 || source >= sources || target < 0)
+                throw new IllegalArgumentException("Invalid pair: " + source + " -> " + target);
+            if (size == pairSources.length) {
+                pairSources = Arrays.copyOf(pairSources, 2 * size);
+                pairTargets = Arrays.copyOf(pairTargets, 2 * size);
+            }
+            pairSources[size] = source;
+            pairTargets[size] = target;
+            size++;
+            return this;
+        }
+
+        /**
+         * Build the relation.
+         * @return   the relation
+         */
+        public IntRelation build() {
+            // Counting sort of the pairs by source.
+            int[] offsets = new int[sources + 1];
+            for (int i = 0; i < size; i++)
+                offsets[pairSources[i] + 1]++;
+            for (int s = 0; s < sources; s++)
+                offsets[s + 1] += offsets[s];
+            int[] targets = new int[size];
+            int[] next = Arrays.copyOf(offsets, sources);
+            for (int i = 0; i < size; i++)
+                targets[next[pairSources[i]]++] = pairTargets[i];
+            // Sort the targets of every source and drop duplicates in place.
+            int end = 0;
+            for (int s = 0; s < sources; s++) {
+                int from = offsets[s], to = offsets[s + 1];
+                offsets[s] = end;
+                Arrays.sort(targets, from, to);
+                for (int i = from; i < to; i++)
+                    if (i == from || targets[i] != targets[i - 1])
+                        targets[end++] = targets[i];
+            }
+            offsets[sources] = end;
+            return new IntRelation(offsets, end == targets.length ? targets : Arrays.copyOf(targets, end));
+        }
+    }
+}
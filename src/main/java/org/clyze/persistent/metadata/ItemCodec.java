@@ -0,0 +1,91 @@
+package org.clyze.persistent.metadata;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.Deserializers;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import org.clyze.persistent.model.ItemFormat;
+import org.clyze.persistent.model.ItemImpl;
+
+/**
+ * JSON (de)serialization of model items through their own codecs
+ * ({@link ItemImpl#writeJson(JsonGenerator, ItemFormat)} and
+ * {@link ItemImpl#readJson(JsonParser, ItemFormat)}), in the report format.
+ * Items are thus written and read field by field, without the reflective
+ * property access of the default bean codecs, wherever the shared mapper
+ * is used. Items without a no-arg constructor are deserialized by the
+ * default bean codecs.
+ */
+final class ItemCodec {
+
+    private ItemCodec() {}
+
+    /**
+     * Returns a Jackson module that registers the item codecs.
+     * @return   the module
+     */
+    static SimpleModule module() {
+        SimpleModule module = new SimpleModule("ItemCodec") {
+            @Override
+            public void setupModule(SetupContext context) {
+                super.setupModule(context);
+                context.addDeserializers(new Deserializers.Base() {
+                    @Override
+                    public JsonDeserializer<?> findBeanDeserializer(JavaType type, DeserializationConfig config,
+                                                                    BeanDescription beanDesc) {
+                        return deserializerFor(type.getRawClass());
+                    }
+                });
+            }
+        };
+        module.addSerializer(ItemImpl.class, new Serializer());
+        return module;
+    }
+
+    private static JsonDeserializer<?> deserializerFor(Class<?> c) {
+        if (!ItemImpl.class.isAssignableFrom(c) || Modifier.isAbstract(c.getModifiers()))
+            return null;
+        try {
+            return new Deserializer(c.asSubclass(ItemImpl.class).getConstructor());
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    private static final class Serializer extends JsonSerializer<ItemImpl> {
+        @Override
+        public void serialize(ItemImpl item, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            item.writeJson(gen, ItemFormat.REPORT);
+        }
+    }
+
+    private static final class Deserializer extends JsonDeserializer<ItemImpl> {
+        private final Constructor<? extends ItemImpl> constructor;
+
+        Deserializer(Constructor<? extends ItemImpl> constructor) {
+            this.constructor = constructor;
+        }
+
+        @Override
+        public ItemImpl deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            ItemImpl item;
+            try {
+                item = constructor.newInstance();
+            } catch (ReflectiveOperationException ex) {
+                throw new IOException("Cannot create " + constructor.getDeclaringClass().getName(), ex);
+            }
+            item.readJson(p, ItemFormat.REPORT);
+            return item;
+        }
+    }
+}
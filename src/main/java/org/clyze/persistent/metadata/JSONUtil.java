@@ -2,26 +2,222 @@ package org.clyze.persistent.metadata;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
+import org.clyze.persistent.model.ItemFormat;
+import org.clyze.persistent.model.ItemImpl;
 
-/** A collection of JSON utility methods. */
+/**
+ * A collection of JSON utility methods. The Jackson objects used are
+ * created once (lazily) and shared, as they are thread-safe.
+ */
 public class JSONUtil {
+
+    /** Lazy holder of the shared Jackson objects. */
+    private static final class Shared {
+        static final ObjectMapper MAPPER = (new ObjectMapper())
+                .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
+                .disable(MapperFeature.AUTO_DETECT_IS_GETTERS)
+                .disable(MapperFeature.AUTO_DETECT_GETTERS)
+                .disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .registerModule(PositionCodec.module())
+                .registerModule(ItemCodec.module());
+        static final ObjectWriter PRETTY_WRITER = MAPPER.writerWithDefaultPrettyPrinter();
+        static final ObjectWriter COMPACT_WRITER = MAPPER.writer();
+        static final ObjectReader MAP_READER = MAPPER.readerFor(Map.class);
+    }
+
     /**
      * Get a JSON serializer object. Use this method for consistency in JSON output.
      * @return   an object writer to use for serializing Java objects
      */
     public static ObjectWriter getObjectWriter() {
-        return (new ObjectMapper())
-                .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
-                .disable(MapperFeature.AUTO_DETECT_IS_GETTERS)
-                .disable(MapperFeature.AUTO_DETECT_GETTERS).writerWithDefaultPrettyPrinter();
+        return getObjectWriter(OutputStyle.PRETTY);
+    }
+
+    /**
+     * Get a JSON serializer object for a given output style.
+     * @param style   the output style
+     * @return        an object writer to use for serializing Java objects
+     */
+    public static ObjectWriter getObjectWriter(OutputStyle style) {
+        return style == OutputStyle.COMPACT ? Shared.COMPACT_WRITER : Shared.PRETTY_WRITER;
+    }
+
+    /**
+     * Get the shared JSON mapper that binds report elements to model objects.
+     * Unknown properties are ignored, so that reports produced by newer
+     * versions can still be read. The mapper is shared and must not be
+     * reconfigured.
+     * @return   an object mapper to use for (de)serializing model objects
+     */
+    public static ObjectMapper getObjectMapper() {
+        return Shared.MAPPER;
+    }
+
+    /**
+     * Create a JSON generator that writes to an output stream with the same
+     * formatting as {@link #getObjectWriter()}. The stream is not closed
+     * when the generator is closed.
+     * @param out   the output stream
+     * @return      the JSON generator
+     * @throws IOException on generator creation error
+     */
+    public static JsonGenerator createGenerator(OutputStream out) throws IOException {
+        return createGenerator(out, OutputStyle.PRETTY);
+    }
+
+    /**
+     * Create a JSON generator that writes to an output stream. The stream
+     * is not closed when the generator is closed.
+     * @param out     the output stream
+     * @param style   the output style
+     * @return        the JSON generator
+     * @throws IOException on generator creation error
+     */
+    public static JsonGenerator createGenerator(OutputStream out, OutputStyle style) throws IOException {
+        JsonGenerator gen = Shared.MAPPER.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return style == OutputStyle.COMPACT ? gen : gen.useDefaultPrettyPrinter();
+    }
+
+    /**
+     * Stream a metadata report as a JSON object. Every section becomes a
+     * JSON array whose elements are serialized one by one, so that the
+     * report is never materialized as a string. Model items are written
+     * directly by their codecs (see {@link ItemImpl#writeJson(JsonGenerator, ItemFormat)}).
+     * @param gen      the JSON generator to use
+     * @param report   the report (a map from section names to section elements)
+     * @throws IOException on serialization error
+     */
+    public static void writeReport(JsonGenerator gen, Map<String, ? extends Collection<?>> report) throws IOException {
+        writeReport(gen, report, false);
+    }
+
+    /**
+     * Stream a metadata report as a JSON object (see {@link #writeReport(JsonGenerator, Map)}).
+     * @param gen               the JSON generator to use
+     * @param report            the report (a map from section names to section elements)
+     * @param modifiersAsMask   if true, the modifiers of JVM elements are written as
+     *                          a single "modifiers" number instead of one flag each
+     * @throws IOException on serialization error
+     */
+    public static void writeReport(JsonGenerator gen, Map<String, ? extends Collection<?>> report,
+                                   boolean modifiersAsMask) throws IOException {
+        writeReport(gen, report, modifiersAsMask, MetricsListener.NONE);
+    }
+
+    static void writeReport(JsonGenerator gen, Map<String, ? extends Collection<?>> report,
+                            boolean modifiersAsMask, MetricsListener metrics) throws IOException {
+        ItemFormat format = modifiersAsMask ? ItemFormat.REPORT_WITH_MODIFIER_MASKS : ItemFormat.REPORT;
+        gen.writeStartObject();
+        for (Map.Entry<String, ? extends Collection<?>> section : report.entrySet())
+            try (PhaseTimer timer = PhaseTimer.start(metrics, MetricsListener.Phase.SERIALIZE, section.getKey())) {
+                gen.writeFieldName(section.getKey());
+                gen.writeStartArray();
+                for (Object element : section.getValue())
+                    if (element instanceof ItemImpl)
+                        ((ItemImpl) element).writeJson(gen, format);
+                    else
+                        Shared.MAPPER.writeValue(gen, element);
+                gen.writeEndArray();
+                timer.setElements(section.getValue().size());
+            }
+        gen.writeEndObject();
+    }
+
+    /**
+     * Write a metadata report as a JSON object, encoding its sections in
+     * parallel. Every section is encoded into a separate buffer and the
+     * buffers are then joined in report order, so the output is the same
+     * as that of {@link #writeReport(JsonGenerator, Map)}.
+     * @param out      the output stream (not closed by this method)
+     * @param report   the report (a map from section names to section elements)
+     * @param style    the output style
+     * @throws IOException on serialization error
+     */
+    public static void writeReportInParallel(OutputStream out, Map<String, ? extends Collection<?>> report,
+                                             OutputStyle style) throws IOException {
+        writeReportInParallel(out, report, style, false);
+    }
+
+    /**
+     * Write a metadata report as a JSON object, encoding its sections in
+     * parallel (see {@link #writeReportInParallel(OutputStream, Map, OutputStyle)}).
+     * @param out               the output stream (not closed by this method)
+     * @param report            the report (a map from section names to section elements)
+     * @param style             the output style
+     * @param modifiersAsMask   if true, the modifiers of JVM elements are written as
+     *                          a single "modifiers" number instead of one flag each
+     * @throws IOException on serialization error
+     */
+    public static void writeReportInParallel(OutputStream out, Map<String, ? extends Collection<?>> report,
+                                             OutputStyle style, boolean modifiersAsMask) throws IOException {
+        writeReportInParallel(out, report, style, modifiersAsMask, MetricsListener.NONE);
+    }
+
+    static void writeReportInParallel(OutputStream out, Map<String, ? extends Collection<?>> report,
+                                      OutputStyle style, boolean modifiersAsMask, MetricsListener metrics) throws IOException {
+        List<? extends Map.Entry<String, ? extends Collection<?>>> sections = new ArrayList<>(report.entrySet());
+        if (sections.size() < 2) {
+            try (JsonGenerator gen = createGenerator(out, style)) {
+                writeReport(gen, report, modifiersAsMask, metrics);
+            }
+            return;
+        }
+        byte[][] encoded = new byte[sections.size()][];
+        try {
+            IntStream.range(0, encoded.length).parallel().forEach(i -> {
+                Map.Entry<String, ? extends Collection<?>> section = sections.get(i);
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                try (JsonGenerator gen = createGenerator(buffer, style)) {
+                    writeReport(gen, Collections.singletonMap(section.getKey(), section.getValue()), modifiersAsMask, metrics);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                encoded[i] = buffer.toByteArray();
+                metrics.bufferSize(section.getKey(), encoded[i].length);
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        // Every buffer holds a single-field object: keep the field (and, for
+        // the last section, the closing brace) and join fields with commas.
+        out.write('{');
+        for (int i = 0; i < encoded.length; i++) {
+            byte[] bytes = encoded[i];
+            int end = bytes.length - 1;
+            while (bytes[end] != '}')
+                end--;
+            if (i < encoded.length - 1) {
+                while (Character.isWhitespace(bytes[end - 1]))
+                    end--;
+                out.write(bytes, 1, end - 1);
+                out.write(',');
+            } else
+                out.write(bytes, 1, end);
+        }
     }
 
     /**
@@ -31,16 +227,19 @@ public class JSONUtil {
      * @throws JsonProcessingException on data deserialization error
      */
     public static Map<String, Object> toMap(String json) throws JsonProcessingException {
-        return (Map<String, Object>)new ObjectMapper().readValue(json, Map.class);
+        return Shared.MAP_READER.readValue(json);
     }
 
     /**
-     * Convert JSON file to a Java Map.
+     * Convert JSON file to a Java Map. The file is parsed as a stream and
+     * may be compressed (see {@link Compression}).
      * @param path   the JSON file path
      * @return       the Map object
      * @throws IOException on data deserialization error
      */
     public static Map<String, Object> toMap(Path path) throws IOException {
-        return JSONUtil.toMap(new String(Files.readAllBytes(path)));
+        try (InputStream in = Compression.decompress(Files.newInputStream(path))) {
+            return Shared.MAP_READER.readValue(in);
+        }
     }
 }
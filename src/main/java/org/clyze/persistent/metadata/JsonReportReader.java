@@ -0,0 +1,184 @@
+package org.clyze.persistent.metadata;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.function.Supplier;
+import org.clyze.persistent.model.ItemFormat;
+import org.clyze.persistent.model.ItemImpl;
+
+/**
+ * A pull reader for JSON metadata reports, as written by {@link FileReporter}.
+ * The report is read section by section and every section element is bound
+ * directly to its model class, so no intermediate map tree is built.
+ */
+public class JsonReportReader implements Closeable {
+
+    /** The uncompressed input. */
+    private final InputStream input;
+    /** The underlying token stream. */
+    private final JsonParser parser;
+    /** The mapper used to bind elements to model objects. */
+    private final ObjectMapper mapper;
+    /** True if the parser is positioned inside a section array. */
+    private boolean inSection = false;
+    /** The number of elements read from the current section. */
+    private int sectionElements = 0;
+
+    /**
+     * Create a report reader. The input stream is not closed when the
+     * reader is closed. Compressed reports (see {@link Compression}) are
+     * detected and decompressed while they are read.
+     * @param in             the input stream containing the JSON report
+     * @throws IOException   if the input does not start with a JSON object
+     */
+    public JsonReportReader(InputStream in) throws IOException {
+        this.mapper = JSONUtil.getObjectMapper();
+        this.input = Compression.decompressBorrowed(in);
+        this.parser = mapper.getFactory().createParser(input);
+        this.parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        expect(parser.nextToken(), JsonToken.START_OBJECT);
+    }
+
+    /**
+     * Advance to the next report section. Any elements of the current
+     * section that have not been read are skipped.
+     * @return               the name of the section or null if no more sections exist
+     * @throws IOException   on parse error
+     */
+    public String nextSection() throws IOException {
+        if (inSection)
+            skipSection();
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.END_OBJECT || token == null)
+            return null;
+        expect(token, JsonToken.FIELD_NAME);
+        String section = parser.currentName();
+        expect(parser.nextToken(), JsonToken.START_ARRAY);
+        inSection = true;
+        sectionElements = 0;
+        return section;
+    }
+
+    /**
+     * Read the next element of the current section.
+     * @param type           the model class of the section elements
+     * @param <T>            the type of the element
+     * @return               the element or null if the section has no more elements
+     * @throws IOException   on parse error
+     */
+    public <T> T nextElement(Class<T> type) throws IOException {
+        if (!inSection)
+            return null;
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.END_ARRAY) {
+            inSection = false;
+            return null;
+        }
+        expect(token, JsonToken.START_OBJECT);
+        sectionElements++;
+        return mapper.readValue(parser, type);
+    }
+
+    /**
+     * Read the next element of the current section into a new model item.
+     * The item is populated by its own codec (see
+     * {@link ItemImpl#readJson(JsonParser, ItemFormat)}), without any
+     * reflection or mapper lookup.
+     * @param factory        the factory of the section elements (e.g. {@code Usage::new})
+     * @param <T>            the type of the element
+     * @return               the element or null if the section has no more elements
+     * @throws IOException   on parse error
+     */
+    public <T extends ItemImpl> T nextElement(Supplier<T> factory) throws IOException {
+        if (!inSection)
+            return null;
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.END_ARRAY) {
+            inSection = false;
+            return null;
+        }
+        expect(token, JsonToken.START_OBJECT);
+        sectionElements++;
+        T element = factory.get();
+        element.readJson(parser, ItemFormat.REPORT);
+        return element;
+    }
+
+    /**
+     * Read all remaining elements of the current section.
+     * @param type           the model class of the section elements
+     * @param target         the collection that will receive the elements
+     * @param <T>            the type of the elements
+     * @throws IOException   on parse error
+     */
+    public <T> void readElements(Class<T> type, Collection<? super T> target) throws IOException {
+        T element;
+        while ((element = nextElement(type)) != null)
+            target.add(element);
+    }
+
+    /**
+     * Read all remaining elements of the current section into new model items.
+     * @param factory        the factory of the section elements (e.g. {@code Usage::new})
+     * @param target         the collection that will receive the elements
+     * @param <T>            the type of the elements
+     * @throws IOException   on parse error
+     */
+    public <T extends ItemImpl> void readElements(Supplier<T> factory, Collection<? super T> target) throws IOException {
+        T element;
+        while ((element = nextElement(factory)) != null)
+            target.add(element);
+    }
+
+    /**
+     * Skip the remaining elements of the current section.
+     * @throws IOException   on parse error
+     */
+    public void skipSection() throws IOException {
+        if (!inSection)
+            return;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null)
+                throw new IOException("Malformed metadata report: unterminated section");
+            parser.skipChildren();
+        }
+        inSection = false;
+    }
+
+    /**
+     * Returns the number of elements read from the current (or last) section.
+     * Skipped elements are not counted.
+     * @return   the number of elements
+     */
+    public int getSectionElements() {
+        return sectionElements;
+    }
+
+    /**
+     * Returns the number of bytes of the (uncompressed) input consumed so far.
+     * @return   the number of bytes
+     */
+    public long getBytesRead() {
+        return parser.currentLocation().getByteOffset();
+    }
+
+    private void expect(JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected)
+            throw new IOException("Malformed metadata report: expected " + expected + " but found " + actual + " at " + parser.currentLocation());
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            parser.close();
+        } finally {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package org.clyze.persistent.metadata;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A memory-mapped, random-access view of a file written by
+ * {@link MappedMetadataWriter}. Opening a file only reads its directory;
+ * records and strings are decoded when a lookup touches them, so the
+ * memory used depends on the working set and not on the file size.
+ *
+ * Instances are safe for concurrent lookups.
+ */
+public class MappedMetadataFile implements Closeable {
+
+    /** Files are mapped in segments of this size (a power of two). */
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    /** The file channel (kept open while the file is in use). */
+    private final FileChannel channel;
+    /** The mapped segments of the file. */
+    private final MappedByteBuffer[] segments;
+    /** The kind of metadata stored. */
+    private final String kind;
+    /** The number of strings in the string table. */
+    private final int stringCount;
+    /** The position of the string offsets array. */
+    private final long stringOffsetsPos;
+    /** The sections, by name. */
+    private final Map<String, Section> sections = new HashMap<>();
+
+    /**
+     * Open a random-access metadata file.
+     * @param path           the file
+     * @throws IOException   on read error or if the file is not in the expected format
+     */
+    public MappedMetadataFile(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            int count = (int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS);
+            this.segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, 1L << SEGMENT_BITS));
+            }
+            byte[] magic = MappedMetadataWriter.MAGIC;
+            long trailer = size - 8 - magic.length;
+            if (trailer < 0 || !hasMagic(0) || !hasMagic(size - magic.length))
+                throw new IOException("Not a random-access metadata file: " + path);
+            Reader header = new Reader(magic.length);
+            int version = header.readInt();
+            if (version != MappedMetadataWriter.VERSION)
+                throw new IOException("Unsupported random-access metadata version: " + version);
+            this.kind = header.readUTF();
+
+            Reader dir = new Reader(getLong(trailer));
+            this.stringCount = dir.readInt();
+            this.stringOffsetsPos = dir.readLong();
+            int sectionCount = dir.readInt();
+            for (int i = 0; i < sectionCount; i++) {
+                Section section = new Section(dir.readUTF(), dir.readInt(), dir.readLong(), dir.readLong());
+                int indexCount = dir.readInt();
+                for (int j = 0; j < indexCount; j++)
+                    section.secondary.put(dir.readUTF(), dir.readLong());
+                sections.put(section.name, section);
+            }
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the kind of metadata stored (e.g. "JvmMetadata").
+     * @return   the metadata kind
+     */
+    public String getKind() {
+        return kind;
+    }
+
+    /**
+     * Returns the number of elements in a section.
+     * @param section   the section name
+     * @return          the number of elements (0 for missing sections)
+     */
+    public int size(String section) {
+        Section s = sections.get(section);
+        return s == null ? 0 : s.size;
+    }
+
+    /**
+     * Decode the element at some position of a section.
+     * @param section        the section name
+     * @param layout         the layout of the section elements
+     * @param index          the element position (in primary key order)
+     * @param <T>            the type of the elements
+     * @return               the element
+     * @throws IOException   on decoding error
+     */
+    public <T> T get(String section, BinaryLayout<T> layout, int index) throws IOException {
+        Section s = getSection(section);
+        if (index < 0 || index >= s.size)
+            throw new IndexOutOfBoundsException("Element " + index + " of section " + section + " (size " + s.size + ")");
+        return new RecordDecoder(getLong(s.offsetsPos + 8L * index)).readRecord(layout);
+    }
+
+    /**
+     * Find an element by its primary key.
+     * @param section        the section name
+     * @param layout         the layout of the section elements
+     * @param key            the key to look for
+     * @param <T>            the type of the elements
+     * @return               the first element with the given key or null if none exists
+     * @throws IOException   on decoding error
+     */
+    public <T> T find(String section, BinaryLayout<T> layout, String key) throws IOException {
+        Section s = sections.get(section);
+        if (s == null || s.keysPos < 0)
+            return null;
+        int index = lowerBound(s.keysPos, s.size, key);
+        if (index == s.size || !Objects.equals(string(getInt(s.keysPos + 4L * index)), key))
+            return null;
+        return get(section, layout, index);
+    }
+
+    /**
+     * Find all elements that have a given secondary key.
+     * @param section        the section name
+     * @param indexName      the name of the secondary index
+     * @param layout         the layout of the section elements
+     * @param key            the key to look for
+     * @param <T>            the type of the elements
+     * @return               the elements found (in no particular order)
+     * @throws IOException   on decoding error
+     */
+    public <T> List<T> findAll(String section, String indexName, BinaryLayout<T> layout, String key) throws IOException {
+        Section s = sections.get(section);
+        Long indexPos = s == null ? null : s.secondary.get(indexName);
+        if (indexPos == null)
+            return Collections.emptyList();
+        long recordsPos = indexPos + 4L * s.size;
+        List<T> result = new ArrayList<>();
+        for (int i = lowerBound(indexPos, s.size, key); i < s.size && Objects.equals(string(getInt(indexPos + 4L * i)), key); i++)
+            result.add(get(section, layout, getInt(recordsPos + 4L * i)));
+        return result;
+    }
+
+    /**
+     * Find the first position of a sorted key array whose key is not less than a key.
+     */
+    private int lowerBound(long keysPos, int size, String key) throws IOException {
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (MappedMetadataWriter.KEY_ORDER.compare(string(getInt(keysPos + 4L * mid)), key) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private Section getSection(String section) {
+        Section s = sections.get(section);
+        if (s == null)
+            throw new NoSuchElementException("Unknown section: " + section);
+        return s;
+    }
+
+    /**
+     * Decode a string of the string table.
+     * @param id             the string id (0 stands for null)
+     * @return               the string
+     * @throws IOException   on invalid id
+     */
+    private String string(long id) throws IOException {
+        if (id == 0)
+            return null;
+        if (id < 0 || id > stringCount)
+            throw new IOException("Invalid string reference: " + id);
+        long start = getLong(stringOffsetsPos + 8 * (id - 1));
+        long end = getLong(stringOffsetsPos + 8 * id);
+        byte[] utf8 = new byte[(int) (end - start)];
+        read(start, utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private boolean hasMagic(long pos) {
+        byte[] magic = MappedMetadataWriter.MAGIC;
+        byte[] found = new byte[magic.length];
+        read(pos, found);
+        return Arrays.equals(magic, found);
+    }
+
+    private byte get(long pos) {
+        return segments[(int) (pos >>> SEGMENT_BITS)].get((int) (pos & SEGMENT_MASK));
+    }
+
+    private void read(long pos, byte[] target) {
+        for (int i = 0; i < target.length; i++)
+            target[i] = get(pos + i);
+    }
+
+    private int getInt(long pos) {
+        MappedByteBuffer segment = segments[(int) (pos >>> SEGMENT_BITS)];
+        int offset = (int) (pos & SEGMENT_MASK);
+        if (offset + 4 <= segment.limit())
+            return segment.getInt(offset);
+        return ((get(pos) & 0xFF) << 24) | ((get(pos + 1) & 0xFF) << 16) | ((get(pos + 2) & 0xFF) << 8) | (get(pos + 3) & 0xFF);
+    }
+
+    private long getLong(long pos) {
+        MappedByteBuffer segment = segments[(int) (pos >>> SEGMENT_BITS)];
+        int offset = (int) (pos & SEGMENT_MASK);
+        if (offset + 8 <= segment.limit())
+            return segment.getLong(offset);
+        return ((long) getInt(pos) << 32) | (getInt(pos + 4) & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /** The directory entry of a section. */
+    private static final class Section {
+        final String name;
+        final int size;
+        final long offsetsPos;
+        final long keysPos;
+        final Map<String, Long> secondary = new HashMap<>();
+
+        Section(String name, int size, long offsetsPos, long keysPos) {
+            this.name = name;
+            this.size = size;
+            this.offsetsPos = offsetsPos;
+            this.keysPos = keysPos;
+        }
+    }
+
+    /** A sequential reader over the mapped file. */
+    private class Reader extends InputStream {
+        long pos;
+
+        Reader(long pos) {
+            this.pos = pos;
+        }
+
+        @Override
+        public int read() {
+            return get(pos++) & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            for (int i = 0; i < len; i++)
+                b[off + i] = get(pos++);
+            return len;
+        }
+
+        int readInt() {
+            int value = getInt(pos);
+            pos += 4;
+            return value;
+        }
+
+        long readLong() {
+            long value = getLong(pos);
+            pos += 8;
+            return value;
+        }
+
+        String readUTF() throws IOException {
+            return new DataInputStream(this).readUTF();
+        }
+    }
+
+    /** Decodes a single record, resolving strings from the mapped string table. */
+    private final class RecordDecoder extends BinaryDecoder {
+        RecordDecoder(long pos) {
+            super(new Reader(pos), kind);
+        }
+
+        @Override
+        protected String lookupString(long id) throws IOException {
+            return string(id);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package org.clyze.persistent.metadata;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Writes random-access metadata files, to be opened by {@link MappedMetadataFile}.
+ *
+ * A file contains, in order: a header, the records of all sections (each
+ * element encoded independently with a {@link BinaryLayout}), the shared
+ * string table, the index arrays of every section, and a directory that
+ * is located through a fixed-size trailer. Records of a section must be
+ * given sorted by their primary key; secondary indexes are sorted here.
+ */
+public class MappedMetadataWriter implements Closeable {
+
+    /** The magic bytes at the start and end of random-access metadata files. */
+    static final byte[] MAGIC = { 'C', 'L', 'Z', 'M' };
+    /** The current version of the random-access format. */
+    static final int VERSION = 1;
+    /** Orders keys, placing null keys first. */
+    static final Comparator<String> KEY_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    /** The file output. */
+    private final DataOutputStream out;
+    /** The byte counter of the file output. */
+    private final Counter counter;
+    /** The encoder holding the string table. */
+    private final BinaryEncoder encoder;
+    /** The sections written so far (index arrays are written on close). */
+    private final List<SectionData> sections = new ArrayList<>();
+
+    /**
+     * Create a writer.
+     * @param path           the output file
+     * @param kind           the kind of metadata written (checked when opening)
+     * @throws IOException   on file creation error
+     */
+    public MappedMetadataWriter(Path path, String kind) throws IOException {
+        this.counter = new Counter(new BufferedOutputStream(Files.newOutputStream(path)));
+        this.out = new DataOutputStream(counter);
+        this.encoder = new BinaryEncoder(kind);
+        out.write(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(kind);
+    }
+
+    /**
+     * Write the records of a section.
+     * @param name              the section name
+     * @param layout            the layout of the elements
+     * @param elements          the elements, sorted by primary key
+     * @param primaryKey        the primary key of the elements (may be null for unkeyed sections)
+     * @param secondaryKeys     additional keys to index, by index name
+     * @param <T>               the type of the elements
+     * @throws IOException      on write error
+     */
+    public <T> void writeSection(String name, BinaryLayout<T> layout, List<T> elements,
+                                 Function<T, String> primaryKey,
+                                 Map<String, Function<T, String>> secondaryKeys) throws IOException {
+        SectionData data = new SectionData(name, elements.size());
+        data.offsets = new long[elements.size()];
+        data.keys = primaryKey == null ? null : new int[elements.size()];
+        for (int i = 0; i < elements.size(); i++) {
+            T element = elements.get(i);
+            if (data.keys != null) {
+                String key = primaryKey.apply(element);
+                if (i > 0 && KEY_ORDER.compare(primaryKey.apply(elements.get(i - 1)), key) > 0)
+                    throw new IllegalArgumentException("Section " + name + " is not sorted by key at element " + i);
+                data.keys[i] = encoder.stringId(key);
+            }
+            data.offsets[i] = counter.position;
+            out.write(encoder.encodeRecord(layout, element));
+        }
+        for (Map.Entry<String, Function<T, String>> index : secondaryKeys.entrySet()) {
+            Function<T, String> key = index.getValue();
+            Integer[] order = new Integer[elements.size()];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            Arrays.sort(order, (i1, i2) -> KEY_ORDER.compare(key.apply(elements.get(i1)), key.apply(elements.get(i2))));
+            int[] keys = new int[order.length];
+            int[] records = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                keys[i] = encoder.stringId(key.apply(elements.get(order[i])));
+                records[i] = order[i];
+            }
+            data.secondary.put(index.getKey(), new int[][] { keys, records });
+        }
+        sections.add(data);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            // String table: offsets (one extra for the end), then UTF-8 data.
+            List<String> strings = encoder.getStrings();
+            List<byte[]> utf8 = new ArrayList<>(strings.size());
+            for (String s : strings)
+                utf8.add(s.getBytes(StandardCharsets.UTF_8));
+            long stringOffsetsPos = counter.position;
+            long dataPos = stringOffsetsPos + 8L * (strings.size() + 1);
+            for (byte[] s : utf8) {
+                out.writeLong(dataPos);
+                dataPos += s.length;
+            }
+            out.writeLong(dataPos);
+            for (byte[] s : utf8)
+                out.write(s);
+
+            for (SectionData data : sections) {
+                data.offsetsPos = counter.position;
+                for (long offset : data.offsets)
+                    out.writeLong(offset);
+                if (data.keys != null) {
+                    data.keysPos = counter.position;
+                    for (int key : data.keys)
+                        out.writeInt(key);
+                }
+                for (Map.Entry<String, int[][]> index : data.secondary.entrySet()) {
+                    data.secondaryPos.put(index.getKey(), counter.position);
+                    for (int[] array : index.getValue())
+                        for (int value : array)
+                            out.writeInt(value);
+                }
+            }
+
+            long directoryPos = counter.position;
+            out.writeInt(strings.size());
+            out.writeLong(stringOffsetsPos);
+            out.writeInt(sections.size());
+            for (SectionData data : sections) {
+                out.writeUTF(data.name);
+                out.writeInt(data.size);
+                out.writeLong(data.offsetsPos);
+                out.writeLong(data.keysPos);
+                out.writeInt(data.secondaryPos.size());
+                for (Map.Entry<String, Long> index : data.secondaryPos.entrySet()) {
+                    out.writeUTF(index.getKey());
+                    out.writeLong(index.getValue());
+                }
+            }
+            out.writeLong(directoryPos);
+            out.write(MAGIC);
+        } finally {
+            out.close();
+        }
+    }
+
+    /** The bookkeeping of a written section. */
+    private static final class SectionData {
+        final String name;
+        final int size;
+        long[] offsets;
+        int[] keys;
+        final Map<String, int[][]> secondary = new LinkedHashMap<>();
+        long offsetsPos = -1;
+        long keysPos = -1;
+        final Map<String, Long> secondaryPos = new LinkedHashMap<>();
+
+        SectionData(String name, int size) {
+            this.name = name;
+            this.size = size;
+        }
+    }
+
+    /** An output stream that tracks its position as a long. */
+    private static final class Counter extends FilterOutputStream {
+        long position = 0;
+
+        Counter(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            position += len;
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package org.clyze.persistent.metadata;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
+import java.util.function.Supplier;
 import org.clyze.persistent.model.*;
 
 /**
@@ -21,9 +24,190 @@ public abstract class Metadata {
         Collections.sort(sourceFiles);
     }
 
+    /**
+     * Sort the metadata contents, optionally in parallel. Both modes
+     * produce the same order.
+     * @param parallel   if true, large collections are sorted in parallel
+     */
+    public void sort(boolean parallel) {
+        if (parallel)
+            parallelSort(sourceFiles);
+        else
+            sort();
+    }
+
+    /**
+     * Sort a list in parallel, in natural order. The sort is stable, as
+     * is {@link Collections#sort(List)}.
+     * @param list   the list to sort
+     * @param <T>    the type of the list elements
+     */
     @SuppressWarnings("unchecked")
+    protected static <T extends Comparable<? super T>> void parallelSort(List<T> list) {
+        if (list instanceof ObservableList) {
+            ((ObservableList<T>) list).parallelSort(null);
+            return;
+        }
+        T[] array = (T[]) list.toArray(new Comparable<?>[0]);
+        Arrays.parallelSort(array);
+        ListIterator<T> iter = list.listIterator();
+        for (T element : array) {
+            iter.next();
+            iter.set(element);
+        }
+    }
+
     public static void fillFromMap(Metadata metadata, Map<String, Object> map) {
-        metadata.sourceFiles.addAll((List<SourceFile>) map.get(SourceFile.class.getSimpleName()));
+        addFromMaps(metadata.sourceFiles, map.get(SourceFile.class.getSimpleName()), SourceFile::new);
+    }
+
+    /**
+     * Convert the map representations of a report section to model objects.
+     * @param target    the collection to receive the objects
+     * @param section   the section data (a list of maps), may be null
+     * @param factory   the factory of fresh model objects
+     * @param <T>       the type of the model objects
+     */
+    @SuppressWarnings("unchecked")
+    protected static <T extends Item> void addFromMaps(Collection<? super T> target, Object section, Supplier<T> factory) {
+        if (section == null)
+            return;
+        for (Map<String, Object> elementMap : (List<Map<String, Object>>) section) {
+            T element = factory.get();
+            element.fromMap(elementMap);
+            target.add(element);
+        }
+    }
+
+    /**
+     * Read a JSON report into a metadata object. Elements are read one at a
+     * time and bound directly to model objects.
+     * @param metadata       the metadata object to fill
+     * @param in             the input stream containing the JSON report
+     * @param <M>            the type of the metadata object
+     * @return               the metadata object
+     * @throws IOException   on read or parse error
+     */
+    protected static <M extends Metadata> M readJsonReport(M metadata, InputStream in) throws IOException {
+        return readJsonReport(metadata, in, MetricsListener.NONE);
+    }
+
+    /**
+     * Read a JSON report into a metadata object, reporting the parse time
+     * and the number of elements of every section and the bytes read.
+     * @param metadata       the metadata object to fill
+     * @param in             the input stream containing the JSON report
+     * @param metrics        the metrics listener to notify
+     * @param <M>            the type of the metadata object
+     * @return               the metadata object
+     * @throws IOException   on read or parse error
+     */
+    @SuppressWarnings("try")
+    protected static <M extends Metadata> M readJsonReport(M metadata, InputStream in, MetricsListener metrics) throws IOException {
+        try (StringPool.Scope scope = StringPool.enterIfInactive();
+             JsonReportReader reader = new JsonReportReader(in)) {
+            String section;
+            while ((section = reader.nextSection()) != null)
+                try (PhaseTimer timer = PhaseTimer.start(metrics, MetricsListener.Phase.PARSE, section)) {
+                    if (!metadata.readSection(section, reader))
+                        reader.skipSection();
+                    timer.setElements(reader.getSectionElements());
+                    metrics.sectionSize(section, reader.getSectionElements());
+                }
+            metrics.bytesRead(reader.getBytesRead());
+        }
+        return metadata;
+    }
+
+    /**
+     * Convert a parsed report to a metadata object, reporting the
+     * conversion time and the number of elements of every section.
+     * @param map            the parsed report
+     * @param fromMap        the conversion (e.g. {@code JvmMetadata::fromMap})
+     * @param metrics        the metrics listener to notify
+     * @param <M>            the type of the metadata object
+     * @return               the metadata object
+     */
+    protected static <M extends Metadata> M fromMap(Map<String, Object> map, java.util.function.Function<Map<String, Object>, M> fromMap,
+                                                    MetricsListener metrics) {
+        M metadata;
+        int elements = 0;
+        for (Map.Entry<String, Object> section : map.entrySet())
+            if (section.getValue() instanceof List) {
+                int size = ((List<?>) section.getValue()).size();
+                metrics.sectionSize(section.getKey(), size);
+                elements += size;
+            }
+        try (PhaseTimer timer = PhaseTimer.start(metrics, MetricsListener.Phase.FROM_MAP, null)) {
+            metadata = fromMap.apply(map);
+            timer.setElements(elements);
+        }
+        return metadata;
+    }
+
+    /**
+     * Read the elements of a report section.
+     * @param section        the section name
+     * @param reader         the report reader, positioned at the start of the section
+     * @return               true if the section was read, false if it is not
+     *                       known to this metadata object
+     * @throws IOException   on parse error
+     */
+    protected boolean readSection(String section, JsonReportReader reader) throws IOException {
+        if (section.equals(SourceFile.class.getSimpleName())) {
+            reader.readElements(SourceFile::new, sourceFiles);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Read a binary report into a metadata object.
+     * @param metadata       the metadata object to fill
+     * @param in             the input stream containing the binary report
+     * @param <M>            the type of the metadata object
+     * @return               the metadata object
+     * @throws IOException   on read error or if the report holds another kind of metadata
+     */
+    @SuppressWarnings("try")
+    protected static <M extends Metadata> M readBinaryReport(M metadata, InputStream in) throws IOException {
+        try (StringPool.Scope scope = StringPool.enterIfInactive();
+             InputStream input = Compression.decompressBorrowed(in)) {
+            BinaryDecoder decoder = new BinaryDecoder(input);
+            String kind = metadata.getClass().getSimpleName();
+            if (!kind.equals(decoder.getKind()))
+                throw new IOException("Binary report contains " + decoder.getKind() + ", expected " + kind);
+            String section;
+            while ((section = decoder.nextSection()) != null)
+                if (!metadata.readBinarySection(section, decoder))
+                    decoder.skipSection();
+        }
+        return metadata;
+    }
+
+    /**
+     * Read the elements of a binary report section.
+     * @param section        the section name
+     * @param decoder        the decoder, positioned at the start of the section
+     * @return               true if the section was read, false if it is not
+     *                       known to this metadata object
+     * @throws IOException   on read error
+     */
+    protected boolean readBinarySection(String section, BinaryDecoder decoder) throws IOException {
+        if (section.equals(SourceFile.class.getSimpleName())) {
+            decoder.readElements(BinaryLayouts.SOURCE_FILE, sourceFiles);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the binary layout of the elements of a report section.
+     * @param section   the section name (as used by {@link #populateJsonReport(Map)})
+     * @return          the layout or null if the section is not known
+     */
+    protected BinaryLayout<?> getBinaryLayout(String section) {
+        return section.equals(SourceFile.class.getSimpleName()) ? BinaryLayouts.SOURCE_FILE : null;
     }
 
     public void printReportStats(Printer printer) {
@@ -32,7 +216,39 @@ public abstract class Metadata {
 
     public void populateJsonReport(Map<String, List<?>> jsonReport) {
         sort();
+        addReportSections(jsonReport);
+    }
+
+    /**
+     * Add the sections of this metadata object to a report, in report
+     * order. The metadata have already been sorted, so lists are added as
+     * they are; subclasses that add report sections override this method.
+     * @param jsonReport   the report to populate
+     */
+    protected void addReportSections(Map<String, List<?>> jsonReport) {
         jsonReport.put(SourceFile.class.getSimpleName(), sourceFiles);
     }
 
+    /**
+     * Describe the sections of the JSON report of this metadata object
+     * without sorting them, for reports that are sorted outside the heap.
+     * Sections must be added in the order of {@link #addReportSections(Map)},
+     * so subclasses that add report sections override both methods.
+     * @param sections   the map that receives the sections, by name
+     */
+    protected void describeReportSections(Map<String, ReportSection<?>> sections) {
+        sections.put(SourceFile.class.getSimpleName(), new ReportSection<>(sourceFiles, SourceFile::getId));
+    }
+
+    /**
+     * Populate a report, optionally sorting its sections in parallel.
+     * The report contents do not depend on the mode.
+     * @param jsonReport   the report to populate
+     * @param parallel     if true, sections are sorted in parallel
+     */
+    public void populateJsonReport(Map<String, List<?>> jsonReport, boolean parallel) {
+        sort(parallel);
+        addReportSections(jsonReport);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+package org.clyze.persistent.metadata;
+
+/**
+ * A receiver of metrics about writing and reading metadata reports: the
+ * time of every phase, bytes written and read, the number of elements of
+ * every section and the size of intermediate buffers. Listeners are set
+ * with {@link Configuration#setMetricsListener(MetricsListener)}; see
+ * {@link MetricsRegistry} for a listener that aggregates the metrics.
+ *
+ * Methods may be called from several threads (e.g. when sections are
+ * encoded in parallel). All methods do nothing by default.
+ */
+public interface MetricsListener {
+
+    /** A listener that ignores all metrics. */
+    MetricsListener NONE = new MetricsListener() {};
+
+    /** The phases of writing and reading reports. */
+    enum Phase {
+        /** Sorting report sections. */
+        SORT,
+        /** Encoding report sections (as JSON or binary records). */
+        SERIALIZE,
+        /** Writing a whole report, including encoding and output. */
+        WRITE,
+        /** Parsing report sections into model objects. */
+        PARSE,
+        /** Converting parsed maps into model objects. */
+        FROM_MAP
+    }
+
+    /**
+     * Called when a phase completes.
+     * @param phase     the phase
+     * @param section   the report section or null if the phase covers the whole report
+     * @param nanos     the duration of the phase in nanoseconds
+     */
+    default void phaseCompleted(Phase phase, String section, long nanos) {}
+
+    /**
+     * Called after a report is written.
+     * @param bytes   the number of bytes written
+     */
+    default void bytesWritten(long bytes) {}
+
+    /**
+     * Called after a report is read.
+     * @param bytes   the number of bytes read
+     */
+    default void bytesRead(long bytes) {}
+
+    /**
+     * Called with the number of elements of a report section that was
+     * written or read.
+     * @param section    the section name
+     * @param elements   the number of elements
+     */
+    default void sectionSize(String section, int elements) {}
+
+    /**
+     * Called with the size of an intermediate buffer, when it is released.
+     * @param buffer   the buffer name (e.g. the section it holds)
+     * @param bytes    the buffer size in bytes
+     */
+    default void bufferSize(String buffer, long bytes) {}
+}
@@ -0,0 +1,133 @@
+package org.clyze.persistent.metadata;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A metrics listener that aggregates metrics: the total time of every
+ * phase (overall and per section), the total bytes written and read, the
+ * number of elements of every section (as last reported) and the peak
+ * size of every buffer. It is thread-safe.
+ */
+public class MetricsRegistry implements MetricsListener {
+
+    private final Map<Phase, Long> phaseNanos = new EnumMap<>(Phase.class);
+    private final Map<String, Long> sectionNanos = new TreeMap<>();
+    private final Map<String, Integer> sectionSizes = new TreeMap<>();
+    private final Map<String, Long> peakBufferSizes = new TreeMap<>();
+    private long bytesWritten = 0;
+    private long bytesRead = 0;
+
+    @Override
+    public synchronized void phaseCompleted(Phase phase, String section, long nanos) {
+        phaseNanos.merge(phase, nanos, Long::sum);
+        if (section != null)
+            sectionNanos.merge(key(phase, section), nanos, Long::sum);
+    }
+
+    @Override
+    public synchronized void bytesWritten(long bytes) {
+        bytesWritten += bytes;
+    }
+
+    @Override
+    public synchronized void bytesRead(long bytes) {
+        bytesRead += bytes;
+    }
+
+    @Override
+    public synchronized void sectionSize(String section, int elements) {
+        sectionSizes.put(section, elements);
+    }
+
+    @Override
+    public synchronized void bufferSize(String buffer, long bytes) {
+        peakBufferSizes.merge(buffer, bytes, Math::max);
+    }
+
+    private static String key(Phase phase, String section) {
+        return phase + "/" + section;
+    }
+
+    /**
+     * Returns the total time of a phase.
+     * @param phase   the phase
+     * @return        the time in nanoseconds (0 if the phase did not run)
+     */
+    public synchronized long getNanos(Phase phase) {
+        return phaseNanos.getOrDefault(phase, 0L);
+    }
+
+    /**
+     * Returns the total time of a phase for a report section.
+     * @param phase     the phase
+     * @param section   the section name
+     * @return          the time in nanoseconds (0 if the phase did not run for the section)
+     */
+    public synchronized long getNanos(Phase phase, String section) {
+        return sectionNanos.getOrDefault(key(phase, section), 0L);
+    }
+
+    /**
+     * Returns the total number of bytes written.
+     * @return   the number of bytes
+     */
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Returns the total number of bytes read.
+     * @return   the number of bytes
+     */
+    public synchronized long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Returns the number of elements of a report section.
+     * @param section   the section name
+     * @return          the number of elements or -1 if the section was not reported
+     */
+    public synchronized int getSectionSize(String section) {
+        return sectionSizes.getOrDefault(section, -1);
+    }
+
+    /**
+     * Returns the peak size of a buffer.
+     * @param buffer   the buffer name
+     * @return         the size in bytes or -1 if the buffer was not reported
+     */
+    public synchronized long getPeakBufferSize(String buffer) {
+        return peakBufferSizes.getOrDefault(buffer, -1L);
+    }
+
+    /**
+     * Forget all metrics.
+     */
+    public synchronized void clear() {
+        phaseNanos.clear();
+        sectionNanos.clear();
+        sectionSizes.clear();
+        peakBufferSizes.clear();
+        bytesWritten = 0;
+        bytesRead = 0;
+    }
+
+    /**
+     * Prints the metrics.
+     * @param printer   the printer to use
+     */
+    public synchronized void print(Printer printer) {
+        for (Map.Entry<Phase, Long> entry : phaseNanos.entrySet())
+            printer.println("Phase " + entry.getKey() + ": " + TimeUnit.NANOSECONDS.toMillis(entry.getValue()) + " ms");
+        for (Map.Entry<String, Long> entry : sectionNanos.entrySet())
+            printer.println("Phase " + entry.getKey() + ": " + TimeUnit.NANOSECONDS.toMillis(entry.getValue()) + " ms");
+        for (Map.Entry<String, Integer> entry : sectionSizes.entrySet())
+            printer.println("Section " + entry.getKey() + ": " + entry.getValue() + " elements");
+        for (Map.Entry<String, Long> entry : peakBufferSizes.entrySet())
+            printer.println("Peak buffer " + entry.getKey() + ": " + entry.getValue() + " bytes");
+        printer.println("Bytes written: " + bytesWritten);
+        printer.println("Bytes read: " + bytesRead);
+    }
+}
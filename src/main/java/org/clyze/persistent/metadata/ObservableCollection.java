@@ -0,0 +1,37 @@
+package org.clyze.persistent.metadata;
+
+import java.util.Collection;
+
+/**
+ * A collection that notifies listeners when elements are added or removed.
+ * Metadata containers use such collections to keep derived indexes up to date.
+ *
+ * @param <T>   the type of the elements
+ */
+public interface ObservableCollection<T> extends Collection<T> {
+
+    /**
+     * A receiver of collection changes.
+     *
+     * @param <T>   the type of the elements
+     */
+    interface Listener<T> {
+        /**
+         * Called after an element has been added.
+         * @param element   the element
+         */
+        void added(T element);
+
+        /**
+         * Called after an element has been removed.
+         * @param element   the element
+         */
+        void removed(T element);
+    }
+
+    /**
+     * Register a listener. Listeners are called in registration order.
+     * @param listener   the listener
+     */
+    void addListener(Listener<? super T> listener);
+}
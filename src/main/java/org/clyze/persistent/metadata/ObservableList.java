@@ -0,0 +1,87 @@
+package org.clyze.persistent.metadata;
+
+import java.util.*;
+
+/**
+ * An array list that notifies listeners of changes. Sorting only
+ * reorders elements and does not notify listeners.
+ *
+ * @param <T>   the type of the elements
+ */
+public class ObservableList<T> extends AbstractList<T> implements ObservableCollection<T>, RandomAccess {
+
+    /** The elements. */
+    private final List<T> elements = new ArrayList<>();
+    /** The listeners. */
+    private final List<Listener<? super T>> listeners = new ArrayList<>(1);
+
+    @Override
+    public void addListener(Listener<? super T> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public T get(int index) {
+        return elements.get(index);
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
+    @Override
+    public void add(int index, T element) {
+        elements.add(index, element);
+        modCount++;
+        for (Listener<? super T> listener : listeners)
+            listener.added(element);
+    }
+
+    @Override
+    public T set(int index, T element) {
+        T old = elements.set(index, element);
+        for (Listener<? super T> listener : listeners) {
+            listener.removed(old);
+            listener.added(element);
+        }
+        return old;
+    }
+
+    @Override
+    public T remove(int index) {
+        T old = elements.remove(index);
+        modCount++;
+        for (Listener<? super T> listener : listeners)
+            listener.removed(old);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        if (listeners.isEmpty()) {
+            elements.clear();
+            modCount++;
+        } else
+            super.clear();
+    }
+
+    @Override
+    public void sort(Comparator<? super T> c) {
+        elements.sort(c);
+        modCount++;
+    }
+
+    /**
+     * Sort this list in parallel (without notifying listeners).
+     * @param c   the comparator to use (null for natural order)
+     */
+    @SuppressWarnings("unchecked")
+    public void parallelSort(Comparator<? super T> c) {
+        T[] array = (T[]) elements.toArray();
+        Arrays.parallelSort(array, c);
+        for (int i = 0; i < array.length; i++)
+            elements.set(i, array[i]);
+        modCount++;
+    }
+}
@@ -0,0 +1,83 @@
+package org.clyze.persistent.metadata;
+
+import java.util.*;
+
+/**
+ * A hash set that notifies listeners of changes.
+ *
+ * @param <T>   the type of the elements
+ */
+public class ObservableSet<T> extends AbstractSet<T> implements ObservableCollection<T> {
+
+    /** The elements. */
+    private final Set<T> elements = new HashSet<>();
+    /** The listeners. */
+    private final List<Listener<? super T>> listeners = new ArrayList<>(1);
+
+    @Override
+    public void addListener(Listener<? super T> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public boolean add(T element) {
+        if (!elements.add(element))
+            return false;
+        for (Listener<? super T> listener : listeners)
+            listener.added(element);
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object o) {
+        if (!elements.remove(o))
+            return false;
+        for (Listener<? super T> listener : listeners)
+            listener.removed((T) o);
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return elements.contains(o);
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
+    @Override
+    public void clear() {
+        if (listeners.isEmpty())
+            elements.clear();
+        else
+            super.clear();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        Iterator<T> it = elements.iterator();
+        return new Iterator<T>() {
+            T last;
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return last = it.next();
+            }
+
+            @Override
+            public void remove() {
+                it.remove();
+                for (Listener<? super T> listener : listeners)
+                    listener.removed(last);
+            }
+        };
+    }
+}
@@ -0,0 +1,11 @@
+package org.clyze.persistent.metadata;
+
+/**
+ * The formatting of JSON output.
+ */
+public enum OutputStyle {
+    /** Indented, human-readable output (the default). */
+    PRETTY,
+    /** Output without any whitespace, for machine consumption. */
+    COMPACT
+}
@@ -0,0 +1,73 @@
+package org.clyze.persistent.metadata;
+
+/**
+ * Times a phase of writing or reading a report. When closed, the timer
+ * notifies a metrics listener and commits a {@link ReportPhaseEvent} to
+ * Java Flight Recorder (if a recording is enabled for it).
+ *
+ * <pre>
+ * try (PhaseTimer timer = PhaseTimer.start(listener, MetricsListener.Phase.SORT, "Usage")) {
+ *     ...
+ *     timer.setElements(usages.size());
+ * }
+ * </pre>
+ */
+public final class PhaseTimer implements AutoCloseable {
+
+    private final MetricsListener listener;
+    private final MetricsListener.Phase phase;
+    private final String section;
+    private final ReportPhaseEvent event = new ReportPhaseEvent();
+    private final long start;
+    private int elements = -1;
+    private long bytes = -1;
+
+    private PhaseTimer(MetricsListener listener, MetricsListener.Phase phase, String section) {
+        this.listener = listener;
+        this.phase = phase;
+        this.section = section;
+        event.begin();
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Start timing a phase.
+     * @param listener   the listener to notify
+     * @param phase      the phase
+     * @param section    the report section or null for the whole report
+     * @return           the timer, to close at the end of the phase
+     */
+    public static PhaseTimer start(MetricsListener listener, MetricsListener.Phase phase, String section) {
+        return new PhaseTimer(listener, phase, section);
+    }
+
+    /**
+     * Record the number of elements processed by the phase (for the JFR event).
+     * @param elements   the number of elements
+     */
+    public void setElements(int elements) {
+        this.elements = elements;
+    }
+
+    /**
+     * Record the number of bytes processed by the phase (for the JFR event).
+     * @param bytes   the number of bytes
+     */
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    @Override
+    public void close() {
+        long nanos = System.nanoTime() - start;
+        listener.phaseCompleted(phase, section, nanos);
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = phase.name();
+            event.section = section;
+            event.elements = elements;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+}
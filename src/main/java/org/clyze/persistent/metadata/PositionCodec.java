@@ -0,0 +1,47 @@
+package org.clyze.persistent.metadata;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import java.io.IOException;
+import org.clyze.persistent.model.Position;
+
+/**
+ * JSON (de)serialization of positions. Positions are written and read
+ * field by field, without the reflective access (and the boxing) of the
+ * default bean codecs; read positions are shared through the position cache.
+ * The JSON layout is the same as that of the bean codecs.
+ */
+final class PositionCodec {
+
+    private PositionCodec() {}
+
+    /**
+     * Returns a Jackson module that registers the position codecs.
+     * @return   the module
+     */
+    static SimpleModule module() {
+        SimpleModule module = new SimpleModule("PositionCodec");
+        module.addSerializer(Position.class, new Serializer());
+        module.addDeserializer(Position.class, new Deserializer());
+        return module;
+    }
+
+    private static final class Serializer extends JsonSerializer<Position> {
+        @Override
+        public void serialize(Position pos, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            pos.writeJson(gen);
+        }
+    }
+
+    private static final class Deserializer extends JsonDeserializer<Position> {
+        @Override
+        public Position deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            return Position.readJson(p);
+        }
+    }
+}
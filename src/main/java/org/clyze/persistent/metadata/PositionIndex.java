@@ -0,0 +1,228 @@
+package org.clyze.persistent.metadata;
+
+import java.util.*;
+import org.clyze.persistent.model.Position;
+import org.clyze.persistent.model.Symbol;
+
+/**
+ * An immutable index of symbols by source position, for answering
+ * "what is at line L, column C of file F?" questions.
+ *
+ * Symbols are grouped by source file name and sorted by start position;
+ * a tree of maximum end positions over the sorted array prunes symbols
+ * that end before a query point. Point and range queries take
+ * O(log n + k) time for k results and innermost-symbol queries take
+ * O(log n). Positions are closed intervals: both the start and the end
+ * position are considered inside a symbol.
+ *
+ * @param <T>   the type of the indexed symbols
+ */
+public final class PositionIndex<T extends Symbol> {
+
+    /** The per-file intervals. */
+    private final Map<String, FileIntervals<T>> files = new HashMap<>();
+
+    private PositionIndex(Collection<? extends T> symbols, java.util.function.Function<? super T, Position> position) {
+        Map<String, List<Entry<T>>> byFile = new HashMap<>();
+        for (T symbol : symbols) {
+            Position pos = position.apply(symbol);
+            String file = symbol.getSourceFileName();
+            if (pos != null && file != null)
+                byFile.computeIfAbsent(file, f -> new ArrayList<>()).add(new Entry<>(symbol, pos));
+        }
+        for (Map.Entry<String, List<Entry<T>>> file : byFile.entrySet())
+            files.put(file.getKey(), new FileIntervals<>(file.getValue()));
+    }
+
+    /**
+     * Index symbols by their position.
+     * @param symbols   the symbols (symbols without position or source file are ignored)
+     * @param <T>       the type of the symbols
+     * @return          the index
+     */
+    public static <T extends Symbol> PositionIndex<T> of(Collection<? extends T> symbols) {
+        return new PositionIndex<>(symbols, Symbol::getPosition);
+    }
+
+    /**
+     * Index symbols by a custom position, e.g. the outer position of functions.
+     * @param symbols    the symbols (symbols without position or source file are ignored)
+     * @param position   the position of each symbol to index
+     * @param <T>        the type of the symbols
+     * @return           the index
+     */
+    public static <T extends Symbol> PositionIndex<T> of(Collection<? extends T> symbols,
+                                                         java.util.function.Function<? super T, Position> position) {
+        return new PositionIndex<>(symbols, position);
+    }
+
+    /**
+     * Index functions by their outer position (covering the function
+     * body), falling back to the position of the function name.
+     * @param functions   the functions
+     * @param <T>         the type of the functions
+     * @return            the index
+     */
+    public static <T extends org.clyze.persistent.model.Function> PositionIndex<T> ofOuterPositions(Collection<? extends T> functions) {
+        return new PositionIndex<>(functions, f -> f.getOuterPosition() == null ? f.getPosition() : f.getOuterPosition());
+    }
+
+    /**
+     * Find the symbols that contain a source point.
+     * @param sourceFileName   the source file name
+     * @param line             the line
+     * @param column           the column
+     * @return                 the symbols, sorted by start position
+     */
+    public List<T> at(String sourceFileName, long line, long column) {
+        FileIntervals<T> intervals = files.get(sourceFileName);
+        if (intervals == null)
+            return Collections.emptyList();
+        List<T> result = new ArrayList<>();
+        intervals.collect(intervals.countStartingUpTo(line, column), line, column, result);
+        return result;
+    }
+
+    /**
+     * Find the symbols that overlap a source range.
+     * @param sourceFileName   the source file name
+     * @param range            the range
+     * @return                 the symbols, sorted by start position
+     */
+    public List<T> overlapping(String sourceFileName, Position range) {
+        FileIntervals<T> intervals = files.get(sourceFileName);
+        if (intervals == null)
+            return Collections.emptyList();
+        List<T> result = new ArrayList<>();
+        intervals.collect(intervals.countStartingUpTo(range.getEndLine(), range.getEndColumn()),
+                range.getStartLine(), range.getStartColumn(), result);
+        return result;
+    }
+
+    /**
+     * Find the innermost symbol that contains a source point, i.e. the
+     * containing symbol with the latest start (and, among symbols with
+     * the same start, the earliest end).
+     * @param sourceFileName   the source file name
+     * @param line             the line
+     * @param column           the column
+     * @return                 the symbol or null if no symbol contains the point
+     */
+    public T innermost(String sourceFileName, long line, long column) {
+        FileIntervals<T> intervals = files.get(sourceFileName);
+        if (intervals == null)
+            return null;
+        int index = intervals.rightmost(intervals.countStartingUpTo(line, column), line, column);
+        return index < 0 ? null : intervals.symbols.get(index);
+    }
+
+    /** An indexed symbol with its position. */
+    private static final class Entry<T> {
+        final T symbol;
+        final Position pos;
+
+        Entry(T symbol, Position pos) {
+            this.symbol = symbol;
+            this.pos = pos;
+        }
+    }
+
+    /** Compare two source points. */
+    private static int compare(long line1, long column1, long line2, long column2) {
+        int c = Long.compare(line1, line2);
+        return c != 0 ? c : Long.compare(column1, column2);
+    }
+
+    /** The intervals of one source file. */
+    private static final class FileIntervals<T> {
+        /** The symbols, sorted by start (and then by descending end). */
+        final List<T> symbols;
+        final long[] startLines, startColumns;
+        /** The number of leaves of the max-end tree (a power of two). */
+        final int leaves;
+        /** The max-end tree: node i has children 2i and 2i+1, leaves start at {@code leaves}. */
+        final long[] maxEndLines, maxEndColumns;
+
+        FileIntervals(List<Entry<T>> entries) {
+            entries.sort((e1, e2) -> {
+                int c = compare(e1.pos.getStartLine(), e1.pos.getStartColumn(), e2.pos.getStartLine(), e2.pos.getStartColumn());
+                return c != 0 ? c : compare(e2.pos.getEndLine(), e2.pos.getEndColumn(), e1.pos.getEndLine(), e1.pos.getEndColumn());
+            });
+            int n = entries.size();
+            this.symbols = new ArrayList<>(n);
+            this.startLines = new long[n];
+            this.startColumns = new long[n];
+            int size = 1;
+            while (size < n)
+                size <<= 1;
+            this.leaves = size;
+            this.maxEndLines = new long[2 * size];
+            this.maxEndColumns = new long[2 * size];
+            Arrays.fill(maxEndLines, Long.MIN_VALUE);
+            Arrays.fill(maxEndColumns, Long.MIN_VALUE);
+            for (int i = 0; i < n; i++) {
+                Entry<T> e = entries.get(i);
+                symbols.add(e.symbol);
+                startLines[i] = e.pos.getStartLine();
+                startColumns[i] = e.pos.getStartColumn();
+                maxEndLines[size + i] = e.pos.getEndLine();
+                maxEndColumns[size + i] = e.pos.getEndColumn();
+            }
+            for (int node = size - 1; node > 0; node--) {
+                int max = compare(maxEndLines[2 * node], maxEndColumns[2 * node], maxEndLines[2 * node + 1], maxEndColumns[2 * node + 1]) >= 0 ? 2 * node : 2 * node + 1;
+                maxEndLines[node] = maxEndLines[max];
+                maxEndColumns[node] = maxEndColumns[max];
+            }
+        }
+
+        /** Returns the number of symbols that start at or before a point. */
+        int countStartingUpTo(long line, long column) {
+            int low = 0, high = symbols.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compare(startLines[mid], startColumns[mid], line, column) <= 0)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return low;
+        }
+
+        private boolean endsBefore(int node, long line, long column) {
+            return compare(maxEndLines[node], maxEndColumns[node], line, column) < 0;
+        }
+
+        /** Collect the first {@code count} symbols that end at or after a point. */
+        void collect(int count, long line, long column, List<T> result) {
+            if (count > 0)
+                collect(1, 0, leaves, count, line, column, result);
+        }
+
+        private void collect(int node, int from, int to, int count, long line, long column, List<T> result) {
+            if (from >= count || endsBefore(node, line, column))
+                return;
+            if (node >= leaves) {
+                result.add(symbols.get(node - leaves));
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            collect(2 * node, from, mid, count, line, column, result);
+            collect(2 * node + 1, mid, to, count, line, column, result);
+        }
+
+        /** Find the last of the first {@code count} symbols that ends at or after a point. */
+        int rightmost(int count, long line, long column) {
+            return count > 0 ? rightmost(1, 0, leaves, count, line, column) : -1;
+        }
+
+        private int rightmost(int node, int from, int to, int count, long line, long column) {
+            if (from >= count || endsBefore(node, line, column))
+                return -1;
+            if (node >= leaves)
+                return node - leaves;
+            int mid = (from + to) >>> 1;
+            int right = rightmost(2 * node + 1, mid, to, count, line, column);
+            return right >= 0 ? right : rightmost(2 * node, from, mid, count, line, column);
+        }
+    }
+}
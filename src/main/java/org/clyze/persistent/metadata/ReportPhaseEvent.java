@@ -0,0 +1,38 @@
+package org.clyze.persistent.metadata;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event for a phase of writing or reading a
+ * metadata report (see {@link PhaseTimer}). Events are enabled by
+ * recording settings, e.g. with
+ * {@code -XX:StartFlightRecording:settings=profile}; their duration is
+ * the duration of the phase.
+ */
+@Name("org.clyze.persistent.ReportPhase")
+@Label("Metadata Report Phase")
+@Category({ "Clyze", "Metadata" })
+@Description("A phase of writing or reading a metadata report")
+final class ReportPhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Section")
+    @Description("The report section, if the phase is about a single section")
+    String section;
+
+    @Label("Elements")
+    @Description("The number of elements processed, or -1 if not known")
+    int elements;
+
+    @Label("Bytes")
+    @DataAmount
+    @Description("The number of bytes processed, or -1 if not known")
+    long bytes;
+}
@@ -0,0 +1,45 @@
+package org.clyze.persistent.metadata;
+
+import java.util.Collection;
+import java.util.function.Function;
+import org.clyze.persistent.model.ItemImpl;
+
+/**
+ * The unsorted contents of a report section: its elements and the key that
+ * orders them in reports. Used to write reports without sorting sections
+ * in memory (see {@link Configuration#setSortBudget(int)}).
+ * @param <T>   the type of the section elements
+ */
+public final class ReportSection<T extends ItemImpl> {
+
+    private final Collection<T> elements;
+    private final Function<? super T, String> sortKey;
+
+    /**
+     * Create a report section.
+     * @param elements   the section elements
+     * @param sortKey    the key that orders the elements in reports (elements
+     *                   with equal keys keep their collection order), or null
+     *                   if elements are reported in collection order
+     */
+    public ReportSection(Collection<T> elements, Function<? super T, String> sortKey) {
+        this.elements = elements;
+        this.sortKey = sortKey;
+    }
+
+    /**
+     * Returns the section elements, in collection order.
+     * @return   the elements
+     */
+    public Collection<T> getElements() {
+        return elements;
+    }
+
+    /**
+     * Returns the key that orders the elements in reports.
+     * @return   the sort key or null for unsorted sections
+     */
+    public Function<? super T, String> getSortKey() {
+        return sortKey;
+    }
+}
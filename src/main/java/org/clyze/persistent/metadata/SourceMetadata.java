@@ -1,5 +1,9 @@
 package org.clyze.persistent.metadata;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 
 import org.clyze.persistent.model.*;
@@ -8,14 +12,16 @@ import org.clyze.persistent.model.*;
  * A container class for all metadata gathered for a set of source files.
  */
 public class SourceMetadata extends Metadata implements TokenLocator {
+    /** The token index, following all declared elements. */
+    private final TokenIndex tokenIndex = new TokenIndex();
     /** The declared source types. */
-    public final List<Type> types = new ArrayList<>();
+    public final List<Type> types = tokenIndex.track(new ObservableList<Type>(), (type, tokens) -> tokens.accept(type.getName(), type.getPosition()));
     /** The declared source fields. */
-    public final List<Field> fields = new ArrayList<>();
+    public final List<Field> fields = tokenIndex.track(new ObservableList<Field>(), (field, tokens) -> tokens.accept(field.getName(), field.getPosition()));
     /** The declared source functions. */
-    public final List<Function> functions = new ArrayList<>();
+    public final List<Function> functions = tokenIndex.track(new ObservableList<Function>(), (function, tokens) -> tokens.accept(function.getName(), function.getPosition()));
     /** The source variables. */
-    public final List<Variable> variables = new ArrayList<>();
+    public final List<Variable> variables = tokenIndex.track(new ObservableList<Variable>(), (v, tokens) -> tokens.accept(v.getName(), v.getPosition()));
 
     @Override
     public void sort() {
@@ -26,6 +32,19 @@ public class SourceMetadata extends Metadata implements TokenLocator {
         Collections.sort(variables);
     }
 
+    @Override
+    public void sort(boolean parallel) {
+        if (!parallel) {
+            sort();
+            return;
+        }
+        super.sort(true);
+        parallelSort(types);
+        parallelSort(fields);
+        parallelSort(functions);
+        parallelSort(variables);
+    }
+
     @Override
     public void printReportStats(Printer printer) {
         super.printReportStats(printer);
@@ -40,37 +59,188 @@ public class SourceMetadata extends Metadata implements TokenLocator {
      * @param  map the map to use
      * @return the deserialized source metadata object
      */
-    @SuppressWarnings("unchecked")
+    @SuppressWarnings("try")
     public static SourceMetadata fromMap(Map<String, Object> map) {
         SourceMetadata metadata = new SourceMetadata();
-        Metadata.fillFromMap(metadata, map);
-        metadata.types.addAll((List<Type>) map.get(Type.class.getSimpleName()));
-        metadata.fields.addAll((List<Field>) map.get(Field.class.getSimpleName()));
-        metadata.functions.addAll((List<Function>) map.get(Function.class.getSimpleName()));
-        metadata.variables.addAll((List<Variable>) map.get(Variable.class.getSimpleName()));
+        try (StringPool.Scope scope = StringPool.enterIfInactive()) {
+            Metadata.fillFromMap(metadata, map);
+            addFromMaps(metadata.types, map.get(Type.class.getSimpleName()), Type::new);
+            addFromMaps(metadata.fields, map.get(Field.class.getSimpleName()), Field::new);
+            addFromMaps(metadata.functions, map.get(Function.class.getSimpleName()), Function::new);
+            addFromMaps(metadata.variables, map.get(Variable.class.getSimpleName()), Variable::new);
+        }
         return metadata;
     }
 
+    /**
+     * Create a source metadata object from a map representation for JSON data,
+     * reporting metrics (conversion time and elements per section).
+     * @param map       the map to use
+     * @param metrics   the metrics listener to notify
+     * @return          the deserialized source metadata object
+     */
+    public static SourceMetadata fromMap(Map<String, Object> map, MetricsListener metrics) {
+        return fromMap(map, SourceMetadata::fromMap, metrics);
+    }
+
+    /**
+     * Read a source metadata object from a JSON report file.
+     * @param path           the report file
+     * @return               the deserialized source metadata object
+     * @throws IOException   on read or parse error
+     */
+    public static SourceMetadata fromJson(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return fromJson(in);
+        }
+    }
+
+    /**
+     * Read a source metadata object from a JSON report stream.
+     * @param in             the input stream (not closed by this method)
+     * @return               the deserialized source metadata object
+     * @throws IOException   on read or parse error
+     */
+    public static SourceMetadata fromJson(InputStream in) throws IOException {
+        return readJsonReport(new SourceMetadata(), in);
+    }
+
+    /**
+     * Read a source metadata object from a JSON report file, reporting metrics.
+     * @param path           the report file
+     * @param metrics        the metrics listener to notify
+     * @return               the deserialized source metadata object
+     * @throws IOException   on read or parse error
+     */
+    public static SourceMetadata fromJson(Path path, MetricsListener metrics) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return fromJson(in, metrics);
+        }
+    }
+
+    /**
+     * Read a source metadata object from a JSON report stream, reporting metrics
+     * (parse time and elements per section, bytes read).
+     * @param in             the input stream (not closed by this method)
+     * @param metrics        the metrics listener to notify
+     * @return               the deserialized source metadata object
+     * @throws IOException   on read or parse error
+     */
+    public static SourceMetadata fromJson(InputStream in, MetricsListener metrics) throws IOException {
+        return readJsonReport(new SourceMetadata(), in, metrics);
+    }
+
+    /**
+     * Read a source metadata object from a binary report file.
+     * @param path           the report file
+     * @return               the deserialized source metadata object
+     * @throws IOException   on read error
+     */
+    public static SourceMetadata fromBinary(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return fromBinary(in);
+        }
+    }
+
+    /**
+     * Read a source metadata object from a binary report stream.
+     * @param in             the input stream (not closed by this method)
+     * @return               the deserialized source metadata object
+     * @throws IOException   on read error
+     */
+    public static SourceMetadata fromBinary(InputStream in) throws IOException {
+        return readBinaryReport(new SourceMetadata(), in);
+    }
+
+    @Override
+    protected boolean readSection(String section, JsonReportReader reader) throws IOException {
+        switch (section) {
+            case "Type":
+                reader.readElements(Type::new, types);
+                return true;
+            case "Field":
+                reader.readElements(Field::new, fields);
+                return true;
+            case "Function":
+                reader.readElements(Function::new, functions);
+                return true;
+            case "Variable":
+                reader.readElements(Variable::new, variables);
+                return true;
+            default:
+                return super.readSection(section, reader);
+        }
+    }
+
+    @Override
+    protected boolean readBinarySection(String section, BinaryDecoder decoder) throws IOException {
+        switch (section) {
+            case "Type":
+                decoder.readElements(BinaryLayouts.TYPE, types);
+                return true;
+            case "Field":
+                decoder.readElements(BinaryLayouts.FIELD, fields);
+                return true;
+            case "Function":
+                decoder.readElements(BinaryLayouts.FUNCTION, functions);
+                return true;
+            case "Variable":
+                decoder.readElements(BinaryLayouts.VARIABLE, variables);
+                return true;
+            default:
+                return super.readBinarySection(section, decoder);
+        }
+    }
+
+    @Override
+    protected BinaryLayout<?> getBinaryLayout(String section) {
+        switch (section) {
+            case "Type":
+                return BinaryLayouts.TYPE;
+            case "Field":
+                return BinaryLayouts.FIELD;
+            case "Function":
+                return BinaryLayouts.FUNCTION;
+            case "Variable":
+                return BinaryLayouts.VARIABLE;
+            default:
+                return super.getBinaryLayout(section);
+        }
+    }
+
+    /**
+     * Returns the token locations, as an immutable map that is kept up
+     * to date with the metadata.
+     * @return   a map from (non-null) tokens to (non-null) locations
+     */
     @Override
     public Map<String, Collection<Position>> getTokenLocations() {
-        Map<String, Collection<Position>> res = new HashMap<>();
-        for (Type type : types)
-            addTokenWithLocation(res, type.getName(), type.getPosition());
-        for (Field field : fields)
-            addTokenWithLocation(res, field.getName(), field.getPosition());
-        for (Function function : functions)
-            addTokenWithLocation(res, function.getName(), function.getPosition());
-        for (Variable v : variables)
-            addTokenWithLocation(res, v.getName(), v.getPosition());
-        return res;
+        return tokenIndex.asMap();
+    }
+
+    /**
+     * Returns the token index of this metadata object.
+     * @return   the token index
+     */
+    public TokenIndex getTokenIndex() {
+        return tokenIndex;
     }
 
     @Override
-    public void populateJsonReport(Map<String, List<?>> jsonReport) {
-        super.populateJsonReport(jsonReport);
+    protected void addReportSections(Map<String, List<?>> jsonReport) {
+        super.addReportSections(jsonReport);
         jsonReport.put(Type.class.getSimpleName(), types);
         jsonReport.put(Field.class.getSimpleName(), fields);
         jsonReport.put(Function.class.getSimpleName(), functions);
         jsonReport.put(Variable.class.getSimpleName(), variables);
     }
+
+    @Override
+    protected void describeReportSections(Map<String, ReportSection<?>> sections) {
+        super.describeReportSections(sections);
+        sections.put(Type.class.getSimpleName(), new ReportSection<>(types, SymbolWithId::getSymbolId));
+        sections.put(Field.class.getSimpleName(), new ReportSection<>(fields, SymbolWithId::getSymbolId));
+        sections.put(Function.class.getSimpleName(), new ReportSection<>(functions, SymbolWithId::getSymbolId));
+        sections.put(Variable.class.getSimpleName(), new ReportSection<>(variables, SymbolWithId::getSymbolId));
+    }
 }
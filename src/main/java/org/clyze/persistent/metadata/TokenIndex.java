@@ -0,0 +1,203 @@
+package org.clyze.persistent.metadata;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import org.clyze.persistent.model.Position;
+
+/**
+ * A persistent index from source tokens to their positions, kept up to
+ * date by listening to the metadata collections it tracks.
+ *
+ * The index is populated on first use; from then on, every element added
+ * to (or removed from) a tracked collection adds (or removes) its tokens.
+ * Tokens are taken from elements when they are added, so elements should
+ * not be renamed or moved while they are in a tracked collection.
+ *
+ * Queries return immutable values that can be shared freely; the map
+ * view is rebuilt only after changes. Indexes are not thread-safe.
+ */
+public class TokenIndex {
+
+    /**
+     * Extracts the tokens of an element.
+     *
+     * @param <T>   the type of the elements
+     */
+    public interface Tokenizer<T> {
+        /**
+         * Report the tokens of an element.
+         * @param element   the element
+         * @param sink      the receiver of (token, position) pairs (null values are ignored)
+         */
+        void tokens(T element, BiConsumer<String, Position> sink);
+    }
+
+    /** The tasks that populate the index from the tracked collections. */
+    private final List<Runnable> sources = new ArrayList<>();
+    /** If true, the index is populated and follows changes. */
+    private boolean active = false;
+    /** The positions of each token. */
+    private final Map<String, List<Position>> locations = new HashMap<>();
+    /** The tokens changed since the last snapshot. */
+    private final Set<String> changed = new HashSet<>();
+    /** The last immutable snapshot of the index (null if not created yet). */
+    private Map<String, Collection<Position>> snapshot = null;
+    /** The sorted tokens, for prefix lookups (null if stale). */
+    private String[] sortedTokens = null;
+
+    /**
+     * Track a collection of elements.
+     * @param elements    the collection to track
+     * @param tokenizer   the token extractor of the elements
+     * @param <T>         the type of the elements
+     * @param <C>         the type of the collection
+     * @return            the collection
+     */
+    public <T, C extends ObservableCollection<T>> C track(C elements, Tokenizer<? super T> tokenizer) {
+        sources.add(() -> {
+            for (T element : elements)
+                tokenizer.tokens(element, this::add);
+        });
+        elements.addListener(new ObservableCollection.Listener<T>() {
+            @Override
+            public void added(T element) {
+                if (active)
+                    tokenizer.tokens(element, TokenIndex.this::add);
+            }
+
+            @Override
+            public void removed(T element) {
+                if (active)
+                    tokenizer.tokens(element, TokenIndex.this::remove);
+            }
+        });
+        return elements;
+    }
+
+    private void activate() {
+        if (!active) {
+            active = true;
+            for (Runnable source : sources)
+                source.run();
+        }
+    }
+
+    private void add(String token, Position pos) {
+        if (token == null || pos == null)
+            return;
+        List<Position> positions = locations.get(token);
+        if (positions == null) {
+            positions = new ArrayList<>(1);
+            locations.put(token, positions);
+            sortedTokens = null;
+        }
+        positions.add(pos);
+        changed.add(token);
+    }
+
+    private void remove(String token, Position pos) {
+        if (token == null || pos == null)
+            return;
+        List<Position> positions = locations.get(token);
+        if (positions != null && positions.remove(pos)) {
+            if (positions.isEmpty()) {
+                locations.remove(token);
+                sortedTokens = null;
+            }
+            changed.add(token);
+        }
+    }
+
+    /**
+     * Returns the token locations as an immutable map.
+     * @return   a map from (non-null) tokens to (non-null) locations
+     */
+    public Map<String, Collection<Position>> asMap() {
+        activate();
+        if (snapshot == null || !changed.isEmpty()) {
+            Map<String, Collection<Position>> map;
+            if (snapshot == null) {
+                map = new HashMap<>(locations.size() * 4 / 3 + 1);
+                for (Map.Entry<String, List<Position>> entry : locations.entrySet())
+                    map.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+            } else {
+                map = new HashMap<>(snapshot);
+                for (String token : changed) {
+                    List<Position> positions = locations.get(token);
+                    if (positions == null)
+                        map.remove(token);
+                    else
+                        map.put(token, Collections.unmodifiableList(new ArrayList<>(positions)));
+                }
+            }
+            changed.clear();
+            snapshot = Collections.unmodifiableMap(map);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the locations of a token.
+     * @param token   the token
+     * @return        the (immutable) locations of the token
+     */
+    public Collection<Position> getLocations(String token) {
+        Collection<Position> positions = asMap().get(token);
+        return positions == null ? Collections.emptyList() : positions;
+    }
+
+    private String[] getSortedTokens() {
+        activate();
+        if (sortedTokens == null) {
+            sortedTokens = locations.keySet().toArray(new String[0]);
+            Arrays.sort(sortedTokens);
+        }
+        return sortedTokens;
+    }
+
+    /**
+     * Find the tokens that start with a prefix.
+     * @param prefix   the prefix
+     * @return         the tokens found, in lexicographic order
+     */
+    public List<String> tokensWithPrefix(String prefix) {
+        String[] tokens = getSortedTokens();
+        int from = Arrays.binarySearch(tokens, prefix);
+        if (from < 0)
+            from = -from - 1;
+        int to = from;
+        while (to < tokens.length && tokens[to].startsWith(prefix))
+            to++;
+        return Collections.unmodifiableList(Arrays.asList(tokens).subList(from, to));
+    }
+
+    /**
+     * Find tokens that fuzzily match a pattern: the characters of the
+     * pattern must appear in the token in the same order, ignoring case
+     * (e.g. "gTL" matches "getTokenLocations"). Tokens that start with
+     * the pattern come first, followed by shorter tokens.
+     * @param pattern   the pattern
+     * @param limit     the maximum number of tokens to return
+     * @return          the tokens found
+     */
+    public List<String> fuzzyMatch(String pattern, int limit) {
+        String[] tokens = getSortedTokens();
+        String lowerPattern = pattern.toLowerCase(Locale.ROOT);
+        List<String> matches = new ArrayList<>();
+        for (String token : tokens)
+            if (isSubsequence(lowerPattern, token.toLowerCase(Locale.ROOT)))
+                matches.add(token);
+        matches.sort(Comparator.comparing((String t) -> !t.regionMatches(true, 0, pattern, 0, pattern.length()))
+                .thenComparingInt(String::length)
+                .thenComparing(Comparator.naturalOrder()));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    private static boolean isSubsequence(String pattern, String s) {
+        int p = 0;
+        for (int i = 0; i < s.length() && p < pattern.length(); i++)
+            if (s.charAt(i) == pattern.charAt(p))
+                p++;
+        return p == pattern.length();
+    }
+}
@@ -0,0 +1,248 @@
+package org.clyze.persistent.metadata.jvm;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.clyze.persistent.model.SourceFile;
+import org.clyze.persistent.model.SymbolAlias;
+import org.clyze.persistent.model.Usage;
+import org.clyze.persistent.model.jvm.*;
+
+/**
+ * A JVM metadata collector for multi-threaded generators.
+ *
+ * Every thread adds elements to its own shard, so adding elements takes
+ * no locks and threads do not contend with each other. When all threads
+ * are done, {@link #toJvmMetadata()} merges the shards into a plain
+ * {@link JvmMetadata} object (removing duplicates).
+ *
+ * Merging must happen after all additions have completed and are visible
+ * to the merging thread (e.g. after joining the worker threads or after
+ * the tasks of an executor have finished).
+ */
+public class ConcurrentJvmMetadata {
+
+    /** All shards created so far. */
+    private final Queue<Shard> shards = new ConcurrentLinkedQueue<>();
+    /** The shard of the current thread. */
+    private final ThreadLocal<Shard> shard = ThreadLocal.withInitial(() -> {
+        Shard s = new Shard();
+        shards.add(s);
+        return s;
+    });
+
+    /** The elements added by a single thread. */
+    private static final class Shard {
+        final List<SourceFile> sourceFiles = new ArrayList<>();
+        final List<JvmClass> jvmClasses = new ArrayList<>();
+        final List<JvmField> jvmFields = new ArrayList<>();
+        final List<JvmMethod> jvmMethods = new ArrayList<>();
+        final List<JvmVariable> jvmVariables = new ArrayList<>();
+        final List<JvmMethodInvocation> jvmInvocations = new ArrayList<>();
+        final List<JvmHeapAllocation> jvmHeapAllocations = new ArrayList<>();
+        final List<Usage> usages = new ArrayList<>();
+        final List<SymbolAlias> aliases = new ArrayList<>();
+        final List<JvmStringConstant> jvmStringConstants = new ArrayList<>();
+    }
+
+    /**
+     * Add a source file.
+     * @param sourceFile   the source file
+     */
+    public void add(SourceFile sourceFile) {
+        shard.get().sourceFiles.add(sourceFile);
+    }
+
+    /**
+     * Add a class.
+     * @param jvmClass   the class
+     */
+    public void add(JvmClass jvmClass) {
+        shard.get().jvmClasses.add(jvmClass);
+    }
+
+    /**
+     * Add a field.
+     * @param jvmField   the field
+     */
+    public void add(JvmField jvmField) {
+        shard.get().jvmFields.add(jvmField);
+    }
+
+    /**
+     * Add a method.
+     * @param jvmMethod   the method
+     */
+    public void add(JvmMethod jvmMethod) {
+        shard.get().jvmMethods.add(jvmMethod);
+    }
+
+    /**
+     * Add a variable.
+     * @param jvmVariable   the variable
+     */
+    public void add(JvmVariable jvmVariable) {
+        shard.get().jvmVariables.add(jvmVariable);
+    }
+
+    /**
+     * Add a method invocation.
+     * @param invocation   the method invocation
+     */
+    public void add(JvmMethodInvocation invocation) {
+        shard.get().jvmInvocations.add(invocation);
+    }
+
+    /**
+     * Add a heap allocation.
+     * @param allocation   the heap allocation
+     */
+    public void add(JvmHeapAllocation allocation) {
+        shard.get().jvmHeapAllocations.add(allocation);
+    }
+
+    /**
+     * Add a usage.
+     * @param usage   the usage
+     */
+    public void add(Usage usage) {
+        shard.get().usages.add(usage);
+    }
+
+    /**
+     * Add an alias.
+     * @param alias   the alias
+     */
+    public void add(SymbolAlias alias) {
+        shard.get().aliases.add(alias);
+    }
+
+    /**
+     * Add a string constant.
+     * @param stringConstant   the string constant
+     */
+    public void add(JvmStringConstant stringConstant) {
+        shard.get().jvmStringConstants.add(stringConstant);
+    }
+
+    /**
+     * Add source files.
+     * @param sourceFiles   the source files
+     */
+    public void addSourceFiles(Collection<? extends SourceFile> sourceFiles) {
+        shard.get().sourceFiles.addAll(sourceFiles);
+    }
+
+    /**
+     * Add classes.
+     * @param jvmClasses   the classes
+     */
+    public void addClasses(Collection<? extends JvmClass> jvmClasses) {
+        shard.get().jvmClasses.addAll(jvmClasses);
+    }
+
+    /**
+     * Add fields.
+     * @param jvmFields   the fields
+     */
+    public void addFields(Collection<? extends JvmField> jvmFields) {
+        shard.get().jvmFields.addAll(jvmFields);
+    }
+
+    /**
+     * Add methods.
+     * @param jvmMethods   the methods
+     */
+    public void addMethods(Collection<? extends JvmMethod> jvmMethods) {
+        shard.get().jvmMethods.addAll(jvmMethods);
+    }
+
+    /**
+     * Add variables.
+     * @param jvmVariables   the variables
+     */
+    public void addVariables(Collection<? extends JvmVariable> jvmVariables) {
+        shard.get().jvmVariables.addAll(jvmVariables);
+    }
+
+    /**
+     * Add method invocations.
+     * @param invocations   the method invocations
+     */
+    public void addInvocations(Collection<? extends JvmMethodInvocation> invocations) {
+        shard.get().jvmInvocations.addAll(invocations);
+    }
+
+    /**
+     * Add heap allocations.
+     * @param allocations   the heap allocations
+     */
+    public void addHeapAllocations(Collection<? extends JvmHeapAllocation> allocations) {
+        shard.get().jvmHeapAllocations.addAll(allocations);
+    }
+
+    /**
+     * Add usages.
+     * @param usages   the usages
+     */
+    public void addUsages(Collection<? extends Usage> usages) {
+        shard.get().usages.addAll(usages);
+    }
+
+    /**
+     * Add aliases.
+     * @param aliases   the aliases
+     */
+    public void addAliases(Collection<? extends SymbolAlias> aliases) {
+        shard.get().aliases.addAll(aliases);
+    }
+
+    /**
+     * Add string constants.
+     * @param stringConstants   the string constants
+     */
+    public void addStringConstants(Collection<? extends JvmStringConstant> stringConstants) {
+        shard.get().jvmStringConstants.addAll(stringConstants);
+    }
+
+    /**
+     * Add all elements of a metadata object.
+     * @param metadata   the metadata
+     */
+    public void addAll(JvmMetadata metadata) {
+        Shard s = shard.get();
+        s.sourceFiles.addAll(metadata.sourceFiles);
+        s.jvmClasses.addAll(metadata.jvmClasses);
+        s.jvmFields.addAll(metadata.jvmFields);
+        s.jvmMethods.addAll(metadata.jvmMethods);
+        s.jvmVariables.addAll(metadata.jvmVariables);
+        s.jvmInvocations.addAll(metadata.jvmInvocations);
+        s.jvmHeapAllocations.addAll(metadata.jvmHeapAllocations);
+        s.usages.addAll(metadata.usages);
+        s.aliases.addAll(metadata.aliases);
+        s.jvmStringConstants.addAll(metadata.jvmStringConstants);
+    }
+
+    /**
+     * Merge the elements added by all threads.
+     * @return   a new metadata object containing all elements
+     */
+    public JvmMetadata toJvmMetadata() {
+        JvmMetadata metadata = new JvmMetadata();
+        Set<SourceFile> sourceFiles = new LinkedHashSet<>();
+        for (Shard s : shards) {
+            sourceFiles.addAll(s.sourceFiles);
+            metadata.jvmClasses.addAll(s.jvmClasses);
+            metadata.jvmFields.addAll(s.jvmFields);
+            metadata.jvmMethods.addAll(s.jvmMethods);
+            metadata.jvmVariables.addAll(s.jvmVariables);
+            metadata.jvmInvocations.addAll(s.jvmInvocations);
+            metadata.jvmHeapAllocations.addAll(s.jvmHeapAllocations);
+            metadata.usages.addAll(s.usages);
+            metadata.aliases.addAll(s.aliases);
+            metadata.jvmStringConstants.addAll(s.jvmStringConstants);
+        }
+        metadata.sourceFiles.addAll(sourceFiles);
+        return metadata;
+    }
+}
@@ -0,0 +1,78 @@
+package org.clyze.persistent.metadata.jvm;
+
+import org.clyze.persistent.metadata.BinaryLayout;
+import org.clyze.persistent.metadata.BinaryLayouts;
+import org.clyze.persistent.model.SymbolAlias;
+import org.clyze.persistent.model.Usage;
+import org.clyze.persistent.model.UsageKind;
+import org.clyze.persistent.model.jvm.*;
+
+/**
+ * The binary layouts of the JVM model elements.
+ */
+final class JvmBinaryLayouts {
+
+    static final BinaryLayout<JvmClass> CLASS = BinaryLayouts.type(JvmClass::new)
+            .string(JvmClass::getPackageName, JvmClass::setPackageName)
+            .flags(JvmClass::getModifiers, JvmClass::setModifiers, masks(JvmClass.class))
+            .string(JvmClass::getDeclaringSymbolId, JvmClass::setDeclaringSymbolId)
+            .number(JvmClass::getSizeInBytes, JvmClass::setSizeInBytes)
+            .strings(JvmClass::getSuperTypes, JvmClass::setSuperTypes)
+            .build();
+
+    static final BinaryLayout<JvmField> FIELD = BinaryLayouts.field(JvmField::new)
+            .string(JvmField::getType, JvmField::setType)
+            .flags(JvmField::getModifiers, JvmField::setModifiers, masks(JvmField.class))
+            .string(JvmField::getDeclaringClassId, JvmField::setDeclaringClassId)
+            .build();
+
+    static final BinaryLayout<JvmMethod> METHOD = BinaryLayouts.function(JvmMethod::new)
+            .string(JvmMethod::getReturnType, JvmMethod::setReturnType)
+            .strings(m -> BinaryLayouts.asList(m.getParamTypes()), (m, l) -> m.setParamTypes(BinaryLayouts.asArray(l)))
+            .flags(JvmMethod::getModifiers, JvmMethod::setModifiers, masks(JvmMethod.class))
+            .string(JvmMethod::getDeclaringClassId, JvmMethod::setDeclaringClassId)
+            .build();
+
+    static final BinaryLayout<JvmVariable> VARIABLE = BinaryLayouts.variable(JvmVariable::new)
+            .string(JvmVariable::getType, JvmVariable::setType)
+            .string(JvmVariable::getDeclaringMethodId, JvmVariable::setDeclaringMethodId)
+            .flags(JvmVariable::getModifiers, JvmVariable::setModifiers, masks(JvmVariable.class))
+            .build();
+
+    static final BinaryLayout<JvmHeapAllocation> HEAP_ALLOCATION = BinaryLayouts.symbolWithId(JvmHeapAllocation::new)
+            .string(JvmHeapAllocation::getAllocatedTypeId, JvmHeapAllocation::setAllocatedTypeId)
+            .string(JvmHeapAllocation::getAllocatingMethodId, JvmHeapAllocation::setAllocatingMethodId)
+            .flags(JvmHeapAllocation::getModifiers, JvmHeapAllocation::setModifiers, masks(JvmHeapAllocation.class))
+            .build();
+
+    static final BinaryLayout<JvmMethodInvocation> METHOD_INVOCATION = BinaryLayouts.symbolWithId(JvmMethodInvocation::new)
+            .string(JvmMethodInvocation::getName, JvmMethodInvocation::setName)
+            .string(JvmMethodInvocation::getTargetType, JvmMethodInvocation::setTargetType)
+            .string(JvmMethodInvocation::getTargetReturnType, JvmMethodInvocation::setTargetReturnType)
+            .string(JvmMethodInvocation::getTargetParamTypes, JvmMethodInvocation::setTargetParamTypes)
+            .string(JvmMethodInvocation::getTargetMethodId, JvmMethodInvocation::setTargetMethodId)
+            .string(JvmMethodInvocation::getInvokingMethodId, JvmMethodInvocation::setInvokingMethodId)
+            .flags(JvmMethodInvocation::getModifiers, JvmMethodInvocation::setModifiers, masks(JvmMethodInvocation.class))
+            .build();
+
+    static final BinaryLayout<JvmStringConstant> STRING_CONSTANT = BinaryLayouts.symbol(JvmStringConstant::new)
+            .string(JvmStringConstant::getFieldId, JvmStringConstant::setFieldId)
+            .string(JvmStringConstant::getValue, JvmStringConstant::setValue)
+            .build();
+
+    static final BinaryLayout<Usage> USAGE = BinaryLayouts.symbolWithId(Usage::new)
+            .enumeration(UsageKind.class, Usage::getUsageKind, Usage::setUsageKind)
+            .string(Usage::getReferenceId, Usage::setReferenceId)
+            .build();
+
+    static final BinaryLayout<SymbolAlias> ALIAS = BinaryLayouts.symbolWithId(SymbolAlias::new)
+            .string(SymbolAlias::getOriginId, SymbolAlias::setOriginId)
+            .build();
+
+    private JvmBinaryLayouts() {}
+
+    /** Returns the modifier bits of an element type, in flag order. */
+    private static int[] masks(Class<?> type) {
+        return JvmModifiers.flagsOf(type).stream().mapToInt(JvmModifiers.Flag::getMask).toArray();
+    }
+}
@@ -0,0 +1,236 @@
+package org.clyze.persistent.metadata.jvm;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+import org.clyze.persistent.metadata.IntRelation;
+import org.clyze.persistent.model.jvm.JvmMethod;
+import org.clyze.persistent.model.jvm.JvmMethodInvocation;
+
+/**
+ * The call graph of JVM metadata, from the invoking method to the target
+ * method of every invocation (invocations without a target method id are
+ * skipped). Methods get dense ids in a {@link SymbolDictionary}: the
+ * methods of the metadata sorted by symbol id, followed by the invoking
+ * and target methods that are not in the metadata (e.g. library methods).
+ *
+ * Callees and callers are kept as {@link IntRelation}s, so the graph takes
+ * two ints per call edge and two ints per method, and queries do not scan
+ * the invocations. The graph is a snapshot of the metadata when it was
+ * built.
+ */
+public final class JvmCallGraph {
+
+    private final SymbolDictionary methods;
+    private final IntRelation callees;
+    private final IntRelation callers;
+
+    private JvmCallGraph(SymbolDictionary methods, IntRelation callees) {
+        this.methods = methods;
+        this.callees = callees;
+        this.callers = callees.inverse(methods.size());
+    }
+
+    /**
+     * Build the call graph of JVM metadata.
+     * @param metadata   the metadata
+     * @return           the call graph
+     */
+    public static JvmCallGraph of(JvmMetadata metadata) {
+        SymbolDictionary methods = new SymbolDictionary();
+        for (JvmMethod method : JvmMetadata.getSortedBySymbolId(metadata.jvmMethods))
+            if (method.getSymbolId() != null)
+                methods.intern(method.getSymbolId());
+        List<JvmMethodInvocation> invocations = JvmMetadata.getSortedBySymbolId(metadata.jvmInvocations);
+        for (JvmMethodInvocation invocation : invocations)
+            if (invocation.getInvokingMethodId() != null && invocation.getTargetMethodId() != null) {
+                methods.intern(invocation.getInvokingMethodId());
+                methods.intern(invocation.getTargetMethodId());
+            }
+        IntRelation.Builder builder = new IntRelation.Builder(methods.size());
+        for (JvmMethodInvocation invocation : invocations)
+            if (invocation.getInvokingMethodId() != null && invocation.getTargetMethodId() != null)
+                builder.add(methods.getId(invocation.getInvokingMethodId()), methods.getId(invocation.getTargetMethodId()));
+        return new JvmCallGraph(methods, builder.build());
+    }
+
+    /**
+     * Returns the dictionary of the method ids of the graph.
+     * @return   the dictionary
+     */
+    public SymbolDictionary getMethods() {
+        return methods;
+    }
+
+    /**
+     * Returns the call edges, from callers to callees.
+     * @return   the relation over method ids
+     */
+    public IntRelation getCallees() {
+        return callees;
+    }
+
+    /**
+     * Returns the call edges, from callees to callers.
+     * @return   the relation over method ids
+     */
+    public IntRelation getCallers() {
+        return callers;
+    }
+
+    /**
+     * Returns the methods that a method calls.
+     * @param methodId   the symbol id of the method
+     * @return           the symbol ids of the callees (empty for unknown methods)
+     */
+    public List<String> getCallees(String methodId) {
+        return toSymbols(callees, methods.getId(methodId));
+    }
+
+    /**
+     * Returns the methods that call a method.
+     * @param methodId   the symbol id of the method
+     * @return           the symbol ids of the callers (empty for unknown methods)
+     */
+    public List<String> getCallers(String methodId) {
+        return toSymbols(callers, methods.getId(methodId));
+    }
+
+    private List<String> toSymbols(IntRelation relation, int method) {
+        List<String> symbols = new ArrayList<>(relation.degree(method));
+        relation.forEachTarget(method, id -> symbols.add(methods.getSymbol(id)));
+        return symbols;
+    }
+
+    /**
+     * Returns the methods that are transitively reachable from some entry
+     * points (including the entry points). The graph is traversed breadth
+     * first, one level at a time; in parallel mode, every level is
+     * expanded in parallel (on the common fork-join pool).
+     * @param entryPoints   the method ids of the entry points
+     * @param parallel      if true, expand every level in parallel
+     * @return              the method ids of the reachable methods
+     */
+    public BitSet getReachable(int[] entryPoints, boolean parallel) {
+        int size = methods.size();
+        AtomicLongArray visited = new AtomicLongArray((size + 63) >>> 6);
+        int[] frontier = IntStream.of(entryPoints).filter(method -> {
+            if (method < 0 || method >= size)
+                throw new IllegalArgumentException("Unknown method: " + method);
+            return visit(visited, method);
+        }).toArray();
+        while (frontier.length > 0) {
+            IntStream level = IntStream.of(frontier);
+            frontier = (parallel ? level.parallel() : level).flatMap(method -> {
+                IntStream.Builder next = IntStream.builder();
+                callees.forEachTarget(method, callee -> {
+                    if (visit(visited, callee))
+                        next.add(callee);
+                });
+                return next.build();
+            }).toArray();
+        }
+        long[] words = new long[visited.length()];
+        for (int i = 0; i < words.length; i++)
+            words[i] = visited.get(i);
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * Returns the methods that are transitively reachable from some entry
+     * points (see {@link #getReachable(int[], boolean)}).
+     * @param entryPoints   the symbol ids of the entry points
+     * @param parallel      if true, expand every level in parallel
+     * @return              the symbol ids of the reachable methods, in method id order
+     */
+    public Set<String> getReachable(Collection<String> entryPoints, boolean parallel) {
+        int[] ids = new int[entryPoints.size()];
+        int i = 0;
+        for (String entryPoint : entryPoints) {
+            ids[i] = methods.getId(entryPoint);
+            if (ids[i++] == SymbolDictionary.NONE)
+                throw new IllegalArgumentException("Unknown entry point: " + entryPoint);
+        }
+        Set<String> reachable = new LinkedHashSet<>();
+        BitSet reached = getReachable(ids, parallel);
+        for (int method = reached.nextSetBit(0); method >= 0; method = reached.nextSetBit(method + 1))
+            reachable.add(methods.getSymbol(method));
+        return reachable;
+    }
+
+    /**
+     * Mark a method as visited.
+     * @return   true if the method was not visited before
+     */
+    private static boolean visit(AtomicLongArray visited, int method) {
+        int word = method >>> 6;
+        long bit = 1L << method;
+        while (true) {
+            long old = visited.get(word);
+            if ((old & bit) != 0)
+                return false;
+            if (visited.compareAndSet(word, old, old | bit))
+                return true;
+        }
+    }
+
+    /**
+     * Compute the strongly connected components of the graph (Tarjan's
+     * algorithm, with an explicit stack instead of recursion so that deep
+     * call chains do not overflow the thread stack). Components are
+     * numbered in reverse topological order: if a method calls a method of
+     * another component, the callee's component has a smaller number.
+     * @return   the component of every method id
+     */
+    public int[] getStronglyConnectedComponents() {
+        int size = methods.size();
+        int[] component = new int[size];
+        Arrays.fill(component, -1);
+        // The discovery order of every method (0: not visited) and the
+        // lowest discovery order it reaches on the stack.
+        int[] order = new int[size];
+        int[] low = new int[size];
+        int[] stack = new int[size];
+        int stackSize = 0;
+        // The traversal: the methods being visited and their next callee.
+        int[] path = new int[size];
+        int[] nextCallee = new int[size];
+        int pathSize = 0;
+        int visited = 0, components = 0;
+        for (int root = 0; root < size; root++) {
+            if (order[root] != 0)
+                continue;
+            path[pathSize++] = root;
+            order[root] = low[root] = ++visited;
+            stack[stackSize++] = root;
+            while (pathSize > 0) {
+                int method = path[pathSize - 1];
+                if (nextCallee[method] < callees.degree(method)) {
+                    int callee = callees.target(method, nextCallee[method]++);
+                    if (order[callee] == 0) {
+                        path[pathSize++] = callee;
+                        order[callee] = low[callee] = ++visited;
+                        stack[stackSize++] = callee;
+                    } else if (component[callee] == -1)
+                        low[method] = Math.min(low[method], order[callee]);
+                    continue;
+                }
+                pathSize--;
+                if (pathSize > 0) {
+                    int caller = path[pathSize - 1];
+                    low[caller] = Math.min(low[caller], low[method]);
+                }
+                if (low[method] == order[method]) {
+                    int member;
+                    do {
+                        member = stack[--stackSize];
+                        component[member] = components;
+                    } while (member != method);
+                    components++;
+                }
+            }
+        }
+        return component;
+    }
+}
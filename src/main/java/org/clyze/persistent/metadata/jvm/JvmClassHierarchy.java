@@ -0,0 +1,251 @@
+package org.clyze.persistent.metadata.jvm;
+
+import java.util.*;
+
+import org.clyze.persistent.metadata.IntRelation;
+import org.clyze.persistent.model.jvm.JvmClass;
+
+/**
+ * The class hierarchy of JVM metadata, from the super types of every
+ * class. Types get dense ids in a {@link SymbolDictionary}: the classes
+ * in the order they were added (by symbol id, for {@link #of(JvmMetadata)}),
+ * with super types that are not classes of the metadata (e.g.
+ * java.lang.Object) added as they are found.
+ *
+ * The transitive super types of every type are precomputed as a sorted
+ * int array, so subtype checks are a binary search over the (few)
+ * ancestors of a type and take no graph walks; transitive and direct
+ * subtypes are the inverse relations, built on first use. Adding classes
+ * recomputes only the ancestors of the added classes and of the
+ * subtypes of changed types.
+ *
+ * Hierarchies are not thread-safe.
+ */
+public final class JvmClassHierarchy {
+
+    private static final int[] NO_TYPES = new int[0];
+
+    private final SymbolDictionary types = new SymbolDictionary();
+    /** The direct super types of every type, sorted. */
+    private int[][] directSupertypes = new int[16][];
+    /** The transitive super types of every type (excluding the type), sorted. */
+    private int[][] supertypes = new int[16][];
+    /** The inverse of {@link #directSupertypes}, or null if not computed yet. */
+    private IntRelation directSubtypes = null;
+    /** The inverse of {@link #supertypes}, or null if not computed yet. */
+    private IntRelation subtypes = null;
+
+    /**
+     * Build the class hierarchy of JVM metadata.
+     * @param metadata   the metadata
+     * @return           the class hierarchy
+     */
+    public static JvmClassHierarchy of(JvmMetadata metadata) {
+        JvmClassHierarchy hierarchy = new JvmClassHierarchy();
+        hierarchy.addClasses(JvmMetadata.getSortedBySymbolId(metadata.jvmClasses));
+        return hierarchy;
+    }
+
+    /**
+     * Add classes to the hierarchy (or replace the super types of classes
+     * that were added before). Only the super types of the added classes
+     * and of the subtypes of classes whose super types changed are
+     * recomputed.
+     * @param classes   the classes to add
+     */
+    public void addClasses(Collection<? extends JvmClass> classes) {
+        int oldSize = types.size();
+        BitSet changed = new BitSet();
+        for (JvmClass jvmClass : classes) {
+            if (jvmClass.getSymbolId() == null)
+                continue;
+            int type = intern(jvmClass.getSymbolId());
+            int[] supers = NO_TYPES;
+            if (jvmClass.getSuperTypes() != null) {
+                supers = new int[jvmClass.getSuperTypes().size()];
+                for (int i = 0; i < supers.length; i++)
+                    supers[i] = intern(jvmClass.getSuperTypes().get(i));
+                supers = Arrays.stream(supers).sorted().distinct().toArray();
+            }
+            if (!Arrays.equals(supers, directSupertypes[type])) {
+                directSupertypes[type] = supers;
+                changed.set(type);
+            }
+        }
+        if (changed.isEmpty() && types.size() == oldSize)
+            return;
+
+        // The new types and the subtypes of changed types have stale ancestors.
+        // New types have no old subtypes, so the old subtype relation (over
+        // the old types) is only needed when old types changed.
+        BitSet stale = new BitSet();
+        stale.set(oldSize, types.size());
+        int first = changed.nextSetBit(0);
+        if (first >= 0 && first < oldSize) {
+            IntRelation oldSubtypes = subtypes != null ? subtypes : invert(supertypes, oldSize);
+            for (int type = first; type >= 0 && type < oldSize; type = changed.nextSetBit(type + 1)) {
+                stale.set(type);
+                oldSubtypes.forEachTarget(type, stale::set);
+            }
+        }
+        int[] mark = new int[types.size()];
+        int[] queue = new int[types.size()];
+        for (int type = stale.nextSetBit(0); type >= 0; type = stale.nextSetBit(type + 1))
+            supertypes[type] = computeSupertypes(type, mark, queue);
+        directSubtypes = null;
+        subtypes = null;
+    }
+
+    private int intern(String symbolId) {
+        int type = types.intern(symbolId);
+        if (type == directSupertypes.length) {
+            directSupertypes = Arrays.copyOf(directSupertypes, 2 * type);
+            supertypes = Arrays.copyOf(supertypes, 2 * type);
+        }
+        if (directSupertypes[type] == null)
+            directSupertypes[type] = NO_TYPES;
+        return type;
+    }
+
+    /**
+     * Collect the ancestors of a type, breadth first. Types are marked
+     * with their id plus one when they are queued, so malformed (cyclic)
+     * hierarchies are traversed once too.
+     */
+    private int[] computeSupertypes(int type, int[] mark, int[] queue) {
+        int head = 0, tail = 0;
+        mark[type] = type + 1;
+        queue[tail++] = type;
+        while (head < tail)
+            for (int supertype : directSupertypes[queue[head++]])
+                if (mark[supertype] != type + 1) {
+                    mark[supertype] = type + 1;
+                    queue[tail++] = supertype;
+                }
+        if (tail == 1)
+            return NO_TYPES;
+        int[] ancestors = Arrays.copyOfRange(queue, 1, tail);
+        Arrays.sort(ancestors);
+        return ancestors;
+    }
+
+    /**
+     * Returns the dictionary of the type ids of the hierarchy.
+     * @return   the dictionary
+     */
+    public SymbolDictionary getTypes() {
+        return types;
+    }
+
+    /**
+     * Returns true if a type is a subtype of another type (or the same type).
+     * @param subtype     the id of the subtype
+     * @param supertype   the id of the super type
+     * @return            true if the subtype is assignable to the super type
+     */
+    public boolean isSubtype(int subtype, int supertype) {
+        return subtype == supertype || Arrays.binarySearch(supertypes[checkType(subtype)], supertype) >= 0;
+    }
+
+    /**
+     * Returns true if a type is a subtype of another type (or the same type).
+     * @param subtype     the symbol id of the subtype
+     * @param supertype   the symbol id of the super type
+     * @return            true if the subtype is assignable to the super
+     *                    type (false for types that are not in the hierarchy)
+     */
+    public boolean isSubtype(String subtype, String supertype) {
+        int sub = types.getId(subtype), sup = types.getId(supertype);
+        return sub != SymbolDictionary.NONE && sup != SymbolDictionary.NONE && isSubtype(sub, sup);
+    }
+
+    /**
+     * Returns the direct super types of a type.
+     * @param type   the type id
+     * @return       a new array of the super type ids, in ascending order
+     */
+    public int[] getDirectSupertypes(int type) {
+        return directSupertypes[checkType(type)].clone();
+    }
+
+    /**
+     * Returns the transitive super types of a type (excluding the type).
+     * @param type   the type id
+     * @return       a new array of the super type ids, in ascending order
+     */
+    public int[] getSupertypes(int type) {
+        return supertypes[checkType(type)].clone();
+    }
+
+    /**
+     * Returns the direct subtypes of a type.
+     * @param type   the type id
+     * @return       a new array of the subtype ids, in ascending order
+     */
+    public int[] getDirectSubtypes(int type) {
+        checkType(type);
+        if (directSubtypes == null)
+            directSubtypes = invert(directSupertypes, types.size());
+        return directSubtypes.targets(type);
+    }
+
+    /**
+     * Returns the transitive subtypes of a type (excluding the type).
+     * @param type   the type id
+     * @return       a new array of the subtype ids, in ascending order
+     */
+    public int[] getSubtypes(int type) {
+        checkType(type);
+        return getSubtypes().targets(type);
+    }
+
+    /**
+     * Returns the transitive super types of a type (excluding the type).
+     * @param type   the symbol id of the type
+     * @return       the symbol ids of the super types (empty for types
+     *               that are not in the hierarchy)
+     */
+    public List<String> getSupertypes(String type) {
+        int id = types.getId(type);
+        return id == SymbolDictionary.NONE ? Collections.emptyList() : toSymbols(supertypes[id]);
+    }
+
+    /**
+     * Returns the transitive subtypes of a type (excluding the type).
+     * @param type   the symbol id of the type
+     * @return       the symbol ids of the subtypes (empty for types that
+     *               are not in the hierarchy)
+     */
+    public List<String> getSubtypes(String type) {
+        int id = types.getId(type);
+        return id == SymbolDictionary.NONE ? Collections.emptyList() : toSymbols(getSubtypes(id));
+    }
+
+    private IntRelation getSubtypes() {
+        if (subtypes == null)
+            subtypes = invert(supertypes, types.size());
+        return subtypes;
+    }
+
+    /** Invert a relation over the first types of the hierarchy. */
+    private static IntRelation invert(int[][] relation, int size) {
+        IntRelation.Builder builder = new IntRelation.Builder(size);
+        for (int type = 0; type < size; type++)
+            for (int supertype : relation[type])
+                builder.add(supertype, type);
+        return builder.build();
+    }
+
+    private List<String> toSymbols(int[] ids) {
+        List<String> symbols = new ArrayList<>(ids.length);
+        for (int id : ids)
+            symbols.add(types.getSymbol(id));
+        return symbols;
+    }
+
+    private int checkType(int type) {
+        if (type < 0 || type >= types.size())
+            throw new IndexOutOfBoundsException("Unknown type: " + type);
+        return type;
+    }
+}
@@ -1,9 +1,21 @@
 package org.clyze.persistent.metadata.jvm;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
+import org.clyze.persistent.metadata.BinaryDecoder;
+import org.clyze.persistent.metadata.BinaryLayout;
+import org.clyze.persistent.metadata.JsonReportReader;
 import org.clyze.persistent.metadata.Metadata;
+import org.clyze.persistent.metadata.MetricsListener;
+import org.clyze.persistent.metadata.ObservableSet;
 import org.clyze.persistent.metadata.Printer;
+import org.clyze.persistent.metadata.ReportSection;
+import org.clyze.persistent.metadata.TokenIndex;
 import org.clyze.persistent.metadata.TokenLocator;
 import org.clyze.persistent.model.*;
 import org.clyze.persistent.model.jvm.*;
@@ -15,14 +27,20 @@ import org.clyze.persistent.model.jvm.*;
  * syntactic representation (e.g. Java source file, Jimple IR).
  */
 public class JvmMetadata extends Metadata implements TokenLocator {
+    /** The token index, following the classes, fields, methods and variables. */
+    private final TokenIndex tokenIndex = new TokenIndex();
     /** The program classes/interfaces. */
-    public final Set<JvmClass> jvmClasses = new HashSet<>();
+    public final Set<JvmClass> jvmClasses = tokenIndex.track(new ObservableSet<JvmClass>(), (jvmClass, tokens) -> {
+        // For classes, add both fully-qualified and simple names.
+        tokens.accept(jvmClass.getName(), jvmClass.getPosition());
+        tokens.accept(jvmClass.getId(), jvmClass.getPosition());
+    });
     /** The class/interface fields. */
-    public final Set<JvmField> jvmFields = new HashSet<>();
+    public final Set<JvmField> jvmFields = tokenIndex.track(new ObservableSet<JvmField>(), (jvmField, tokens) -> tokens.accept(jvmField.getName(), jvmField.getPosition()));
     /** The class/interface methods. */
-    public final Set<JvmMethod> jvmMethods = new HashSet<>();
+    public final Set<JvmMethod> jvmMethods = tokenIndex.track(new ObservableSet<JvmMethod>(), (jvmMethod, tokens) -> tokens.accept(jvmMethod.getName(), jvmMethod.getPosition()));
     /** The local variables inside methods. */
-    public final Set<JvmVariable> jvmVariables = new HashSet<>();
+    public final Set<JvmVariable> jvmVariables = tokenIndex.track(new ObservableSet<JvmVariable>(), (jvmVariable, tokens) -> tokens.accept(jvmVariable.getName(), jvmVariable.getPosition()));
     /** The method invocation sites inside methods. */
     public final Set<JvmMethodInvocation> jvmInvocations = new HashSet<>();
     /** The heap allocation sites inside methods. */
@@ -42,47 +60,243 @@ public class JvmMetadata extends Metadata implements TokenLocator {
      */
     public static <T extends SymbolWithId> List<T> getSortedBySymbolId(Set<T> set) {
         List<T> ret = new ArrayList<>(set);
-        ret.sort(Comparator.comparing(SymbolWithId::getSymbolId));
+        ret.sort(null);
         return ret;
     }
 
+    /**
+     * Return a metadata collection sorted by id, optionally using parallel
+     * sorting. The result is the same in both modes.
+     * @param set        the collection of elements (that have unique ids)
+     * @param parallel   if true, sort in parallel
+     * @param <T>        the actual type of the set elements
+     * @return           the sorted output list
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends SymbolWithId> List<T> getSortedBySymbolId(Set<T> set, boolean parallel) {
+        if (!parallel)
+            return getSortedBySymbolId(set);
+        T[] array = (T[]) set.toArray(new SymbolWithId[0]);
+        Arrays.parallelSort(array);
+        return new ArrayList<>(Arrays.asList(array));
+    }
+
     /**
      * Create a JVM metadata object from a map representation for JSON data.
      * @param  map the map to use
      * @return the deserialized JVM metadata object
      */
-    @SuppressWarnings("unchecked")
+    @SuppressWarnings("try")
     public static JvmMetadata fromMap(Map<String, Object> map) {
         JvmMetadata metadata = new JvmMetadata();
-        Metadata.fillFromMap(metadata, map);
-        metadata.jvmClasses.addAll((List<JvmClass>) map.get(JvmClass.class.getSimpleName()));
-        metadata.jvmFields.addAll((List<JvmField>) map.get(JvmField.class.getSimpleName()));
-        metadata.jvmMethods.addAll((List<JvmMethod>) map.get(JvmMethod.class.getSimpleName()));
-        metadata.jvmVariables.addAll((List<JvmVariable>) map.get(JvmVariable.class.getSimpleName()));
-        metadata.jvmInvocations.addAll((List<JvmMethodInvocation>) map.get(JvmMethodInvocation.class.getSimpleName()));
-        metadata.jvmHeapAllocations.addAll((List<JvmHeapAllocation>) map.get(JvmHeapAllocation.class.getSimpleName()));
-        metadata.usages.addAll((List<Usage>) map.get(Usage.class.getSimpleName()));
-        metadata.jvmStringConstants.addAll((List<JvmStringConstant>) map.get(JvmStringConstant.class.getSimpleName()));
-        metadata.aliases.addAll((List<SymbolAlias>) map.get(SymbolAlias.class.getSimpleName()));
+        try (StringPool.Scope scope = StringPool.enterIfInactive()) {
+            Metadata.fillFromMap(metadata, map);
+            addFromMaps(metadata.jvmClasses, map.get(JvmClass.class.getSimpleName()), JvmClass::new);
+            addFromMaps(metadata.jvmFields, map.get(JvmField.class.getSimpleName()), JvmField::new);
+            addFromMaps(metadata.jvmMethods, map.get(JvmMethod.class.getSimpleName()), JvmMethod::new);
+            addFromMaps(metadata.jvmVariables, map.get(JvmVariable.class.getSimpleName()), JvmVariable::new);
+            addFromMaps(metadata.jvmInvocations, map.get(JvmMethodInvocation.class.getSimpleName()), JvmMethodInvocation::new);
+            addFromMaps(metadata.jvmHeapAllocations, map.get(JvmHeapAllocation.class.getSimpleName()), JvmHeapAllocation::new);
+            addFromMaps(metadata.usages, map.get(Usage.class.getSimpleName()), Usage::new);
+            addFromMaps(metadata.jvmStringConstants, map.get(JvmStringConstant.class.getSimpleName()), JvmStringConstant::new);
+            addFromMaps(metadata.aliases, map.get(SymbolAlias.class.getSimpleName()), SymbolAlias::new);
+        }
         return metadata;
     }
 
+    /**
+     * Create a JVM metadata object from a map representation for JSON data,
+     * reporting metrics (conversion time and elements per section).
+     * @param map       the map to use
+     * @param metrics   the metrics listener to notify
+     * @return          the deserialized JVM metadata object
+     */
+    public static JvmMetadata fromMap(Map<String, Object> map, MetricsListener metrics) {
+        return fromMap(map, JvmMetadata::fromMap, metrics);
+    }
+
+    /**
+     * Read a JVM metadata object from a JSON report file. The file is
+     * streamed and elements are bound directly to model objects.
+     * @param path           the report file
+     * @return               the deserialized JVM metadata object
+     * @throws IOException   on read or parse error
+     */
+    public static JvmMetadata fromJson(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return fromJson(in);
+        }
+    }
+
+    /**
+     * Read a JVM metadata object from a JSON report stream.
+     * @param in             the input stream (not closed by this method)
+     * @return               the deserialized JVM metadata object
+     * @throws IOException   on read or parse error
+     */
+    public static JvmMetadata fromJson(InputStream in) throws IOException {
+        return readJsonReport(new JvmMetadata(), in);
+    }
+
+    /**
+     * Read a JVM metadata object from a JSON report file, reporting metrics.
+     * @param path           the report file
+     * @param metrics        the metrics listener to notify
+     * @return               the deserialized JVM metadata object
+     * @throws IOException   on read or parse error
+     */
+    public static JvmMetadata fromJson(Path path, MetricsListener metrics) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return fromJson(in, metrics);
+        }
+    }
+
+    /**
+     * Read a JVM metadata object from a JSON report stream, reporting metrics
+     * (parse time and elements per section, bytes read).
+     * @param in             the input stream (not closed by this method)
+     * @param metrics        the metrics listener to notify
+     * @return               the deserialized JVM metadata object
+     * @throws IOException   on read or parse error
+     */
+    public static JvmMetadata fromJson(InputStream in, MetricsListener metrics) throws IOException {
+        return readJsonReport(new JvmMetadata(), in, metrics);
+    }
+
+    /**
+     * Read a JVM metadata object from a binary report file.
+     * @param path           the report file
+     * @return               the deserialized JVM metadata object
+     * @throws IOException   on read error
+     */
+    public static JvmMetadata fromBinary(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return fromBinary(in);
+        }
+    }
+
+    /**
+     * Read a JVM metadata object from a binary report stream.
+     * @param in             the input stream (not closed by this method)
+     * @return               the deserialized JVM metadata object
+     * @throws IOException   on read error
+     */
+    public static JvmMetadata fromBinary(InputStream in) throws IOException {
+        return readBinaryReport(new JvmMetadata(), in);
+    }
+
     @Override
-    public Map<String, Collection<Position>> getTokenLocations() {
-        Map<String, Collection<Position>> res = new HashMap<>();
-        // For classes, add both fully-qualified and simple names.
-        for (JvmClass jvmClass : jvmClasses) {
-            Position pos = jvmClass.getPosition();
-            addTokenWithLocation(res, jvmClass.getName(), pos);
-            addTokenWithLocation(res, jvmClass.getId(), pos);
+    protected boolean readSection(String section, JsonReportReader reader) throws IOException {
+        switch (section) {
+            case "JvmClass":
+                reader.readElements(JvmClass::new, jvmClasses);
+                return true;
+            case "JvmField":
+                reader.readElements(JvmField::new, jvmFields);
+                return true;
+            case "JvmMethod":
+                reader.readElements(JvmMethod::new, jvmMethods);
+                return true;
+            case "JvmVariable":
+                reader.readElements(JvmVariable::new, jvmVariables);
+                return true;
+            case "JvmHeapAllocation":
+                reader.readElements(JvmHeapAllocation::new, jvmHeapAllocations);
+                return true;
+            case "JvmMethodInvocation":
+                reader.readElements(JvmMethodInvocation::new, jvmInvocations);
+                return true;
+            case "JvmStringConstant":
+                reader.readElements(JvmStringConstant::new, jvmStringConstants);
+                return true;
+            case "Usage":
+                reader.readElements(Usage::new, usages);
+                return true;
+            case "SymbolAlias":
+                reader.readElements(SymbolAlias::new, aliases);
+                return true;
+            default:
+                return super.readSection(section, reader);
         }
-        for (JvmField jvmField : jvmFields)
-            addTokenWithLocation(res, jvmField.getName(), jvmField.getPosition());
-        for (JvmMethod jvmMethod : jvmMethods)
-            addTokenWithLocation(res, jvmMethod.getName(), jvmMethod.getPosition());
-        for (JvmVariable jvmVariable : jvmVariables)
-            addTokenWithLocation(res, jvmVariable.getName(), jvmVariable.getPosition());
-        return res;
+    }
+
+    @Override
+    protected boolean readBinarySection(String section, BinaryDecoder decoder) throws IOException {
+        switch (section) {
+            case "JvmClass":
+                decoder.readElements(JvmBinaryLayouts.CLASS, jvmClasses);
+                return true;
+            case "JvmField":
+                decoder.readElements(JvmBinaryLayouts.FIELD, jvmFields);
+                return true;
+            case "JvmMethod":
+                decoder.readElements(JvmBinaryLayouts.METHOD, jvmMethods);
+                return true;
+            case "JvmVariable":
+                decoder.readElements(JvmBinaryLayouts.VARIABLE, jvmVariables);
+                return true;
+            case "JvmHeapAllocation":
+                decoder.readElements(JvmBinaryLayouts.HEAP_ALLOCATION, jvmHeapAllocations);
+                return true;
+            case "JvmMethodInvocation":
+                decoder.readElements(JvmBinaryLayouts.METHOD_INVOCATION, jvmInvocations);
+                return true;
+            case "JvmStringConstant":
+                decoder.readElements(JvmBinaryLayouts.STRING_CONSTANT, jvmStringConstants);
+                return true;
+            case "Usage":
+                decoder.readElements(JvmBinaryLayouts.USAGE, usages);
+                return true;
+            case "SymbolAlias":
+                decoder.readElements(JvmBinaryLayouts.ALIAS, aliases);
+                return true;
+            default:
+                return super.readBinarySection(section, decoder);
+        }
+    }
+
+    @Override
+    protected BinaryLayout<?> getBinaryLayout(String section) {
+        switch (section) {
+            case "JvmClass":
+                return JvmBinaryLayouts.CLASS;
+            case "JvmField":
+                return JvmBinaryLayouts.FIELD;
+            case "JvmMethod":
+                return JvmBinaryLayouts.METHOD;
+            case "JvmVariable":
+                return JvmBinaryLayouts.VARIABLE;
+            case "JvmHeapAllocation":
+                return JvmBinaryLayouts.HEAP_ALLOCATION;
+            case "JvmMethodInvocation":
+                return JvmBinaryLayouts.METHOD_INVOCATION;
+            case "JvmStringConstant":
+                return JvmBinaryLayouts.STRING_CONSTANT;
+            case "Usage":
+                return JvmBinaryLayouts.USAGE;
+            case "SymbolAlias":
+                return JvmBinaryLayouts.ALIAS;
+            default:
+                return super.getBinaryLayout(section);
+        }
+    }
+
+    /**
+     * Returns the token locations, as an immutable map that is kept up
+     * to date with the metadata.
+     * @return   a map from (non-null) tokens to (non-null) locations
+     */
+    @Override
+    public Map<String, Collection<Position>> getTokenLocations() {
+        return tokenIndex.asMap();
+    }
+
+    /**
+     * Returns the token index of this metadata object.
+     * @return   the token index
+     */
+    public TokenIndex getTokenIndex() {
+        return tokenIndex;
     }
 
     /**
@@ -103,8 +317,8 @@ public class JvmMetadata extends Metadata implements TokenLocator {
     }
 
     @Override
-    public void populateJsonReport(Map<String, List<?>> jsonReport) {
-        super.populateJsonReport(jsonReport);
+    protected void addReportSections(Map<String, List<?>> jsonReport) {
+        super.addReportSections(jsonReport);
         // Sort sets (by id) so that output order is predictable.
         jsonReport.put("JvmClass", JvmMetadata.getSortedBySymbolId(jvmClasses));
         jsonReport.put("JvmField", JvmMetadata.getSortedBySymbolId(jvmFields));
@@ -116,4 +330,51 @@ public class JvmMetadata extends Metadata implements TokenLocator {
         jsonReport.put("Usage", JvmMetadata.getSortedBySymbolId(usages));
         jsonReport.put("SymbolAlias", JvmMetadata.getSortedBySymbolId(aliases));
     }
+
+    @Override
+    public void populateJsonReport(Map<String, List<?>> jsonReport, boolean parallel) {
+        if (!parallel) {
+            populateJsonReport(jsonReport);
+            return;
+        }
+        sort(true);
+        super.addReportSections(jsonReport);
+        // Sort all sections concurrently, then add them in the sequential
+        // order (the order of insertion may affect HashMap iteration order).
+        CompletableFuture<List<JvmClass>> classes = sortAsync(jvmClasses);
+        CompletableFuture<List<JvmField>> fields = sortAsync(jvmFields);
+        CompletableFuture<List<JvmMethod>> methods = sortAsync(jvmMethods);
+        CompletableFuture<List<JvmVariable>> variables = sortAsync(jvmVariables);
+        CompletableFuture<List<JvmHeapAllocation>> heapAllocations = sortAsync(jvmHeapAllocations);
+        CompletableFuture<List<JvmMethodInvocation>> invocations = sortAsync(jvmInvocations);
+        CompletableFuture<List<Usage>> sortedUsages = sortAsync(usages);
+        CompletableFuture<List<SymbolAlias>> sortedAliases = sortAsync(aliases);
+        jsonReport.put("JvmClass", classes.join());
+        jsonReport.put("JvmField", fields.join());
+        jsonReport.put("JvmMethod", methods.join());
+        jsonReport.put("JvmVariable", variables.join());
+        jsonReport.put("JvmHeapAllocation", heapAllocations.join());
+        jsonReport.put("JvmMethodInvocation", invocations.join());
+        jsonReport.put("JvmStringConstant", new ArrayList<>(jvmStringConstants));
+        jsonReport.put("Usage", sortedUsages.join());
+        jsonReport.put("SymbolAlias", sortedAliases.join());
+    }
+
+    @Override
+    protected void describeReportSections(Map<String, ReportSection<?>> sections) {
+        super.describeReportSections(sections);
+        sections.put("JvmClass", new ReportSection<>(jvmClasses, SymbolWithId::getSymbolId));
+        sections.put("JvmField", new ReportSection<>(jvmFields, SymbolWithId::getSymbolId));
+        sections.put("JvmMethod", new ReportSection<>(jvmMethods, SymbolWithId::getSymbolId));
+        sections.put("JvmVariable", new ReportSection<>(jvmVariables, SymbolWithId::getSymbolId));
+        sections.put("JvmHeapAllocation", new ReportSection<>(jvmHeapAllocations, SymbolWithId::getSymbolId));
+        sections.put("JvmMethodInvocation", new ReportSection<>(jvmInvocations, SymbolWithId::getSymbolId));
+        sections.put("JvmStringConstant", new ReportSection<>(jvmStringConstants, null));
+        sections.put("Usage", new ReportSection<>(usages, SymbolWithId::getSymbolId));
+        sections.put("SymbolAlias", new ReportSection<>(aliases, SymbolWithId::getSymbolId));
+    }
+
+    private static <T extends SymbolWithId> CompletableFuture<List<T>> sortAsync(Set<T> set) {
+        return CompletableFuture.supplyAsync(() -> getSortedBySymbolId(set, true));
+    }
 }
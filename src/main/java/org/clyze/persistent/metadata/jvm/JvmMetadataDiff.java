@@ -0,0 +1,204 @@
+package org.clyze.persistent.metadata.jvm;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.*;
+
+import org.clyze.persistent.metadata.JSONUtil;
+import org.clyze.persistent.metadata.JsonReportReader;
+import org.clyze.persistent.metadata.OutputStyle;
+import org.clyze.persistent.model.ItemFormat;
+import org.clyze.persistent.model.ItemImpl;
+import org.clyze.persistent.model.StringPool;
+
+/**
+ * Computes the differences between two JVM metadata reports, as a
+ * {@link JvmMetadataPatch}.
+ *
+ * Reports list the elements of every section sorted by symbol id (see
+ * {@link JvmMetadata#populateJsonReport(Map)}), so the two versions of a
+ * section are compared by a merge-join that reads each element once.
+ * When comparing report files, the elements are streamed and only the
+ * elements of the current symbol id (and the patch) are kept in memory;
+ * the only exception is the (unordered) string constants section.
+ */
+public final class JvmMetadataDiff {
+
+    private JvmMetadataDiff() {}
+
+    /**
+     * Compare two JVM metadata objects.
+     * @param oldMetadata   the old metadata
+     * @param newMetadata   the new metadata
+     * @return              the patch that turns the old metadata to the new one
+     */
+    public static JvmMetadataPatch diff(JvmMetadata oldMetadata, JvmMetadata newMetadata) {
+        JvmMetadataPatch patch = new JvmMetadataPatch();
+        try (Encoder encoder = new Encoder()) {
+            for (JvmMetadataPatch.Section<?> section : JvmMetadataPatch.SECTIONS)
+                diffSection(section, oldMetadata, newMetadata, patch, encoder);
+        } catch (IOException ex) {
+            // Not thrown, as in-memory sections are read and encoded without I/O and are sorted.
+            throw new UncheckedIOException(ex);
+        }
+        return patch;
+    }
+
+    private static <T extends ItemImpl> void diffSection(JvmMetadataPatch.Section<T> section, JvmMetadata oldMetadata,
+                                                         JvmMetadata newMetadata, JvmMetadataPatch patch,
+                                                         Encoder encoder) throws IOException {
+        Iterator<T> oldIter = section.sorted(oldMetadata).iterator();
+        Iterator<T> newIter = section.sorted(newMetadata).iterator();
+        diffSection(section, () -> oldIter.hasNext() ? oldIter.next() : null,
+                    () -> newIter.hasNext() ? newIter.next() : null, patch, encoder);
+    }
+
+    /**
+     * Compare two JVM metadata report files.
+     * @param oldReport      the old report
+     * @param newReport      the new report
+     * @return               the patch that turns the old metadata to the new one
+     * @throws IOException   on read or parse error
+     */
+    public static JvmMetadataPatch diff(Path oldReport, Path newReport) throws IOException {
+        try (InputStream oldIn = Files.newInputStream(oldReport);
+             InputStream newIn = Files.newInputStream(newReport)) {
+            return diff(oldIn, newIn);
+        }
+    }
+
+    /**
+     * Compare two JVM metadata JSON reports. Both reports must list their
+     * sections in the same order, as do reports written by the same
+     * version of {@link org.clyze.persistent.metadata.FileReporter}.
+     * Unknown sections are ignored.
+     * @param oldReport      the old report (not closed by this method)
+     * @param newReport      the new report (not closed by this method)
+     * @return               the patch that turns the old metadata to the new one
+     * @throws IOException   on read or parse error or if the reports are not sorted
+     */
+    @SuppressWarnings("try")
+    public static JvmMetadataPatch diff(InputStream oldReport, InputStream newReport) throws IOException {
+        JvmMetadataPatch patch = new JvmMetadataPatch();
+        try (StringPool.Scope scope = StringPool.enterIfInactive();
+             JsonReportReader oldReader = new JsonReportReader(oldReport);
+             JsonReportReader newReader = new JsonReportReader(newReport);
+             Encoder encoder = new Encoder()) {
+            while (true) {
+                String oldSection = oldReader.nextSection();
+                String newSection = newReader.nextSection();
+                if (oldSection == null && newSection == null)
+                    break;
+                if (!Objects.equals(oldSection, newSection))
+                    throw new IOException("Reports have different sections: " + oldSection + " and " + newSection);
+                JvmMetadataPatch.Section<?> section = JvmMetadataPatch.getSection(oldSection);
+                if (section != null)
+                    diffSection(section, oldReader, newReader, patch, encoder);
+            }
+        }
+        return patch;
+    }
+
+    private static <T extends ItemImpl> void diffSection(JvmMetadataPatch.Section<T> section, JsonReportReader oldReader,
+                                                         JsonReportReader newReader, JvmMetadataPatch patch,
+                                                         Encoder encoder) throws IOException {
+        diffSection(section, () -> oldReader.nextElement(section.factory),
+                    () -> newReader.nextElement(section.factory), patch, encoder);
+    }
+
+    private static <T extends ItemImpl> void diffSection(JvmMetadataPatch.Section<T> section, SectionCursor.Source<T> oldSource,
+                                                         SectionCursor.Source<T> newSource, JvmMetadataPatch patch,
+                                                         Encoder encoder) throws IOException {
+        JvmMetadataPatch.SectionPatch<T> sectionPatch = patch.getOrCreate(section);
+        if (section.key == null) {
+            diffUnordered(oldSource, newSource, sectionPatch);
+            return;
+        }
+        SectionCursor<T> oldCursor = new SectionCursor<>(section, oldSource, 0);
+        SectionCursor<T> newCursor = new SectionCursor<>(section, newSource, 1);
+        while (oldCursor.current != null || newCursor.current != null) {
+            int cmp = oldCursor.current == null ? 1
+                    : newCursor.current == null ? -1
+                    : oldCursor.key.compareTo(newCursor.key);
+            if (cmp < 0)
+                sectionPatch.removed.addAll(oldCursor.nextGroup());
+            else if (cmp > 0)
+                sectionPatch.added.addAll(newCursor.nextGroup());
+            else {
+                List<T> oldGroup = oldCursor.nextGroup();
+                List<T> newGroup = newCursor.nextGroup();
+                if (!sameElements(oldGroup, newGroup, encoder))
+                    sectionPatch.changed.addAll(newGroup);
+            }
+        }
+    }
+
+    private static <T extends ItemImpl> void diffUnordered(SectionCursor.Source<T> oldSource, SectionCursor.Source<T> newSource,
+                                                           JvmMetadataPatch.SectionPatch<T> sectionPatch) throws IOException {
+        Set<T> oldElements = new LinkedHashSet<>();
+        for (T element; (element = oldSource.next()) != null; )
+            oldElements.add(element);
+        for (T element; (element = newSource.next()) != null; )
+            if (!oldElements.remove(element))
+                sectionPatch.added.add(element);
+        sectionPatch.removed.addAll(oldElements);
+    }
+
+    /**
+     * Compare the elements of a symbol id. Elements are compared by all
+     * their properties (element equality only covers the properties that
+     * identify them), as encoded in reports; every element is encoded once.
+     */
+    private static <T extends ItemImpl> boolean sameElements(List<T> oldGroup, List<T> newGroup,
+                                                             Encoder encoder) throws IOException {
+        if (oldGroup.size() != newGroup.size())
+            return false;
+        if (oldGroup.size() == 1)
+            return Arrays.equals(encoder.encode(oldGroup.get(0)), encoder.encode(newGroup.get(0)));
+        // Count the encodings of the old elements and match the new ones against them.
+        Map<ByteBuffer, Integer> counts = new HashMap<>();
+        for (T oldElement : oldGroup)
+            counts.merge(ByteBuffer.wrap(encoder.encode(oldElement)), 1, Integer::sum);
+        for (T newElement : newGroup) {
+            ByteBuffer key = ByteBuffer.wrap(encoder.encode(newElement));
+            Integer count = counts.get(key);
+            if (count == null)
+                return false;
+            if (count == 1)
+                counts.remove(key);
+            else
+                counts.put(key, count - 1);
+        }
+        return true;
+    }
+
+    /** Encodes elements as compact report JSON, reusing a single buffer. */
+    private static final class Encoder implements AutoCloseable {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final JsonGenerator gen;
+
+        Encoder() throws IOException {
+            gen = JSONUtil.createGenerator(buffer, OutputStyle.COMPACT);
+            // Encode every element the same way, without separators between them.
+            gen.setRootValueSeparator(null);
+        }
+
+        byte[] encode(ItemImpl element) throws IOException {
+            buffer.reset();
+            element.writeJson(gen, ItemFormat.REPORT);
+            gen.flush();
+            return buffer.toByteArray();
+        }
+
+        @Override
+        public void close() throws IOException {
+            gen.close();
+        }
+    }
+}
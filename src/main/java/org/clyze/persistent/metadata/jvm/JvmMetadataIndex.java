@@ -0,0 +1,456 @@
+package org.clyze.persistent.metadata.jvm;
+
+import java.util.*;
+import java.util.function.Function;
+
+import org.clyze.persistent.model.SymbolAlias;
+import org.clyze.persistent.model.SymbolWithId;
+import org.clyze.persistent.model.Usage;
+import org.clyze.persistent.model.jvm.*;
+
+/**
+ * Lookup tables over JVM metadata: elements by symbol id and elements
+ * by the id of a related element (declaring class, declaring method,
+ * invoking/target method, referenced element, alias origin).
+ *
+ * An index can be built from a metadata object and then be kept up to
+ * date by passing every element added to (or removed from) the metadata
+ * to {@link #add} (or {@link #remove}). Lookups take constant time plus
+ * the size of their result; returned lists are read-only views. If
+ * distinct elements share a symbol id, lookups by symbol id return the
+ * earliest added one and lookups by related element return all of them.
+ *
+ * Indexes are not thread-safe.
+ */
+public class JvmMetadataIndex {
+
+    private final Table<JvmClass> classes = new Table<>();
+    private final Table<JvmField> fields = new Table<>();
+    private final Table<JvmMethod> methods = new Table<>();
+    private final Table<JvmVariable> variables = new Table<>();
+    private final Table<JvmMethodInvocation> invocations = new Table<>();
+    private final Table<JvmHeapAllocation> heapAllocations = new Table<>();
+    private final Table<Usage> usages = new Table<>();
+    private final Table<SymbolAlias> aliases = new Table<>();
+
+    private final MultiMap<JvmMethod> methodsByClass = new MultiMap<>(JvmMethod::getDeclaringClassId);
+    private final MultiMap<JvmField> fieldsByClass = new MultiMap<>(JvmField::getDeclaringClassId);
+    private final MultiMap<JvmVariable> variablesByMethod = new MultiMap<>(JvmVariable::getDeclaringMethodId);
+    private final MultiMap<JvmMethodInvocation> invocationsByInvokingMethod = new MultiMap<>(JvmMethodInvocation::getInvokingMethodId);
+    private final MultiMap<JvmMethodInvocation> invocationsByTargetMethod = new MultiMap<>(JvmMethodInvocation::getTargetMethodId);
+    private final MultiMap<JvmHeapAllocation> allocationsByMethod = new MultiMap<>(JvmHeapAllocation::getAllocatingMethodId);
+    private final MultiMap<Usage> usagesByReference = new MultiMap<>(Usage::getReferenceId);
+    private final MultiMap<SymbolAlias> aliasesByOrigin = new MultiMap<>(SymbolAlias::getOriginId);
+
+    /**
+     * Create an empty index.
+     */
+    public JvmMetadataIndex() {}
+
+    /**
+     * Create an index over the current contents of a metadata object.
+     * @param metadata   the metadata to index
+     */
+    public JvmMetadataIndex(JvmMetadata metadata) {
+        addAll(metadata);
+    }
+
+    /**
+     * Index all elements of a metadata object.
+     * @param metadata   the metadata to index
+     */
+    public void addAll(JvmMetadata metadata) {
+        metadata.jvmClasses.forEach(this::add);
+        metadata.jvmFields.forEach(this::add);
+        metadata.jvmMethods.forEach(this::add);
+        metadata.jvmVariables.forEach(this::add);
+        metadata.jvmInvocations.forEach(this::add);
+        metadata.jvmHeapAllocations.forEach(this::add);
+        metadata.usages.forEach(this::add);
+        metadata.aliases.forEach(this::add);
+    }
+
+    /**
+     * Index a class.
+     * @param jvmClass   the class
+     */
+    public void add(JvmClass jvmClass) {
+        classes.add(jvmClass);
+    }
+
+    /**
+     * Index a field.
+     * @param jvmField   the field
+     */
+    public void add(JvmField jvmField) {
+        if (fields.add(jvmField))
+            fieldsByClass.add(jvmField);
+    }
+
+    /**
+     * Index a method.
+     * @param jvmMethod   the method
+     */
+    public void add(JvmMethod jvmMethod) {
+        if (methods.add(jvmMethod))
+            methodsByClass.add(jvmMethod);
+    }
+
+    /**
+     * Index a variable.
+     * @param jvmVariable   the variable
+     */
+    public void add(JvmVariable jvmVariable) {
+        if (variables.add(jvmVariable))
+            variablesByMethod.add(jvmVariable);
+    }
+
+    /**
+     * Index a method invocation.
+     * @param invocation   the method invocation
+     */
+    public void add(JvmMethodInvocation invocation) {
+        if (invocations.add(invocation)) {
+            invocationsByInvokingMethod.add(invocation);
+            invocationsByTargetMethod.add(invocation);
+        }
+    }
+
+    /**
+     * Index a heap allocation.
+     * @param allocation   the heap allocation
+     */
+    public void add(JvmHeapAllocation allocation) {
+        if (heapAllocations.add(allocation))
+            allocationsByMethod.add(allocation);
+    }
+
+    /**
+     * Index a usage.
+     * @param usage   the usage
+     */
+    public void add(Usage usage) {
+        if (usages.add(usage))
+            usagesByReference.add(usage);
+    }
+
+    /**
+     * Index an alias.
+     * @param alias   the alias
+     */
+    public void add(SymbolAlias alias) {
+        if (aliases.add(alias))
+            aliasesByOrigin.add(alias);
+    }
+
+    /**
+     * Remove a class from the index.
+     * @param jvmClass   the class
+     */
+    public void remove(JvmClass jvmClass) {
+        classes.remove(jvmClass);
+    }
+
+    /**
+     * Remove a field from the index.
+     * @param jvmField   the field
+     */
+    public void remove(JvmField jvmField) {
+        if (fields.remove(jvmField))
+            fieldsByClass.remove(jvmField);
+    }
+
+    /**
+     * Remove a method from the index.
+     * @param jvmMethod   the method
+     */
+    public void remove(JvmMethod jvmMethod) {
+        if (methods.remove(jvmMethod))
+            methodsByClass.remove(jvmMethod);
+    }
+
+    /**
+     * Remove a variable from the index.
+     * @param jvmVariable   the variable
+     */
+    public void remove(JvmVariable jvmVariable) {
+        if (variables.remove(jvmVariable))
+            variablesByMethod.remove(jvmVariable);
+    }
+
+    /**
+     * Remove a method invocation from the index.
+     * @param invocation   the method invocation
+     */
+    public void remove(JvmMethodInvocation invocation) {
+        if (invocations.remove(invocation)) {
+            invocationsByInvokingMethod.remove(invocation);
+            invocationsByTargetMethod.remove(invocation);
+        }
+    }
+
+    /**
+     * Remove a heap allocation from the index.
+     * @param allocation   the heap allocation
+     */
+    public void remove(JvmHeapAllocation allocation) {
+        if (heapAllocations.remove(allocation))
+            allocationsByMethod.remove(allocation);
+    }
+
+    /**
+     * Remove a usage from the index.
+     * @param usage   the usage
+     */
+    public void remove(Usage usage) {
+        if (usages.remove(usage))
+            usagesByReference.remove(usage);
+    }
+
+    /**
+     * Remove an alias from the index.
+     * @param alias   the alias
+     */
+    public void remove(SymbolAlias alias) {
+        if (aliases.remove(alias))
+            aliasesByOrigin.remove(alias);
+    }
+
+    /**
+     * Find a class.
+     * @param symbolId   the symbol id of the class
+     * @return           the class or null if not found
+     */
+    public JvmClass getJvmClass(String symbolId) {
+        return classes.get(symbolId);
+    }
+
+    /**
+     * Find a field.
+     * @param symbolId   the symbol id of the field
+     * @return           the field or null if not found
+     */
+    public JvmField getJvmField(String symbolId) {
+        return fields.get(symbolId);
+    }
+
+    /**
+     * Find a method.
+     * @param symbolId   the symbol id of the method
+     * @return           the method or null if not found
+     */
+    public JvmMethod getJvmMethod(String symbolId) {
+        return methods.get(symbolId);
+    }
+
+    /**
+     * Find a variable.
+     * @param symbolId   the symbol id of the variable
+     * @return           the variable or null if not found
+     */
+    public JvmVariable getJvmVariable(String symbolId) {
+        return variables.get(symbolId);
+    }
+
+    /**
+     * Find a method invocation.
+     * @param symbolId   the symbol id of the invocation
+     * @return           the invocation or null if not found
+     */
+    public JvmMethodInvocation getJvmInvocation(String symbolId) {
+        return invocations.get(symbolId);
+    }
+
+    /**
+     * Find a heap allocation.
+     * @param symbolId   the symbol id of the heap allocation
+     * @return           the heap allocation or null if not found
+     */
+    public JvmHeapAllocation getJvmHeapAllocation(String symbolId) {
+        return heapAllocations.get(symbolId);
+    }
+
+    /**
+     * Find a usage.
+     * @param symbolId   the symbol id of the usage
+     * @return           the usage or null if not found
+     */
+    public Usage getUsage(String symbolId) {
+        return usages.get(symbolId);
+    }
+
+    /**
+     * Find an alias.
+     * @param symbolId   the symbol id of the alias
+     * @return           the alias or null if not found
+     */
+    public SymbolAlias getAlias(String symbolId) {
+        return aliases.get(symbolId);
+    }
+
+    /**
+     * Find the methods declared by a class.
+     * @param classId   the symbol id of the class
+     * @return          the methods of the class
+     */
+    public List<JvmMethod> getMethodsOf(String classId) {
+        return methodsByClass.get(classId);
+    }
+
+    /**
+     * Find the fields declared by a class.
+     * @param classId   the symbol id of the class
+     * @return          the fields of the class
+     */
+    public List<JvmField> getFieldsOf(String classId) {
+        return fieldsByClass.get(classId);
+    }
+
+    /**
+     * Find the variables declared in a method.
+     * @param methodId   the symbol id of the method
+     * @return           the variables of the method
+     */
+    public List<JvmVariable> getVariablesOf(String methodId) {
+        return variablesByMethod.get(methodId);
+    }
+
+    /**
+     * Find the invocations that appear inside a method.
+     * @param methodId   the symbol id of the invoking method
+     * @return           the invocations inside the method
+     */
+    public List<JvmMethodInvocation> getInvocationsIn(String methodId) {
+        return invocationsByInvokingMethod.get(methodId);
+    }
+
+    /**
+     * Find the invocations that target a method.
+     * @param methodId   the symbol id of the target method
+     * @return           the invocations of the method
+     */
+    public List<JvmMethodInvocation> getInvocationsOf(String methodId) {
+        return invocationsByTargetMethod.get(methodId);
+    }
+
+    /**
+     * Find the heap allocations that appear inside a method.
+     * @param methodId   the symbol id of the allocating method
+     * @return           the heap allocations of the method
+     */
+    public List<JvmHeapAllocation> getHeapAllocationsIn(String methodId) {
+        return allocationsByMethod.get(methodId);
+    }
+
+    /**
+     * Find the usages of an element.
+     * @param referenceId   the symbol id of the element used
+     * @return              the usages of the element
+     */
+    public List<Usage> getUsagesOf(String referenceId) {
+        return usagesByReference.get(referenceId);
+    }
+
+    /**
+     * Find the aliases of an element.
+     * @param originId   the symbol id of the original element
+     * @return           the aliases of the element
+     */
+    public List<SymbolAlias> getAliasesOf(String originId) {
+        return aliasesByOrigin.get(originId);
+    }
+
+    /**
+     * Elements by symbol id. Symbol ids are normally unique, so the first
+     * element of every id is kept in a map and any other (distinct)
+     * elements with the same id in a separate list; lookups return the
+     * earliest added element of an id that is still in the table.
+     */
+    private static final class Table<T extends SymbolWithId> {
+        final Map<String, T> byId = new HashMap<>();
+        final Map<String, List<T>> collisions = new HashMap<>();
+
+        /**
+         * Add an element.
+         * @return   false if an equal element is already in the table
+         */
+        boolean add(T element) {
+            String id = element.getSymbolId();
+            T first = byId.putIfAbsent(id, element);
+            if (first == null)
+                return true;
+            List<T> others = collisions.get(id);
+            if (first.equals(element) || (others != null && others.contains(element)))
+                return false;
+            collisions.computeIfAbsent(id, x -> new ArrayList<>(1)).add(element);
+            return true;
+        }
+
+        /**
+         * Remove an element.
+         * @return   false if no equal element is in the table
+         */
+        boolean remove(T element) {
+            String id = element.getSymbolId();
+            T first = byId.get(id);
+            if (first == null)
+                return false;
+            List<T> others = collisions.get(id);
+            if (first.equals(element)) {
+                // Let the next element with the same id take its place.
+                if (others == null)
+                    byId.remove(id);
+                else
+                    byId.put(id, removeFirst(id, others));
+                return true;
+            }
+            if (others == null || !others.remove(element))
+                return false;
+            if (others.isEmpty())
+                collisions.remove(id);
+            return true;
+        }
+
+        private T removeFirst(String id, List<T> others) {
+            T next = others.remove(0);
+            if (others.isEmpty())
+                collisions.remove(id);
+            return next;
+        }
+
+        T get(String symbolId) {
+            return byId.get(symbolId);
+        }
+    }
+
+    /** Elements grouped by a key (elements with a null key are not indexed). */
+    private static final class MultiMap<T> {
+        final Function<T, String> key;
+        final Map<String, List<T>> groups = new HashMap<>();
+
+        MultiMap(Function<T, String> key) {
+            this.key = key;
+        }
+
+        void add(T element) {
+            String k = key.apply(element);
+            if (k != null)
+                groups.computeIfAbsent(k, x -> new ArrayList<>(2)).add(element);
+        }
+
+        void remove(T element) {
+            String k = key.apply(element);
+            List<T> group = k == null ? null : groups.get(k);
+            if (group != null) {
+                group.remove(element);
+                if (group.isEmpty())
+                    groups.remove(k);
+            }
+        }
+
+        List<T> get(String k) {
+            List<T> group = groups.get(k);
+            return group == null ? Collections.emptyList() : Collections.unmodifiableList(group);
+        }
+    }
+}
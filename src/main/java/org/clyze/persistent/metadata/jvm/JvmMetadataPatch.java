@@ -0,0 +1,299 @@
+package org.clyze.persistent.metadata.jvm;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.clyze.persistent.metadata.JSONUtil;
+import org.clyze.persistent.metadata.OutputStyle;
+import org.clyze.persistent.model.*;
+import org.clyze.persistent.model.jvm.*;
+
+/**
+ * The differences between two JVM metadata reports, as computed by
+ * {@link JvmMetadataDiff}: the elements of every report section that were
+ * added, removed or changed.
+ *
+ * Elements are matched by symbol id (source files by id). If elements
+ * with some symbol id exist in both reports but differ, the patch holds
+ * the new elements with that id as "changed". String constants have no
+ * ids, so they are only added or removed.
+ *
+ * A patch can be applied to the metadata of the old report, to get the
+ * metadata of the new report, and it can be saved as JSON.
+ */
+public class JvmMetadataPatch {
+
+    /** The report sections of JVM metadata, in report order. */
+    static final List<Section<?>> SECTIONS = Collections.unmodifiableList(Arrays.asList(
+            new Section<>(SourceFile.class, SourceFile::new, m -> m.sourceFiles, SourceFile::getId),
+            new Section<>(JvmClass.class, JvmClass::new, m -> m.jvmClasses, SymbolWithId::getSymbolId),
+            new Section<>(JvmField.class, JvmField::new, m -> m.jvmFields, SymbolWithId::getSymbolId),
+            new Section<>(JvmMethod.class, JvmMethod::new, m -> m.jvmMethods, SymbolWithId::getSymbolId),
+            new Section<>(JvmVariable.class, JvmVariable::new, m -> m.jvmVariables, SymbolWithId::getSymbolId),
+            new Section<>(JvmHeapAllocation.class, JvmHeapAllocation::new, m -> m.jvmHeapAllocations, SymbolWithId::getSymbolId),
+            new Section<>(JvmMethodInvocation.class, JvmMethodInvocation::new, m -> m.jvmInvocations, SymbolWithId::getSymbolId),
+            new Section<>(JvmStringConstant.class, JvmStringConstant::new, m -> m.jvmStringConstants, null),
+            new Section<>(Usage.class, Usage::new, m -> m.usages, SymbolWithId::getSymbolId),
+            new Section<>(SymbolAlias.class, SymbolAlias::new, m -> m.aliases, SymbolWithId::getSymbolId)));
+
+    /** The changes of every section (possibly empty), in report order. */
+    private final Map<String, SectionPatch<?>> sections = new LinkedHashMap<>();
+
+    /**
+     * Returns a report section of JVM metadata.
+     * @param name   the section name
+     * @return       the section or null if no section has this name
+     */
+    static Section<?> getSection(String name) {
+        for (Section<?> section : SECTIONS)
+            if (section.name.equals(name))
+                return section;
+        return null;
+    }
+
+    /**
+     * Returns the changes of a section, creating them if needed.
+     * @param section   the section
+     * @param <T>       the type of the section elements
+     * @return          the section changes
+     */
+    @SuppressWarnings("unchecked")
+    <T extends ItemImpl> SectionPatch<T> getOrCreate(Section<T> section) {
+        return (SectionPatch<T>) sections.computeIfAbsent(section.name, n -> new SectionPatch<>(section));
+    }
+
+    /**
+     * Returns the changes of each report section, for the sections that
+     * changed, in report order.
+     * @return   a map from section names to section changes
+     */
+    public Map<String, SectionPatch<?>> getSections() {
+        Map<String, SectionPatch<?>> changed = new LinkedHashMap<>();
+        for (Map.Entry<String, SectionPatch<?>> entry : sections.entrySet())
+            if (!entry.getValue().isEmpty())
+                changed.put(entry.getKey(), entry.getValue());
+        return Collections.unmodifiableMap(changed);
+    }
+
+    /**
+     * Returns true if the two reports have the same contents.
+     * @return   true if no section changed
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the total number of elements in the patch.
+     * @return   the number of added, removed and changed elements
+     */
+    public int size() {
+        int size = 0;
+        for (SectionPatch<?> patch : sections.values())
+            size += patch.size();
+        return size;
+    }
+
+    /**
+     * Apply this patch to the metadata of the old report. Removed elements
+     * are found by equality; the old versions of changed elements are found
+     * by symbol id, in a single pass over the section.
+     * @param metadata   the metadata to update
+     */
+    public void applyTo(JvmMetadata metadata) {
+        for (SectionPatch<?> patch : sections.values())
+            patch.applyTo(metadata);
+    }
+
+    /**
+     * Write this patch as a JSON object, with one object per changed
+     * section holding its "removed", "changed" and "added" elements.
+     * @param out     the output stream (not closed by this method)
+     * @param style   the output style
+     * @throws IOException on serialization error
+     */
+    public void writeTo(OutputStream out, OutputStyle style) throws IOException {
+        try (JsonGenerator gen = JSONUtil.createGenerator(out, style)) {
+            gen.writeStartObject();
+            for (Map.Entry<String, SectionPatch<?>> entry : getSections().entrySet()) {
+                SectionPatch<?> patch = entry.getValue();
+                gen.writeObjectFieldStart(entry.getKey());
+                writeElements(gen, "removed", patch.removed);
+                writeElements(gen, "changed", patch.changed);
+                writeElements(gen, "added", patch.added);
+                gen.writeEndObject();
+            }
+            gen.writeEndObject();
+        }
+    }
+
+    private static void writeElements(JsonGenerator gen, String name, List<? extends ItemImpl> elements) throws IOException {
+        gen.writeArrayFieldStart(name);
+        for (ItemImpl element : elements)
+            element.writeJson(gen, ItemFormat.REPORT);
+        gen.writeEndArray();
+    }
+
+    /**
+     * Read a patch written by {@link #writeTo(OutputStream, OutputStyle)}.
+     * Unknown sections are skipped.
+     * @param in             the input stream (not closed by this method)
+     * @return               the patch
+     * @throws IOException   on read or parse error
+     */
+    @SuppressWarnings("try")
+    public static JvmMetadataPatch fromJson(InputStream in) throws IOException {
+        JvmMetadataPatch patch = new JvmMetadataPatch();
+        try (StringPool.Scope scope = StringPool.enterIfInactive();
+             JsonParser parser = JSONUtil.getObjectMapper().getFactory().createParser(in)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                Section<?> section = getSection(parser.currentName());
+                if (section == null) {
+                    parser.nextToken();
+                    parser.skipChildren();
+                } else
+                    readSection(parser, patch.getOrCreate(section));
+            }
+            expect(parser, parser.currentToken(), JsonToken.END_OBJECT);
+        }
+        return patch;
+    }
+
+    private static <T extends ItemImpl> void readSection(JsonParser parser, SectionPatch<T> patch) throws IOException {
+        expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            List<T> target = name.equals("removed") ? patch.removed : name.equals("changed") ? patch.changed
+                           : name.equals("added") ? patch.added : null;
+            if (parser.nextToken() != JsonToken.START_ARRAY || target == null) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                T element = patch.section.factory.get();
+                element.readJson(parser, ItemFormat.REPORT);
+                target.add(element);
+            }
+            expect(parser, parser.currentToken(), JsonToken.END_ARRAY);
+        }
+        expect(parser, parser.currentToken(), JsonToken.END_OBJECT);
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected)
+            throw new IOException("Malformed metadata patch: expected " + expected + " but found " + actual + " at " + parser.currentLocation());
+    }
+
+    /**
+     * The changes of a report section.
+     * @param <T>   the type of the section elements
+     */
+    public static final class SectionPatch<T extends ItemImpl> {
+        final Section<T> section;
+        final List<T> added = new ArrayList<>();
+        final List<T> removed = new ArrayList<>();
+        final List<T> changed = new ArrayList<>();
+
+        SectionPatch(Section<T> section) {
+            this.section = section;
+        }
+
+        /**
+         * Returns the elements that only exist in the new report.
+         * @return   the added elements
+         */
+        public List<T> getAdded() {
+            return Collections.unmodifiableList(added);
+        }
+
+        /**
+         * Returns the elements that only exist in the old report.
+         * @return   the removed elements
+         */
+        public List<T> getRemoved() {
+            return Collections.unmodifiableList(removed);
+        }
+
+        /**
+         * Returns the new versions of the elements that changed.
+         * @return   the changed elements
+         */
+        public List<T> getChanged() {
+            return Collections.unmodifiableList(changed);
+        }
+
+        /**
+         * Returns the number of elements in the section changes.
+         * @return   the number of added, removed and changed elements
+         */
+        public int size() {
+            return added.size() + removed.size() + changed.size();
+        }
+
+        /**
+         * Returns true if the section did not change.
+         * @return   true if there are no changes
+         */
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+
+        private void applyTo(JvmMetadata metadata) {
+            Collection<T> elements = section.elements.apply(metadata);
+            for (T element : removed)
+                elements.remove(element);
+            if (!changed.isEmpty()) {
+                Set<String> keys = new HashSet<>();
+                for (T element : changed)
+                    keys.add(section.key.apply(element));
+                elements.removeIf(element -> keys.contains(section.key.apply(element)));
+                elements.addAll(changed);
+            }
+            elements.addAll(added);
+        }
+    }
+
+    /**
+     * A report section of JVM metadata.
+     * @param <T>   the type of the section elements
+     */
+    static final class Section<T extends ItemImpl> {
+        /** The section name. */
+        final String name;
+        /** The factory of section elements. */
+        final Supplier<T> factory;
+        /** The elements of the section in a metadata object. */
+        final Function<JvmMetadata, Collection<T>> elements;
+        /** The key that orders the section in reports, or null for unordered sections. */
+        final Function<T, String> key;
+
+        Section(Class<T> type, Supplier<T> factory, Function<JvmMetadata, Collection<T>> elements,
+                Function<T, String> key) {
+            this.name = type.getSimpleName();
+            this.factory = factory;
+            this.elements = elements;
+            this.key = key;
+        }
+
+        /**
+         * Returns the elements of the section in a metadata object, in report order.
+         * @param metadata   the metadata object
+         * @return           a new list of the elements
+         */
+        List<T> sorted(JvmMetadata metadata) {
+            List<T> list = new ArrayList<>(elements.apply(metadata));
+            if (key != null)
+                list.sort(Comparator.comparing(key));
+            return list;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package org.clyze.persistent.metadata.jvm;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import org.clyze.persistent.metadata.Configuration;
+import org.clyze.persistent.metadata.JSONUtil;
+import org.clyze.persistent.metadata.JsonReportReader;
+import org.clyze.persistent.metadata.OutputStyle;
+import org.clyze.persistent.model.ItemFormat;
+import org.clyze.persistent.model.ItemImpl;
+import org.clyze.persistent.model.StringPool;
+
+/**
+ * Merges JVM metadata reports (e.g. the reports of single source files)
+ * into a single report, without loading them in memory.
+ *
+ * The sections of the input reports are sorted by symbol id (as written
+ * by {@link org.clyze.persistent.metadata.FileReporter}), so every section
+ * is produced by a k-way merge that streams the elements of all inputs and
+ * writes them sorted. Equal elements of different inputs are written once,
+ * as in the union of the metadata of the inputs; distinct elements with
+ * the same symbol id are written in input order. Memory use depends on the
+ * number of inputs merged at once, which is bounded by the merge fan-in of
+ * the configuration: larger merges take several passes over temporary
+ * files. The only exception is the (unordered) string constants section,
+ * which is deduplicated in memory.
+ *
+ * All inputs must list their sections in the same order, as do reports
+ * written by the same version of the library; the output has this order
+ * too. Sections that are not part of JVM metadata are dropped.
+ */
+public class JvmReportMerger {
+
+    /** The output configuration to use. */
+    private final Configuration configuration;
+
+    /**
+     * Create a report merger.
+     * @param configuration   the output configuration (output style, modifier
+     *                        masks, merge fan-in, temporary directory)
+     */
+    public JvmReportMerger(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * Merge reports into a report file, compressed as set in the configuration.
+     * @param inputs         the report files to merge (at least one)
+     * @param output         the output report file
+     * @throws IOException   on read, parse or write error or if an input is not sorted
+     */
+    public void merge(List<Path> inputs, Path output) throws IOException {
+        try (OutputStream out = configuration.getCompression().compress(new BufferedOutputStream(Files.newOutputStream(output)),
+                                                                        configuration.getCompressionLevel())) {
+            merge(inputs, out);
+        }
+    }
+
+    /**
+     * Merge reports into an output stream.
+     * @param inputs         the report files to merge (at least one)
+     * @param out            the output stream (not closed by this method)
+     * @throws IOException   on read, parse or write error or if an input is not sorted
+     */
+    public void merge(List<Path> inputs, OutputStream out) throws IOException {
+        if (inputs.isEmpty())
+            throw new IllegalArgumentException("No reports to merge");
+        int fanIn = configuration.getMergeFanIn();
+        List<Path> temporary = new ArrayList<>();
+        try {
+            List<Path> current = inputs;
+            while (current.size() > fanIn) {
+                List<Path> next = new ArrayList<>();
+                for (int i = 0; i < current.size(); i += fanIn) {
+                    List<Path> batch = current.subList(i, Math.min(i + fanIn, current.size()));
+                    if (batch.size() == 1) {
+                        next.add(batch.get(0));
+                        continue;
+                    }
+                    Path run = createRunFile();
+                    temporary.add(run);
+                    try (OutputStream runOut = new BufferedOutputStream(Files.newOutputStream(run))) {
+                        merge(batch, runOut, OutputStyle.COMPACT, ItemFormat.REPORT_WITH_MODIFIER_MASKS);
+                    }
+                    next.add(run);
+                }
+                current = next;
+            }
+            ItemFormat format = configuration.isModifiersAsMask() ? ItemFormat.REPORT_WITH_MODIFIER_MASKS : ItemFormat.REPORT;
+            merge(current, out, configuration.getOutputStyle(), format);
+        } finally {
+            for (Path run : temporary)
+                Files.deleteIfExists(run);
+        }
+    }
+
+    private Path createRunFile() throws IOException {
+        File tempDir = configuration.getTempDir();
+        return tempDir == null ? Files.createTempFile("metadata-merge", ".json")
+                               : Files.createTempFile(tempDir.toPath(), "metadata-merge", ".json");
+    }
+
+    @SuppressWarnings("try")
+    private static void merge(List<Path> inputs, OutputStream out, OutputStyle style, ItemFormat format) throws IOException {
+        List<InputStream> streams = new ArrayList<>(inputs.size());
+        List<JsonReportReader> readers = new ArrayList<>(inputs.size());
+        try (StringPool.Scope scope = StringPool.enterIfInactive();
+             JsonGenerator gen = JSONUtil.createGenerator(out, style)) {
+            for (Path input : inputs) {
+                streams.add(Files.newInputStream(input));
+                readers.add(new JsonReportReader(streams.get(streams.size() - 1)));
+            }
+            gen.writeStartObject();
+            while (true) {
+                String name = readers.get(0).nextSection();
+                for (int i = 1; i < readers.size(); i++) {
+                    String inputSection = readers.get(i).nextSection();
+                    if (!Objects.equals(name, inputSection))
+                        throw new IOException("Report " + inputs.get(i) + " has section " + inputSection + " instead of " + name);
+                }
+                if (name == null)
+                    break;
+                JvmMetadataPatch.Section<?> section = JvmMetadataPatch.getSection(name);
+                if (section == null)
+                    continue;
+                gen.writeFieldName(name);
+                gen.writeStartArray();
+                mergeSection(section, readers, gen, format);
+                gen.writeEndArray();
+            }
+            gen.writeEndObject();
+        } finally {
+            for (JsonReportReader reader : readers)
+                reader.close();
+            for (InputStream stream : streams)
+                stream.close();
+        }
+    }
+
+    private static <T extends ItemImpl> void mergeSection(JvmMetadataPatch.Section<T> section, List<JsonReportReader> readers,
+                                                          JsonGenerator gen, ItemFormat format) throws IOException {
+        if (section.key == null) {
+            Set<T> written = new HashSet<>();
+            for (JsonReportReader reader : readers)
+                for (T element; (element = reader.nextElement(section.factory)) != null; )
+                    if (written.add(element))
+                        element.writeJson(gen, format);
+            return;
+        }
+        // Order inputs by their next symbol id; ties are broken by input
+        // order, so that the merge is stable.
+        PriorityQueue<SectionCursor<T>> queue = new PriorityQueue<>(readers.size(),
+                Comparator.<SectionCursor<T>, String>comparing(c -> c.key).thenComparingInt(c -> c.index));
+        for (int i = 0; i < readers.size(); i++) {
+            JsonReportReader reader = readers.get(i);
+            SectionCursor<T> cursor = new SectionCursor<>(section, () -> reader.nextElement(section.factory), i);
+            if (cursor.current != null)
+                queue.add(cursor);
+        }
+        while (!queue.isEmpty()) {
+            SectionCursor<T> cursor = queue.poll();
+            String key = cursor.key;
+            List<T> group = cursor.nextGroup();
+            if (cursor.current != null)
+                queue.add(cursor);
+            while (!queue.isEmpty() && queue.peek().key.equals(key)) {
+                cursor = queue.poll();
+                for (T element : cursor.nextGroup())
+                    if (!group.contains(element))
+                        group.add(element);
+                if (cursor.current != null)
+                    queue.add(cursor);
+            }
+            for (T element : group)
+                element.writeJson(gen, format);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package org.clyze.persistent.metadata.jvm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+
+import org.clyze.persistent.metadata.BinaryLayout;
+import org.clyze.persistent.metadata.BinaryLayouts;
+import org.clyze.persistent.metadata.MappedMetadataFile;
+import org.clyze.persistent.metadata.MappedMetadataWriter;
+import org.clyze.persistent.model.SourceFile;
+import org.clyze.persistent.model.SymbolAlias;
+import org.clyze.persistent.model.SymbolWithId;
+import org.clyze.persistent.model.Usage;
+import org.clyze.persistent.model.jvm.*;
+
+/**
+ * Random-access JVM metadata, backed by a memory-mapped file. Lookups
+ * decode only the records they touch, so opening a file is cheap and
+ * memory use follows the elements actually requested.
+ *
+ * Every section is indexed by symbol id; usages are also indexed by
+ * the id of the element they refer to. Returned elements are fresh
+ * objects, not shared between lookups.
+ */
+public class MappedJvmMetadata implements Closeable {
+
+    /** The name of the usage index by referenced element. */
+    private static final String REFERENCE_INDEX = "referenceId";
+
+    /** The underlying file. */
+    private final MappedMetadataFile file;
+
+    private MappedJvmMetadata(MappedMetadataFile file) {
+        this.file = file;
+    }
+
+    /**
+     * Write JVM metadata in random-access form.
+     * @param metadata       the metadata to write
+     * @param path           the output file
+     * @throws IOException   on write error
+     */
+    public static void write(JvmMetadata metadata, Path path) throws IOException {
+        try (MappedMetadataWriter writer = new MappedMetadataWriter(path, JvmMetadata.class.getSimpleName())) {
+            List<SourceFile> sourceFiles = new ArrayList<>(metadata.sourceFiles);
+            sourceFiles.sort(Comparator.comparing(SourceFile::getId, Comparator.nullsFirst(Comparator.naturalOrder())));
+            writer.writeSection("SourceFile", BinaryLayouts.SOURCE_FILE, sourceFiles, SourceFile::getId, Collections.emptyMap());
+            writeSymbols(writer, "JvmClass", JvmBinaryLayouts.CLASS, metadata.jvmClasses);
+            writeSymbols(writer, "JvmField", JvmBinaryLayouts.FIELD, metadata.jvmFields);
+            writeSymbols(writer, "JvmMethod", JvmBinaryLayouts.METHOD, metadata.jvmMethods);
+            writeSymbols(writer, "JvmVariable", JvmBinaryLayouts.VARIABLE, metadata.jvmVariables);
+            writeSymbols(writer, "JvmHeapAllocation", JvmBinaryLayouts.HEAP_ALLOCATION, metadata.jvmHeapAllocations);
+            writeSymbols(writer, "JvmMethodInvocation", JvmBinaryLayouts.METHOD_INVOCATION, metadata.jvmInvocations);
+            writeSymbols(writer, "SymbolAlias", JvmBinaryLayouts.ALIAS, metadata.aliases);
+            writer.writeSection("Usage", JvmBinaryLayouts.USAGE, JvmMetadata.getSortedBySymbolId(metadata.usages),
+                    Usage::getSymbolId, Collections.singletonMap(REFERENCE_INDEX, Usage::getReferenceId));
+            // String constants have no symbol id and are only available by position.
+            writer.writeSection("JvmStringConstant", JvmBinaryLayouts.STRING_CONSTANT,
+                    new ArrayList<>(metadata.jvmStringConstants), null, Collections.emptyMap());
+        }
+    }
+
+    private static <T extends SymbolWithId> void writeSymbols(MappedMetadataWriter writer, String section,
+                                                              BinaryLayout<T> layout, Set<T> elements) throws IOException {
+        Map<String, Function<T, String>> noIndexes = Collections.emptyMap();
+        writer.writeSection(section, layout, JvmMetadata.getSortedBySymbolId(elements), SymbolWithId::getSymbolId, noIndexes);
+    }
+
+    /**
+     * Open a random-access JVM metadata file.
+     * @param path           the file (written by {@link #write(JvmMetadata, Path)})
+     * @return               the random-access metadata
+     * @throws IOException   on read error or if the file does not contain JVM metadata
+     */
+    public static MappedJvmMetadata open(Path path) throws IOException {
+        MappedMetadataFile file = new MappedMetadataFile(path);
+        if (!JvmMetadata.class.getSimpleName().equals(file.getKind())) {
+            file.close();
+            throw new IOException("Expected JvmMetadata, found: " + file.getKind());
+        }
+        return new MappedJvmMetadata(file);
+    }
+
+    /**
+     * Returns the number of elements in a section.
+     * @param section   the section name (e.g. "JvmClass")
+     * @return          the number of elements
+     */
+    public int size(String section) {
+        return file.size(section);
+    }
+
+    /**
+     * Find a source file.
+     * @param id             the source file id
+     * @return               the source file or null if not found
+     * @throws IOException   on decoding error
+     */
+    public SourceFile getSourceFile(String id) throws IOException {
+        return file.find("SourceFile", BinaryLayouts.SOURCE_FILE, id);
+    }
+
+    /**
+     * Find a class.
+     * @param symbolId       the symbol id of the class
+     * @return               the class or null if not found
+     * @throws IOException   on decoding error
+     */
+    public JvmClass getJvmClass(String symbolId) throws IOException {
+        return file.find("JvmClass", JvmBinaryLayouts.CLASS, symbolId);
+    }
+
+    /**
+     * Find a field.
+     * @param symbolId       the symbol id of the field
+     * @return               the field or null if not found
+     * @throws IOException   on decoding error
+     */
+    public JvmField getJvmField(String symbolId) throws IOException {
+        return file.find("JvmField", JvmBinaryLayouts.FIELD, symbolId);
+    }
+
+    /**
+     * Find a method.
+     * @param symbolId       the symbol id of the method
+     * @return               the method or null if not found
+     * @throws IOException   on decoding error
+     */
+    public JvmMethod getJvmMethod(String symbolId) throws IOException {
+        return file.find("JvmMethod", JvmBinaryLayouts.METHOD, symbolId);
+    }
+
+    /**
+     * Find a variable.
+     * @param symbolId       the symbol id of the variable
+     * @return               the variable or null if not found
+     * @throws IOException   on decoding error
+     */
+    public JvmVariable getJvmVariable(String symbolId) throws IOException {
+        return file.find("JvmVariable", JvmBinaryLayouts.VARIABLE, symbolId);
+    }
+
+    /**
+     * Find a heap allocation.
+     * @param symbolId       the symbol id of the heap allocation
+     * @return               the heap allocation or null if not found
+     * @throws IOException   on decoding error
+     */
+    public JvmHeapAllocation getJvmHeapAllocation(String symbolId) throws IOException {
+        return file.find("JvmHeapAllocation", JvmBinaryLayouts.HEAP_ALLOCATION, symbolId);
+    }
+
+    /**
+     * Find a method invocation.
+     * @param symbolId       the symbol id of the invocation
+     * @return               the invocation or null if not found
+     * @throws IOException   on decoding error
+     */
+    public JvmMethodInvocation getJvmInvocation(String symbolId) throws IOException {
+        return file.find("JvmMethodInvocation", JvmBinaryLayouts.METHOD_INVOCATION, symbolId);
+    }
+
+    /**
+     * Find a usage.
+     * @param symbolId       the symbol id of the usage
+     * @return               the usage or null if not found
+     * @throws IOException   on decoding error
+     */
+    public Usage getUsage(String symbolId) throws IOException {
+        return file.find("Usage", JvmBinaryLayouts.USAGE, symbolId);
+    }
+
+    /**
+     * Find an alias.
+     * @param symbolId       the symbol id of the alias
+     * @return               the alias or null if not found
+     * @throws IOException   on decoding error
+     */
+    public SymbolAlias getAlias(String symbolId) throws IOException {
+        return file.find("SymbolAlias", JvmBinaryLayouts.ALIAS, symbolId);
+    }
+
+    /**
+     * Find the usages of an element.
+     * @param referenceId    the symbol id of the element used
+     * @return               the usages of the element
+     * @throws IOException   on decoding error
+     */
+    public List<Usage> usagesOf(String referenceId) throws IOException {
+        return file.findAll("Usage", REFERENCE_INDEX, JvmBinaryLayouts.USAGE, referenceId);
+    }
+
+    /**
+     * Returns a string constant by position in its section.
+     * @param index          the position (0 to {@code size("JvmStringConstant") - 1})
+     * @return               the string constant
+     * @throws IOException   on decoding error
+     */
+    public JvmStringConstant getJvmStringConstant(int index) throws IOException {
+        return file.get("JvmStringConstant", JvmBinaryLayouts.STRING_CONSTANT, index);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
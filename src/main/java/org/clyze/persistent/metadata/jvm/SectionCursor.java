@@ -0,0 +1,67 @@
+package org.clyze.persistent.metadata.jvm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.clyze.persistent.model.ItemImpl;
+
+/**
+ * A position in a report section that is sorted by symbol id, reading the
+ * elements of one symbol id at a time. Cursors check that the section is
+ * sorted while reading it.
+ * @param <T>   the type of the section elements
+ */
+final class SectionCursor<T extends ItemImpl> {
+
+    /** A sequence of section elements, in report order. */
+    interface Source<T> {
+        /**
+         * Returns the next element.
+         * @return               the element or null if there are no more elements
+         * @throws IOException   on read error
+         */
+        T next() throws IOException;
+    }
+
+    private final JvmMetadataPatch.Section<T> section;
+    private final Source<T> source;
+    /** The index of the input of the cursor (used to break ties between inputs). */
+    final int index;
+    /** The next element (null at the end of the section). */
+    T current;
+    /** The key of the next element. */
+    String key;
+
+    SectionCursor(JvmMetadataPatch.Section<T> section, Source<T> source, int index) throws IOException {
+        this.section = section;
+        this.source = source;
+        this.index = index;
+        advance();
+    }
+
+    private void advance() throws IOException {
+        String previous = key;
+        current = source.next();
+        key = current == null ? null : section.key.apply(current);
+        if (key == null && current != null)
+            throw new IOException("Element without id in section " + section.name);
+        if (previous != null && key != null && key.compareTo(previous) < 0)
+            throw new IOException("Section " + section.name + " is not sorted: " + key + " follows " + previous);
+    }
+
+    /**
+     * Returns the elements with the key of the next element, in input order.
+     * @return               the elements
+     * @throws IOException   on read error or if the section is not sorted
+     */
+    List<T> nextGroup() throws IOException {
+        String groupKey = key;
+        List<T> group = new ArrayList<>(1);
+        do {
+            group.add(current);
+            advance();
+        } while (current != null && key.equals(groupKey));
+        return group;
+    }
+}
@@ -0,0 +1,311 @@
+package org.clyze.persistent.metadata.jvm;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+import org.apache.commons.io.IOUtils;
+import org.clyze.persistent.metadata.JSONUtil;
+import org.clyze.persistent.metadata.OutputStyle;
+
+/**
+ * The manifest of a sharded JVM metadata report, as written by
+ * {@link ShardedJvmReporter}. For every shard, it lists the shard file,
+ * its SHA-256 checksum and size, and the number of elements and the
+ * first and last symbol ids (source file ids for source files) of every
+ * section. Consumers can use it to select the shards they need and load
+ * them in parallel.
+ */
+public final class ShardManifest {
+
+    /** The suffix of manifest files. */
+    public static final String SUFFIX = ".manifest.json";
+
+    private final ShardedJvmReporter.Partitioning partitioning;
+    private final List<Shard> shards;
+    /** The directory of the shard files. */
+    private final File dir;
+
+    ShardManifest(ShardedJvmReporter.Partitioning partitioning, List<Shard> shards, File dir) {
+        this.partitioning = partitioning;
+        this.shards = Collections.unmodifiableList(shards);
+        this.dir = dir;
+    }
+
+    /**
+     * Returns the partitioning of the report into shards.
+     * @return   the partitioning
+     */
+    public ShardedJvmReporter.Partitioning getPartitioning() {
+        return partitioning;
+    }
+
+    /**
+     * Returns the shards, ordered by name.
+     * @return   the shards
+     */
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    /**
+     * Returns the shards that may contain elements with some symbol id in
+     * a section, according to the symbol id ranges of the manifest.
+     * @param section    the section name (e.g. "JvmMethod")
+     * @param symbolId   the symbol id
+     * @return           the shards
+     */
+    public List<Shard> findShards(String section, String symbolId) {
+        List<Shard> found = new ArrayList<>();
+        for (Shard shard : shards) {
+            SectionInfo info = shard.sections.get(section);
+            if (info != null && info.mayContain(symbolId))
+                found.add(shard);
+        }
+        return found;
+    }
+
+    /**
+     * Load the selected shards into a metadata object. Shards are read in
+     * parallel and their checksums are verified.
+     * @param filter         the shards to load
+     * @param threads        the number of threads that read shards
+     * @return               the metadata of the selected shards
+     * @throws IOException   on read or parse error or checksum mismatch
+     */
+    public JvmMetadata load(Predicate<? super Shard> filter, int threads) throws IOException {
+        ConcurrentJvmMetadata loaded = new ConcurrentJvmMetadata();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Shard shard : shards)
+                if (filter.test(shard))
+                    futures.add(executor.submit(() -> {
+                        loaded.addAll(read(shard));
+                        return null;
+                    }));
+            for (Future<?> future : futures)
+                ShardedJvmReporter.get(future);
+        } finally {
+            executor.shutdownNow();
+        }
+        // Executor tasks have finished, so their additions are visible here.
+        return loaded.toJvmMetadata();
+    }
+
+    /**
+     * Read a shard and verify its checksum.
+     * @param shard          the shard
+     * @return               the metadata of the shard
+     * @throws IOException   on read or parse error or checksum mismatch
+     */
+    public JvmMetadata read(Shard shard) throws IOException {
+        MessageDigest digest = newDigest();
+        JvmMetadata metadata;
+        try (InputStream in = new DigestInputStream(Files.newInputStream(new File(dir, shard.file).toPath()), digest)) {
+            metadata = JvmMetadata.fromJson(in);
+            // Digest any trailing bytes that the parser did not need.
+            IOUtils.consume(in);
+        }
+        String checksum = toHex(digest.digest());
+        if (!checksum.equals(shard.checksum))
+            throw new IOException("Checksum mismatch for shard " + shard.file + ": " + checksum + " instead of " + shard.checksum);
+        return metadata;
+    }
+
+    void writeTo(File file, OutputStyle style) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+             JsonGenerator gen = JSONUtil.createGenerator(out, style)) {
+            gen.writeStartObject();
+            gen.writeStringField("partitioning", partitioning.name());
+            gen.writeArrayFieldStart("shards");
+            for (Shard shard : shards) {
+                gen.writeStartObject();
+                gen.writeStringField("name", shard.name);
+                gen.writeStringField("file", shard.file);
+                gen.writeStringField("checksum", shard.checksum);
+                gen.writeNumberField("bytes", shard.bytes);
+                gen.writeObjectFieldStart("sections");
+                for (Map.Entry<String, SectionInfo> section : shard.sections.entrySet()) {
+                    SectionInfo info = section.getValue();
+                    gen.writeObjectFieldStart(section.getKey());
+                    gen.writeNumberField("elements", info.elements);
+                    if (info.firstSymbolId != null) {
+                        gen.writeStringField("firstSymbolId", info.firstSymbolId);
+                        gen.writeStringField("lastSymbolId", info.lastSymbolId);
+                    }
+                    gen.writeEndObject();
+                }
+                gen.writeEndObject();
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+    }
+
+    /**
+     * Read a manifest. Shard files are expected in the directory of the manifest.
+     * @param manifest       the manifest file
+     * @return               the manifest
+     * @throws IOException   on read or parse error
+     */
+    @SuppressWarnings("unchecked")
+    public static ShardManifest fromJson(Path manifest) throws IOException {
+        Map<String, Object> map = JSONUtil.toMap(manifest);
+        try {
+            List<Shard> shards = new ArrayList<>();
+            for (Map<String, Object> shard : (List<Map<String, Object>>) map.get("shards")) {
+                Map<String, SectionInfo> sections = new LinkedHashMap<>();
+                for (Map.Entry<String, Object> section : ((Map<String, Object>) shard.get("sections")).entrySet()) {
+                    Map<String, Object> info = (Map<String, Object>) section.getValue();
+                    sections.put(section.getKey(), new SectionInfo(((Number) info.get("elements")).intValue(),
+                            (String) info.get("firstSymbolId"), (String) info.get("lastSymbolId")));
+                }
+                shards.add(new Shard((String) shard.get("name"), (String) shard.get("file"), (String) shard.get("checksum"),
+                        ((Number) shard.get("bytes")).longValue(), sections));
+            }
+            File dir = manifest.toAbsolutePath().getParent().toFile();
+            return new ShardManifest(ShardedJvmReporter.Partitioning.valueOf((String) map.get("partitioning")), shards, dir);
+        } catch (RuntimeException ex) {
+            throw new IOException("Malformed shard manifest " + manifest, ex);
+        }
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java platform supports SHA-256.
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes)
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        return sb.toString();
+    }
+
+    /** A shard of a report. */
+    public static final class Shard {
+        final String name;
+        final String file;
+        final String checksum;
+        final long bytes;
+        final Map<String, SectionInfo> sections;
+
+        Shard(String name, String file, String checksum, long bytes, Map<String, SectionInfo> sections) {
+            this.name = name;
+            this.file = file;
+            this.checksum = checksum;
+            this.bytes = bytes;
+            this.sections = Collections.unmodifiableMap(sections);
+        }
+
+        /**
+         * Returns the shard name: the source file, the package directory or
+         * the hash bucket of its elements, depending on the partitioning.
+         * @return   the shard name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the name of the shard file, in the directory of the manifest.
+         * @return   the file name
+         */
+        public String getFile() {
+            return file;
+        }
+
+        /**
+         * Returns the SHA-256 checksum of the shard file.
+         * @return   the checksum in hexadecimal
+         */
+        public String getChecksum() {
+            return checksum;
+        }
+
+        /**
+         * Returns the size of the shard file.
+         * @return   the size in bytes
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Returns the sections of the shard, in report order.
+         * @return   a map from section names to section information
+         */
+        public Map<String, SectionInfo> getSections() {
+            return sections;
+        }
+    }
+
+    /** The description of a section of a shard. */
+    public static final class SectionInfo {
+        final int elements;
+        final String firstSymbolId;
+        final String lastSymbolId;
+
+        SectionInfo(int elements, String firstSymbolId, String lastSymbolId) {
+            this.elements = elements;
+            this.firstSymbolId = firstSymbolId;
+            this.lastSymbolId = lastSymbolId;
+        }
+
+        /**
+         * Returns the number of elements of the section.
+         * @return   the number of elements
+         */
+        public int getElements() {
+            return elements;
+        }
+
+        /**
+         * Returns the smallest symbol id of the section.
+         * @return   the symbol id or null for empty or unordered sections
+         */
+        public String getFirstSymbolId() {
+            return firstSymbolId;
+        }
+
+        /**
+         * Returns the largest symbol id of the section.
+         * @return   the symbol id or null for empty or unordered sections
+         */
+        public String getLastSymbolId() {
+            return lastSymbolId;
+        }
+
+        /**
+         * Returns true if the section may contain elements with a symbol id.
+         * @param symbolId   the symbol id
+         * @return           false if the symbol id is out of the range of the
+         *                   section (or the section is empty)
+         */
+        public boolean mayContain(String symbolId) {
+            if (elements == 0)
+                return false;
+            return firstSymbolId == null
+                || (firstSymbolId.compareTo(symbolId) <= 0 && symbolId.compareTo(lastSymbolId) <= 0);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package org.clyze.persistent.metadata.jvm;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.clyze.persistent.metadata.Configuration;
+import org.clyze.persistent.metadata.JSONUtil;
+import org.clyze.persistent.model.ItemImpl;
+import org.clyze.persistent.model.SourceFile;
+import org.clyze.persistent.model.Symbol;
+import org.clyze.persistent.model.SymbolWithId;
+
+/**
+ * Writes JVM metadata as a set of report files ("shards") instead of a
+ * single report, together with a manifest that describes them (see
+ * {@link ShardManifest}). Every shard is a regular JSON report holding
+ * the elements of some source files, packages or symbol ids, so
+ * consumers can load only the shards they need; shards are written in
+ * parallel, and they can be read in parallel too.
+ *
+ * Shards are written into the output directory of the configuration, on
+ * a pool of {@link Configuration#getReportThreads()} threads, with the
+ * output style, modifiers and compression of the configuration.
+ */
+public class ShardedJvmReporter {
+
+    /** The ways to partition metadata into shards. */
+    public enum Partitioning {
+        /** One shard per source file. */
+        SOURCE_FILE,
+        /** One shard per package (the directory of the source file). */
+        PACKAGE,
+        /** A fixed number of shards, by the hash of the symbol id. */
+        SYMBOL_HASH
+    }
+
+    /** The output configuration to use. */
+    private final Configuration configuration;
+    /** The metadata to be serialized. */
+    private final JvmMetadata metadata;
+    /** The partitioning of the metadata. */
+    private final Partitioning partitioning;
+    /** The number of shards of {@link Partitioning#SYMBOL_HASH}. */
+    private final int hashShards;
+
+    /**
+     * Create a sharded reporter.
+     * @param configuration   the output configuration to use
+     * @param metadata        the metadata to write
+     * @param partitioning    the partitioning of the metadata into shards
+     * @param hashShards      the number of shards, for partitioning by
+     *                        symbol hash (ignored otherwise)
+     */
+    public ShardedJvmReporter(Configuration configuration, JvmMetadata metadata, Partitioning partitioning, int hashShards) {
+        if (partitioning == Partitioning.SYMBOL_HASH && hashShards < 1)
+            throw new IllegalArgumentException("Number of shards must be at least 1: " + hashShards);
+        this.configuration = configuration;
+        this.metadata = metadata;
+        this.partitioning = partitioning;
+        this.hashShards = hashShards;
+    }
+
+    /**
+     * Returns the shard of an element. Elements without source file (or
+     * symbol id, for hash partitioning) belong to the shard "".
+     * @param element   a section element
+     * @return          the shard name
+     */
+    String shardOf(ItemImpl element) {
+        String file = element instanceof SourceFile ? ((SourceFile) element).getPath() : ((Symbol) element).getSourceFileName();
+        switch (partitioning) {
+            case SOURCE_FILE:
+                return file == null ? "" : file;
+            case PACKAGE:
+                return file == null ? "" : file.substring(0, Math.max(0, file.lastIndexOf('/')));
+            default:
+                String key = element instanceof SymbolWithId ? ((SymbolWithId) element).getSymbolId()
+                           : element instanceof SourceFile ? ((SourceFile) element).getId() : file;
+                if (key == null)
+                    return "";
+                int hash = key.hashCode();
+                return String.format("hash-%04d", Math.floorMod(hash ^ (hash >>> 16), hashShards));
+        }
+    }
+
+    /**
+     * Write the shards and their manifest. Shard files are named after the
+     * base name and the shard number (e.g. "report-00000.json") and the
+     * manifest is named "&lt;base name&gt;.manifest.json".
+     * @param baseName       the base name of the output files
+     * @return               the manifest
+     * @throws IOException   on serialization or write error
+     */
+    public ShardManifest createReportFiles(String baseName) throws IOException {
+        File outDir = configuration.getOutDir() == null ? new File(".") : configuration.getOutDir();
+        // Partition every section; shards and sections are kept in order.
+        Map<String, Map<String, List<ItemImpl>>> shards = new TreeMap<>();
+        for (JvmMetadataPatch.Section<?> section : JvmMetadataPatch.SECTIONS)
+            for (ItemImpl element : section.elements.apply(metadata))
+                shards.computeIfAbsent(shardOf(element), s -> emptyReport())
+                      .get(section.name).add(element);
+
+        ExecutorService executor = Executors.newFixedThreadPool(configuration.getReportThreads());
+        try {
+            List<Future<ShardManifest.Shard>> futures = new ArrayList<>(shards.size());
+            for (Map.Entry<String, Map<String, List<ItemImpl>>> shard : shards.entrySet()) {
+                String file = String.format("%s-%05d.json", baseName, futures.size());
+                futures.add(executor.submit(() -> writeShard(shard.getKey(), new File(outDir, file), shard.getValue())));
+            }
+            List<ShardManifest.Shard> written = new ArrayList<>(futures.size());
+            for (Future<ShardManifest.Shard> future : futures)
+                written.add(get(future));
+            ShardManifest manifest = new ShardManifest(partitioning, written, outDir);
+            manifest.writeTo(new File(outDir, baseName + ShardManifest.SUFFIX), configuration.getOutputStyle());
+            configuration.printer.println("Report: " + written.size() + " shards in " + outDir.getCanonicalPath());
+            return manifest;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Create a shard report with all sections of JVM metadata, in the
+     * order of {@link JvmMetadata#populateJsonReport(Map)}, so that shard
+     * reports list their sections in the same order as full reports.
+     */
+    private static Map<String, List<ItemImpl>> emptyReport() {
+        Map<String, List<ItemImpl>> report = new HashMap<>();
+        for (JvmMetadataPatch.Section<?> section : JvmMetadataPatch.SECTIONS)
+            report.put(section.name, new ArrayList<>());
+        return report;
+    }
+
+    private ShardManifest.Shard writeShard(String name, File file, Map<String, List<ItemImpl>> report) throws IOException {
+        Map<String, ShardManifest.SectionInfo> sections = new LinkedHashMap<>();
+        for (JvmMetadataPatch.Section<?> section : JvmMetadataPatch.SECTIONS) {
+            List<ItemImpl> elements = report.get(section.name);
+            String first = null, last = null;
+            if (section.key != null && !elements.isEmpty()) {
+                sortSection(section, elements);
+                first = keyOf(section, elements.get(0));
+                last = keyOf(section, elements.get(elements.size() - 1));
+            }
+            sections.put(section.name, new ShardManifest.SectionInfo(elements.size(), first, last));
+        }
+        MessageDigest digest = ShardManifest.newDigest();
+        try (OutputStream fileOut = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(file.toPath())), digest);
+             OutputStream out = configuration.getCompression().compress(fileOut, configuration.getCompressionLevel());
+             JsonGenerator gen = JSONUtil.createGenerator(out, configuration.getOutputStyle())) {
+            JSONUtil.writeReport(gen, report, configuration.isModifiersAsMask());
+        }
+        return new ShardManifest.Shard(name, file.getName(), ShardManifest.toHex(digest.digest()), file.length(), sections);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends ItemImpl> void sortSection(JvmMetadataPatch.Section<T> section, List<ItemImpl> elements) {
+        ((List<T>) elements).sort(Comparator.comparing(section.key));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends ItemImpl> String keyOf(JvmMetadataPatch.Section<T> section, ItemImpl element) {
+        return section.key.apply((T) element);
+    }
+
+    /**
+     * Wait for a task, rethrowing its error.
+     * @param future         the task
+     * @param <T>            the type of the result
+     * @return               the result of the task
+     * @throws IOException   if the task failed or was interrupted
+     */
+    static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing report shards", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package org.clyze.persistent.metadata.jvm;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import org.clyze.persistent.model.SymbolWithId;
+
+/**
+ * A dictionary of symbol ids that assigns every symbol id a dense int id
+ * (0, 1, 2, ...), so that graphs and indexes over symbols can use int
+ * arrays instead of maps keyed by (long) symbol id strings.
+ *
+ * Symbol ids are kept in an array indexed by id and looked up in an
+ * open-addressing table of ints, so the dictionary takes about three ints
+ * per symbol besides the strings themselves. Ids are never reused.
+ *
+ * Dictionaries are not thread-safe.
+ */
+public final class SymbolDictionary {
+
+    /** The id of symbols that are not in the dictionary. */
+    public static final int NONE = -1;
+
+    /** The symbol ids, by id. */
+    private String[] symbols = new String[16];
+    /** The hash table: every slot is 0 (empty) or an id plus one. */
+    private int[] table = new int[32];
+    /** The number of symbols. */
+    private int size = 0;
+
+    /**
+     * Create a dictionary of the symbol ids of JVM metadata: the ids of
+     * all elements, in report order (sections in the order of reports and
+     * elements sorted by symbol id), followed by the ids that elements
+     * reference but are not elements themselves (e.g. library methods), so
+     * that the same metadata always gets the same ids.
+     * @param metadata   the metadata
+     * @return           the dictionary
+     */
+    public static SymbolDictionary of(JvmMetadata metadata) {
+        SymbolDictionary dictionary = new SymbolDictionary();
+        dictionary.addAll(metadata.jvmClasses);
+        dictionary.addAll(metadata.jvmFields);
+        dictionary.addAll(metadata.jvmMethods);
+        dictionary.addAll(metadata.jvmVariables);
+        dictionary.addAll(metadata.jvmHeapAllocations);
+        dictionary.addAll(metadata.jvmInvocations);
+        dictionary.addAll(metadata.usages);
+        dictionary.addAll(metadata.aliases);
+        for (SymbolReferences.Kind kind : SymbolReferences.Kind.values())
+            kind.forEachReference(metadata, (element, reference) -> {
+                if (reference != null)
+                    dictionary.intern(reference);
+            });
+        return dictionary;
+    }
+
+    private <T extends SymbolWithId> void addAll(Set<T> elements) {
+        for (T element : JvmMetadata.getSortedBySymbolId(elements))
+            if (element.getSymbolId() != null)
+                intern(element.getSymbolId());
+    }
+
+    /**
+     * Returns the number of symbols (the ids are 0 to size - 1).
+     * @return   the number of symbols
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the id of a symbol, adding the symbol if needed.
+     * @param symbolId   the symbol id
+     * @return           the id
+     */
+    public int intern(String symbolId) {
+        if (symbolId == null)
+            throw new IllegalArgumentException("Symbol id cannot be null");
+        int mask = table.length - 1;
+        for (int slot = hash(symbolId) & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) {
+                if (size == symbols.length)
+                    symbols = Arrays.copyOf(symbols, 2 * size);
+                symbols[size] = symbolId;
+                table[slot] = ++size;
+                if (2 * size > table.length)
+                    rehash(2 * table.length);
+                return size - 1;
+            }
+            if (symbols[entry - 1].equals(symbolId))
+                return entry - 1;
+        }
+    }
+
+    /**
+     * Returns the id of a symbol.
+     * @param symbolId   the symbol id
+     * @return           the id or {@link #NONE} if the symbol is not in the dictionary
+     */
+    public int getId(String symbolId) {
+        if (symbolId == null)
+            return NONE;
+        int mask = table.length - 1;
+        for (int slot = hash(symbolId) & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0)
+                return NONE;
+            if (symbols[entry - 1].equals(symbolId))
+                return entry - 1;
+        }
+    }
+
+    /**
+     * Returns the symbol id of an id.
+     * @param id   the id
+     * @return     the symbol id
+     */
+    public String getSymbol(int id) {
+        if (id < 0 || id >= size)
+            throw new IndexOutOfBoundsException("Unknown symbol: " + id);
+        return symbols[id];
+    }
+
+    private void rehash(int capacity) {
+        int[] newTable = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hash(symbols[id]) & mask;
+            while (newTable[slot] != 0)
+                slot = (slot + 1) & mask;
+            newTable[slot] = id + 1;
+        }
+        table = newTable;
+    }
+
+    private static int hash(String s) {
+        int h = s.hashCode();
+        // Mix the high bits into the low bits that index the (power of two) table.
+        return h ^ (h >>> 16);
+    }
+}
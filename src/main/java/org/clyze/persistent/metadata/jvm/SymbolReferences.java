@@ -0,0 +1,188 @@
+package org.clyze.persistent.metadata.jvm;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import org.clyze.persistent.metadata.IntRelation;
+import org.clyze.persistent.model.SymbolAlias;
+import org.clyze.persistent.model.SymbolWithId;
+import org.clyze.persistent.model.Usage;
+import org.clyze.persistent.model.jvm.*;
+
+/**
+ * The cross references of JVM metadata (declaring classes and methods,
+ * invoking and target methods, allocated types, referenced elements,
+ * alias origins and super types) as relations over the dense ids of a
+ * {@link SymbolDictionary}: every relation maps the id of an element to
+ * the ids of the symbols it references, and its inverse maps the id of a
+ * symbol to the elements that reference it.
+ *
+ * The relations are a snapshot of the metadata when they were built.
+ */
+public final class SymbolReferences {
+
+    /** The kinds of references between symbols. */
+    public enum Kind {
+        /** From fields and methods to their declaring class. */
+        DECLARING_CLASS {
+            @Override
+            void forEachReference(JvmMetadata metadata, BiConsumer<SymbolWithId, String> action) {
+                for (JvmField field : metadata.jvmFields)
+                    action.accept(field, field.getDeclaringClassId());
+                for (JvmMethod method : metadata.jvmMethods)
+                    action.accept(method, method.getDeclaringClassId());
+            }
+        },
+        /** From classes to their declaring symbol (e.g. the outer class). */
+        DECLARING_SYMBOL {
+            @Override
+            void forEachReference(JvmMetadata metadata, BiConsumer<SymbolWithId, String> action) {
+                for (JvmClass jvmClass : metadata.jvmClasses)
+                    action.accept(jvmClass, jvmClass.getDeclaringSymbolId());
+            }
+        },
+        /** From variables to their declaring method. */
+        DECLARING_METHOD {
+            @Override
+            void forEachReference(JvmMetadata metadata, BiConsumer<SymbolWithId, String> action) {
+                for (JvmVariable variable : metadata.jvmVariables)
+                    action.accept(variable, variable.getDeclaringMethodId());
+            }
+        },
+        /** From invocations to the method that contains them. */
+        INVOKING_METHOD {
+            @Override
+            void forEachReference(JvmMetadata metadata, BiConsumer<SymbolWithId, String> action) {
+                for (JvmMethodInvocation invocation : metadata.jvmInvocations)
+                    action.accept(invocation, invocation.getInvokingMethodId());
+            }
+        },
+        /** From invocations to the invoked method. */
+        TARGET_METHOD {
+            @Override
+            void forEachReference(JvmMetadata metadata, BiConsumer<SymbolWithId, String> action) {
+                for (JvmMethodInvocation invocation : metadata.jvmInvocations)
+                    action.accept(invocation, invocation.getTargetMethodId());
+            }
+        },
+        /** From heap allocations to the method that contains them. */
+        ALLOCATING_METHOD {
+            @Override
+            void forEachReference(JvmMetadata metadata, BiConsumer<SymbolWithId, String> action) {
+                for (JvmHeapAllocation allocation : metadata.jvmHeapAllocations)
+                    action.accept(allocation, allocation.getAllocatingMethodId());
+            }
+        },
+        /** From heap allocations to the allocated type. */
+        ALLOCATED_TYPE {
+            @Override
+            void forEachReference(JvmMetadata metadata, BiConsumer<SymbolWithId, String> action) {
+                for (JvmHeapAllocation allocation : metadata.jvmHeapAllocations)
+                    action.accept(allocation, allocation.getAllocatedTypeId());
+            }
+        },
+        /** From usages to the used element. */
+        REFERENCE {
+            @Override
+            void forEachReference(JvmMetadata metadata, BiConsumer<SymbolWithId, String> action) {
+                for (Usage usage : metadata.usages)
+                    action.accept(usage, usage.getReferenceId());
+            }
+        },
+        /** From aliases to the aliased symbol. */
+        ORIGIN {
+            @Override
+            void forEachReference(JvmMetadata metadata, BiConsumer<SymbolWithId, String> action) {
+                for (SymbolAlias alias : metadata.aliases)
+                    action.accept(alias, alias.getOriginId());
+            }
+        },
+        /** From classes to their direct super types. */
+        SUPER_TYPE {
+            @Override
+            void forEachReference(JvmMetadata metadata, BiConsumer<SymbolWithId, String> action) {
+                for (JvmClass jvmClass : metadata.jvmClasses)
+                    if (jvmClass.getSuperTypes() != null)
+                        for (String superType : jvmClass.getSuperTypes())
+                            action.accept(jvmClass, superType);
+            }
+        };
+
+        /**
+         * Visit the references of this kind. The referenced id may be null.
+         * @param metadata   the metadata
+         * @param action     the action to call with every element and referenced id
+         */
+        abstract void forEachReference(JvmMetadata metadata, BiConsumer<SymbolWithId, String> action);
+    }
+
+    private final SymbolDictionary dictionary;
+    private final Map<Kind, IntRelation> relations = new EnumMap<>(Kind.class);
+    private final Map<Kind, IntRelation> inverses = new EnumMap<>(Kind.class);
+
+    /**
+     * Build the references of JVM metadata, over a new dictionary of its
+     * symbols (see {@link SymbolDictionary#of(JvmMetadata)}).
+     * @param metadata   the metadata
+     * @return           the references
+     */
+    public static SymbolReferences of(JvmMetadata metadata) {
+        return new SymbolReferences(metadata, SymbolDictionary.of(metadata));
+    }
+
+    /**
+     * Build the references of JVM metadata over a dictionary. Symbols that
+     * are missing from the dictionary are added to it.
+     * @param metadata     the metadata
+     * @param dictionary   the dictionary
+     */
+    public SymbolReferences(JvmMetadata metadata, SymbolDictionary dictionary) {
+        this.dictionary = dictionary;
+        BiConsumer<SymbolWithId, String> intern = (element, reference) -> {
+            if (element.getSymbolId() != null && reference != null) {
+                dictionary.intern(element.getSymbolId());
+                dictionary.intern(reference);
+            }
+        };
+        for (Kind kind : Kind.values())
+            kind.forEachReference(metadata, intern);
+        for (Kind kind : Kind.values()) {
+            IntRelation.Builder builder = new IntRelation.Builder(dictionary.size());
+            kind.forEachReference(metadata, (element, reference) -> {
+                if (element.getSymbolId() != null && reference != null)
+                    builder.add(dictionary.getId(element.getSymbolId()), dictionary.getId(reference));
+            });
+            relations.put(kind, builder.build());
+        }
+    }
+
+    /**
+     * Returns the dictionary of the symbol ids.
+     * @return   the dictionary
+     */
+    public SymbolDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Returns the references of a kind, from the ids of elements to the
+     * ids of the symbols they reference.
+     * @param kind   the kind of references
+     * @return       the relation
+     */
+    public IntRelation get(Kind kind) {
+        return relations.get(kind);
+    }
+
+    /**
+     * Returns the inverse references of a kind, from the ids of symbols to
+     * the ids of the elements that reference them (e.g. from a class to
+     * its fields and methods). Inverses are computed on first use.
+     * @param kind   the kind of references
+     * @return       the relation
+     */
+    public IntRelation getInverse(Kind kind) {
+        return inverses.computeIfAbsent(kind, k -> relations.get(k).inverse(relations.get(k).sources()));
+    }
+}
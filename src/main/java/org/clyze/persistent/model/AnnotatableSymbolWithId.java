@@ -1,5 +1,8 @@
 package org.clyze.persistent.model;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -34,4 +37,23 @@ public class AnnotatableSymbolWithId extends SymbolWithId {
         super.fromMap(map);
         this.annotations = new HashSet<>((Collection<String>) map.get("annotations"));
     }
+
+    @Override
+    protected void writeFields(JsonGenerator gen, ItemFormat format) throws IOException {
+        super.writeFields(gen, format);
+        writeStringsField(gen, "annotations", annotations);
+    }
+
+    @Override
+    protected boolean readField(String name, JsonParser parser, ItemFormat format) throws IOException {
+        switch (name) {
+            case "annotations": {
+                List<String> values = readStrings(parser);
+                this.annotations = values == null ? null : new HashSet<>(values);
+                return true;
+            }
+            default:
+                return super.readField(name, parser, format);
+        }
+    }
 }
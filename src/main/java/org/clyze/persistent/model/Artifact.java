@@ -1,5 +1,9 @@
 package org.clyze.persistent.model;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.Collection;
 import java.util.Set;
@@ -72,6 +76,58 @@ public class Artifact extends ItemImpl {
 		setParentArtifactId((String) map.get("parentArtifactId"));
 	}
 
+	@Override
+	protected void writeFields(JsonGenerator gen, ItemFormat format) throws IOException {
+		// The id of an artifact is a regular property, written in every format.
+		gen.writeStringField("id", id);
+		gen.writeStringField("name", name);
+		gen.writeStringField("kind", kind.name());
+		gen.writeBooleanField("isDependency", isDependency);
+		gen.writeStringField("sourcesName", sourcesName);
+		gen.writeStringField("checksum", checksum);
+		gen.writeNumberField("sizeInBytes", sizeInBytes);
+		writeStringsField(gen, "packages", packages);
+		gen.writeStringField("parentArtifactId", parentArtifactId);
+	}
+
+	@Override
+	protected boolean readField(String name, JsonParser parser, ItemFormat format) throws IOException {
+		switch (name) {
+			case "id":
+				setId(parser.getValueAsString());
+				return true;
+			case "name":
+				this.name = parser.getValueAsString();
+				return true;
+			case "kind":
+				this.kind = ArtifactKind.valueOf(parser.getValueAsString());
+				return true;
+			case "isDependency":
+				this.isDependency = parser.getValueAsBoolean();
+				return true;
+			case "sourcesName":
+				setSourcesName(parser.getValueAsString());
+				return true;
+			case "checksum":
+				setChecksum(parser.getValueAsString());
+				return true;
+			case "sizeInBytes":
+				this.sizeInBytes = parser.getValueAsLong();
+				return true;
+			case "packages": {
+				List<String> values = readStrings(parser);
+				if (values != null)
+					this.packages.addAll(values);
+				return true;
+			}
+			case "parentArtifactId":
+				setParentArtifactId(parser.getValueAsString());
+				return true;
+			default:
+				return false;
+		}
+	}
+
 	@Override
 	public String getId() {
 		return id;
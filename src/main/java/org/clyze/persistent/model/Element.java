@@ -1,5 +1,8 @@
 package org.clyze.persistent.model;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
 import java.util.Map;
 import java.util.Objects;
 
@@ -14,6 +17,9 @@ public abstract class Element extends ItemImpl {
 	 */
 	private String rootElemId;
 
+	/** The cached hash code (0 if not computed yet). */
+	private transient int hash;
+
 	public Element() {}		
 
 	public String getRootElemId() {
@@ -22,6 +28,7 @@ public abstract class Element extends ItemImpl {
 
 	public void setRootElemId(String rootElemId) {
 		this.rootElemId = rootElemId;
+		invalidateHash();
 	}
 
 	@Override
@@ -29,13 +36,52 @@ public abstract class Element extends ItemImpl {
 		if (this == object) return true;
 		if (!(object instanceof Element)) return false;
 		Element element = (Element) object;
+		// Equal elements have equal hash codes, so differing cached hash codes
+		// tell unequal elements apart without comparing their properties.
+		if (hash != 0 && element.hash != 0 && hash != element.hash) return false;
 
 		return Objects.equals(rootElemId, element.rootElemId);
 	}
 
+	/**
+	 * Returns the hash code of this element. The hash code is computed by
+	 * {@link #computeHashCode()} once and cached until a property that
+	 * takes part in equality changes.
+	 */
 	@Override
 	public int hashCode() {
-		return Objects.hash(rootElemId);
+		int h = hash;
+		if (h == 0)
+			hash = h = computeHashCode();
+		return h;
+	}
+
+	/**
+	 * Computes the hash code of this element. Subclasses that add properties
+	 * to equals() extend this method (combining properties with {@link #hashStep(int, Object)})
+	 * and call {@link #invalidateHash()} whenever these properties change.
+	 * @return   the hash code
+	 */
+	protected int computeHashCode() {
+		return hashStep(1, rootElemId);
+	}
+
+	/**
+	 * Forget the cached hash code, after a change to a property used by equals().
+	 */
+	protected final void invalidateHash() {
+		hash = 0;
+	}
+
+	/**
+	 * Combine a partial hash code with the hash code of a value, in the
+	 * same way as {@link Objects#hash(Object...)} (but without allocating).
+	 * @param hash    the partial hash code
+	 * @param value   the value (may be null)
+	 * @return        the combined hash code
+	 */
+	protected static int hashStep(int hash, Object value) {
+		return 31 * hash + Objects.hashCode(value);
 	}
 
 	@Override
@@ -47,5 +93,23 @@ public abstract class Element extends ItemImpl {
 	@Override
 	public void fromMap(Map<String, Object> map){
 		this.rootElemId = (String) map.get("rootElemId");
+		invalidateHash();
+	}
+
+	@Override
+	protected void writeFields(JsonGenerator gen, ItemFormat format) throws IOException {
+		super.writeFields(gen, format);
+		gen.writeStringField("rootElemId", rootElemId);
+	}
+
+	@Override
+	protected boolean readField(String name, JsonParser parser, ItemFormat format) throws IOException {
+		switch (name) {
+			case "rootElemId":
+				setRootElemId(parser.getValueAsString());
+				return true;
+			default:
+				return super.readField(name, parser, format);
+		}
 	}
 }
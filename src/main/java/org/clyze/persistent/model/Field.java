@@ -1,5 +1,8 @@
 package org.clyze.persistent.model;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
 import java.util.Map;
 import java.util.Objects;
 
@@ -37,6 +40,7 @@ public class Field extends AnnotatableSymbolWithId {
 
     public void setName(String name) {
         this.name = name;
+        invalidateHash();
     }
 
     @Override
@@ -51,6 +55,23 @@ public class Field extends AnnotatableSymbolWithId {
         setName((String) map.get("name"));
     }
 
+    @Override
+    protected void writeFields(JsonGenerator gen, ItemFormat format) throws IOException {
+        super.writeFields(gen, format);
+        gen.writeStringField("name", name);
+    }
+
+    @Override
+    protected boolean readField(String name, JsonParser parser, ItemFormat format) throws IOException {
+        switch (name) {
+            case "name":
+                setName(parser.getValueAsString());
+                return true;
+            default:
+                return super.readField(name, parser, format);
+        }
+    }
+
     @Override
     public boolean equals(Object that) {
         if (this == that) return true;
@@ -60,7 +81,7 @@ public class Field extends AnnotatableSymbolWithId {
     }
 
     @Override
-    public int hashCode() {
-        return Objects.hash(super.hashCode(), name);
+    protected int computeHashCode() {
+        return hashStep(31 + super.computeHashCode(), name);
     }
 }
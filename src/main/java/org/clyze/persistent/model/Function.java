@@ -1,5 +1,8 @@
 package org.clyze.persistent.model;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -39,7 +42,7 @@ public class Function extends AnnotatableSymbolWithId {
         super(position, sourceFileName, source, artifactName, symbolId);
         this.name = name;
         this.params = params;
-        this.outerPosition = outerPosition;
+        this.outerPosition = Position.canonical(outerPosition);
     }
 
     public String getName() {
@@ -63,7 +66,7 @@ public class Function extends AnnotatableSymbolWithId {
     }
 
     public void setOuterPosition(Position outerPosition) {
-        this.outerPosition = outerPosition;
+        this.outerPosition = Position.canonical(outerPosition);
     }
 
     @Override
@@ -84,6 +87,31 @@ public class Function extends AnnotatableSymbolWithId {
             setOuterPosition(outerPosition);
     }
 
+    @Override
+    protected void writeFields(JsonGenerator gen, ItemFormat format) throws IOException {
+        super.writeFields(gen, format);
+        gen.writeStringField("name", name);
+        writeStringsField(gen, "params", params);
+        writePositionField(gen, "outerPosition", outerPosition, format);
+    }
+
+    @Override
+    protected boolean readField(String name, JsonParser parser, ItemFormat format) throws IOException {
+        switch (name) {
+            case "name":
+                setName(parser.getValueAsString());
+                return true;
+            case "params":
+                setParams(listToArray(readStrings(parser)));
+                return true;
+            case "outerPosition":
+                setOuterPosition(Position.readJson(parser));
+                return true;
+            default:
+                return super.readField(name, parser, format);
+        }
+    }
+
     /**
      * Helper method to load string lists.
      * @param o   an object that should be a string list
@@ -0,0 +1,53 @@
+package org.clyze.persistent.model;
+
+/**
+ * The JSON format of items, as written and read by the item codecs
+ * ({@link ItemImpl#writeJson(com.fasterxml.jackson.core.JsonGenerator, ItemFormat)}
+ * and {@link ItemImpl#readJson(com.fasterxml.jackson.core.JsonParser, ItemFormat)}).
+ */
+public final class ItemFormat {
+
+    /** The format of metadata reports: all properties, including element ids. */
+    public static final ItemFormat REPORT = new ItemFormat(true, false, true);
+    /** The format of metadata reports, with single-number JVM modifiers. */
+    public static final ItemFormat REPORT_WITH_MODIFIER_MASKS = new ItemFormat(true, true, true);
+    /** The format of {@link Item#toJSON()}: the properties of {@link Item#toMap()}. */
+    public static final ItemFormat ITEM = new ItemFormat(false, false, false);
+
+    private final boolean elementIds;
+    private final boolean modifiersAsMask;
+    private final boolean nullPositions;
+
+    private ItemFormat(boolean elementIds, boolean modifiersAsMask, boolean nullPositions) {
+        this.elementIds = elementIds;
+        this.modifiersAsMask = modifiersAsMask;
+        this.nullPositions = nullPositions;
+    }
+
+    /**
+     * Returns true if the (optional) ids of elements are part of the format.
+     * Items whose id is a regular property (e.g. source files) always include it.
+     * @return   true if element ids are written and read
+     */
+    public boolean hasElementIds() {
+        return elementIds;
+    }
+
+    /**
+     * Returns true if the modifiers of JVM elements are written as a single
+     * "modifiers" number instead of one flag each. Both forms are always read.
+     * @return   true for single-number modifiers
+     */
+    public boolean hasModifiersAsMask() {
+        return modifiersAsMask;
+    }
+
+    /**
+     * Returns true if missing positions are written as null fields (as in
+     * reports) instead of being omitted (as in {@link Item#toMap()}).
+     * @return   true if null positions are written
+     */
+    public boolean hasNullPositions() {
+        return nullPositions;
+    }
+}
@@ -1,10 +1,26 @@
 package org.clyze.persistent.model;
 
-import java.util.Map;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import org.clyze.persistent.metadata.JSONUtil;
 
-/** The top-level implementation of items in the model. */
+/**
+ * The top-level implementation of items in the model.
+ *
+ * Items are converted to and from JSON field by field, by the chains of
+ * {@link #writeFields(JsonGenerator, ItemFormat)} and
+ * {@link #readField(String, JsonParser, ItemFormat)} methods (every class
+ * handles its own properties and delegates the rest to its superclass),
+ * so no intermediate map is built.
+ */
 public abstract class ItemImpl implements Item {
 
 	protected String id; //The unique identifier of the item (it is optional and not serialized)
@@ -21,9 +37,9 @@ public abstract class ItemImpl implements Item {
 
 	@Override
 	public ItemImpl fromJSON(String json) {
-		try {
-			Map<String, Object> map = JSONUtil.toMap(json);
-			fromMap(map);
+		try (JsonParser parser = JSONUtil.getObjectMapper().getFactory().createParser(json)) {
+			parser.nextToken();
+			readJson(parser, ItemFormat.ITEM);
 		} catch (Exception ex) {
 			ex.printStackTrace();
 		}
@@ -32,20 +48,155 @@ public abstract class ItemImpl implements Item {
 
 	@Override
 	public String toJSON() {
-		try {
-			return JSONUtil.getObjectWriter().writeValueAsString(toMap());
+		StringWriter json = new StringWriter();
+		try (JsonGenerator gen = JSONUtil.getObjectMapper().getFactory().createGenerator(json)) {
+			gen.useDefaultPrettyPrinter();
+			writeJson(gen, ItemFormat.ITEM);
 		} catch (Exception ex) {
 			ex.printStackTrace();
 			return "{}";
 		}
+		return json.toString();
 	}
 
 	@Override
 	public Map<String, Object> toMap() {
 		Map<String, Object> map = new HashMap<>();
-		saveTo(map);		
+		saveTo(map);
 		return map;
 	}
 
 	protected abstract void saveTo(Map<String, Object> map);
+
+	/**
+	 * Write this item as a JSON object.
+	 * @param gen      the JSON generator to use
+	 * @param format   the JSON format
+	 * @throws IOException on serialization error
+	 */
+	public void writeJson(JsonGenerator gen, ItemFormat format) throws IOException {
+		gen.writeStartObject(this);
+		writeFields(gen, format);
+		gen.writeEndObject();
+	}
+
+	/**
+	 * Write the properties of this item as JSON object fields. Subclasses
+	 * first call the method of their superclass and then write their own
+	 * properties, in declaration order.
+	 * @param gen      the JSON generator to use
+	 * @param format   the JSON format
+	 * @throws IOException on serialization error
+	 */
+	protected void writeFields(JsonGenerator gen, ItemFormat format) throws IOException {
+		if (format.hasElementIds())
+			gen.writeStringField("id", getId());
+	}
+
+	/**
+	 * Populate this item from a JSON object. Unknown fields are skipped.
+	 * @param parser   the JSON parser, positioned at the start of the object
+	 * @param format   the JSON format
+	 * @throws IOException on parse error or if the parser does not point to an object
+	 */
+	public void readJson(JsonParser parser, ItemFormat format) throws IOException {
+		JsonToken token = parser.currentToken();
+		if (token == JsonToken.START_OBJECT)
+			token = parser.nextToken();
+		for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+			String name = parser.currentName();
+			parser.nextToken();
+			if (!readField(name, parser, format))
+				parser.skipChildren();
+		}
+		if (token != JsonToken.END_OBJECT)
+			throw new IOException("Malformed " + getClass().getSimpleName() + " object: found " + token + " at " + parser.currentLocation());
+	}
+
+	/**
+	 * Read a JSON object field into a property of this item. Subclasses
+	 * handle their own properties and delegate the rest to their superclass.
+	 * @param name     the field name
+	 * @param parser   the JSON parser, positioned at the field value
+	 * @param format   the JSON format
+	 * @return         true if the field was read, false if it is unknown
+	 * @throws IOException on parse error
+	 */
+	protected boolean readField(String name, JsonParser parser, ItemFormat format) throws IOException {
+		if (format.hasElementIds() && name.equals("id")) {
+			setId(parser.getValueAsString());
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Helper method to write a field with a string collection value.
+	 * @param gen      the JSON generator to use
+	 * @param name     the field name
+	 * @param values   the strings (may be null)
+	 * @throws IOException on serialization error
+	 */
+	protected static void writeStringsField(JsonGenerator gen, String name, Collection<String> values) throws IOException {
+		gen.writeFieldName(name);
+		if (values == null)
+			gen.writeNull();
+		else {
+			gen.writeStartArray(values, values.size());
+			for (String value : values)
+				gen.writeString(value);
+			gen.writeEndArray();
+		}
+	}
+
+	/**
+	 * Helper method to write a field with a string array value.
+	 * @param gen      the JSON generator to use
+	 * @param name     the field name
+	 * @param values   the strings (may be null)
+	 * @throws IOException on serialization error
+	 */
+	protected static void writeStringsField(JsonGenerator gen, String name, String[] values) throws IOException {
+		gen.writeFieldName(name);
+		if (values == null)
+			gen.writeNull();
+		else
+			gen.writeArray(values, 0, values.length);
+	}
+
+	/**
+	 * Helper method to read a string array value.
+	 * @param parser   the JSON parser, positioned at the value
+	 * @return         the strings or null if the value is null
+	 * @throws IOException on parse error
+	 */
+	protected static List<String> readStrings(JsonParser parser) throws IOException {
+		if (parser.currentToken() != JsonToken.START_ARRAY) {
+			parser.skipChildren();
+			return null;
+		}
+		List<String> values = new ArrayList<>();
+		while (parser.nextToken() != JsonToken.END_ARRAY)
+			values.add(parser.getValueAsString());
+		return values;
+	}
+
+	/**
+	 * Helper method to write a field with a position value. Null positions
+	 * are omitted, unless the format writes them (see {@link ItemFormat#hasNullPositions()}).
+	 * @param gen        the JSON generator to use
+	 * @param name       the field name
+	 * @param position   the position (may be null)
+	 * @param format     the JSON format
+	 * @throws IOException on serialization error
+	 */
+	protected static void writePositionField(JsonGenerator gen, String name, Position position, ItemFormat format) throws IOException {
+		if (position != null) {
+			gen.writeFieldName(name);
+			position.writeJson(gen);
+		} else if (format.hasNullPositions()) {
+			gen.writeFieldName(name);
+			gen.writeNull();
+		}
+	}
 }
@@ -1,5 +1,8 @@
 package org.clyze.persistent.model;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
 import java.util.Map;
 import java.util.List;
 
@@ -53,4 +56,37 @@ public class Package extends ItemImpl {
 		this.parentPackageId    = (String) map.get("parentPackageId");
 		this.artifactIds        = (List<String>) map.get("artifactIds");
 	}
+
+	@Override
+	protected void writeFields(JsonGenerator gen, ItemFormat format) throws IOException {
+		// The id of a package is a regular property, written in every format.
+		gen.writeStringField("id", id);
+		gen.writeStringField("name", name);
+		gen.writeStringField("fullyQualifiedName", fullyQualifiedName);
+		gen.writeStringField("parentPackageId", parentPackageId);
+		writeStringsField(gen, "artifactIds", artifactIds);
+	}
+
+	@Override
+	protected boolean readField(String name, JsonParser parser, ItemFormat format) throws IOException {
+		switch (name) {
+			case "id":
+				this.id = parser.getValueAsString();
+				return true;
+			case "name":
+				this.name = parser.getValueAsString();
+				return true;
+			case "fullyQualifiedName":
+				this.fullyQualifiedName = parser.getValueAsString();
+				return true;
+			case "parentPackageId":
+				this.parentPackageId = parser.getValueAsString();
+				return true;
+			case "artifactIds":
+				this.artifactIds = readStrings(parser);
+				return true;
+			default:
+				return false;
+		}
+	}
 }
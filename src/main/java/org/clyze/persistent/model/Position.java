@@ -1,17 +1,36 @@
 package org.clyze.persistent.model;
 
-import java.util.Objects;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
 
-/** A source code position. */
+/**
+ * A source code position.
+ *
+ * Positions are immutable and are stored compactly (as four ints), since
+ * they are the most numerous objects in metadata. Common spans can be
+ * shared through {@link #of(long, long, long, long)} and {@link #canonical(Position)}.
+ */
 public class Position {
 
-	private long startLine;
-	private long startColumn;
-	private long endLine;
-	private long endColumn;
+	/** The size of the cache of canonical positions (a power of two). */
+	private static final int CACHE_SIZE = 1 << 14;
+	/**
+	 * Recently used positions, indexed by hash. Entries may be replaced
+	 * at any time; since positions are immutable, racy access is safe.
+	 */
+	private static final Position[] cache = new Position[CACHE_SIZE];
 
-	/** No-arg constructor, use setters to populate the object. */
-	public Position() {}
+	private final int startLine;
+	private final int startColumn;
+	private final int endLine;
+	private final int endColumn;
+
+	/** No-arg constructor, creates the empty position. */
+	public Position() {
+		this(0, 0, 0, 0);
+	}
 
 	/**
 	 * May be used when the symbol exists only in one line in the source code.
@@ -31,15 +50,108 @@ public class Position {
 	 * @param endLine         source end line
 	 * @param startColumn     source start column
 	 * @param endColumn       source end column
+	 * @throws IllegalArgumentException if a line or column does not fit in an int
 	 */
 	public Position(long startLine, long endLine, long startColumn, long endColumn) {
 		//TODO: Either this check should be performed by the caller or a new Factory method should be introduced
 		//assert startLine < endLine || (startLine == endLine && startColumn <= endColumn): "Invalid symbol position"
 
-		this.startLine = startLine;
-		this.endLine = endLine;
-		this.startColumn = startColumn;
-		this.endColumn = endColumn;
+		this.startLine = toInt(startLine);
+		this.endLine = toInt(endLine);
+		this.startColumn = toInt(startColumn);
+		this.endColumn = toInt(endColumn);
+	}
+
+	private static int toInt(long value) {
+		if (value != (int) value)
+			throw new IllegalArgumentException("Position value out of range: " + value);
+		return (int) value;
+	}
+
+	/**
+	 * Returns a position, reusing a cached equal position when possible.
+	 *
+	 * @param startLine       source start line
+	 * @param endLine         source end line
+	 * @param startColumn     source start column
+	 * @param endColumn       source end column
+	 * @return                the position
+	 */
+	public static Position of(long startLine, long endLine, long startColumn, long endColumn) {
+		int slot = slot(hash(startLine, startColumn, endLine, endColumn));
+		Position cached = cache[slot];
+		if (cached != null && cached.startLine == startLine && cached.startColumn == startColumn
+				&& cached.endLine == endLine && cached.endColumn == endColumn)
+			return cached;
+		Position position = new Position(startLine, endLine, startColumn, endColumn);
+		cache[slot] = position;
+		return position;
+	}
+
+	/**
+	 * Returns a cached position equal to the given one (caching the
+	 * given position if no such position exists).
+	 *
+	 * @param position   the position (may be null)
+	 * @return           an equal position
+	 */
+	public static Position canonical(Position position) {
+		if (position == null)
+			return null;
+		int slot = slot(position.hashCode());
+		Position cached = cache[slot];
+		if (position.equals(cached))
+			return cached;
+		cache[slot] = position;
+		return position;
+	}
+
+	private static int slot(int hash) {
+		return (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+	}
+
+	/**
+	 * Write this position as a JSON object.
+	 * @param gen   the JSON generator to use
+	 * @throws IOException on serialization error
+	 */
+	public void writeJson(JsonGenerator gen) throws IOException {
+		gen.writeStartObject(this);
+		gen.writeNumberField("startLine", startLine);
+		gen.writeNumberField("startColumn", startColumn);
+		gen.writeNumberField("endLine", endLine);
+		gen.writeNumberField("endColumn", endColumn);
+		gen.writeEndObject();
+	}
+
+	/**
+	 * Read a position from a JSON object (unknown fields are skipped).
+	 * @param parser   the JSON parser, positioned at the start of the object
+	 * @return         the position (shared through the cache of {@link #of(long, long, long, long)})
+	 *                 or null if the parser points to a null value
+	 * @throws IOException on parse error or if the parser does not point to an object
+	 */
+	public static Position readJson(JsonParser parser) throws IOException {
+		JsonToken token = parser.currentToken();
+		if (token == JsonToken.VALUE_NULL)
+			return null;
+		if (token == JsonToken.START_OBJECT)
+			token = parser.nextToken();
+		long startLine = 0, startColumn = 0, endLine = 0, endColumn = 0;
+		for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+			String name = parser.currentName();
+			parser.nextToken();
+			switch (name) {
+				case "startLine"  : startLine = parser.getValueAsLong(); break;
+				case "startColumn": startColumn = parser.getValueAsLong(); break;
+				case "endLine"    : endLine = parser.getValueAsLong(); break;
+				case "endColumn"  : endColumn = parser.getValueAsLong(); break;
+				default           : parser.skipChildren();
+			}
+		}
+		if (token != JsonToken.END_OBJECT)
+			throw new IOException("Malformed position: found " + token + " at " + parser.currentLocation());
+		return of(startLine, endLine, startColumn, endColumn);
 	}
 
 	public long getStartLine() {
@@ -70,9 +182,19 @@ public class Position {
     }
 
     public int hashCode() {
-        return Objects.hash(startLine, startColumn, endLine, endColumn);
+        return hash(startLine, startColumn, endLine, endColumn);
     }
 
+	/**
+	 * Same as Objects.hash() over the (boxed) coordinates, without allocating.
+	 */
+	private static int hash(long startLine, long startColumn, long endLine, long endColumn) {
+		int result = 31 + Long.hashCode(startLine);
+		result = 31 * result + Long.hashCode(startColumn);
+		result = 31 * result + Long.hashCode(endLine);
+		return 31 * result + Long.hashCode(endColumn);
+	}
+
 	@Override
 	public String toString() {
 		return "[" + startLine + ":" + startColumn + "]..[" + endLine + ":" + endColumn + "]";
@@ -1,6 +1,8 @@
 package org.clyze.persistent.model;
 
-import java.util.Comparator;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
 import java.util.Map;
 import java.util.Objects;
 
@@ -19,7 +21,7 @@ public class SourceFile extends ItemImpl implements Comparable<SourceFile> {
     public SourceFile() {}
 
     public SourceFile(String artifactName, String path, String id) {
-        this.artifactName = artifactName;
+        this.artifactName = StringPool.canonical(artifactName);
         this.path = path;
         this.id = id;
     }
@@ -28,14 +30,28 @@ public class SourceFile extends ItemImpl implements Comparable<SourceFile> {
         return this.artifactName;
     }
 
+    public void setArtifactName(String artifactName) {
+        this.artifactName = StringPool.canonical(artifactName);
+    }
+
     public String getPath() {
         return this.path;
     }
 
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    @Override
     public String getId() {
         return this.id;
     }
 
+    @Override
+    public void setId(String id) {
+        this.id = id;
+    }
+
     @Override
     public boolean equals(Object object) {
         if (this == object) return true;
@@ -46,7 +62,7 @@ public class SourceFile extends ItemImpl implements Comparable<SourceFile> {
     }
 
     public int hashCode() {
-        return Objects.hash(path, id);
+        return 31 * (31 + Objects.hashCode(path)) + Objects.hashCode(id);
     }
 
     @Override
@@ -58,14 +74,39 @@ public class SourceFile extends ItemImpl implements Comparable<SourceFile> {
 
     @Override
     public void fromMap(Map<String, Object> map) {
-        this.artifactName = (String) map.get("artifactName");
+        this.artifactName = StringPool.canonical((String) map.get("artifactName"));
         this.path = (String) map.get("path");
         this.id = (String) map.get("id");
     }
 
+    @Override
+    protected void writeFields(JsonGenerator gen, ItemFormat format) throws IOException {
+        // The id of a source file is a regular property, written in every format.
+        gen.writeStringField("id", id);
+        gen.writeStringField("artifactName", artifactName);
+        gen.writeStringField("path", path);
+    }
+
+    @Override
+    protected boolean readField(String name, JsonParser parser, ItemFormat format) throws IOException {
+        switch (name) {
+            case "id":
+                this.id = parser.getValueAsString();
+                return true;
+            case "artifactName":
+                setArtifactName(parser.getValueAsString());
+                return true;
+            case "path":
+                setPath(parser.getValueAsString());
+                return true;
+            default:
+                return false;
+        }
+    }
+
     @Override
     public int compareTo(SourceFile that) {
-        return Comparator.comparing(SourceFile::getId).compare(this, that);
+        return id.compareTo(that.id);
     }
 
     @Override
@@ -0,0 +1,167 @@
+package org.clyze.persistent.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A pool of canonical strings, used to share the many equal copies of
+ * file names, artifact names and type names that metadata elements hold.
+ *
+ * Model setters (and constructors) canonicalize such strings through the
+ * pool that is active in the current thread. No pool is active by
+ * default; generators activate one for the duration of a report (report
+ * loaders do so automatically):
+ * <pre>
+ * StringPool pool = StringPool.create();
+ * try (StringPool.Scope scope = StringPool.enter(pool)) {
+ *     // generate metadata
+ * }
+ * </pre>
+ * When the scope is closed, the previously active pool is restored and
+ * the pool of the scope can be garbage collected (the canonical strings
+ * stay in the elements that use them). Pools returned by {@link #create()}
+ * are thread-safe, so worker threads of a generator can enter the same
+ * pool. Custom pools can be plugged in by subclassing.
+ */
+public abstract class StringPool {
+
+    /** The active pool of each thread. */
+    private static final ThreadLocal<StringPool> ACTIVE = new ThreadLocal<>();
+
+    /**
+     * Returns the canonical copy of a string.
+     * @param s   the (non-null) string
+     * @return    an equal string, shared by all users of this pool
+     */
+    public abstract String canonicalize(String s);
+
+    /**
+     * Returns the number of strings held by the pool.
+     * @return   the number of strings or -1 if not known
+     */
+    public int size() {
+        return -1;
+    }
+
+    /**
+     * Create a thread-safe, hash-based pool.
+     * @return   the new pool
+     */
+    public static StringPool create() {
+        return new HashPool();
+    }
+
+    /**
+     * Returns a pool that does not deduplicate strings. Activating it
+     * turns off canonicalization (e.g. in report loaders).
+     * @return   the pool
+     */
+    public static StringPool disabled() {
+        return Identity.INSTANCE;
+    }
+
+    /**
+     * Canonicalize a string through the active pool.
+     * @param s   the string (may be null)
+     * @return    the canonical string (or s if no pool is active)
+     */
+    public static String canonical(String s) {
+        if (s == null)
+            return null;
+        StringPool pool = ACTIVE.get();
+        return pool == null ? s : pool.canonicalize(s);
+    }
+
+    /**
+     * Canonicalize the strings of an array (in place) through the active pool.
+     * @param array   the array (may be null)
+     * @return        the array
+     */
+    public static String[] canonical(String[] array) {
+        StringPool pool = array == null ? null : ACTIVE.get();
+        if (pool != null)
+            for (int i = 0; i < array.length; i++)
+                if (array[i] != null)
+                    array[i] = pool.canonicalize(array[i]);
+        return array;
+    }
+
+    /**
+     * Returns the pool that is active in the current thread.
+     * @return   the active pool or null if no pool is active
+     */
+    public static StringPool getActive() {
+        return ACTIVE.get();
+    }
+
+    /**
+     * Activate a pool in the current thread until the returned scope is closed.
+     * @param pool   the pool to activate
+     * @return       the scope of the pool
+     */
+    public static Scope enter(StringPool pool) {
+        if (pool == null)
+            throw new IllegalArgumentException("String pool cannot be null");
+        Scope scope = new Scope(ACTIVE.get());
+        ACTIVE.set(pool);
+        return scope;
+    }
+
+    /**
+     * Activate a fresh pool in the current thread, unless a pool is
+     * already active (then the active pool stays in use).
+     * @return   the scope of the pool
+     */
+    public static Scope enterIfInactive() {
+        StringPool pool = ACTIVE.get();
+        return enter(pool == null ? create() : pool);
+    }
+
+    /** The scope of an active pool. Closing it restores the previous pool. */
+    public static final class Scope implements AutoCloseable {
+        private final StringPool previous;
+
+        private Scope(StringPool previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous == null)
+                ACTIVE.remove();
+            else
+                ACTIVE.set(previous);
+        }
+    }
+
+    /** A pool that returns its input. */
+    private static final class Identity extends StringPool {
+        static final Identity INSTANCE = new Identity();
+
+        @Override
+        public String canonicalize(String s) {
+            return s;
+        }
+    }
+
+    /** A pool backed by a concurrent hash map. */
+    private static final class HashPool extends StringPool {
+        private final ConcurrentMap<String, String> strings = new ConcurrentHashMap<>();
+
+        @Override
+        public String canonicalize(String s) {
+            String canonical = strings.get(s);
+            if (canonical == null) {
+                canonical = strings.putIfAbsent(s, s);
+                if (canonical == null)
+                    canonical = s;
+            }
+            return canonical;
+        }
+
+        @Override
+        public int size() {
+            return strings.size();
+        }
+    }
+}
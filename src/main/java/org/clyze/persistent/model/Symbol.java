@@ -1,5 +1,8 @@
 package org.clyze.persistent.model;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Objects;
@@ -31,8 +34,8 @@ public abstract class Symbol extends Element {
      * @param source          if false, the symbol is compiler-generated or external/binary
      */
     public Symbol(Position position, String sourceFileName, boolean source) {
-        this.position = position;
-        this.sourceFileName = sourceFileName;
+        this.position = Position.canonical(position);
+        this.sourceFileName = StringPool.canonical(sourceFileName);
         this.source = source;
     }
 
@@ -41,7 +44,8 @@ public abstract class Symbol extends Element {
     }
 
     public void setPosition(Position position) {
-        this.position = position;
+        this.position = Position.canonical(position);
+        invalidateHash();
     }
 
     public String getSourceFileName() {
@@ -49,7 +53,8 @@ public abstract class Symbol extends Element {
     }
 
     public void setSourceFileName(String sourceFileName) {
-        this.sourceFileName = sourceFileName;
+        this.sourceFileName = StringPool.canonical(sourceFileName);
+        invalidateHash();
     }
 
     public boolean isSource() {
@@ -58,6 +63,7 @@ public abstract class Symbol extends Element {
 
     public void setSource(boolean source) {
         this.source = source;
+        invalidateHash();
     }
 
     @Override
@@ -69,12 +75,15 @@ public abstract class Symbol extends Element {
         return super.equals(symbol)
             && Objects.equals(sourceFileName, symbol.sourceFileName)
             && Objects.equals(position, symbol.position)
-            && Objects.equals(source, symbol.source);
+            && source == symbol.source;
     }
 
     @Override
-    public int hashCode() {
-        return Objects.hash(super.hashCode(), sourceFileName, position, source);
+    protected int computeHashCode() {
+        int h = 31 + super.computeHashCode();
+        h = hashStep(h, sourceFileName);
+        h = hashStep(h, position);
+        return 31 * h + Boolean.hashCode(source);
     }
 
     protected static void putPosition(Map<String, Object> map, String key, Position position) {
@@ -92,7 +101,7 @@ public abstract class Symbol extends Element {
         @SuppressWarnings("unchecked") Map<String, Object> position = (Map<String, Object>)map.get(key);
         if (position == null)
             return null;
-        return new Position(((Number) position.get("startLine")).longValue(),
+        return Position.of(((Number) position.get("startLine")).longValue(),
             ((Number) position.get("endLine")).longValue(),
             ((Number) position.get("startColumn")).longValue(),
             ((Number) position.get("endColumn")).longValue()
@@ -116,4 +125,29 @@ public abstract class Symbol extends Element {
         setSourceFileName((String) map.get("sourceFileName"));
         setSource((boolean) map.get("source"));
     }
+
+    @Override
+    protected void writeFields(JsonGenerator gen, ItemFormat format) throws IOException {
+        super.writeFields(gen, format);
+        writePositionField(gen, "position", position, format);
+        gen.writeStringField("sourceFileName", sourceFileName);
+        gen.writeBooleanField("source", source);
+    }
+
+    @Override
+    protected boolean readField(String name, JsonParser parser, ItemFormat format) throws IOException {
+        switch (name) {
+            case "position":
+                setPosition(Position.readJson(parser));
+                return true;
+            case "sourceFileName":
+                setSourceFileName(parser.getValueAsString());
+                return true;
+            case "source":
+                setSource(parser.getValueAsBoolean());
+                return true;
+            default:
+                return super.readField(name, parser, format);
+        }
+    }
 }
@@ -1,5 +1,8 @@
 package org.clyze.persistent.model;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
 import java.util.Map;
 
 /**
@@ -63,6 +66,23 @@ public class SymbolAlias extends SymbolWithId {
         setOriginId((String) map.get("originId"));
     }
 
+    @Override
+    protected void writeFields(JsonGenerator gen, ItemFormat format) throws IOException {
+        super.writeFields(gen, format);
+        gen.writeStringField("originId", originId);
+    }
+
+    @Override
+    protected boolean readField(String name, JsonParser parser, ItemFormat format) throws IOException {
+        switch (name) {
+            case "originId":
+                setOriginId(parser.getValueAsString());
+                return true;
+            default:
+                return super.readField(name, parser, format);
+        }
+    }
+
     @Override
     public String toString() {
         return "Alias[" + getOriginId() + " as " + getSymbolId() + "]";
@@ -1,6 +1,8 @@
 package org.clyze.persistent.model;
 
-import java.util.Comparator;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
 import java.util.Map;
 import java.util.Objects;
 
@@ -12,7 +14,10 @@ public abstract class SymbolWithId extends Symbol implements Comparable<SymbolWi
     /** The artifact name (e.g. foo-1.2.jar) */
     private String artifactName;
 
-    /** The unique id of this symbol. */
+    /**
+     * The unique id of this symbol. Subclasses that change it directly
+     * must call {@link #invalidateHash()}.
+     */
     protected String symbolId;
 
     /**
@@ -23,7 +28,7 @@ public abstract class SymbolWithId extends Symbol implements Comparable<SymbolWi
     public SymbolWithId(Position position, String sourceFileName, boolean source,
                         String artifactName, String symbolId) {
         super(position, sourceFileName, source);
-        this.artifactName = artifactName;
+        this.artifactName = StringPool.canonical(artifactName);
         this.symbolId = symbolId;
     }
 
@@ -33,6 +38,7 @@ public abstract class SymbolWithId extends Symbol implements Comparable<SymbolWi
 
     public void setSymbolId(String symbolId) {
         this.symbolId = symbolId;
+        invalidateHash();
     }
 
     public String getArtifactName() {
@@ -40,7 +46,7 @@ public abstract class SymbolWithId extends Symbol implements Comparable<SymbolWi
     }
 
     public void setArtifactName(String artifactName) {
-        this.artifactName = artifactName;
+        this.artifactName = StringPool.canonical(artifactName);
     }
 
     @Override
@@ -52,13 +58,13 @@ public abstract class SymbolWithId extends Symbol implements Comparable<SymbolWi
     }
 
     @Override
-    public int hashCode() {
-        return Objects.hash(super.hashCode(), symbolId);
+    protected int computeHashCode() {
+        return hashStep(31 + super.computeHashCode(), symbolId);
     }
 
     @Override
     public int compareTo(SymbolWithId that) {
-        return Comparator.comparing(SymbolWithId::getSymbolId).compare(this, that);
+        return symbolId.compareTo(that.symbolId);
     }
 
     @Override
@@ -74,4 +80,25 @@ public abstract class SymbolWithId extends Symbol implements Comparable<SymbolWi
         setSymbolId((String) map.get("symbolId"));
         setArtifactName((String) map.get("artifactName"));
     }
+
+    @Override
+    protected void writeFields(JsonGenerator gen, ItemFormat format) throws IOException {
+        super.writeFields(gen, format);
+        gen.writeStringField("artifactName", artifactName);
+        gen.writeStringField("symbolId", symbolId);
+    }
+
+    @Override
+    protected boolean readField(String name, JsonParser parser, ItemFormat format) throws IOException {
+        switch (name) {
+            case "artifactName":
+                setArtifactName(parser.getValueAsString());
+                return true;
+            case "symbolId":
+                setSymbolId(parser.getValueAsString());
+                return true;
+            default:
+                return super.readField(name, parser, format);
+        }
+    }
 }
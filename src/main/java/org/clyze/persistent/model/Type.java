@@ -1,5 +1,8 @@
 package org.clyze.persistent.model;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
 import java.util.Map;
 import java.util.Objects;
 
@@ -54,6 +57,23 @@ public class Type extends AnnotatableSymbolWithId {
         this.name = (String) map.get("name");
     }
 
+    @Override
+    protected void writeFields(JsonGenerator gen, ItemFormat format) throws IOException {
+        super.writeFields(gen, format);
+        gen.writeStringField("name", name);
+    }
+
+    @Override
+    protected boolean readField(String name, JsonParser parser, ItemFormat format) throws IOException {
+        switch (name) {
+            case "name":
+                this.name = parser.getValueAsString();
+                return true;
+            default:
+                return super.readField(name, parser, format);
+        }
+    }
+
     @Override
     public boolean equals(Object object) {
         if ((!(object instanceof Type)))
@@ -1,5 +1,8 @@
 package org.clyze.persistent.model;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
 import java.util.Map;
 import java.util.Objects;
 
@@ -35,6 +38,7 @@ public class Usage extends SymbolWithId {
 
     public void setUsageKind(UsageKind usageKind) {
         this.usageKind = usageKind;
+        invalidateHash();
     }
 
     public String getReferenceId() {
@@ -43,6 +47,7 @@ public class Usage extends SymbolWithId {
 
     public void setReferenceId(String referenceId) {
         this.referenceId = referenceId;
+        invalidateHash();
     }
 
     @Override
@@ -57,8 +62,8 @@ public class Usage extends SymbolWithId {
     }
 
     @Override
-    public int hashCode() {
-        return Objects.hash(super.hashCode(), usageKind, referenceId);
+    protected int computeHashCode() {
+        return hashStep(hashStep(31 + super.computeHashCode(), usageKind), referenceId);
     }
 
     @Override
@@ -75,6 +80,29 @@ public class Usage extends SymbolWithId {
 		setReferenceId((String)map.get("referenceId"));
 	}
 
+	@Override
+	protected void writeFields(JsonGenerator gen, ItemFormat format) throws IOException {
+		super.writeFields(gen, format);
+		gen.writeStringField("usageKind", usageKind == null ? null : usageKind.name());
+		gen.writeStringField("referenceId", referenceId);
+	}
+
+	@Override
+	protected boolean readField(String name, JsonParser parser, ItemFormat format) throws IOException {
+		switch (name) {
+			case "usageKind": {
+				String kind = parser.getValueAsString();
+				setUsageKind(kind == null ? null : UsageKind.valueOf(kind));
+				return true;
+			}
+			case "referenceId":
+				setReferenceId(parser.getValueAsString());
+				return true;
+			default:
+				return super.readField(name, parser, format);
+		}
+	}
+
     @Override
     public String toString() {
         return "Usage[" + usageKind + "]: " + symbolId + "@" +
@@ -1,5 +1,8 @@
 package org.clyze.persistent.model;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
 import java.util.Map;
 
 /**
@@ -84,6 +87,31 @@ public class Variable extends SymbolWithId {
         setParameter((Boolean) map.get("isParameter"));
     }
 
+    @Override
+    protected void writeFields(JsonGenerator gen, ItemFormat format) throws IOException {
+        super.writeFields(gen, format);
+        gen.writeStringField("name", name);
+        gen.writeBooleanField("isLocal", isLocal);
+        gen.writeBooleanField("isParameter", isParameter);
+    }
+
+    @Override
+    protected boolean readField(String name, JsonParser parser, ItemFormat format) throws IOException {
+        switch (name) {
+            case "name":
+                setName(parser.getValueAsString());
+                return true;
+            case "isLocal":
+                setLocal(parser.getValueAsBoolean());
+                return true;
+            case "isParameter":
+                setParameter(parser.getValueAsBoolean());
+                return true;
+            default:
+                return super.readField(name, parser, format);
+        }
+    }
+
     @Override
     public String toString() {
         return "VAR-[" + getName() + "]" +
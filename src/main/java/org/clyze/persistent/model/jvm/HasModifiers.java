@@ -0,0 +1,29 @@
+package org.clyze.persistent.model.jvm;
+
+/**
+ * A JVM element whose boolean properties are stored as a {@link JvmModifiers} mask.
+ */
+public interface HasModifiers {
+
+    /**
+     * Returns the modifier bits of this element.
+     * @return   the modifiers (see {@link JvmModifiers})
+     */
+    int getModifiers();
+
+    /**
+     * Replace the modifier bits of this element. Bits that the element
+     * type does not model are dropped (see {@link JvmModifiers#maskOf(Class)}).
+     * @param modifiers   the modifiers (see {@link JvmModifiers})
+     */
+    void setModifiers(int modifiers);
+
+    /**
+     * Test modifier bits, e.g. {@code hasModifiers(JvmModifiers.PUBLIC | JvmModifiers.STATIC)}.
+     * @param mask   the bits to test
+     * @return       true if all bits of the mask are set
+     */
+    default boolean hasModifiers(int mask) {
+        return (getModifiers() & mask) == mask;
+    }
+}
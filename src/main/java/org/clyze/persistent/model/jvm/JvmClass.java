@@ -1,32 +1,30 @@
 package org.clyze.persistent.model.jvm;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import org.clyze.persistent.model.ItemFormat;
 import org.clyze.persistent.model.Position;
+import org.clyze.persistent.model.StringPool;
 import org.clyze.persistent.model.Type;
 
 /**
  * Symbol used for classes, interfaces, and enum types.
  */
-public class JvmClass extends Type {
+public class JvmClass extends Type implements HasModifiers {
 
 	private String packageName;
 
 	/**
 	 * Various flags determining the symbol type
-	 * (possibly change this to bitmap)
+	 * (see {@link JvmModifiers})
 	 */
-	private boolean isInterface;
-	private boolean isEnum;
-	private boolean isStatic;
-	private boolean isInner;
-	private boolean isAnonymous;
-	private boolean isAbstract;
-	private boolean isFinal;
-	private boolean isPublic;
-	private boolean isProtected;
-	private boolean isPrivate;
+	private int modifiers;
+	/** The modifier bits that this element type models. */
+	private static final int MODIFIERS = JvmModifiers.maskOf(JvmClass.class);
 
 	/**
 	 * The id of the type or method where this type is declared.
@@ -71,17 +69,12 @@ public class JvmClass extends Type {
 					boolean isProtected,
 					boolean isPrivate) {
 		super(position, sourceFileName, source, artifactName, symbolId, name);
-		this.packageName = packageName;
-		this.isInterface = isInterface;
-		this.isEnum = isEnum;
-		this.isStatic = isStatic;
-		this.isInner = isInner;
-		this.isAnonymous = isAnonymous;
-		this.isAbstract = isAbstract;
-		this.isFinal = isFinal;
-		this.isPublic = isPublic;
-		this.isProtected = isProtected;
-		this.isPrivate = isPrivate;
+		this.packageName = StringPool.canonical(packageName);
+		this.modifiers = (isInterface ? JvmModifiers.INTERFACE : 0) | (isEnum ? JvmModifiers.ENUM : 0)
+			| (isStatic ? JvmModifiers.STATIC : 0) | (isInner ? JvmModifiers.INNER : 0)
+			| (isAnonymous ? JvmModifiers.ANONYMOUS : 0) | (isAbstract ? JvmModifiers.ABSTRACT : 0)
+			| (isFinal ? JvmModifiers.FINAL : 0) | (isPublic ? JvmModifiers.PUBLIC : 0)
+			| (isProtected ? JvmModifiers.PROTECTED : 0) | (isPrivate ? JvmModifiers.PRIVATE : 0);
 	}	
 
 	public String getPackageName() {
@@ -89,87 +82,97 @@ public class JvmClass extends Type {
 	}
 
 	public void setPackageName(String packageName) {
-		this.packageName = packageName;
+		this.packageName = StringPool.canonical(packageName);
 	}	
 
 	public boolean isInterface() {
-		return isInterface;
+		return (modifiers & JvmModifiers.INTERFACE) != 0;
 	}
 
 	public void setInterface(boolean anInterface) {
-		isInterface = anInterface;
+		modifiers = JvmModifiers.set(modifiers, JvmModifiers.INTERFACE, anInterface);
 	}
 
 	public boolean isEnum() {
-		return isEnum;
+		return (modifiers & JvmModifiers.ENUM) != 0;
 	}
 
 	public void setEnum(boolean anEnum) {
-		isEnum = anEnum;
+		modifiers = JvmModifiers.set(modifiers, JvmModifiers.ENUM, anEnum);
 	}
 
 	public boolean isStatic() {
-		return isStatic;
+		return (modifiers & JvmModifiers.STATIC) != 0;
 	}
 
 	public void setStatic(boolean aStatic) {
-		isStatic = aStatic;
+		modifiers = JvmModifiers.set(modifiers, JvmModifiers.STATIC, aStatic);
 	}
 
 	public boolean isInner() {
-		return isInner;
+		return (modifiers & JvmModifiers.INNER) != 0;
 	}
 
 	public void setInner(boolean inner) {
-		isInner = inner;
+		modifiers = JvmModifiers.set(modifiers, JvmModifiers.INNER, inner);
 	}
 
 	public boolean isAnonymous() {
-		return isAnonymous;
+		return (modifiers & JvmModifiers.ANONYMOUS) != 0;
 	}
 
 	public void setAnonymous(boolean anonymous) {
-		isAnonymous = anonymous;
+		modifiers = JvmModifiers.set(modifiers, JvmModifiers.ANONYMOUS, anonymous);
 	}
 
 	public boolean isAbstract() {
-		return isAbstract;
+		return (modifiers & JvmModifiers.ABSTRACT) != 0;
 	}
 
 	public void setAbstract(boolean anAbstract) {
-		isAbstract = anAbstract;
+		modifiers = JvmModifiers.set(modifiers, JvmModifiers.ABSTRACT, anAbstract);
 	}
 
 	public boolean isFinal() {
-		return isFinal;
+		return (modifiers & JvmModifiers.FINAL) != 0;
 	}
 
 	public void setFinal(boolean aFinal) {
-		isFinal = aFinal;
+		modifiers = JvmModifiers.set(modifiers, JvmModifiers.FINAL, aFinal);
 	}
 
 	public boolean isPublic() {
-		return isPublic;
+		return (modifiers & JvmModifiers.PUBLIC) != 0;
 	}
 
 	public void setPublic(boolean aPublic) {
-		isPublic = aPublic;
+		modifiers = JvmModifiers.set(modifiers, JvmModifiers.PUBLIC, aPublic);
 	}
 
 	public boolean isProtected() {
-		return isProtected;
+		return (modifiers & JvmModifiers.PROTECTED) != 0;
 	}
 
 	public void setProtected(boolean aProtected) {
-		isProtected = aProtected;
+		modifiers = JvmModifiers.set(modifiers, JvmModifiers.PROTECTED, aProtected);
 	}
 
 	public boolean isPrivate() {
-		return isPrivate;
+		return (modifiers & JvmModifiers.PRIVATE) != 0;
 	}
 
 	public void setPrivate(boolean aPrivate) {
-		isPrivate = aPrivate;
+		modifiers = JvmModifiers.set(modifiers, JvmModifiers.PRIVATE, aPrivate);
+	}
+
+	@Override
+	public int getModifiers() {
+		return modifiers;
+	}
+
+	@Override
+	public void setModifiers(int modifiers) {
+		this.modifiers = modifiers & MODIFIERS;
 	}
 
 	public String getDeclaringSymbolId() {
@@ -200,16 +203,7 @@ public class JvmClass extends Type {
 	protected void saveTo(Map<String, Object> map) {
 		super.saveTo(map);
 		map.put("packageName", getPackageName());
-		map.put("isInterface", isInterface());
-		map.put("isEnum", isEnum());
-		map.put("isStatic", isStatic());
-		map.put("isInner", isInner());
-		map.put("isAnonymous", isAnonymous());
-		map.put("isAbstract", isAbstract());
-		map.put("isFinal", isFinal());
-		map.put("isPublic", isPublic());
-		map.put("isProtected", isProtected());
-		map.put("isPrivate", isPrivate());
+		JvmModifiers.saveTo(map, JvmClass.class, getModifiers());
 		map.put("declaringSymbolId", getDeclaringSymbolId());
 		map.put("sizeInBytes", getSizeInBytes());
 		map.put("superTypes", getSuperTypes());
@@ -220,18 +214,39 @@ public class JvmClass extends Type {
 	public void fromMap(Map<String, Object> map){
 		super.fromMap(map);
 		setPackageName((String) map.get("packageName"));
-		setInterface((Boolean) map.get("isInterface"));
-		setEnum((Boolean) map.get("isEnum"));
-		setStatic((Boolean) map.get("isStatic"));
-		setInner((Boolean) map.get("isInner"));
-		setAnonymous((Boolean) map.get("isAnonymous"));
-		setAbstract((Boolean) map.get("isAbstract"));
-		setFinal((Boolean) map.get("isFinal"));
-		setPublic((Boolean) map.get("isPublic"));
-		setProtected((Boolean) map.get("isProtected"));
-		setPrivate((Boolean) map.get("isPrivate"));
+		setModifiers(JvmModifiers.fromMap(map, JvmClass.class));
 		setDeclaringSymbolId((String) map.get("declaringSymbolId"));
 		setSizeInBytes(((Number) map.get("sizeInBytes")).longValue());
 		setSuperTypes((List<String>) map.get("superTypes"));
+	}
+
+	@Override
+	protected void writeFields(JsonGenerator gen, ItemFormat format) throws IOException {
+		super.writeFields(gen, format);
+		gen.writeStringField("packageName", packageName);
+		JvmModifiers.writeFields(gen, this, format);
+		gen.writeStringField("declaringSymbolId", declaringSymbolId);
+		gen.writeNumberField("sizeInBytes", sizeInBytes);
+		writeStringsField(gen, "superTypes", superTypes);
+	}
+
+	@Override
+	protected boolean readField(String name, JsonParser parser, ItemFormat format) throws IOException {
+		switch (name) {
+			case "packageName":
+				setPackageName(parser.getValueAsString());
+				return true;
+			case "declaringSymbolId":
+				setDeclaringSymbolId(parser.getValueAsString());
+				return true;
+			case "sizeInBytes":
+				setSizeInBytes(parser.getValueAsLong());
+				return true;
+			case "superTypes":
+				setSuperTypes(readStrings(parser));
+				return true;
+			default:
+				return JvmModifiers.readField(name, parser, this) || super.readField(name, parser, format);
+		}
 	}	
 }
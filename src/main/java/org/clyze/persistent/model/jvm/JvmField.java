@@ -1,19 +1,27 @@
 package org.clyze.persistent.model.jvm;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
 import java.util.Map;
 import java.util.Objects;
 
 import org.clyze.persistent.model.Field;
+import org.clyze.persistent.model.ItemFormat;
 import org.clyze.persistent.model.Position;
+import org.clyze.persistent.model.StringPool;
 
 /**
  * A class field.
  */
-public class JvmField extends Field {
+public class JvmField extends Field implements HasModifiers {
 
 	private String type;
 
-	private boolean isStatic;
+	/** The modifiers of the field (see {@link JvmModifiers}). */
+	private int modifiers;
+	/** The modifier bits that this element type models. */
+	private static final int MODIFIERS = JvmModifiers.maskOf(JvmField.class);
 
 	private String declaringClassId;
 
@@ -51,9 +59,9 @@ public class JvmField extends Field {
                     String declaringClassId,
                     boolean isStatic) {
 		super(position, sourceFileName, source, artifactName, name, symbolId);
-		this.type = type;
-		this.declaringClassId = declaringClassId;
-		this.isStatic = isStatic;
+		this.type = StringPool.canonical(type);
+		this.declaringClassId = StringPool.canonical(declaringClassId);
+		this.modifiers = isStatic ? JvmModifiers.STATIC : 0;
 	}    
 
     public String getType() {
@@ -61,15 +69,28 @@ public class JvmField extends Field {
     }
 
     public void setType(String type) {
-        this.type = type;
+        this.type = StringPool.canonical(type);
+        invalidateHash();
     }
 
     public boolean isStatic() {
-        return isStatic;
+        return (modifiers & JvmModifiers.STATIC) != 0;
     }
 
     public void setStatic(boolean aStatic) {
-        isStatic = aStatic;
+        modifiers = JvmModifiers.set(modifiers, JvmModifiers.STATIC, aStatic);
+        invalidateHash();
+    }
+
+    @Override
+    public int getModifiers() {
+        return modifiers;
+    }
+
+    @Override
+    public void setModifiers(int modifiers) {
+        this.modifiers = modifiers & MODIFIERS;
+        invalidateHash();
     }
 
     public String getDeclaringClassId() {
@@ -77,14 +98,15 @@ public class JvmField extends Field {
     }
 
     public void setDeclaringClassId(String declaringClassId) {
-        this.declaringClassId = declaringClassId;
+        this.declaringClassId = StringPool.canonical(declaringClassId);
+        invalidateHash();
     }
 
     @Override
     protected void saveTo(Map<String, Object> map) {
 		super.saveTo(map);
 		map.put("type", getType());
-		map.put("isStatic", isStatic());
+		JvmModifiers.saveTo(map, JvmField.class, getModifiers());
 		map.put("declaringClassId", getDeclaringClassId());
 	}
 
@@ -92,22 +114,46 @@ public class JvmField extends Field {
 	public void fromMap(Map<String, Object> map){
 		super.fromMap(map);
 		setType((String) map.get("type"));
-		setStatic((Boolean) map.get("isStatic"));
+		setModifiers(JvmModifiers.fromMap(map, JvmField.class));
 		setDeclaringClassId((String) map.get("declaringClassId"));
 	}
 
+	@Override
+	protected void writeFields(JsonGenerator gen, ItemFormat format) throws IOException {
+		super.writeFields(gen, format);
+		gen.writeStringField("type", type);
+		JvmModifiers.writeFields(gen, this, format);
+		gen.writeStringField("declaringClassId", declaringClassId);
+	}
+
+	@Override
+	protected boolean readField(String name, JsonParser parser, ItemFormat format) throws IOException {
+		switch (name) {
+			case "type":
+				setType(parser.getValueAsString());
+				return true;
+			case "declaringClassId":
+				setDeclaringClassId(parser.getValueAsString());
+				return true;
+			default:
+				return JvmModifiers.readField(name, parser, this) || super.readField(name, parser, format);
+		}
+	}
+
     @Override
     public boolean equals(Object that) {
         if (this == that) return true;
         if (!(that instanceof JvmField)) return false;
         JvmField field = (JvmField) that;
         return super.equals(field) && Objects.equals(type, field.type)  &&
-                Objects.equals(isStatic, field.isStatic) &&
+                modifiers == field.modifiers &&
                 Objects.equals(declaringClassId, field.declaringClassId);
     }
 
     @Override
-    public int hashCode() {
-        return Objects.hash(super.hashCode(), type, isStatic, declaringClassId);
+    protected int computeHashCode() {
+        int h = hashStep(31 + super.computeHashCode(), type);
+        h = 31 * h + Boolean.hashCode(isStatic());
+        return hashStep(h, declaringClassId);
     }
 }
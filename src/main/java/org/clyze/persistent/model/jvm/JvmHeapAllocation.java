@@ -1,6 +1,11 @@
 package org.clyze.persistent.model.jvm;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
+import org.clyze.persistent.model.ItemFormat;
 import org.clyze.persistent.model.Position;
+import org.clyze.persistent.model.StringPool;
 import org.clyze.persistent.model.SymbolWithId;
 
 import java.util.Map;
@@ -8,15 +13,19 @@ import java.util.Map;
 /**
  * A heap allocation site ("new").
  */
-public class JvmHeapAllocation extends SymbolWithId {
+public class JvmHeapAllocation extends SymbolWithId implements HasModifiers {
     /** The type of the allocated object. */
     private String allocatedTypeId;
     /** The id of the method containing this allocation site. */
     private String allocatingMethodId;
-    /** If true, the allocation is inside an instance initializer block. */
-    private boolean inIIB = false;
-    /** If true, the allocation is an array type. */
-    private boolean isArray = false;
+    /**
+     * The modifiers of the allocation (see {@link JvmModifiers}): if the
+     * allocation is inside an instance initializer block and if it is an
+     * array type.
+     */
+    private int modifiers;
+    /** The modifier bits that this element type models. */
+    private static final int MODIFIERS = JvmModifiers.maskOf(JvmHeapAllocation.class);
 
     /** No-arg constructor, use setters or fromMap() to populate the object. */
     public JvmHeapAllocation() {}
@@ -35,10 +44,9 @@ public class JvmHeapAllocation extends SymbolWithId {
                              String allocatedTypeId, String allocatingMethodId,
                              boolean inIIB, boolean isArray) {
         super(position, sourceFileName, source, artifactName, symbolId);
-        this.allocatedTypeId = allocatedTypeId;
-        this.allocatingMethodId = allocatingMethodId;
-        this.inIIB = inIIB;
-        this.isArray = isArray;
+        this.allocatedTypeId = StringPool.canonical(allocatedTypeId);
+        this.allocatingMethodId = StringPool.canonical(allocatingMethodId);
+        this.modifiers = (inIIB ? JvmModifiers.IN_IIB : 0) | (isArray ? JvmModifiers.ARRAY : 0);
     }
 
     public String getAllocatedTypeId() {
@@ -46,7 +54,7 @@ public class JvmHeapAllocation extends SymbolWithId {
     }
 
     public void setAllocatedTypeId(String allocatedTypeId) {
-        this.allocatedTypeId = allocatedTypeId;
+        this.allocatedTypeId = StringPool.canonical(allocatedTypeId);
     }
 
     public String getAllocatingMethodId() {
@@ -54,23 +62,33 @@ public class JvmHeapAllocation extends SymbolWithId {
     }
 
     public void setAllocatingMethodId(String allocatingMethodId) {
-        this.allocatingMethodId = allocatingMethodId;
+        this.allocatingMethodId = StringPool.canonical(allocatingMethodId);
     }
 
     public boolean isInIIB() {
-        return inIIB;
+        return (modifiers & JvmModifiers.IN_IIB) != 0;
     }
 
     public void setInIIB(boolean inIIB) {
-        this.inIIB = inIIB;
+        modifiers = JvmModifiers.set(modifiers, JvmModifiers.IN_IIB, inIIB);
     }
 
     public boolean isArray() {
-        return isArray;
+        return (modifiers & JvmModifiers.ARRAY) != 0;
     }
 
     public void setArray(boolean array) {
-        isArray = array;
+        modifiers = JvmModifiers.set(modifiers, JvmModifiers.ARRAY, array);
+    }
+
+    @Override
+    public int getModifiers() {
+        return modifiers;
+    }
+
+    @Override
+    public void setModifiers(int modifiers) {
+        this.modifiers = modifiers & MODIFIERS;
     }
 
     @Override
@@ -78,8 +96,7 @@ public class JvmHeapAllocation extends SymbolWithId {
         super.saveTo(map);
         map.put("allocatedTypeId", getAllocatedTypeId());
         map.put("allocatingMethodId", getAllocatingMethodId());
-        map.put("inIIB", isInIIB());
-        map.put("isArray", isArray());
+        JvmModifiers.saveTo(map, JvmHeapAllocation.class, getModifiers());
     }
 
     @Override
@@ -87,7 +104,28 @@ public class JvmHeapAllocation extends SymbolWithId {
         super.fromMap(map);
         setAllocatedTypeId((String) map.get("allocatedTypeId"));
         setAllocatingMethodId((String) map.get("allocatingMethodId"));
-        setInIIB((Boolean) map.get("inIIB"));
-        setArray((Boolean) map.get("isArray"));
+        setModifiers(JvmModifiers.fromMap(map, JvmHeapAllocation.class));
+    }
+
+    @Override
+    protected void writeFields(JsonGenerator gen, ItemFormat format) throws IOException {
+        super.writeFields(gen, format);
+        gen.writeStringField("allocatedTypeId", allocatedTypeId);
+        gen.writeStringField("allocatingMethodId", allocatingMethodId);
+        JvmModifiers.writeFields(gen, this, format);
+    }
+
+    @Override
+    protected boolean readField(String name, JsonParser parser, ItemFormat format) throws IOException {
+        switch (name) {
+            case "allocatedTypeId":
+                setAllocatedTypeId(parser.getValueAsString());
+                return true;
+            case "allocatingMethodId":
+                setAllocatingMethodId(parser.getValueAsString());
+                return true;
+            default:
+                return JvmModifiers.readField(name, parser, this) || super.readField(name, parser, format);
+        }
     }
 }
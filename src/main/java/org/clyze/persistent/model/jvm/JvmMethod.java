@@ -1,37 +1,26 @@
 package org.clyze.persistent.model.jvm;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
 import java.util.Map;
 import org.clyze.persistent.model.Function;
+import org.clyze.persistent.model.ItemFormat;
 import org.clyze.persistent.model.Position;
+import org.clyze.persistent.model.StringPool;
 
 /**
  * A class method.
  */
-public class JvmMethod extends Function {
+public class JvmMethod extends Function implements HasModifiers {
 	/** The return type of the method. */
 	private String returnType;
 	/** The types of the method parameters. */
 	private String[] paramTypes;
-	/** True for static methods. */
-	private boolean isStatic;
-	/** True for methods declared in interfaces. */
-	private boolean isInterface;
-	/** True if this is an abstract method. */
-	private boolean isAbstract;
-	/** True for native methods. */
-	private boolean isNative;
-	/** True for synchronized methods. */
-	private boolean isSynchronized;
-	/** True for final methods. */
-	private boolean isFinal;
-	/** True for synthetic (compiled-generated) methods. */
-	private boolean isSynthetic;
-	/** True for public methods. */
-	private boolean isPublic;
-	/** True for protected methods. */
-	private boolean isProtected;
-	/** True for private methods. */
-	private boolean isPrivate;
+	/** The modifiers of the method (see {@link JvmModifiers}). */
+	private int modifiers;
+	/** The modifier bits that this element type models. */
+	private static final int MODIFIERS = JvmModifiers.maskOf(JvmMethod.class);
 	/** The id of the class containing this method declaration. */
 	private String declaringClassId;
 
@@ -69,19 +58,14 @@ public class JvmMethod extends Function {
 					 boolean isPrivate,
 					 Position outerPosition) {
 		super(position, sourceFileName, source, artifactName, symbolId, name, params, outerPosition);
-		this.declaringClassId = declaringClassId;
-		this.returnType = returnType;		
-		this.paramTypes = paramTypes;
-		this.isStatic = isStatic;		
-		this.isInterface = isInterface;
-		this.isAbstract = isAbstract;
-		this.isNative = isNative;
-		this.isSynchronized = isSynchronized;
-		this.isFinal = isFinal;
-		this.isSynthetic = isSynthetic;
-		this.isPublic = isPublic;
-		this.isProtected = isProtected;
-		this.isPrivate = isPrivate;
+		this.declaringClassId = StringPool.canonical(declaringClassId);
+		this.returnType = StringPool.canonical(returnType);		
+		this.paramTypes = StringPool.canonical(paramTypes);
+		this.modifiers = (isStatic ? JvmModifiers.STATIC : 0) | (isInterface ? JvmModifiers.INTERFACE : 0)
+			| (isAbstract ? JvmModifiers.ABSTRACT : 0) | (isNative ? JvmModifiers.NATIVE : 0)
+			| (isSynchronized ? JvmModifiers.SYNCHRONIZED : 0) | (isFinal ? JvmModifiers.FINAL : 0)
+			| (isSynthetic ? JvmModifiers.SYNTHETIC : 0) | (isPublic ? JvmModifiers.PUBLIC : 0)
+			| (isProtected ? JvmModifiers.PROTECTED : 0) | (isPrivate ? JvmModifiers.PRIVATE : 0);
 	}
 
 	public String getReturnType() {
@@ -89,7 +73,7 @@ public class JvmMethod extends Function {
 	}
 
 	public void setReturnType(String returnType) {
-		this.returnType = returnType;
+		this.returnType = StringPool.canonical(returnType);
 	}
 
 	public String[] getParamTypes() {
@@ -97,71 +81,81 @@ public class JvmMethod extends Function {
 	}
 
 	public void setParamTypes(String[] paramTypes) {
-		this.paramTypes = paramTypes;
+		this.paramTypes = StringPool.canonical(paramTypes);
 	}
 
 	public boolean isStatic() {
-		return isStatic;
+		return (modifiers & JvmModifiers.STATIC) != 0;
 	}
 
 	public void setStatic(boolean aStatic) {
-		this.isStatic = aStatic;
+		modifiers = JvmModifiers.set(modifiers, JvmModifiers.STATIC, aStatic);
 	}
 
 	public boolean isInterface() {
-		return isInterface;
+		return (modifiers & JvmModifiers.INTERFACE) != 0;
 	}
 
 	public void setInterface(boolean anInterface) {
-		isInterface = anInterface;
+		modifiers = JvmModifiers.set(modifiers, JvmModifiers.INTERFACE, anInterface);
 	}
 
 	public boolean isAbstract() {
-		return isAbstract;
+		return (modifiers & JvmModifiers.ABSTRACT) != 0;
 	}
 
 	public void setAbstract(boolean anAbstract) {
-		isAbstract = anAbstract;
+		modifiers = JvmModifiers.set(modifiers, JvmModifiers.ABSTRACT, anAbstract);
 	}
 
 	public boolean isNative() {
-		return isNative;
+		return (modifiers & JvmModifiers.NATIVE) != 0;
 	}
 
 	public void setNative(boolean aNative) {
-		isNative = aNative;
+		modifiers = JvmModifiers.set(modifiers, JvmModifiers.NATIVE, aNative);
 	}
 
-	public boolean isSynchronized() { return isSynchronized; }
+	public boolean isSynchronized() { return (modifiers & JvmModifiers.SYNCHRONIZED) != 0; }
 
-	public void setSynchronized(boolean aSynchronized) { isSynchronized = aSynchronized; }
+	public void setSynchronized(boolean aSynchronized) { modifiers = JvmModifiers.set(modifiers, JvmModifiers.SYNCHRONIZED, aSynchronized); }
 
-	public boolean isFinal() { return isFinal; }
+	public boolean isFinal() { return (modifiers & JvmModifiers.FINAL) != 0; }
 
-	public void setFinal(boolean aFinal) { isFinal = aFinal; }
+	public void setFinal(boolean aFinal) { modifiers = JvmModifiers.set(modifiers, JvmModifiers.FINAL, aFinal); }
 
-	public boolean isSynthetic() { return isSynthetic; }
+	public boolean isSynthetic() { return (modifiers & JvmModifiers.SYNTHETIC) != 0; }
 
-	public void setSynthetic(boolean synthetic) { isSynthetic = synthetic;}
+	public void setSynthetic(boolean synthetic) { modifiers = JvmModifiers.set(modifiers, JvmModifiers.SYNTHETIC, synthetic); }
 
-	public boolean isPublic() { return isPublic; }
+	public boolean isPublic() { return (modifiers & JvmModifiers.PUBLIC) != 0; }
 
-	public void setPublic(boolean aPublic) {  isPublic = aPublic;  }
+	public void setPublic(boolean aPublic) { modifiers = JvmModifiers.set(modifiers, JvmModifiers.PUBLIC, aPublic); }
 
-	public boolean isProtected() { return isProtected; }
+	public boolean isProtected() { return (modifiers & JvmModifiers.PROTECTED) != 0; }
 
-	public void setProtected(boolean aProtected) {  isProtected = aProtected; }
+	public void setProtected(boolean aProtected) { modifiers = JvmModifiers.set(modifiers, JvmModifiers.PROTECTED, aProtected); }
 
-	public boolean isPrivate() {  return isPrivate;  }
+	public boolean isPrivate() { return (modifiers & JvmModifiers.PRIVATE) != 0; }
 
-	public void setPrivate(boolean aPrivate) { isPrivate = aPrivate; }
+	public void setPrivate(boolean aPrivate) { modifiers = JvmModifiers.set(modifiers, JvmModifiers.PRIVATE, aPrivate); }
+
+	@Override
+	public int getModifiers() {
+		return modifiers;
+	}
+
+	@Override
+	public void setModifiers(int modifiers) {
+		this.modifiers = modifiers & MODIFIERS;
+	}
 
 	public String getDeclaringClassId() {
 		return declaringClassId;
 	}
 
 	public void setDeclaringClassId(String declaringClassId) {
-		this.declaringClassId = declaringClassId;
+		this.declaringClassId = StringPool.canonical(declaringClassId);
 	}
 
 	@Override
@@ -169,16 +163,7 @@ public class JvmMethod extends Function {
 		super.saveTo(map);
 		map.put("returnType", getReturnType());
 		map.put("paramTypes", arrayToList(getParamTypes()));
-		map.put("isStatic", isStatic());
-		map.put("isInterface", isInterface());
-		map.put("isAbstract", isAbstract());
-		map.put("isNative", isNative());
-		map.put("isSynchronized", isSynchronized());
-		map.put("isFinal", isFinal());
-		map.put("isSynthetic", isSynthetic());
-		map.put("isPublic", isPublic());
-		map.put("isProtected", isProtected());
-		map.put("isPrivate", isPrivate());
+		JvmModifiers.saveTo(map, JvmMethod.class, getModifiers());
 		map.put("declaringClassId", getDeclaringClassId());
 	}
 
@@ -187,16 +172,33 @@ public class JvmMethod extends Function {
 		super.fromMap(map);
 		setReturnType((String) map.get("returnType"));
 		setParamTypes(listToArray(map.get("paramTypes")));
-		setStatic((Boolean) map.get("isStatic"));
-		setInterface((Boolean) map.get("isInterface"));
-		setAbstract((Boolean) map.get("isAbstract"));
-		setNative((Boolean) map.get("isNative"));
-		setFinal((Boolean) map.get("isFinal"));
-		setSynthetic((Boolean) map.get("isSynthetic"));
-		setSynchronized((Boolean) map.get("isSynchronized"));
-		setPublic((Boolean) map.get("isPublic"));
-		setProtected((Boolean) map.get("isProtected"));
-		setPrivate((Boolean) map.get("isPrivate"));
+		setModifiers(JvmModifiers.fromMap(map, JvmMethod.class));
 		setDeclaringClassId((String) map.get("declaringClassId"));
 	}
+
+	@Override
+	protected void writeFields(JsonGenerator gen, ItemFormat format) throws IOException {
+		super.writeFields(gen, format);
+		gen.writeStringField("returnType", returnType);
+		writeStringsField(gen, "paramTypes", paramTypes);
+		JvmModifiers.writeFields(gen, this, format);
+		gen.writeStringField("declaringClassId", declaringClassId);
+	}
+
+	@Override
+	protected boolean readField(String name, JsonParser parser, ItemFormat format) throws IOException {
+		switch (name) {
+			case "returnType":
+				setReturnType(parser.getValueAsString());
+				return true;
+			case "paramTypes":
+				setParamTypes(listToArray(readStrings(parser)));
+				return true;
+			case "declaringClassId":
+				setDeclaringClassId(parser.getValueAsString());
+				return true;
+			default:
+				return JvmModifiers.readField(name, parser, this) || super.readField(name, parser, format);
+		}
+	}
 }
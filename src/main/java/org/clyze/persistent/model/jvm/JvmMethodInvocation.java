@@ -1,6 +1,11 @@
 package org.clyze.persistent.model.jvm;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
+import org.clyze.persistent.model.ItemFormat;
 import org.clyze.persistent.model.Position;
+import org.clyze.persistent.model.StringPool;
 import org.clyze.persistent.model.SymbolWithId;
 
 import java.util.Map;
@@ -8,7 +13,7 @@ import java.util.Map;
 /**
  * A method invocation site (in the body of another method).
  */
-public class JvmMethodInvocation extends SymbolWithId {
+public class JvmMethodInvocation extends SymbolWithId implements HasModifiers {
     /** The name of the invoked method. */
     private String name;
     /** The target type from where method look-up will start. */
@@ -25,8 +30,13 @@ public class JvmMethodInvocation extends SymbolWithId {
      */
     public String targetMethodId = null;
 
-    /** If true, this is inside an instance initializer block. */
-    private boolean inIIB = false;
+    /**
+     * The modifiers of the invocation (see {@link JvmModifiers}): if
+     * it is inside an instance initializer block.
+     */
+    private int modifiers;
+    /** The modifier bits that this element type models. */
+    private static final int MODIFIERS = JvmModifiers.maskOf(JvmMethodInvocation.class);
 
     /** No-arg constructor, use setters or fromMap() to populate the object. */
     public JvmMethodInvocation() {}
@@ -47,11 +57,11 @@ public class JvmMethodInvocation extends SymbolWithId {
                                boolean inIIB) {
         super(position, sourceFileName, source, artifactName, symbolId);
         this.name = name;
-        this.invokingMethodId = invokingMethodId;
-        this.inIIB = inIIB;
-        this.targetType = targetType;
-        this.targetReturnType = targetReturnType;
-        this.targetParamTypes = targetParamTypes;
+        this.invokingMethodId = StringPool.canonical(invokingMethodId);
+        this.modifiers = inIIB ? JvmModifiers.IN_IIB : 0;
+        this.targetType = StringPool.canonical(targetType);
+        this.targetReturnType = StringPool.canonical(targetReturnType);
+        this.targetParamTypes = StringPool.canonical(targetParamTypes);
     }
 
     public String getName() {
@@ -67,7 +77,7 @@ public class JvmMethodInvocation extends SymbolWithId {
     }
 
     public void setInvokingMethodId(String invokingMethodId) {
-        this.invokingMethodId = invokingMethodId;
+        this.invokingMethodId = StringPool.canonical(invokingMethodId);
     }
 
     public String getTargetType() {
@@ -75,7 +85,7 @@ public class JvmMethodInvocation extends SymbolWithId {
     }
 
     public void setTargetType(String targetType) {
-        this.targetType = targetType;
+        this.targetType = StringPool.canonical(targetType);
     }
 
     public String getTargetReturnType() {
@@ -83,7 +93,7 @@ public class JvmMethodInvocation extends SymbolWithId {
     }
 
     public void setTargetReturnType(String targetReturnType) {
-        this.targetReturnType = targetReturnType;
+        this.targetReturnType = StringPool.canonical(targetReturnType);
     }
 
     public String getTargetParamTypes() {
@@ -91,7 +101,7 @@ public class JvmMethodInvocation extends SymbolWithId {
     }
 
     public void setTargetParamTypes(String targetParamTypes) {
-        this.targetParamTypes = targetParamTypes;
+        this.targetParamTypes = StringPool.canonical(targetParamTypes);
     }
 
     public String getTargetMethodId() {
@@ -103,11 +113,21 @@ public class JvmMethodInvocation extends SymbolWithId {
     }
 
     public boolean isInIIB() {
-        return inIIB;
+        return (modifiers & JvmModifiers.IN_IIB) != 0;
     }
 
     public void setInIIB(boolean inIIB) {
-        this.inIIB = inIIB;
+        modifiers = JvmModifiers.set(modifiers, JvmModifiers.IN_IIB, inIIB);
+    }
+
+    @Override
+    public int getModifiers() {
+        return modifiers;
+    }
+
+    @Override
+    public void setModifiers(int modifiers) {
+        this.modifiers = modifiers & MODIFIERS;
     }
 
     protected void saveTo(Map<String, Object> map) {
@@ -118,7 +138,7 @@ public class JvmMethodInvocation extends SymbolWithId {
         map.put("targetParamTypes", getTargetParamTypes());
         map.put("targetMethodId", getTargetMethodId());
         map.put("invokingMethodId", getInvokingMethodId());
-        map.put("inIIB", isInIIB());
+        JvmModifiers.saveTo(map, JvmMethodInvocation.class, getModifiers());
     }
 
     public void fromMap(Map<String, Object> map){
@@ -129,6 +149,44 @@ public class JvmMethodInvocation extends SymbolWithId {
         setTargetParamTypes((String) map.get("targetParamTypes"));
         setTargetMethodId((String) map.get("targetMethodId"));
         setInvokingMethodId((String) map.get("invokingMethodId"));
-        setInIIB((Boolean) map.get("inIIB"));
+        setModifiers(JvmModifiers.fromMap(map, JvmMethodInvocation.class));
+    }
+
+    @Override
+    protected void writeFields(JsonGenerator gen, ItemFormat format) throws IOException {
+        super.writeFields(gen, format);
+        gen.writeStringField("name", name);
+        gen.writeStringField("targetType", targetType);
+        gen.writeStringField("targetReturnType", targetReturnType);
+        gen.writeStringField("targetParamTypes", targetParamTypes);
+        gen.writeStringField("invokingMethodId", invokingMethodId);
+        gen.writeStringField("targetMethodId", targetMethodId);
+        JvmModifiers.writeFields(gen, this, format);
+    }
+
+    @Override
+    protected boolean readField(String name, JsonParser parser, ItemFormat format) throws IOException {
+        switch (name) {
+            case "name":
+                setName(parser.getValueAsString());
+                return true;
+            case "targetType":
+                setTargetType(parser.getValueAsString());
+                return true;
+            case "targetReturnType":
+                setTargetReturnType(parser.getValueAsString());
+                return true;
+            case "targetParamTypes":
+                setTargetParamTypes(parser.getValueAsString());
+                return true;
+            case "invokingMethodId":
+                setInvokingMethodId(parser.getValueAsString());
+                return true;
+            case "targetMethodId":
+                setTargetMethodId(parser.getValueAsString());
+                return true;
+            default:
+                return JvmModifiers.readField(name, parser, this) || super.readField(name, parser, format);
+        }
     }
 }
@@ -0,0 +1,210 @@
+package org.clyze.persistent.model.jvm;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
+import java.util.*;
+import org.clyze.persistent.model.ItemFormat;
+
+/**
+ * The modifier bits of JVM elements. Elements keep all their boolean
+ * properties (access flags and other markers) in a single int mask.
+ *
+ * The bits of the JVM access flags have the same values as in class
+ * files (and in {@link java.lang.reflect.Modifier}), so generators can
+ * pass access flags read from bytecode to {@link HasModifiers#setModifiers(int)}
+ * unchanged: the bits that an element type does not model (see
+ * {@link #maskOf(Class)}) are dropped, as they would not survive a round
+ * trip through reports.
+ */
+public final class JvmModifiers {
+
+    /** Public classes and methods. */
+    public static final int PUBLIC       = 0x0001;
+    /** Private classes and methods. */
+    public static final int PRIVATE      = 0x0002;
+    /** Protected classes and methods. */
+    public static final int PROTECTED    = 0x0004;
+    /** Static (nested) classes, methods and fields. */
+    public static final int STATIC       = 0x0008;
+    /** Final classes and methods. */
+    public static final int FINAL        = 0x0010;
+    /** Synchronized methods. */
+    public static final int SYNCHRONIZED = 0x0020;
+    /** Native methods. */
+    public static final int NATIVE       = 0x0100;
+    /** Interfaces and interface methods. */
+    public static final int INTERFACE    = 0x0200;
+    /** Abstract classes and methods. */
+    public static final int ABSTRACT     = 0x0400;
+    /** Synthetic (compiler-generated) methods. */
+    public static final int SYNTHETIC    = 0x1000;
+    /** Enum classes. */
+    public static final int ENUM         = 0x4000;
+    /** Inner (nested) classes. */
+    public static final int INNER        = 0x10000;
+    /** Anonymous classes. */
+    public static final int ANONYMOUS    = 0x20000;
+    /** Elements inside instance initializer blocks. */
+    public static final int IN_IIB       = 0x40000;
+    /** Array allocations. */
+    public static final int ARRAY        = 0x80000;
+
+    /** The flags of each element type, in report order. */
+    private static final Map<Class<?>, List<Flag>> flags = new HashMap<>();
+
+    static {
+        register(JvmClass.class, "isInterface", INTERFACE, "isEnum", ENUM, "isStatic", STATIC,
+                 "isInner", INNER, "isAnonymous", ANONYMOUS, "isAbstract", ABSTRACT, "isFinal", FINAL,
+                 "isPublic", PUBLIC, "isProtected", PROTECTED, "isPrivate", PRIVATE);
+        register(JvmMethod.class, "isStatic", STATIC, "isInterface", INTERFACE, "isAbstract", ABSTRACT,
+                 "isNative", NATIVE, "isSynchronized", SYNCHRONIZED, "isFinal", FINAL,
+                 "isSynthetic", SYNTHETIC, "isPublic", PUBLIC, "isProtected", PROTECTED, "isPrivate", PRIVATE);
+        register(JvmField.class, "isStatic", STATIC);
+        register(JvmVariable.class, "inIIB", IN_IIB);
+        register(JvmHeapAllocation.class, "inIIB", IN_IIB, "isArray", ARRAY);
+        register(JvmMethodInvocation.class, "inIIB", IN_IIB);
+    }
+
+    private JvmModifiers() {}
+
+    private static void register(Class<?> type, Object... keysAndMasks) {
+        List<Flag> typeFlags = new ArrayList<>(keysAndMasks.length / 2);
+        for (int i = 0; i < keysAndMasks.length; i += 2)
+            typeFlags.add(new Flag((String) keysAndMasks[i], (Integer) keysAndMasks[i + 1]));
+        flags.put(type, Collections.unmodifiableList(typeFlags));
+    }
+
+    /** A boolean property of an element, stored as a modifier bit. */
+    public static final class Flag {
+        private final String key;
+        private final int mask;
+
+        private Flag(String key, int mask) {
+            this.key = key;
+            this.mask = mask;
+        }
+
+        /**
+         * Returns the key of the flag in reports (e.g. "isStatic").
+         * @return   the report key
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the modifier bit of the flag.
+         * @return   the bit mask
+         */
+        public int getMask() {
+            return mask;
+        }
+    }
+
+    /**
+     * Returns the flags of an element type, in the order they appear in reports.
+     * @param type   the element type (subclasses of modeled types inherit their flags)
+     * @return       the flags (empty for types without modifiers)
+     */
+    public static List<Flag> flagsOf(Class<?> type) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            List<Flag> typeFlags = flags.get(c);
+            if (typeFlags != null)
+                return typeFlags;
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns the modifier bits that an element type models, i.e. the
+     * bits of its flags.
+     * @param type   the element type (subclasses of modeled types inherit their flags)
+     * @return       the bit mask (0 for types without modifiers)
+     */
+    public static int maskOf(Class<?> type) {
+        int mask = 0;
+        for (Flag flag : flagsOf(type))
+            mask |= flag.mask;
+        return mask;
+    }
+
+    /**
+     * Set or clear modifier bits.
+     * @param modifiers   the modifiers
+     * @param mask        the bits to change
+     * @param value       true to set the bits, false to clear them
+     * @return            the new modifiers
+     */
+    public static int set(int modifiers, int mask, boolean value) {
+        return value ? (modifiers | mask) : (modifiers & ~mask);
+    }
+
+    /**
+     * Read the modifiers of an element from its map representation. A
+     * single "modifiers" number is accepted as well as individual flags.
+     * @param map     the map of the element
+     * @param type    the element type
+     * @return        the modifiers
+     */
+    public static int fromMap(Map<String, Object> map, Class<?> type) {
+        Object mask = map.get("modifiers");
+        if (mask != null)
+            return ((Number) mask).intValue();
+        int modifiers = 0;
+        for (Flag flag : flagsOf(type))
+            if (Boolean.TRUE.equals(map.get(flag.key)))
+                modifiers |= flag.mask;
+        return modifiers;
+    }
+
+    /**
+     * Write the modifiers of an element to its map representation, as individual flags.
+     * @param map         the map of the element
+     * @param type        the element type
+     * @param modifiers   the modifiers
+     */
+    public static void saveTo(Map<String, Object> map, Class<?> type, int modifiers) {
+        for (Flag flag : flagsOf(type))
+            map.put(flag.key, (modifiers & flag.mask) != 0);
+    }
+
+    /**
+     * Write the modifiers of an element as JSON object fields: one boolean
+     * field per flag or a single "modifiers" number, depending on the format.
+     * @param gen       the JSON generator to use
+     * @param element   the element
+     * @param format    the JSON format
+     * @throws IOException on serialization error
+     */
+    public static void writeFields(JsonGenerator gen, HasModifiers element, ItemFormat format) throws IOException {
+        int modifiers = element.getModifiers();
+        if (format.hasModifiersAsMask())
+            gen.writeNumberField("modifiers", modifiers);
+        else
+            for (Flag flag : flagsOf(element.getClass()))
+                gen.writeBooleanField(flag.key, (modifiers & flag.mask) != 0);
+    }
+
+    /**
+     * Read a JSON object field into the modifiers of an element, if it is
+     * a flag of the element or a "modifiers" number.
+     * @param name      the field name
+     * @param parser    the JSON parser, positioned at the field value
+     * @param element   the element
+     * @return          true if the field was read
+     * @throws IOException on parse error
+     */
+    public static boolean readField(String name, JsonParser parser, HasModifiers element) throws IOException {
+        if (name.equals("modifiers")) {
+            element.setModifiers(parser.getValueAsInt());
+            return true;
+        }
+        for (Flag flag : flagsOf(element.getClass()))
+            if (flag.key.equals(name)) {
+                element.setModifiers(set(element.getModifiers(), flag.mask, parser.getValueAsBoolean()));
+                return true;
+            }
+        return false;
+    }
+}
@@ -1,5 +1,9 @@
 package org.clyze.persistent.model.jvm;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
+import org.clyze.persistent.model.ItemFormat;
 import org.clyze.persistent.model.Position;
 import org.clyze.persistent.model.Symbol;
 
@@ -84,6 +88,7 @@ public class JvmStringConstant extends Symbol {
      */
     public void setFieldId(String fieldId) {
         this.fieldId = fieldId;
+        invalidateHash();
     }
 
     /**
@@ -100,6 +105,7 @@ public class JvmStringConstant extends Symbol {
      */
     public void setValue(String value) {
         this.value = value;
+        invalidateHash();
     }
 
     @Override
@@ -113,8 +119,8 @@ public class JvmStringConstant extends Symbol {
     }
 
     @Override
-    public int hashCode() {
-        return Objects.hash(super.hashCode(), fieldId, value);
+    protected int computeHashCode() {
+        return hashStep(hashStep(31 + super.computeHashCode(), fieldId), value);
     }
 
     @Override
@@ -123,4 +129,25 @@ public class JvmStringConstant extends Symbol {
         setFieldId((String) map.get("fieldId"));
         setValue((String) map.get("value"));
     }
+
+    @Override
+    protected void writeFields(JsonGenerator gen, ItemFormat format) throws IOException {
+        super.writeFields(gen, format);
+        gen.writeStringField("fieldId", fieldId);
+        gen.writeStringField("value", value);
+    }
+
+    @Override
+    protected boolean readField(String name, JsonParser parser, ItemFormat format) throws IOException {
+        switch (name) {
+            case "fieldId":
+                setFieldId(parser.getValueAsString());
+                return true;
+            case "value":
+                setValue(parser.getValueAsString());
+                return true;
+            default:
+                return super.readField(name, parser, format);
+        }
+    }
 }
@@ -1,7 +1,12 @@
 package org.clyze.persistent.model.jvm;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
 import java.util.Map;
+import org.clyze.persistent.model.ItemFormat;
 import org.clyze.persistent.model.Position;
+import org.clyze.persistent.model.StringPool;
 import org.clyze.persistent.model.Variable;
 
 /**
@@ -11,14 +16,16 @@ import org.clyze.persistent.model.Variable;
  * the Dalvik Executable format (dex), these "variables" come from the
  * "registers" in the IR.
  */
-public class JvmVariable extends Variable {
+public class JvmVariable extends Variable implements HasModifiers {
 
 	/** The type of the variable. */
 	private String type;
 	/** The id of the method declaring this variable. */
 	private String declaringMethodId;
-	/** True if this variable is inside an instance initializer block. */
-	private boolean inIIB = false;
+	/** The modifiers of the variable (see {@link JvmModifiers}): if it is inside an instance initializer block. */
+	private int modifiers;
+	/** The modifier bits that this element type models. */
+	private static final int MODIFIERS = JvmModifiers.maskOf(JvmVariable.class);
 
 	/** No-arg constructor, use setters or fromMap() to populate the object. */
 	public JvmVariable() {}
@@ -44,9 +51,9 @@ public class JvmVariable extends Variable {
 					   boolean isParameter,
 					   boolean inIIB) {
 		super(position, sourceFileName, source, artifactName, symbolId, name, isLocal, isParameter);
-		this.type = type;
-		this.declaringMethodId = declaringMethodId;
-		this.inIIB = inIIB;
+		this.type = StringPool.canonical(type);
+		this.declaringMethodId = StringPool.canonical(declaringMethodId);
+		this.modifiers = inIIB ? JvmModifiers.IN_IIB : 0;
 	}
 
 
@@ -59,15 +66,25 @@ public class JvmVariable extends Variable {
     }
 
     public void setDeclaringMethodId(String declaringMethodId) {
-        this.declaringMethodId = declaringMethodId;
+        this.declaringMethodId = StringPool.canonical(declaringMethodId);
     }
 
     public boolean isInIIB() {
-        return inIIB;
+        return (modifiers & JvmModifiers.IN_IIB) != 0;
     }
 
     public void setInIIB(boolean inIIB) {
-        this.inIIB = inIIB;
+        modifiers = JvmModifiers.set(modifiers, JvmModifiers.IN_IIB, inIIB);
+    }
+
+    @Override
+    public int getModifiers() {
+        return modifiers;
+    }
+
+    @Override
+    public void setModifiers(int modifiers) {
+        this.modifiers = modifiers & MODIFIERS;
     }
 
     @Override
@@ -75,7 +92,7 @@ public class JvmVariable extends Variable {
 		super.saveTo(map);
 		map.put("type", getType());
 		map.put("declaringMethodId", getDeclaringMethodId());
-		map.put("inIIB", isInIIB());
+		JvmModifiers.saveTo(map, JvmVariable.class, getModifiers());
 	}
 
 	@Override
@@ -83,7 +100,29 @@ public class JvmVariable extends Variable {
 		super.fromMap(map);
 		setType((String) map.get("type"));
 		setDeclaringMethodId((String) map.get("declaringMethodId"));
-		setInIIB((Boolean) map.get("inIIB"));
+		setModifiers(JvmModifiers.fromMap(map, JvmVariable.class));
+	}
+
+	@Override
+	protected void writeFields(JsonGenerator gen, ItemFormat format) throws IOException {
+		super.writeFields(gen, format);
+		gen.writeStringField("type", type);
+		gen.writeStringField("declaringMethodId", declaringMethodId);
+		JvmModifiers.writeFields(gen, this, format);
+	}
+
+	@Override
+	protected boolean readField(String name, JsonParser parser, ItemFormat format) throws IOException {
+		switch (name) {
+			case "type":
+				setType(parser.getValueAsString());
+				return true;
+			case "declaringMethodId":
+				setDeclaringMethodId(parser.getValueAsString());
+				return true;
+			default:
+				return JvmModifiers.readField(name, parser, this) || super.readField(name, parser, format);
+		}
 	}
 
 	public String getSymbolId() {
@@ -91,7 +130,7 @@ public class JvmVariable extends Variable {
 	}
 
 	public void setType(String type) {
-		this.type = type;
+		this.type = StringPool.canonical(type);
 	}
 
 	@Override
@@ -4,7 +4,19 @@ import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import org.clyze.persistent.metadata.*;
+import org.clyze.persistent.metadata.jvm.ConcurrentJvmMetadata;
+import org.clyze.persistent.metadata.jvm.JvmCallGraph;
+import org.clyze.persistent.metadata.jvm.JvmClassHierarchy;
 import org.clyze.persistent.metadata.jvm.JvmMetadata;
+import org.clyze.persistent.metadata.jvm.JvmMetadataDiff;
+import org.clyze.persistent.metadata.jvm.JvmMetadataIndex;
+import org.clyze.persistent.metadata.jvm.JvmMetadataPatch;
+import org.clyze.persistent.metadata.jvm.JvmReportMerger;
+import org.clyze.persistent.metadata.jvm.MappedJvmMetadata;
+import org.clyze.persistent.metadata.jvm.ShardManifest;
+import org.clyze.persistent.metadata.jvm.ShardedJvmReporter;
+import org.clyze.persistent.metadata.jvm.SymbolDictionary;
+import org.clyze.persistent.metadata.jvm.SymbolReferences;
 import org.clyze.persistent.model.*;
 import org.clyze.persistent.model.jvm.*;
 import org.junit.jupiter.api.Test;
@@ -222,6 +234,486 @@ public class TestDeSerialization {
         }
     }
 
+    /**
+     * Test the symbol-id and relation indexes over JVM metadata.
+     */
+    @Test
+    public void testJvmMetadataIndex() {
+        Position pos = new Position(1, 1, 1, 5);
+        JvmField field = new JvmField(pos, "A.java", true, "a.jar", "f", "<A: int f>", "int", "A", false);
+        JvmMethod method = new JvmMethod(pos, "A.java", true, "a.jar", "m", "A", "void", "<A: void m()>",
+                new String[0], new String[0], false, false, false, false, false, false, false, false, false, false, pos);
+        JvmVariable variable = new JvmVariable(pos, "A.java", true, "a.jar", "v", method.getSymbolId() + "/v", "int", method.getSymbolId(), true, false, false);
+        SymbolAlias alias = new SymbolAlias("A.java", "a.jar", "v-alias", variable.getSymbolId());
+        Usage read = new Usage(new Position(2, 2, 1, 2), "A.java", true, "a.jar", "read", field.getSymbolId(), UsageKind.DATA_READ);
+        Usage write = new Usage(new Position(2, 2, 4, 5), "A.java", true, "a.jar", "write", field.getSymbolId(), UsageKind.DATA_WRITE);
+        Usage call = new Usage(new Position(3, 3, 1, 2), "A.java", true, "a.jar", "call", method.getSymbolId(), UsageKind.FUNCTION);
+        JvmMetadata metadata = new JvmMetadata();
+        metadata.jvmFields.add(field);
+        metadata.jvmMethods.add(method);
+        metadata.jvmVariables.add(variable);
+        metadata.aliases.add(alias);
+        metadata.usages.addAll(Arrays.asList(read, write, call));
+
+        JvmMetadataIndex index = new JvmMetadataIndex(metadata);
+        assert index.getJvmMethod(method.getSymbolId()) == method;
+        assert index.getMethodsOf("A").equals(Collections.singletonList(method));
+        assert index.getFieldsOf("A").equals(Collections.singletonList(field));
+        assert index.getVariablesOf(method.getSymbolId()).equals(Collections.singletonList(variable));
+        assert index.getUsagesOf(field.getSymbolId()).size() == 2;
+        assert index.getUsagesOf(method.getSymbolId()).equals(Collections.singletonList(call));
+        assert index.getAliasesOf(variable.getSymbolId()).equals(Collections.singletonList(alias));
+        assert index.getInvocationsIn(method.getSymbolId()).isEmpty();
+        index.remove(read);
+        assert index.getUsagesOf(field.getSymbolId()).equals(Collections.singletonList(write));
+        assert index.getUsage(read.getSymbolId()) == null;
+    }
+
+    /**
+     * Test the metadata index with elements that share symbol ids.
+     */
+    @Test
+    public void testMetadataIndexCollisions() {
+        Position pos = new Position(1, 1, 1, 5);
+        JvmMetadata metadata = new JvmMetadata();
+        Usage first = new Usage(pos, "A.java", true, "a.jar", "usage", "<A: void m()>", UsageKind.FUNCTION);
+        Usage second = new Usage(new Position(2, 2, 1, 5), "A.java", true, "a.jar", "usage", "<A: void m()>", UsageKind.FUNCTION);
+        Usage third = new Usage(new Position(3, 3, 1, 5), "A.java", true, "a.jar", "usage", "<A: int f>", UsageKind.DATA_READ);
+        metadata.usages.addAll(Arrays.asList(first, second, third));
+        assert metadata.usages.size() == 3;
+        JvmMetadataIndex index = new JvmMetadataIndex(metadata);
+        index.add(second);
+        assert index.getUsagesOf("<A: void m()>").size() == 2;
+        assert index.getUsagesOf("<A: int f>").equals(Collections.singletonList(third));
+        assert index.getUsage("usage") != null;
+
+        Usage found = index.getUsage("usage");
+        index.remove(found);
+        Usage survivor = index.getUsage("usage");
+        assert survivor != null && !survivor.equals(found);
+        index.remove(survivor);
+        Usage last = index.getUsage("usage");
+        assert last != null && !last.equals(found) && !last.equals(survivor);
+        assert index.getUsagesOf("<A: void m()>").size() + index.getUsagesOf("<A: int f>").size() == 1;
+        index.remove(last);
+        assert index.getUsage("usage") == null;
+        assert index.getUsagesOf("<A: void m()>").isEmpty();
+    }
+
+    /**
+     * Test streaming deserialization of JSON reports.
+     * @throws IOException on serialization or parse error
+     */
+    @Test
+    public void testStreamedJsonReports() throws IOException {
+        JvmMetadata metadata = newJvmMetadata();
+        String metadataPath = "build/test-jvm-metadata-streamed.json";
+        (new FileReporter(getConfiguration(), metadata)).createReportFile(metadataPath);
+        JvmMetadata streamedMetadata = JvmMetadata.fromJson((new File(metadataPath)).toPath());
+        assert streamedMetadata.jvmClasses.equals(metadata.jvmClasses);
+        assert streamedMetadata.jvmFields.equals(metadata.jvmFields);
+        assert streamedMetadata.jvmMethods.equals(metadata.jvmMethods);
+        assert streamedMetadata.jvmVariables.equals(metadata.jvmVariables);
+        assert streamedMetadata.jvmHeapAllocations.equals(metadata.jvmHeapAllocations);
+        assert streamedMetadata.jvmInvocations.equals(metadata.jvmInvocations);
+        assert streamedMetadata.jvmStringConstants.equals(metadata.jvmStringConstants);
+        assert streamedMetadata.usages.equals(metadata.usages);
+        assert streamedMetadata.aliases.equals(metadata.aliases);
+        assert streamedMetadata.sourceFiles.equals(metadata.sourceFiles);
+        assert streamedMetadata.getTokenLocations().equals(metadata.getTokenLocations());
+
+        SourceMetadata elements = newSourceMetadata();
+        String sourcePath = "build/test-metadata-streamed.json";
+        (new FileReporter(getConfiguration(), elements)).createReportFile(sourcePath);
+        SourceMetadata streamedSource = SourceMetadata.fromJson((new File(sourcePath)).toPath());
+        assert streamedSource.types.equals(elements.types);
+        assert streamedSource.fields.equals(elements.fields);
+        assert streamedSource.functions.equals(elements.functions);
+        assert streamedSource.sourceFiles.equals(elements.sourceFiles);
+    }
+
+    /**
+     * Test binary reports.
+     * @throws IOException on serialization or read error
+     */
+    @Test
+    public void testBinaryReports() throws IOException {
+        JvmMetadata metadata = newJvmMetadata();
+        String metadataPath = "build/test-jvm-metadata-binary.json";
+        String binaryPath = "build/test-jvm-metadata.bin";
+        (new FileReporter(getConfiguration(), metadata)).createReportFile(metadataPath);
+        (new BinaryReporter(getConfiguration(), metadata)).createReportFile(binaryPath);
+        assert new File(binaryPath).length() < new File(metadataPath).length();
+        JvmMetadata binaryMetadata = JvmMetadata.fromBinary((new File(binaryPath)).toPath());
+        assert itemsEqual(binaryMetadata.jvmClasses, metadata.jvmClasses);
+        assert itemsEqual(binaryMetadata.jvmFields, metadata.jvmFields);
+        assert itemsEqual(binaryMetadata.jvmMethods, metadata.jvmMethods);
+        assert itemsEqual(binaryMetadata.jvmVariables, metadata.jvmVariables);
+        assert itemsEqual(binaryMetadata.jvmHeapAllocations, metadata.jvmHeapAllocations);
+        assert itemsEqual(binaryMetadata.jvmInvocations, metadata.jvmInvocations);
+        assert itemsEqual(binaryMetadata.jvmStringConstants, metadata.jvmStringConstants);
+        assert itemsEqual(binaryMetadata.usages, metadata.usages);
+        assert itemsEqual(binaryMetadata.aliases, metadata.aliases);
+        assert itemsEqual(binaryMetadata.sourceFiles, metadata.sourceFiles);
+
+        SourceMetadata elements = newSourceMetadata();
+        String sourcePath = "build/test-metadata.bin";
+        (new BinaryReporter(getConfiguration(), elements)).createReportFile(sourcePath);
+        SourceMetadata binarySource = SourceMetadata.fromBinary((new File(sourcePath)).toPath());
+        assert itemsEqual(binarySource.types, elements.types);
+        assert itemsEqual(binarySource.fields, elements.fields);
+        assert itemsEqual(binarySource.functions, elements.functions);
+        assert itemsEqual(binarySource.sourceFiles, elements.sourceFiles);
+    }
+
+    /**
+     * Test the memory-mapped metadata store.
+     * @throws IOException on write or read error
+     */
+    @Test
+    public void testMappedMetadata() throws IOException {
+        JvmMetadata metadata = newJvmMetadata();
+        java.nio.file.Path mappedPath = (new File("build/test-jvm-metadata.map")).toPath();
+        MappedJvmMetadata.write(metadata, mappedPath);
+        try (MappedJvmMetadata mapped = MappedJvmMetadata.open(mappedPath)) {
+            assert mapped.size("Usage") == 4;
+            for (SourceFile sourceFile : metadata.sourceFiles)
+                assert itemEquals(mapped.getSourceFile(sourceFile.getId()), sourceFile);
+            for (JvmClass jvmClass : metadata.jvmClasses)
+                assert itemEquals(mapped.getJvmClass(jvmClass.getSymbolId()), jvmClass);
+            for (JvmField jvmField : metadata.jvmFields)
+                assert itemEquals(mapped.getJvmField(jvmField.getSymbolId()), jvmField);
+            for (JvmMethod jvmMethod : metadata.jvmMethods)
+                assert itemEquals(mapped.getJvmMethod(jvmMethod.getSymbolId()), jvmMethod);
+            for (JvmVariable jvmVariable : metadata.jvmVariables)
+                assert itemEquals(mapped.getJvmVariable(jvmVariable.getSymbolId()), jvmVariable);
+            for (JvmHeapAllocation allocation : metadata.jvmHeapAllocations)
+                assert itemEquals(mapped.getJvmHeapAllocation(allocation.getSymbolId()), allocation);
+            for (JvmMethodInvocation invocation : metadata.jvmInvocations)
+                assert itemEquals(mapped.getJvmInvocation(invocation.getSymbolId()), invocation);
+            for (Usage usage : metadata.usages)
+                assert itemEquals(mapped.getUsage(usage.getSymbolId()), usage);
+            for (SymbolAlias alias : metadata.aliases)
+                assert itemEquals(mapped.getAlias(alias.getSymbolId()), alias);
+            assert itemEquals(mapped.getJvmStringConstant(0), metadata.jvmStringConstants.iterator().next());
+            assert mapped.getJvmClass("missing-symbolId") == null;
+            assert mapped.getJvmHeapAllocation("p.A") == null;
+            List<Usage> fieldUsages = new ArrayList<>();
+            for (Usage usage : JvmMetadata.getSortedBySymbolId(metadata.usages))
+                if (usage.getReferenceId().equals("<p.A: int f>"))
+                    fieldUsages.add(usage);
+            assert fieldUsages.size() == 2;
+            assert itemsEqual(mapped.usagesOf("<p.A: int f>"), fieldUsages);
+            assert mapped.usagesOf("p.A").size() == 1;
+            assert mapped.usagesOf("missing-symbolId").isEmpty();
+        }
+    }
+
+    /**
+     * Test compact JSON output.
+     * @throws IOException on serialization error
+     */
+    @Test
+    public void testCompactOutput() throws IOException {
+        SourceMetadata elements = new SourceMetadata();
+        elements.types.add(new Type(new Position(1, 2, 3, 4), "A.c", true, "sources.zip", "type-A", "A"));
+        elements.sourceFiles.add(new SourceFile("sources.zip", "A.c", "source-file-A"));
+        Configuration configuration = getConfiguration();
+        (new FileReporter(configuration, elements)).createReportFile("build/test-metadata-pretty.json");
+        configuration.setOutputStyle(OutputStyle.COMPACT);
+        (new FileReporter(configuration, elements)).createReportFile("build/test-metadata-compact.json");
+        File pretty = new File("build/test-metadata-pretty.json");
+        File compact = new File("build/test-metadata-compact.json");
+        assert compact.length() < pretty.length();
+        assert JSONUtil.toMap(compact.toPath()).equals(JSONUtil.toMap(pretty.toPath()));
+        assert SourceMetadata.fromJson(compact.toPath()).types.equals(elements.types);
+    }
+
+    /**
+     * Test that parallel reporting produces the same output as sequential reporting.
+     * @throws IOException on serialization error
+     */
+    @Test
+    public void testParallelReport() throws IOException {
+        JvmMetadata metadata = new JvmMetadata();
+        SourceMetadata elements = new SourceMetadata();
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            Position pos = new Position(i, i, 1, 5);
+            String id = "id" + random.nextInt(100000);
+            metadata.usages.add(new Usage(pos, "A.java", true, "a.jar", "usage-" + id, "<A: void m()>", UsageKind.FUNCTION));
+            metadata.jvmVariables.add(new JvmVariable(pos, "A.java", true, "a.jar", "v", "var-" + id, "int", "<A: void m()>", true, false, false));
+            metadata.jvmStringConstants.add(new JvmStringConstant(pos, "A.java", true, "<A: String s>", "s" + i));
+            elements.types.add(new Type(pos, "A.c", true, "sources.zip", "type-" + id, "T" + i));
+        }
+        metadata.sourceFiles.add(new SourceFile("a.jar", "B.java", "source-B"));
+        metadata.sourceFiles.add(new SourceFile("a.jar", "A.java", "source-A"));
+        for (OutputStyle style : OutputStyle.values())
+            for (Metadata m : Arrays.asList(metadata, elements)) {
+                Configuration configuration = getConfiguration();
+                configuration.setOutputStyle(style);
+                java.io.ByteArrayOutputStream sequential = new java.io.ByteArrayOutputStream();
+                (new FileReporter(configuration, m)).writeReport(sequential);
+                configuration.setParallel(true);
+                java.io.ByteArrayOutputStream parallel = new java.io.ByteArrayOutputStream();
+                (new FileReporter(configuration, m)).writeReport(parallel);
+                assert Arrays.equals(sequential.toByteArray(), parallel.toByteArray());
+            }
+    }
+
+    /**
+     * Test string deduplication during loading.
+     * @throws IOException on serialization error
+     */
+    @Test
+    @SuppressWarnings("try")
+    public void testStringPool() throws IOException {
+        JvmMetadata metadata = new JvmMetadata();
+        Position pos = new Position(1, 1, 1, 5);
+        metadata.usages.add(new Usage(pos, new String("A.java"), true, new String("a.jar"), "usage1", "<A: void m()>", UsageKind.FUNCTION));
+        metadata.usages.add(new Usage(pos, new String("A.java"), true, new String("a.jar"), "usage2", "<A: void m()>", UsageKind.FUNCTION));
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        (new FileReporter(getConfiguration(), metadata)).writeReport(out);
+
+        List<Usage> usages = new ArrayList<>(JvmMetadata.fromJson(new java.io.ByteArrayInputStream(out.toByteArray())).usages);
+        assert usages.size() == 2;
+        assert usages.get(0).getSourceFileName() == usages.get(1).getSourceFileName();
+        assert usages.get(0).getArtifactName() == usages.get(1).getArtifactName();
+        assert StringPool.getActive() == null;
+
+        try (StringPool.Scope scope = StringPool.enter(StringPool.disabled())) {
+            usages = new ArrayList<>(JvmMetadata.fromJson(new java.io.ByteArrayInputStream(out.toByteArray())).usages);
+            assert usages.get(0).getSourceFileName() != usages.get(1).getSourceFileName();
+        }
+
+        StringPool pool = StringPool.create();
+        try (StringPool.Scope scope = StringPool.enter(pool)) {
+            JvmVariable var1 = new JvmVariable(pos, new String("B.java"), true, "a.jar", "x", "x", new String("int"), "m", true, false, false);
+            JvmVariable var2 = new JvmVariable();
+            var2.setType(new String("int"));
+            assert var1.getType() == var2.getType();
+            assert pool.size() == 4;
+        }
+        assert StringPool.getActive() == null;
+    }
+
+    /**
+     * Test that positions are shared and survive serialization.
+     * @throws IOException on serialization error
+     */
+    @Test
+    public void testPositions() throws IOException {
+        Position pos = Position.of(3, 4, 10, 2);
+        assert pos == Position.of(3, 4, 10, 2);
+        assert Position.canonical(new Position(3, 4, 10, 2)) == pos;
+        assert pos.getStartLine() == 3 && pos.getEndLine() == 4 && pos.getStartColumn() == 10 && pos.getEndColumn() == 2;
+        assert pos.hashCode() == Objects.hash(3L, 10L, 4L, 2L);
+        try {
+            new Position(1L << 40, 1, 1, 1);
+            assert false;
+        } catch (IllegalArgumentException ignored) {}
+
+        JvmMetadata metadata = new JvmMetadata();
+        metadata.usages.add(new Usage(new Position(7, 7, 1, 5), "A.java", true, "a.jar", "usage1", "<A: void m()>", UsageKind.FUNCTION));
+        metadata.usages.add(new Usage(new Position(7, 7, 1, 5), "A.java", true, "a.jar", "usage2", "<A: void m()>", UsageKind.FUNCTION));
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        (new FileReporter(getConfiguration(), metadata)).writeReport(out);
+        assert out.toString("UTF-8").contains("\"startLine\" : 7,\n");
+
+        List<Usage> usages = new ArrayList<>(JvmMetadata.fromJson(new java.io.ByteArrayInputStream(out.toByteArray())).usages);
+        assert usages.size() == 2;
+        assert usages.get(0).getPosition().equals(new Position(7, 7, 1, 5));
+        assert usages.get(0).getPosition() == usages.get(1).getPosition();
+    }
+
+    /**
+     * Test modifier masks and their serialization.
+     * @throws IOException on serialization error
+     */
+    @Test
+    public void testModifiers() throws IOException {
+        Position pos = new Position(1, 1, 1, 5);
+        JvmMethod method = new JvmMethod(pos, "A.java", true, "a.jar", "m", "A", "void", "<A: void m()>", new String[0], new String[0],
+                true, false, false, false, true, false, false, true, false, false, pos);
+        assert method.hasModifiers(JvmModifiers.PUBLIC | JvmModifiers.STATIC);
+        assert !method.hasModifiers(JvmModifiers.PUBLIC | JvmModifiers.FINAL);
+        assert method.isSynchronized() && !method.isNative();
+        method.setFinal(true);
+        method.setSynchronized(false);
+        assert method.getModifiers() == (JvmModifiers.PUBLIC | JvmModifiers.STATIC | JvmModifiers.FINAL);
+        JvmMethod copy = new JvmMethod();
+        copy.fromMap(method.toMap());
+        assert copy.getModifiers() == method.getModifiers();
+
+        JvmMetadata metadata = new JvmMetadata();
+        metadata.jvmMethods.add(method);
+        metadata.jvmHeapAllocations.add(new JvmHeapAllocation(pos, "A.java", true, "a.jar", "<A: void m()>/new A/0", "A", "<A: void m()>", false, true));
+        Configuration configuration = getConfiguration();
+        for (boolean asMask : new boolean[] { false, true }) {
+            configuration.setModifiersAsMask(asMask);
+            java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+            (new FileReporter(configuration, metadata)).writeReport(out);
+            String json = out.toString("UTF-8");
+            assert json.contains("\"modifiers\"") == asMask;
+            assert json.contains("\"isStatic\"") != asMask;
+
+            JvmMetadata loaded = JvmMetadata.fromJson(new java.io.ByteArrayInputStream(out.toByteArray()));
+            JvmMethod loadedMethod = loaded.jvmMethods.iterator().next();
+            assert loadedMethod.getModifiers() == method.getModifiers();
+            assert loaded.jvmHeapAllocations.iterator().next().hasModifiers(JvmModifiers.ARRAY);
+            assert JvmMetadata.fromMap(JSONUtil.toMap(json)).jvmMethods.iterator().next().getModifiers() == method.getModifiers();
+        }
+
+        // Bits that a type does not model are dropped, so elements survive round trips.
+        JvmField field = new JvmField(pos, "A.java", true, "a.jar", "f", "<A: int f>", "int", "A", false);
+        field.setModifiers(JvmModifiers.PUBLIC | JvmModifiers.STATIC);
+        assert field.getModifiers() == JvmModifiers.STATIC;
+        JvmField fieldCopy = new JvmField();
+        fieldCopy.fromJSON(field.toJSON());
+        assert fieldCopy.equals(field);
+        assert JvmModifiers.maskOf(JvmHeapAllocation.class) == (JvmModifiers.IN_IIB | JvmModifiers.ARRAY);
+    }
+
+    /**
+     * Test cached hash codes and ordering of model elements.
+     */
+    @Test
+    public void testHashing() {
+        Position pos = new Position(1, 1, 1, 5);
+        Usage usage1 = new Usage(pos, "A.java", true, "a.jar", "usage1", "<A: void m()>", UsageKind.FUNCTION);
+        Usage usage2 = new Usage(pos, "A.java", true, "a.jar", "usage2", "<A: void m()>", UsageKind.FUNCTION);
+        int expected = Objects.hash(Objects.hash(Objects.hash(Objects.hash((Object) null), "A.java", pos, true), "usage1"),
+                                    UsageKind.FUNCTION, "<A: void m()>");
+        assert usage1.hashCode() == expected;
+        assert !usage1.equals(usage2) && usage1.hashCode() != usage2.hashCode();
+        assert usage1.compareTo(usage2) < 0;
+
+        usage2.setSymbolId("usage1");
+        assert usage1.equals(usage2) && usage1.hashCode() == usage2.hashCode();
+        Set<Usage> usages = new HashSet<>(Arrays.asList(usage1, usage2));
+        assert usages.size() == 1;
+
+        usage2.setReferenceId("<A: void n()>");
+        assert !usage1.equals(usage2) && !usages.contains(usage2);
+        usage2.setReferenceId("<A: void m()>");
+        assert usages.contains(usage2);
+
+        JvmField field = new JvmField(pos, "A.java", true, "a.jar", "f", "<A: int f>", "int", "A", false);
+        int hash = field.hashCode();
+        field.setStatic(true);
+        assert field.hashCode() != hash;
+    }
+
+    /**
+     * Test the JSON codecs of model items.
+     * @throws IOException on serialization or parse error
+     */
+    @Test
+    public void testItemCodecs() throws IOException {
+        Position pos = new Position(1, 2, 3, 4);
+        JvmMethod method = new JvmMethod(pos, "A.java", true, "a.jar", "m", "A", "void", "<A: void m(int)>",
+                new String[]{"x"}, new String[]{"int"}, true, false, false, false, false, true, false, true, false, false, pos);
+        method.getAnnotations().add("@Deprecated");
+        String json = method.toJSON();
+        assert json.indexOf("\"rootElemId\"") < json.indexOf("\"position\"");
+        assert json.indexOf("\"paramTypes\"") < json.indexOf("\"isStatic\"");
+        JvmMethod methodCopy = new JvmMethod();
+        methodCopy.fromJSON(json);
+        assert methodCopy.equals(method) && methodCopy.toMap().equals(method.toMap());
+        assert methodCopy.getModifiers() == method.getModifiers();
+
+        Artifact artifact = new Artifact("art1", "a.jar", ArtifactKind.JAR, false, "a-sources.jar", "abc", 100);
+        artifact.getPackages().add("pkg");
+        Artifact artifactCopy = new Artifact(null, null, ArtifactKind.AAR, true, null, null, 0);
+        artifactCopy.fromJSON(artifact.toJSON());
+        assert artifactCopy.toMap().equals(artifact.toMap());
+
+        org.clyze.persistent.model.Package pkg = new org.clyze.persistent.model.Package("pkg1", "pkg", "org.pkg", null, Collections.singletonList("art1"));
+        assert new org.clyze.persistent.model.Package().fromJSON(pkg.toJSON()).toMap().equals(pkg.toMap());
+        SourceFile sourceFile = new SourceFile("a.jar", "A.java", "source-A");
+        assert new SourceFile().fromJSON(sourceFile.toJSON()).equals(sourceFile);
+
+        // Items without positions have the key layout of the map-based output.
+        SymbolAlias alias = new SymbolAlias("A.java", "a.jar", "alias", "origin");
+        Function function = new Function(null, "a.c", true, "a.zip", "f", "f", new String[] { "x" }, null);
+        for (Item item : Arrays.<Item>asList(alias, function)) {
+            String itemJson = item.toJSON();
+            assert !itemJson.contains("osition\"");
+            assert JSONUtil.toMap(itemJson).equals(JSONUtil.toMap(JSONUtil.getObjectWriter().writeValueAsString(item.toMap())));
+        }
+    }
+
+    /**
+     * Test concurrent metadata collection.
+     * @throws InterruptedException if a worker thread is interrupted
+     */
+    @Test
+    public void testConcurrentMetadata() throws InterruptedException {
+        ConcurrentJvmMetadata collector = new ConcurrentJvmMetadata();
+        Position pos = new Position(1, 1, 1, 5);
+        Thread[] workers = new Thread[4];
+        for (int t = 0; t < workers.length; t++) {
+            String prefix = "worker" + t;
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    collector.add(new Usage(pos, "A.java", true, "a.jar", prefix + "/usage" + i, "<A: void m()>", UsageKind.FUNCTION));
+                    collector.add(new JvmVariable(pos, "A.java", true, "a.jar", "v", prefix + "/v" + i, "int", "<A: void m()>", true, false, false));
+                }
+                collector.add(new SourceFile("a.jar", "A.java", "source-A"));
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers)
+            worker.join();
+        JvmMetadata metadata = collector.toJvmMetadata();
+        assert metadata.usages.size() == 4000;
+        assert metadata.jvmVariables.size() == 4000;
+        assert metadata.sourceFiles.size() == 1;
+    }
+
+    /**
+     * Test metadata diffs and patches.
+     * @throws IOException on serialization error
+     */
+    @Test
+    public void testMetadataDiff() throws IOException {
+        Position pos = new Position(1, 1, 1, 5);
+        JvmMetadata oldMetadata = new JvmMetadata();
+        oldMetadata.sourceFiles.add(new SourceFile("a.jar", "A.java", "source-A"));
+        for (int i = 0; i < 5; i++) {
+            oldMetadata.jvmMethods.add(new JvmMethod(pos, "A.java", true, "a.jar", "m" + i, "A", "void", "<A: void m" + i + "()>",
+                    new String[0], new String[0], false, false, false, false, false, false, false, true, false, false, pos));
+            oldMetadata.usages.add(new Usage(pos, "A.java", true, "a.jar", "usage" + i, "<A: void m" + i + "()>", UsageKind.FUNCTION));
+        }
+        oldMetadata.jvmStringConstants.add(new JvmStringConstant(pos, "A.java", true, "<A: String s>", "s1"));
+        // Elements that share a symbol id are matched as a group.
+        oldMetadata.usages.add(new Usage(pos, "A.java", true, "a.jar", "usageDup", "<A: void m0()>", UsageKind.FUNCTION));
+        oldMetadata.usages.add(new Usage(pos, "A.java", true, "a.jar", "usageDup", "<A: void m1()>", UsageKind.FUNCTION));
+        byte[] oldReport = writeJvmReport(oldMetadata);
+
+        JvmMetadata newMetadata = JvmMetadata.fromJson(new java.io.ByteArrayInputStream(oldReport));
+        assert JvmMetadataDiff.diff(oldMetadata, newMetadata).isEmpty();
+        newMetadata.jvmMethods.stream().filter(m -> m.getName().equals("m2")).forEach(m -> m.setStatic(true));
+        newMetadata.usages.removeIf(u -> u.getSymbolId().equals("usage3"));
+        newMetadata.jvmFields.add(new JvmField(pos, "A.java", true, "a.jar", "f", "<A: int f>", "int", "A", false));
+        newMetadata.jvmStringConstants.add(new JvmStringConstant(pos, "A.java", true, "<A: String t>", "s2"));
+        byte[] newReport = writeJvmReport(newMetadata);
+
+        JvmMetadataPatch patch = JvmMetadataDiff.diff(new java.io.ByteArrayInputStream(oldReport), new java.io.ByteArrayInputStream(newReport));
+        assert patch.size() == 4;
+        assert patch.getSections().keySet().equals(new HashSet<>(Arrays.asList("JvmMethod", "Usage", "JvmField", "JvmStringConstant")));
+        assert patch.getSections().get("JvmMethod").getChanged().size() == 1;
+        assert patch.getSections().get("Usage").getRemoved().size() == 1;
+        assert JvmMetadataDiff.diff(oldMetadata, newMetadata).size() == 4;
+
+        java.io.ByteArrayOutputStream patchOut = new java.io.ByteArrayOutputStream();
+        patch.writeTo(patchOut, OutputStyle.COMPACT);
+        JvmMetadataPatch loadedPatch = JvmMetadataPatch.fromJson(new java.io.ByteArrayInputStream(patchOut.toByteArray()));
+        assert loadedPatch.size() == 4;
+        loadedPatch.applyTo(oldMetadata);
+        assert Arrays.equals(writeJvmReport(oldMetadata), newReport);
+    }
+
     /**
      * Serialize metadata to JSON, deserialize, and convert to Map.
      * @param reporter      the metadata reporter to generate the JSON
@@ -235,6 +727,472 @@ public class TestDeSerialization {
         return JSONUtil.toMap((new File(outPath)).toPath());
     }
 
+    /**
+     * Test merging of sorted reports.
+     * @throws IOException on serialization error
+     */
+    @Test
+    public void testReportMerge() throws IOException {
+        Position pos = new Position(1, 1, 1, 5);
+        JvmMetadata union = new JvmMetadata();
+        List<java.nio.file.Path> inputs = new ArrayList<>();
+        try {
+            for (int i = 0; i < 5; i++) {
+                JvmMetadata metadata = new JvmMetadata();
+                String file = "C" + i + ".java";
+                metadata.sourceFiles.add(new SourceFile("a.jar", file, "source-C" + i));
+                metadata.jvmClasses.add(new JvmClass(pos, file, true, "a.jar", "C" + i, "", "C" + i,
+                        false, false, false, false, false, false, false, true, false, false));
+                // Every report also contains a class of the previous file.
+                if (i > 0)
+                    metadata.jvmClasses.add(new JvmClass(pos, "C" + (i - 1) + ".java", true, "a.jar", "C" + (i - 1), "", "C" + (i - 1),
+                            false, false, false, false, false, false, false, true, false, false));
+                for (int j = 0; j < 3; j++)
+                    metadata.usages.add(new Usage(pos, file, true, "a.jar", file + "/usage" + j, "C" + j, UsageKind.TYPE));
+                union.sourceFiles.addAll(metadata.sourceFiles);
+                union.jvmClasses.addAll(metadata.jvmClasses);
+                union.usages.addAll(metadata.usages);
+                java.nio.file.Path input = java.nio.file.Files.createTempFile("merge-input", ".json");
+                inputs.add(input);
+                java.nio.file.Files.write(input, writeJvmReport(metadata));
+            }
+            byte[] expected = writeJvmReport(union);
+            Configuration configuration = getConfiguration();
+            for (int fanIn : new int[] { 64, 2 }) {
+                configuration.setMergeFanIn(fanIn);
+                java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+                (new JvmReportMerger(configuration)).merge(inputs, out);
+                assert Arrays.equals(out.toByteArray(), expected);
+            }
+
+            // Intermediate runs go to the temporary directory and are deleted.
+            java.nio.file.Path tempDir = java.nio.file.Files.createTempDirectory("merge-runs");
+            configuration.setTempDir(tempDir.toFile());
+            java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+            (new JvmReportMerger(configuration)).merge(inputs, out);
+            assert Arrays.equals(out.toByteArray(), expected);
+            try (java.util.stream.Stream<java.nio.file.Path> runs = java.nio.file.Files.list(tempDir)) {
+                assert runs.count() == 0;
+            }
+            java.nio.file.Files.delete(tempDir);
+            try {
+                (new JvmReportMerger(configuration)).merge(inputs, new java.io.ByteArrayOutputStream());
+                assert false;
+            } catch (java.nio.file.NoSuchFileException ex) {
+                assert ex.getFile().startsWith(tempDir.toString());
+            }
+        } finally {
+            for (java.nio.file.Path input : inputs)
+                java.nio.file.Files.delete(input);
+        }
+    }
+
+    /**
+     * Test reports with sections sorted outside the heap.
+     * @throws IOException on serialization error
+     */
+    @Test
+    public void testExternalSort() throws IOException {
+        Position pos = new Position(1, 1, 1, 5);
+        JvmMetadata jvmMetadata = new JvmMetadata();
+        SourceMetadata sourceMetadata = new SourceMetadata();
+        Random random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            String id = "usage" + random.nextInt(150);
+            jvmMetadata.usages.add(new Usage(new Position(i, i, 1, 5), "A.java", true, "a.jar", id, "<A: void m()>", UsageKind.FUNCTION));
+            jvmMetadata.jvmStringConstants.add(new JvmStringConstant(pos, "A.java", true, "<A: String s>", "s" + i));
+            sourceMetadata.variables.add(new Variable(pos, "a.c", true, "s.zip", "v", "v" + random.nextInt(150), true, false));
+        }
+        for (OutputStyle style : OutputStyle.values())
+            for (Metadata metadata : Arrays.asList(jvmMetadata, sourceMetadata)) {
+                Configuration configuration = getConfiguration();
+                configuration.setOutputStyle(style);
+                if (metadata == sourceMetadata)
+                    Collections.shuffle(sourceMetadata.variables, random);
+                java.io.ByteArrayOutputStream expected = new java.io.ByteArrayOutputStream();
+                (new FileReporter(configuration, metadata)).writeReport(expected);
+                configuration.setSortBudget(16);
+                configuration.setMergeFanIn(4);
+                java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+                (new FileReporter(configuration, metadata)).writeReport(out);
+                assert Arrays.equals(out.toByteArray(), expected.toByteArray());
+            }
+    }
+
+    /**
+     * Test binary reports with sections sorted outside the heap.
+     * @throws IOException on serialization or read error
+     */
+    @Test
+    public void testExternallySortedBinaryReport() throws IOException {
+        SourceMetadata metadata = new SourceMetadata();
+        Random random = new Random(1);
+        for (int i = 0; i < 200; i++)
+            metadata.variables.add(new Variable(new Position(i, i, 1, 5), "a.c", true, "s.zip", "v", "v" + random.nextInt(150), true, false));
+        Collections.shuffle(metadata.variables, random);
+        List<Variable> variables = new ArrayList<>(metadata.variables);
+        Configuration configuration = getConfiguration();
+        configuration.setSortBudget(16);
+        configuration.setMergeFanIn(4);
+        MetricsRegistry registry = new MetricsRegistry();
+        configuration.setMetricsListener(registry);
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        (new BinaryReporter(configuration, metadata)).writeReport(out);
+        for (int i = 0; i < variables.size(); i++)
+            assert metadata.variables.get(i) == variables.get(i);
+        assert registry.getBytesWritten() == out.size();
+        assert registry.getSectionSize("Variable") == variables.size();
+        assert registry.getNanos(MetricsListener.Phase.SORT, "Variable") > 0;
+        assert registry.getNanos(MetricsListener.Phase.SERIALIZE, "Variable") > 0;
+
+        // The elements are read in the order of an in-memory report.
+        java.io.ByteArrayOutputStream expected = new java.io.ByteArrayOutputStream();
+        (new BinaryReporter(getConfiguration(), metadata)).writeReport(expected);
+        List<Variable> sorted = SourceMetadata.fromBinary(new java.io.ByteArrayInputStream(out.toByteArray())).variables;
+        List<Variable> inMemory = SourceMetadata.fromBinary(new java.io.ByteArrayInputStream(expected.toByteArray())).variables;
+        assert sorted.size() == inMemory.size();
+        for (int i = 0; i < sorted.size(); i++)
+            assert sorted.get(i).toJSON().equals(inMemory.get(i).toJSON());
+    }
+
+    /**
+     * Test the reporting metrics and their flight recorder events.
+     * @throws IOException on serialization or recording error
+     */
+    @Test
+    public void testMetrics() throws IOException {
+        Position pos = new Position(1, 1, 1, 5);
+        JvmMetadata metadata = new JvmMetadata();
+        for (int i = 0; i < 50; i++) {
+            metadata.usages.add(new Usage(pos, "A.java", true, "a.jar", "usage" + i, "<A: void m()>", UsageKind.FUNCTION));
+            metadata.jvmVariables.add(new JvmVariable(pos, "A.java", true, "a.jar", "v", "var" + i, "int", "<A: void m()>", true, false, false));
+        }
+        MetricsRegistry registry = new MetricsRegistry();
+        Configuration configuration = getConfiguration();
+        configuration.setMetricsListener(registry);
+        java.nio.file.Path events = File.createTempFile("metrics", ".jfr").toPath();
+        byte[] report;
+        try (jdk.jfr.Recording recording = new jdk.jfr.Recording()) {
+            recording.enable("org.clyze.persistent.ReportPhase").withoutThreshold();
+            recording.start();
+            for (boolean parallel : new boolean[] { false, true }) {
+                configuration.setParallel(parallel);
+                java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+                (new FileReporter(configuration, metadata)).writeReport(out);
+                report = out.toByteArray();
+                assert registry.getBytesWritten() == report.length;
+                assert registry.getSectionSize("Usage") == 50;
+                assert registry.getSectionSize("JvmClass") == 0;
+                assert registry.getNanos(MetricsListener.Phase.WRITE) > 0;
+                assert registry.getNanos(MetricsListener.Phase.SERIALIZE, "Usage") > 0;
+                assert parallel == (registry.getPeakBufferSize("Usage") > 0);
+                registry.clear();
+                JvmMetadata.fromJson(new java.io.ByteArrayInputStream(report), registry);
+                assert registry.getBytesRead() == report.length;
+                assert registry.getSectionSize("JvmVariable") == 50;
+                assert registry.getNanos(MetricsListener.Phase.PARSE, "JvmVariable") > 0;
+                registry.clear();
+            }
+            recording.stop();
+            recording.dump(events);
+        }
+        Set<String> phases = new HashSet<>();
+        for (jdk.jfr.consumer.RecordedEvent event : jdk.jfr.consumer.RecordingFile.readAllEvents(events))
+            phases.add(event.getString("phase"));
+        assert phases.containsAll(Arrays.asList("SORT", "SERIALIZE", "WRITE", "PARSE"));
+        java.nio.file.Files.delete(events);
+    }
+
+    /**
+     * Test writing and reading compressed reports.
+     * @throws IOException on serialization error
+     */
+    @Test
+    public void testCompressedReports() throws IOException {
+        Position pos = new Position(1, 1, 1, 5);
+        JvmMetadata metadata = new JvmMetadata();
+        for (int i = 0; i < 100; i++) {
+            metadata.usages.add(new Usage(pos, "A.java", true, "a.jar", "usage" + i, "<A: void m()>", UsageKind.FUNCTION));
+            metadata.jvmStringConstants.add(new JvmStringConstant(pos, "A.java", true, "<A: String s>", "s" + i));
+        }
+        Configuration configuration = getConfiguration();
+        (new FileReporter(configuration, metadata)).createReportFile("build/test-uncompressed.json");
+        java.nio.file.Path plain = new File("build/test-uncompressed.json").toPath();
+        Map<String, Object> expected = JSONUtil.toMap(plain);
+        for (Compression compression : Compression.values())
+            for (int level : new int[] { -1, 1, 9 }) {
+                configuration.setCompression(compression);
+                configuration.setCompressionLevel(level);
+                (new FileReporter(configuration, metadata)).createReportFile("build/test-compressed.json");
+                java.nio.file.Path path = new File("build/test-compressed.json").toPath();
+                byte[] bytes = java.nio.file.Files.readAllBytes(path);
+                assert (compression == Compression.GZIP) == (bytes[0] == (byte) 0x1f && bytes[1] == (byte) 0x8b);
+                assert (compression == Compression.NONE) == (bytes[0] == '{');
+                assert expected.equals(JSONUtil.toMap(path));
+                JvmMetadata read = JvmMetadata.fromJson(path);
+                assert read.usages.equals(metadata.usages);
+                assert read.jvmStringConstants.equals(metadata.jvmStringConstants);
+                assert JvmMetadataDiff.diff(plain, path).isEmpty();
+                (new BinaryReporter(configuration, metadata)).createReportFile("build/test-compressed.bin");
+                assert JvmMetadata.fromBinary(new File("build/test-compressed.bin").toPath()).usages.equals(metadata.usages);
+            }
+        try {
+            configuration.setCompressionLevel(10);
+            assert false;
+        } catch (IllegalArgumentException ex) {
+            assert configuration.getCompressionLevel() == 9;
+        }
+    }
+
+    /**
+     * Test sharded reports and their manifests.
+     * @throws IOException on serialization error
+     */
+    @Test
+    public void testShardedReports() throws IOException {
+        Position pos = new Position(1, 1, 1, 5);
+        JvmMetadata metadata = new JvmMetadata();
+        for (int i = 0; i < 60; i++) {
+            String file = "org/pkg" + (i % 3) + "/C" + (i % 6) + ".java";
+            if (i < 6)
+                metadata.sourceFiles.add(new SourceFile("a.jar", file, file));
+            metadata.usages.add(new Usage(pos, file, true, "a.jar", "usage" + i, "<C" + (i % 6) + ": void m()>", UsageKind.FUNCTION));
+            metadata.jvmVariables.add(new JvmVariable(pos, file, true, "a.jar", "v", "var" + i, "int", "<C: void m()>", true, false, false));
+            metadata.jvmStringConstants.add(new JvmStringConstant(pos, file, true, "<C: String s>", "s" + i));
+        }
+        File outDir = new File("build/test-shards");
+        outDir.mkdirs();
+        Configuration configuration = getConfiguration();
+        configuration.setOutDir(outDir);
+        configuration.setReportThreads(3);
+        configuration.setCompression(Compression.GZIP);
+        int[] expectedShards = { 6, 3, 4 };
+        for (ShardedJvmReporter.Partitioning partitioning : ShardedJvmReporter.Partitioning.values()) {
+            ShardManifest written = (new ShardedJvmReporter(configuration, metadata, partitioning, 4)).createReportFiles("shard");
+            ShardManifest manifest = ShardManifest.fromJson(new File(outDir, "shard" + ShardManifest.SUFFIX).toPath());
+            assert manifest.getPartitioning() == partitioning;
+            assert manifest.getShards().size() == expectedShards[partitioning.ordinal()];
+            int usages = 0;
+            for (int i = 0; i < manifest.getShards().size(); i++) {
+                ShardManifest.Shard shard = manifest.getShards().get(i);
+                assert shard.getChecksum().equals(written.getShards().get(i).getChecksum());
+                usages += shard.getSections().get("Usage").getElements();
+            }
+            assert usages == metadata.usages.size();
+            JvmMetadata loaded = manifest.load(shard -> true, 2);
+            assert loaded.usages.equals(metadata.usages);
+            assert loaded.jvmVariables.equals(metadata.jvmVariables);
+            assert loaded.jvmStringConstants.equals(metadata.jvmStringConstants);
+            assert new HashSet<>(loaded.sourceFiles).equals(new HashSet<>(metadata.sourceFiles));
+            for (ShardManifest.Shard shard : manifest.findShards("JvmVariable", "var7"))
+                if (manifest.read(shard).jvmVariables.stream().anyMatch(v -> v.getSymbolId().equals("var7")))
+                    usages = -1;
+            assert usages == -1;
+        }
+        // A shard that changed after it was written.
+        ShardManifest manifest = ShardManifest.fromJson(new File(outDir, "shard" + ShardManifest.SUFFIX).toPath());
+        java.nio.file.Path first = new File(outDir, manifest.getShards().get(0).getFile()).toPath();
+        configuration.setCompression(Compression.NONE);
+        (new FileReporter(configuration, new JvmMetadata())).createReportFile(first.getFileName().toString());
+        try {
+            manifest.load(shard -> true, 2);
+            assert false;
+        } catch (IOException ex) {
+            assert ex.getMessage().startsWith("Checksum mismatch");
+        }
+    }
+
+    /**
+     * Test dense symbol ids and int relations of references.
+     */
+    @Test
+    public void testSymbolDictionary() {
+        Position pos = new Position(1, 1, 1, 5);
+        JvmMetadata metadata = new JvmMetadata();
+        for (int c = 0; c < 3; c++) {
+            JvmClass jvmClass = new JvmClass(pos, "A.java", true, "a.jar", "C" + c, "p", "p.C" + c,
+                    false, false, false, false, false, true, false, true, false, false);
+            jvmClass.setSuperTypes(Arrays.asList("java.lang.Object", "p.C" + (c + 1) % 3));
+            metadata.jvmClasses.add(jvmClass);
+            metadata.jvmFields.add(new JvmField(pos, "A.java", true, "a.jar", "f", "<p.C" + c + ": int f>", "int", "p.C" + c, false));
+        }
+        metadata.usages.add(new Usage(pos, "A.java", true, "a.jar", "usage0", "<p.C0: int f>", UsageKind.DATA_READ));
+        metadata.usages.add(new Usage(pos, "A.java", true, "a.jar", "usage1", "<p.C0: int f>", UsageKind.DATA_WRITE));
+
+        SymbolReferences references = SymbolReferences.of(metadata);
+        SymbolDictionary dictionary = references.getDictionary();
+        // Classes, fields and usages in report order, then referenced library types.
+        assert dictionary.size() == 9;
+        assert dictionary.getId("p.C0") == 0;
+        assert dictionary.getId("<p.C0: int f>") == 3;
+        assert dictionary.getId("usage1") == 7;
+        assert dictionary.getId("java.lang.Object") == 8;
+        assert dictionary.getId("p.Missing") == SymbolDictionary.NONE;
+        for (int id = 0; id < dictionary.size(); id++)
+            assert dictionary.getId(dictionary.getSymbol(id)) == id;
+        assert SymbolDictionary.of(metadata).getSymbol(5).equals(dictionary.getSymbol(5));
+
+        IntRelation superTypes = references.get(SymbolReferences.Kind.SUPER_TYPE);
+        assert superTypes.size() == 6;
+        assert Arrays.equals(superTypes.targets(0), new int[] { 1, 8 });
+        assert superTypes.contains(2, 0);
+        assert !superTypes.contains(0, 2);
+        IntRelation subTypes = references.getInverse(SymbolReferences.Kind.SUPER_TYPE);
+        assert Arrays.equals(subTypes.targets(8), new int[] { 0, 1, 2 });
+        assert references.getInverse(SymbolReferences.Kind.DECLARING_CLASS).degree(1) == 1;
+        assert references.getInverse(SymbolReferences.Kind.REFERENCE).degree(3) == 2;
+        assert references.get(SymbolReferences.Kind.TARGET_METHOD).size() == 0;
+
+        // Duplicate pairs are dropped.
+        IntRelation relation = new IntRelation.Builder(3).add(2, 1).add(0, 4).add(2, 0).add(2, 1).build();
+        assert relation.size() == 3;
+        assert Arrays.equals(relation.targets(2), new int[] { 0, 1 });
+        assert relation.inverse(5).contains(4, 0);
+    }
+
+    /**
+     * Test call graph queries.
+     */
+    @Test
+    public void testCallGraph() {
+        Position pos = new Position(1, 1, 1, 5);
+        JvmMetadata metadata = new JvmMetadata();
+        String[] calls = { "a>b", "b>c", "c>b", "c>lib", "b>c", "d>e", "e>d", "d>" };
+        for (int i = 0; i < calls.length; i++) {
+            String[] edge = calls[i].split(">", -1);
+            JvmMethodInvocation invocation = new JvmMethodInvocation(pos, "A.java", true, "a.jar", "m", "invocation" + i,
+                    "A", "void", "", "<A: void " + edge[0] + "()>", false);
+            if (!edge[1].isEmpty())
+                invocation.setTargetMethodId("<A: void " + edge[1] + "()>");
+            metadata.jvmInvocations.add(invocation);
+        }
+        JvmCallGraph graph = JvmCallGraph.of(metadata);
+        SymbolDictionary methods = graph.getMethods();
+        assert methods.size() == 6;
+        assert graph.getCallees().size() == 6;
+        assert graph.getCallees("<A: void c()>").equals(Arrays.asList("<A: void b()>", "<A: void lib()>"));
+        assert graph.getCallers("<A: void b()>").equals(Arrays.asList("<A: void a()>", "<A: void c()>"));
+        assert graph.getCallers("<A: void x()>").isEmpty();
+
+        Set<String> expected = new HashSet<>(Arrays.asList("<A: void a()>", "<A: void b()>", "<A: void c()>", "<A: void lib()>"));
+        for (boolean parallel : new boolean[] { false, true })
+            assert graph.getReachable(Collections.singletonList("<A: void a()>"), parallel).equals(expected);
+        assert graph.getReachable(new int[] { methods.getId("<A: void e()>") }, true).cardinality() == 2;
+
+        int[] components = graph.getStronglyConnectedComponents();
+        int a = methods.getId("<A: void a()>"), b = methods.getId("<A: void b()>"), c = methods.getId("<A: void c()>");
+        int d = methods.getId("<A: void d()>"), e = methods.getId("<A: void e()>"), lib = methods.getId("<A: void lib()>");
+        assert components[b] == components[c];
+        assert components[d] == components[e];
+        assert components[a] != components[b] && components[b] != components[d];
+        // Callees come first in reverse topological order.
+        assert components[lib] < components[b] && components[b] < components[a];
+    }
+
+    /**
+     * Test class hierarchy queries and incremental updates.
+     */
+    @Test
+    public void testClassHierarchy() {
+        JvmMetadata metadata = new JvmMetadata();
+        metadata.jvmClasses.add(newClass("p.A", "java.lang.Object"));
+        metadata.jvmClasses.add(newClass("p.B", "p.A", "p.I"));
+        metadata.jvmClasses.add(newClass("p.C", "p.B"));
+        metadata.jvmClasses.add(newClass("p.D", "p.A"));
+        JvmClassHierarchy hierarchy = JvmClassHierarchy.of(metadata);
+        SymbolDictionary types = hierarchy.getTypes();
+        assert types.size() == 6;
+        assert hierarchy.isSubtype("p.C", "p.A");
+        assert hierarchy.isSubtype("p.C", "p.I");
+        assert hierarchy.isSubtype("p.C", "p.C");
+        assert !hierarchy.isSubtype("p.A", "p.C");
+        assert !hierarchy.isSubtype("p.D", "p.I");
+        assert !hierarchy.isSubtype("p.X", "p.A");
+        assert hierarchy.getSupertypes("p.C").equals(Arrays.asList("p.A", "java.lang.Object", "p.B", "p.I"));
+        assert hierarchy.getSubtypes("p.A").equals(Arrays.asList("p.B", "p.C", "p.D"));
+        assert Arrays.equals(hierarchy.getDirectSubtypes(types.getId("p.A")), new int[] { types.getId("p.B"), types.getId("p.D") });
+        assert hierarchy.getSubtypes(types.getId("p.C")).length == 0;
+
+        // An external interface becomes a class with a super type of its own.
+        hierarchy.addClasses(Arrays.asList(newClass("p.I", "p.J"), newClass("p.E", "p.C")));
+        assert hierarchy.isSubtype("p.C", "p.J");
+        assert hierarchy.isSubtype("p.E", "p.J");
+        assert !hierarchy.isSubtype("p.D", "p.J");
+        assert hierarchy.getSubtypes("p.J").equals(Arrays.asList("p.B", "p.I", "p.C", "p.E"));
+        assert hierarchy.getSubtypes("p.A").equals(Arrays.asList("p.B", "p.C", "p.D", "p.E"));
+    }
+
+    /**
+     * Create JVM metadata with elements of every kind.
+     * @return   the metadata
+     */
+    private static JvmMetadata newJvmMetadata() {
+        Position pos = new Position(0, 1, 2, 3);
+        String file = "sourceFileName.java";
+        String artifact = "test.jar";
+        String methodId = "<p.A: java.lang.String meth(int,java.lang.Integer)>";
+        JvmMetadata metadata = new JvmMetadata();
+        JvmClass jvmClass = new JvmClass(pos, file, true, artifact, "A", "p", "p.A",
+                false, false, false, false, false, true, false, true, false, false);
+        jvmClass.setAnnotations(new HashSet<>(Arrays.asList("c-annotation1", "c-annotation2")));
+        jvmClass.setDeclaringSymbolId("declaring-symbol");
+        metadata.jvmClasses.add(jvmClass);
+        metadata.jvmFields.add(new JvmField(pos, file, false, artifact, "f", "<p.A: int f>", "int", "p.A", true));
+        metadata.jvmMethods.add(new JvmMethod(pos, file, true, artifact, "meth", "p.A", "java.lang.String", methodId,
+                new String[] { "param0", "param1" }, new String[] { "int", "java.lang.Integer" },
+                false, false, false, false, false, false, true, false, true, false, new Position(1, 2, 3, 4)));
+        metadata.jvmVariables.add(new JvmVariable(new Position(11, 11, 12, 2), file, true, artifact, "var1",
+                methodId + "/var1", "java.lang.Object", methodId, true, false, false));
+        metadata.jvmHeapAllocations.add(new JvmHeapAllocation(new Position(12, 12, 20, 27), file, true, artifact,
+                methodId + "/new p.A/0", "p.A", methodId, false, false));
+        metadata.jvmInvocations.add(new JvmMethodInvocation(new Position(13, 13, 8, 20), file, true, artifact, "meth",
+                methodId + "/p.A.meth/0", "p.A", "java.lang.String", "int,java.lang.Integer", methodId, false));
+        metadata.jvmStringConstants.add(new JvmStringConstant(new Position(10, 10, 10, 11), file, true, "<p.A: java.lang.String s>", "initial-value"));
+        metadata.usages.add(new Usage(new Position(5, 5, 8, 9), file, true, artifact, "classUsage", "p.A", UsageKind.TYPE));
+        metadata.usages.add(new Usage(new Position(5, 5, 1, 2), file, true, artifact, "fieldReadUsage", "<p.A: int f>", UsageKind.DATA_READ));
+        metadata.usages.add(new Usage(new Position(5, 5, 4, 5), file, true, artifact, "fieldWriteUsage", "<p.A: int f>", UsageKind.DATA_WRITE));
+        metadata.usages.add(new Usage(new Position(6, 6, 1, 2), file, true, artifact, "methodUsage", methodId, UsageKind.FUNCTION));
+        metadata.aliases.add(new SymbolAlias(file, artifact, "var1-alias", methodId + "/var1"));
+        metadata.sourceFiles.add(new SourceFile(artifact, "test/Path.java", "test-java-source-file"));
+        return metadata;
+    }
+
+    /**
+     * Create language-agnostic metadata with elements of every kind.
+     * @return   the metadata
+     */
+    private static SourceMetadata newSourceMetadata() {
+        Position pos = new Position(0, 1, 2, 3);
+        String file = "sourceFileName.c";
+        String artifact = "sources.zip";
+        SourceMetadata metadata = new SourceMetadata();
+        metadata.types.add(new Type(pos, file, true, artifact, "unique-symbolId", "name"));
+        metadata.fields.add(new Field(new Position(4, 1, 4, 2), file, true, artifact, "field", "field-symbol-1"));
+        Position fPos = new Position(12, 23, 13, 24);
+        metadata.functions.add(new Function(fPos, file, true, artifact, "symbol-id", "func1", new String[] { "a", "b" }, fPos));
+        metadata.sourceFiles.add(new SourceFile(artifact, file, "source-file-id-1"));
+        return metadata;
+    }
+
+    private static JvmClass newClass(String name, String... superTypes) {
+        JvmClass jvmClass = new JvmClass(new Position(1, 1, 1, 5), "A.java", true, "a.jar", name.substring(2), "p", name,
+                false, false, false, false, false, true, false, true, false, false);
+        jvmClass.setSuperTypes(Arrays.asList(superTypes));
+        return jvmClass;
+    }
+
+    /**
+     * Write a JVM metadata report to memory.
+     * @param metadata     the metadata
+     * @return             the report bytes
+     * @throws IOException on serialization error
+     */
+    private byte[] writeJvmReport(JvmMetadata metadata) throws IOException {
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        (new FileReporter(getConfiguration(), metadata)).writeReport(out);
+        return out.toByteArray();
+    }
+
     /**
      * Get a basic configuration to use for testing.
      * @return   the configuration object to use during metadata generation
@@ -255,6 +1213,25 @@ public class TestDeSerialization {
         return mapEquals(map1, map2);
     }
 
+    /**
+     * Compare two collections of items, using both equals() and their
+     * serialized maps.
+     * @param items1   the first collection
+     * @param items2   the second collection
+     * @param <T>      the type of the items
+     * @return         true if every item of one collection has an equal item in the other
+     */
+    private <T extends Item> boolean itemsEqual(Collection<T> items1, Collection<T> items2) {
+        if (items1.size() != items2.size())
+            return false;
+        for (T item1 : items1)
+            if (items2.stream().noneMatch(item2 -> item1.equals(item2) && itemEquals(item1, item2))) {
+                System.err.println("ERROR: no equal item found for " + item1);
+                return false;
+            }
+        return true;
+    }
+
     /**
      * Test if a map has a key that a second map misses.
      * @param key     the key
@@ -0,0 +1,97 @@
+package org.clyze.persistent;
+
+import java.util.*;
+import org.clyze.persistent.metadata.PositionIndex;
+import org.clyze.persistent.metadata.SourceMetadata;
+import org.clyze.persistent.metadata.TokenIndex;
+import org.clyze.persistent.model.*;
+import org.clyze.persistent.model.jvm.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test metadata indexes.
+ */
+public class TestIndexes {
+
+    /**
+     * Test position-based lookup.
+     */
+    @Test
+    public void testPositionIndex() {
+        String file = "A.java";
+        JvmClass classA = new JvmClass(new Position(1, 1, 7, 14), file, true, "test.jar", "A",
+                "", "A", false, false, false, false, false, false, false, false, false, false);
+        JvmMethod meth1 = new JvmMethod(new Position(2, 2, 10, 15), file, true, "test.jar", "meth1",
+                "A", "void", "<A: void meth1()>", new String[0], new String[0], false, false,
+                false, false, false, false, false, false, false, false, new Position(2, 4, 5, 6));
+        JvmMethod meth2 = new JvmMethod(new Position(5, 5, 10, 15), file, true, "test.jar", "meth2",
+                "A", "void", "<A: void meth2()>", new String[0], new String[0], false, false,
+                false, false, false, false, false, false, false, false, new Position(5, 6, 5, 6));
+        JvmVariable var1 = new JvmVariable(new Position(3, 3, 9, 10), file, true, "test.jar", "x",
+                "<A: void meth1()>/x", "int", "<A: void meth1()>", true, false, false);
+        JvmVariable otherVar = new JvmVariable(new Position(3, 3, 9, 10), "B.java", true, "test.jar", "y",
+                "<B: void m()>/y", "int", "<B: void m()>", true, false, false);
+
+        List<Symbol> symbols = new ArrayList<>();
+        symbols.add(classA);
+        symbols.add(meth1);
+        symbols.add(meth2);
+        symbols.add(var1);
+        symbols.add(otherVar);
+        PositionIndex<Symbol> index = PositionIndex.of(symbols);
+        assert index.at(file, 3, 9).equals(Collections.singletonList(var1));
+        assert index.at(file, 2, 12).equals(Collections.singletonList(meth1));
+        assert index.at(file, 3, 1).isEmpty();
+        assert index.at("C.java", 3, 9).isEmpty();
+        assert index.innermost(file, 3, 10) == var1;
+        assert index.innermost(file, 4, 1) == null;
+        assert index.overlapping(file, new Position(2, 5, 1, 12)).equals(Arrays.asList(meth1, var1, meth2));
+
+        PositionIndex<JvmMethod> methods = PositionIndex.ofOuterPositions(Arrays.asList(meth1, meth2));
+        assert methods.innermost(file, 3, 9) == meth1;
+        assert methods.innermost(file, 6, 1) == meth2;
+        assert methods.innermost(file, 7, 1) == null;
+
+        PositionIndex<Symbol> bodies = PositionIndex.of(symbols, s -> s instanceof JvmMethod ? ((JvmMethod) s).getOuterPosition() : s.getPosition());
+        assert bodies.at(file, 3, 9).equals(Arrays.asList(meth1, var1));
+        assert bodies.innermost(file, 3, 9) == var1;
+        assert bodies.innermost(file, 4, 3) == meth1;
+        assert bodies.innermost(file, 1, 8) == classA;
+    }
+
+    /**
+     * Test the incremental token index.
+     */
+    @Test
+    public void testTokenIndex() {
+        SourceMetadata metadata = new SourceMetadata();
+        Position pos1 = new Position(1, 1, 5, 10);
+        Position pos2 = new Position(2, 2, 5, 10);
+        Type typeA = new Type(pos1, "A.c", true, "sources.zip", "type-A", "getTokenLocations");
+        metadata.types.add(typeA);
+        Map<String, Collection<Position>> tokens = metadata.getTokenLocations();
+        assert tokens.get("getTokenLocations").equals(Collections.singletonList(pos1));
+        assert tokens == metadata.getTokenLocations();
+        try {
+            tokens.get("getTokenLocations").clear();
+            assert false;
+        } catch (UnsupportedOperationException ignored) { }
+
+        Field field = new Field(pos2, "A.c", true, "sources.zip", "getTokenIndex", "field-1");
+        metadata.fields.add(field);
+        metadata.sort();
+        assert tokens.get("getTokenIndex") == null;
+        assert metadata.getTokenLocations().get("getTokenIndex").equals(Collections.singletonList(pos2));
+        TokenIndex index = metadata.getTokenIndex();
+        assert index.tokensWithPrefix("getToken").equals(Arrays.asList("getTokenIndex", "getTokenLocations"));
+        assert index.tokensWithPrefix("x").isEmpty();
+        assert index.fuzzyMatch("gTL", 10).equals(Collections.singletonList("getTokenLocations"));
+        assert index.fuzzyMatch("tokenindex", 10).equals(Collections.singletonList("getTokenIndex"));
+
+        metadata.types.remove(typeA);
+        assert !metadata.getTokenLocations().containsKey("getTokenLocations");
+        assert index.tokensWithPrefix("getToken").equals(Collections.singletonList("getTokenIndex"));
+        metadata.fields.clear();
+        assert metadata.getTokenLocations().isEmpty();
+    }
+}